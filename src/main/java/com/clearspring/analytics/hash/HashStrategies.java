@@ -0,0 +1,77 @@
+package com.clearspring.analytics.hash;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves the ids written into serialized estimators back to {@link HashStrategy}s.
+ * <p/>
+ * <p>
+ * The {@link StandardHashStrategy}s are always known. Any other strategy has to be
+ * registered before estimators that use it are deserialized, under an id of its own.
+ * </p>
+ */
+public final class HashStrategies {
+
+    private static final ConcurrentMap<Integer, HashStrategy> registered = new ConcurrentHashMap<Integer, HashStrategy>();
+
+    private HashStrategies() {
+    }
+
+    /**
+     * Makes {@code strategy} resolvable by its id. Registering an equal strategy again does
+     * nothing.
+     *
+     * @throws IllegalArgumentException if the id is taken by a standard strategy or by
+     *                                  another registered strategy
+     */
+    public static void register(HashStrategy strategy) {
+        HashStrategy previous = standard(strategy.id());
+        if (previous == null) {
+            previous = registered.putIfAbsent(strategy.id(), strategy);
+        }
+        if (previous != null && !previous.equals(strategy)) {
+            throw new IllegalArgumentException("Hash strategy id " + strategy.id() + " is already taken by " + previous);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if no standard or registered strategy has the given id
+     */
+    public static HashStrategy forId(int id) {
+        HashStrategy strategy = standard(id);
+        if (strategy == null) {
+            strategy = registered.get(id);
+        }
+        if (strategy == null) {
+            throw new IllegalArgumentException("Unknown hash strategy id: " + id + ", custom strategies must be registered with HashStrategies.register");
+        }
+        return strategy;
+    }
+
+    private static HashStrategy standard(int id) {
+        for (StandardHashStrategy strategy : StandardHashStrategy.values()) {
+            if (strategy.id() == id) {
+                return strategy;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,114 @@
+package com.clearspring.analytics.hash;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.Serializable;
+
+/**
+ * A hash function that estimators use to hash the elements offered to them.
+ * <p/>
+ * <p>
+ * The cardinality estimators, {@link com.clearspring.analytics.stream.membership.BloomFilter}
+ * and {@link com.clearspring.analytics.stream.frequency.CountMinSketch} accept one. The other
+ * filters and frequency sketches still hash with their own fixed functions.
+ * </p>
+ * <p>
+ * Primitive inputs have their own methods so nothing is boxed. The {@link #id()} is
+ * written into serialized estimators, which refuse to merge with estimators that were fed
+ * with a different hash. The standard strategies are in {@link StandardHashStrategy}.
+ * </p>
+ * <p>
+ * Ids must be unique: estimators tell strategies apart by id alone, both when merging and
+ * when deserializing. A custom strategy needs an id no standard strategy uses, and must be
+ * registered with {@link HashStrategies#register(HashStrategy)} before estimators using it
+ * are deserialized.
+ * </p>
+ */
+public interface HashStrategy extends Serializable {
+
+    /**
+     * @return a number identifying this hash function in serialized forms, unique among
+     *         all strategies
+     */
+    int id();
+
+    int hash32(byte[] data, int off, int len);
+
+    int hash32(CharSequence s);
+
+    int hash32(long value);
+
+    long hash64(byte[] data, int off, int len);
+
+    long hash64(CharSequence s);
+
+    long hash64(long value);
+
+    /**
+     * Hashes boxed integral numbers as {@code long}, floating point numbers by their bits,
+     * character sequences and byte arrays as themselves and anything else by its string form.
+     */
+    default int hash32(Object o) {
+        if (o == null) {
+            return 0;
+        }
+        if (o instanceof CharSequence) {
+            return hash32((CharSequence) o);
+        }
+        if (o instanceof byte[]) {
+            byte[] b = (byte[]) o;
+            return hash32(b, 0, b.length);
+        }
+        if (o instanceof Long || o instanceof Integer || o instanceof Short || o instanceof Byte) {
+            return hash32(((Number) o).longValue());
+        }
+        if (o instanceof Double) {
+            return hash32(Double.doubleToRawLongBits((Double) o));
+        }
+        if (o instanceof Float) {
+            return hash32(Float.floatToRawIntBits((Float) o));
+        }
+        return hash32(o.toString());
+    }
+
+    /**
+     * @see #hash32(Object)
+     */
+    default long hash64(Object o) {
+        if (o == null) {
+            return 0;
+        }
+        if (o instanceof CharSequence) {
+            return hash64((CharSequence) o);
+        }
+        if (o instanceof byte[]) {
+            byte[] b = (byte[]) o;
+            return hash64(b, 0, b.length);
+        }
+        if (o instanceof Long || o instanceof Integer || o instanceof Short || o instanceof Byte) {
+            return hash64(((Number) o).longValue());
+        }
+        if (o instanceof Double) {
+            return hash64(Double.doubleToRawLongBits((Double) o));
+        }
+        if (o instanceof Float) {
+            return hash64(Float.floatToRawIntBits((Float) o));
+        }
+        return hash64(o.toString());
+    }
+}
@@ -0,0 +1,54 @@
+package com.clearspring.analytics.hash;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Little-endian word reads for the hash functions.
+ * <p/>
+ * Array reads are assembled from single bytes, which works for any offset and needs no
+ * buffer around the array.
+ * Buffer reads use the buffer's own wide absolute gets and swap the result when the buffer
+ * is big-endian, so the buffer does not need to be duplicated to change its order.
+ */
+final class LittleEndian {
+
+    private LittleEndian() {
+    }
+
+    static int getInt(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | b[i + 3] << 24;
+    }
+
+    static long getLong(byte[] b, int i) {
+        return (b[i] & 0xffL) | (b[i + 1] & 0xffL) << 8 | (b[i + 2] & 0xffL) << 16 | (b[i + 3] & 0xffL) << 24 |
+               (b[i + 4] & 0xffL) << 32 | (b[i + 5] & 0xffL) << 40 | (b[i + 6] & 0xffL) << 48 | (long) b[i + 7] << 56;
+    }
+
+    static int getInt(ByteBuffer buffer, int i) {
+        int v = buffer.getInt(i);
+        return buffer.order() == ByteOrder.LITTLE_ENDIAN ? v : Integer.reverseBytes(v);
+    }
+
+    static long getLong(ByteBuffer buffer, int i) {
+        long v = buffer.getLong(i);
+        return buffer.order() == ByteOrder.LITTLE_ENDIAN ? v : Long.reverseBytes(v);
+    }
+}
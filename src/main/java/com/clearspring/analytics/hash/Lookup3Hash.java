@@ -16,6 +16,8 @@ package com.clearspring.analytics.hash;
  * limitations under the License.
  */
 
+import java.nio.ByteBuffer;
+
 /**
  * <p>Fast, well distributed, cross-platform hash functions.
  * </p>
@@ -42,6 +44,8 @@ package com.clearspring.analytics.hash;
  * </pre>
  * <p>An obvious advantage of this relationship is that you can use lookup3 if you don't have an implementation of lookup3ycs.
  * </p>
+ * <p>Byte arrays and buffers, such as UTF-8 encoded text, are hashed with {@link #hashlittle} and {@link #hashlittle2}, the byte oriented functions of lookup3.c.
+ * </p>
  *
  * @author yonik
  */
@@ -155,6 +159,43 @@ public class Lookup3Hash {
         // and don't want to have to pre-scan the string to find out.
 
         int i = start;
+        // Blocks of three chars none of which is a surrogate are three code points, hash
+        // them without the per char surrogate checks. The block is only mixed when more
+        // chars follow it, as below.
+        for (; i + 3 < end; i += 3) {
+            char ch0 = s.charAt(i);
+            char ch1 = s.charAt(i + 1);
+            char ch2 = s.charAt(i + 2);
+            if ((ch0 | ch1 | ch2) >= Character.MIN_SURROGATE) {
+                break;
+            }
+            a += ch0;
+            b += ch1;
+            c += ch2;
+
+            // mix(a,b,c)
+            {
+                a -= c;
+                a ^= (c << 4) | (c >>> -4);
+                c += b;
+                b -= a;
+                b ^= (a << 6) | (a >>> -6);
+                a += c;
+                c -= b;
+                c ^= (b << 8) | (b >>> -8);
+                b += a;
+                a -= c;
+                a ^= (c << 16) | (c >>> -16);
+                c += b;
+                b -= a;
+                b ^= (a << 19) | (a >>> -19);
+                a += c;
+                c -= b;
+                c ^= (b << 4) | (b >>> -4);
+                b += a;
+            }
+        }
+
         boolean mixed = true;  // have the 3 state variables been adequately mixed?
         for (; ; ) {
             if (i >= end) {
@@ -243,6 +284,43 @@ public class Lookup3Hash {
         // and don't want to have to pre-scan the string to find out.
 
         int i = start;
+        // Blocks of three chars none of which is a surrogate are three code points, hash
+        // them without the per char surrogate checks. The block is only mixed when more
+        // chars follow it, as below.
+        for (; i + 3 < end; i += 3) {
+            char ch0 = s.charAt(i);
+            char ch1 = s.charAt(i + 1);
+            char ch2 = s.charAt(i + 2);
+            if ((ch0 | ch1 | ch2) >= Character.MIN_SURROGATE) {
+                break;
+            }
+            a += ch0;
+            b += ch1;
+            c += ch2;
+
+            // mix(a,b,c)
+            {
+                a -= c;
+                a ^= (c << 4) | (c >>> -4);
+                c += b;
+                b -= a;
+                b ^= (a << 6) | (a >>> -6);
+                a += c;
+                c -= b;
+                c ^= (b << 8) | (b >>> -8);
+                b += a;
+                a -= c;
+                a ^= (c << 16) | (c >>> -16);
+                c += b;
+                b -= a;
+                b ^= (a << 19) | (a >>> -19);
+                a += c;
+                c -= b;
+                c ^= (b << 4) | (b >>> -4);
+                b += a;
+            }
+        }
+
         boolean mixed = true;  // have the 3 state variables been adequately mixed?
         for (; ; ) {
             if (i >= end) {
@@ -318,4 +396,189 @@ public class Lookup3Hash {
         return lookup3ycs64(s, 0, s.length(), -1);
     }
 
+    /**
+     * <p>A Java implementation of hashlittle2 from lookup3.c by Bob Jenkins, hashing
+     * {@code length} bytes read as little-endian words, twelve bytes per round.
+     * </p>
+     * <p>The low half of {@code initval} is the primary and the high half the secondary
+     * initial value, the low half of the result is the primary and the high half the
+     * secondary hash. The bytes of {@code int[] k} in little-endian order hash like
+     * {@code k} itself: {@code (int) hashlittle2(bytes, 0, length << 2, initval)} equals
+     * {@code lookup3(k, 0, length, initval)} for an {@code initval} that fits in an int, and
+     * so the UTF-32LE bytes of a string hash like
+     * {@code lookup3ycs64(s, 0, s.length(), initval + (numCodePoints << 2))}.
+     * </p>
+     */
+    public static long hashlittle2(byte[] k, int offset, int length, long initval) {
+        int a, b, c;
+        a = b = c = 0xdeadbeef + length + (int) initval;
+        c += (int) (initval >>> 32);
+
+        int i = offset;
+        while (length > 12) {
+            a += LittleEndian.getInt(k, i);
+            b += LittleEndian.getInt(k, i + 4);
+            c += LittleEndian.getInt(k, i + 8);
+
+            // mix(a,b,c)
+            {
+                a -= c;
+                a ^= (c << 4) | (c >>> -4);
+                c += b;
+                b -= a;
+                b ^= (a << 6) | (a >>> -6);
+                a += c;
+                c -= b;
+                c ^= (b << 8) | (b >>> -8);
+                b += a;
+                a -= c;
+                a ^= (c << 16) | (c >>> -16);
+                c += b;
+                b -= a;
+                b ^= (a << 19) | (a >>> -19);
+                a += c;
+                c -= b;
+                c ^= (b << 4) | (b >>> -4);
+                b += a;
+            }
+            length -= 12;
+            i += 12;
+        }
+
+        if (length == 0) {
+            return c + (((long) b) << 32);
+        }
+        // the zero padded tail, up to three more words
+        a += tail(k, i, length);
+        b += tail(k, i + 4, length - 4);
+        c += tail(k, i + 8, length - 8);
+        // final(a,b,c)
+        c ^= b;
+        c -= (b << 14) | (b >>> -14);
+        a ^= c;
+        a -= (c << 11) | (c >>> -11);
+        b ^= a;
+        b -= (a << 25) | (a >>> -25);
+        c ^= b;
+        c -= (b << 16) | (b >>> -16);
+        a ^= c;
+        a -= (c << 4) | (c >>> -4);
+        b ^= a;
+        b -= (a << 14) | (a >>> -14);
+        c ^= b;
+        c -= (b << 24) | (b >>> -24);
+        return c + (((long) b) << 32);
+    }
+
+    /**
+     * The 32 bit hashlittle from lookup3.c, the primary hash of
+     * {@link #hashlittle2(byte[], int, int, long)}.
+     */
+    public static int hashlittle(byte[] k, int offset, int length, int initval) {
+        return (int) hashlittle2(k, offset, length, initval & 0xffffffffL);
+    }
+
+    /**
+     * @return the {@code length} bytes at {@code i} as a little-endian word, zero padded if
+     *         fewer than four and zero if none
+     */
+    private static int tail(byte[] k, int i, int length) {
+        if (length >= 4) {
+            return LittleEndian.getInt(k, i);
+        }
+        int word = 0;
+        for (int j = length - 1; j >= 0; j--) {
+            word = (word << 8) | (k[i + j] & 0xff);
+        }
+        return word;
+    }
+
+    /**
+     * Like {@link #hashlittle2(byte[], int, int, long)}, {@code offset} is an absolute index
+     * and neither the position nor the byte order of the buffer matter.
+     */
+    public static long hashlittle2(ByteBuffer k, int offset, int length, long initval) {
+        int a, b, c;
+        a = b = c = 0xdeadbeef + length + (int) initval;
+        c += (int) (initval >>> 32);
+
+        int i = offset;
+        while (length > 12) {
+            a += LittleEndian.getInt(k, i);
+            b += LittleEndian.getInt(k, i + 4);
+            c += LittleEndian.getInt(k, i + 8);
+
+            // mix(a,b,c)
+            {
+                a -= c;
+                a ^= (c << 4) | (c >>> -4);
+                c += b;
+                b -= a;
+                b ^= (a << 6) | (a >>> -6);
+                a += c;
+                c -= b;
+                c ^= (b << 8) | (b >>> -8);
+                b += a;
+                a -= c;
+                a ^= (c << 16) | (c >>> -16);
+                c += b;
+                b -= a;
+                b ^= (a << 19) | (a >>> -19);
+                a += c;
+                c -= b;
+                c ^= (b << 4) | (b >>> -4);
+                b += a;
+            }
+            length -= 12;
+            i += 12;
+        }
+
+        if (length == 0) {
+            return c + (((long) b) << 32);
+        }
+        // the zero padded tail, up to three more words
+        a += tail(k, i, length);
+        b += tail(k, i + 4, length - 4);
+        c += tail(k, i + 8, length - 8);
+        // final(a,b,c)
+        c ^= b;
+        c -= (b << 14) | (b >>> -14);
+        a ^= c;
+        a -= (c << 11) | (c >>> -11);
+        b ^= a;
+        b -= (a << 25) | (a >>> -25);
+        c ^= b;
+        c -= (b << 16) | (b >>> -16);
+        a ^= c;
+        a -= (c << 4) | (c >>> -4);
+        b ^= a;
+        b -= (a << 14) | (a >>> -14);
+        c ^= b;
+        c -= (b << 24) | (b >>> -24);
+        return c + (((long) b) << 32);
+    }
+
+    /**
+     * The 32 bit hashlittle from lookup3.c, the primary hash of
+     * {@link #hashlittle2(ByteBuffer, int, int, long)}.
+     */
+    public static int hashlittle(ByteBuffer k, int offset, int length, int initval) {
+        return (int) hashlittle2(k, offset, length, initval & 0xffffffffL);
+    }
+
+    /**
+     * @return the {@code length} bytes at {@code i} as a little-endian word, zero padded if
+     *         fewer than four and zero if none
+     */
+    private static int tail(ByteBuffer k, int i, int length) {
+        if (length >= 4) {
+            return LittleEndian.getInt(k, i);
+        }
+        int word = 0;
+        for (int j = length - 1; j >= 0; j--) {
+            word = (word << 8) | (k.get(i + j) & 0xff);
+        }
+        return word;
+    }
+
 }
@@ -0,0 +1,319 @@
+package com.clearspring.analytics.hash;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * MurmurHash3 by Austin Appleby, in its x86_32 and x64_128 variants. See
+ * https://github.com/aappleby/smhasher for the reference implementation.
+ * <p/>
+ * <p>
+ * Inputs are read as little-endian words straight from the array, buffer or sequence,
+ * nothing is allocated. A {@link CharSequence} is hashed as its UTF-16 code units in
+ * little-endian order, and a {@code long} as its 8 little-endian bytes, so results match
+ * Guava's {@code hashUnencodedChars} and {@code hashLong} for the same seed. Like the
+ * reference, and unlike Guava, the 128 bit variant zero extends negative seeds.
+ * </p>
+ * <p>
+ * {@link #hash64} returns the first half of the 128 bit hash, the {@code hash128} methods
+ * write both halves into a caller supplied array.
+ * </p>
+ */
+public final class Murmur3 {
+
+    private static final int C1_32 = 0xcc9e2d51;
+    private static final int C2_32 = 0x1b873593;
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private Murmur3() {
+    }
+
+    // 32 bit
+
+    public static int hash32(byte[] data) {
+        return hash32(data, 0, data.length, 0);
+    }
+
+    public static int hash32(byte[] data, int off, int len, int seed) {
+        int h1 = seed;
+        int end = off + (len & ~3);
+        for (int i = off; i < end; i += 4) {
+            h1 = mixH1(h1, mixK1(LittleEndian.getInt(data, i)));
+        }
+        int k1 = 0;
+        for (int i = len & 3; i > 0; i--) {
+            k1 = (k1 << 8) | (data[end + i - 1] & 0xff);
+        }
+        return finish32(h1, k1, len);
+    }
+
+    public static int hash32(ByteBuffer buffer, int off, int len, int seed) {
+        int h1 = seed;
+        int end = off + (len & ~3);
+        for (int i = off; i < end; i += 4) {
+            h1 = mixH1(h1, mixK1(LittleEndian.getInt(buffer, i)));
+        }
+        int k1 = 0;
+        for (int i = len & 3; i > 0; i--) {
+            k1 = (k1 << 8) | (buffer.get(end + i - 1) & 0xff);
+        }
+        return finish32(h1, k1, len);
+    }
+
+    public static int hash32(CharSequence s) {
+        return hash32(s, 0);
+    }
+
+    public static int hash32(CharSequence s, int seed) {
+        int h1 = seed;
+        int n = s.length();
+        int end = n & ~1;
+        for (int i = 0; i < end; i += 2) {
+            h1 = mixH1(h1, mixK1(s.charAt(i) | (s.charAt(i + 1) << 16)));
+        }
+        int k1 = end < n ? s.charAt(end) : 0;
+        return finish32(h1, k1, n << 1);
+    }
+
+    public static int hash32(long data, int seed) {
+        int h1 = mixH1(seed, mixK1((int) data));
+        h1 = mixH1(h1, mixK1((int) (data >>> 32)));
+        return fmix32(h1 ^ 8);
+    }
+
+    private static int mixK1(int k1) {
+        k1 *= C1_32;
+        k1 = Integer.rotateLeft(k1, 15);
+        return k1 * C2_32;
+    }
+
+    private static int mixH1(int h1, int k1) {
+        h1 ^= k1;
+        h1 = Integer.rotateLeft(h1, 13);
+        return h1 * 5 + 0xe6546b64;
+    }
+
+    /**
+     * @param k1 the trailing bytes, zero if there are none
+     */
+    private static int finish32(int h1, int k1, int len) {
+        if ((len & 3) != 0) {
+            h1 ^= mixK1(k1);
+        }
+        return fmix32(h1 ^ len);
+    }
+
+    private static int fmix32(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    // 128 bit
+
+    public static long hash64(byte[] data) {
+        return hash64(data, 0, data.length, 0);
+    }
+
+    public static long hash64(byte[] data, int off, int len, int seed) {
+        return hash128(data, off, len, seed, null);
+    }
+
+    /**
+     * @param out receives both halves of the hash, may be null
+     * @return the first half of the hash
+     */
+    public static long hash128(byte[] data, int off, int len, int seed, long[] out) {
+        long h1 = seed & 0xffffffffL;
+        long h2 = h1;
+        int end = off + (len & ~15);
+        for (int i = off; i < end; i += 16) {
+            long k1 = LittleEndian.getLong(data, i);
+            long k2 = LittleEndian.getLong(data, i + 8);
+            h1 = mixH1(h1, h2, k1);
+            h2 = mixH2(h1, h2, k2);
+        }
+        long k1 = 0;
+        long k2 = 0;
+        int tail = len & 15;
+        for (int i = tail; i > 8; i--) {
+            k2 = (k2 << 8) | (data[end + i - 1] & 0xff);
+        }
+        for (int i = Math.min(tail, 8); i > 0; i--) {
+            k1 = (k1 << 8) | (data[end + i - 1] & 0xff);
+        }
+        return finish128(h1, h2, k1, k2, len, out);
+    }
+
+    public static long hash64(ByteBuffer buffer, int off, int len, int seed) {
+        return hash128(buffer, off, len, seed, null);
+    }
+
+    /**
+     * @param out receives both halves of the hash, may be null
+     * @return the first half of the hash
+     */
+    public static long hash128(ByteBuffer buffer, int off, int len, int seed, long[] out) {
+        long h1 = seed & 0xffffffffL;
+        long h2 = h1;
+        int end = off + (len & ~15);
+        for (int i = off; i < end; i += 16) {
+            long k1 = LittleEndian.getLong(buffer, i);
+            long k2 = LittleEndian.getLong(buffer, i + 8);
+            h1 = mixH1(h1, h2, k1);
+            h2 = mixH2(h1, h2, k2);
+        }
+        long k1 = 0;
+        long k2 = 0;
+        int tail = len & 15;
+        for (int i = tail; i > 8; i--) {
+            k2 = (k2 << 8) | (buffer.get(end + i - 1) & 0xff);
+        }
+        for (int i = Math.min(tail, 8); i > 0; i--) {
+            k1 = (k1 << 8) | (buffer.get(end + i - 1) & 0xff);
+        }
+        return finish128(h1, h2, k1, k2, len, out);
+    }
+
+    public static long hash64(CharSequence s) {
+        return hash128(s, 0, null);
+    }
+
+    public static long hash64(CharSequence s, int seed) {
+        return hash128(s, seed, null);
+    }
+
+    /**
+     * @param out receives both halves of the hash, may be null
+     * @return the first half of the hash
+     */
+    public static long hash128(CharSequence s, int seed, long[] out) {
+        long h1 = seed & 0xffffffffL;
+        long h2 = h1;
+        int n = s.length();
+        int end = n & ~7;
+        for (int i = 0; i < end; i += 8) {
+            long k1 = chars(s, i);
+            long k2 = chars(s, i + 4);
+            h1 = mixH1(h1, h2, k1);
+            h2 = mixH2(h1, h2, k2);
+        }
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = n - 1; i >= end + 4; i--) {
+            k2 = (k2 << 16) | s.charAt(i);
+        }
+        for (int i = Math.min(n, end + 4) - 1; i >= end; i--) {
+            k1 = (k1 << 16) | s.charAt(i);
+        }
+        return finish128(h1, h2, k1, k2, n << 1, out);
+    }
+
+    public static long hash64(long data, int seed) {
+        return hash128(data, seed, null);
+    }
+
+    /**
+     * @param out receives both halves of the hash, may be null
+     * @return the first half of the hash
+     */
+    public static long hash128(long data, int seed, long[] out) {
+        long h1 = seed & 0xffffffffL;
+        return finish128(h1, h1, data, 0, 8, out);
+    }
+
+    /**
+     * Four chars as a little-endian long.
+     */
+    private static long chars(CharSequence s, int i) {
+        return s.charAt(i) | (long) s.charAt(i + 1) << 16 | (long) s.charAt(i + 2) << 32 | (long) s.charAt(i + 3) << 48;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long mixH1(long h1, long h2, long k1) {
+        h1 ^= mixK1(k1);
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        return h1 * 5 + 0x52dce729;
+    }
+
+    private static long mixH2(long h1, long h2, long k2) {
+        h2 ^= mixK2(k2);
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        return h2 * 5 + 0x38495ab5;
+    }
+
+    /**
+     * @param k1 trailing bytes 0 to 7, zero if there are none
+     * @param k2 trailing bytes 8 to 14, zero if there are none
+     */
+    private static long finish128(long h1, long h2, long k1, long k2, int len, long[] out) {
+        int tail = len & 15;
+        if (tail > 8) {
+            h2 ^= mixK2(k2);
+        }
+        if (tail > 0) {
+            h1 ^= mixK1(k1);
+        }
+
+        h1 ^= len;
+        h2 ^= len;
+
+        h1 += h2;
+        h2 += h1;
+
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+
+        h1 += h2;
+        h2 += h1;
+
+        if (out != null) {
+            out[0] = h1;
+            out[1] = h2;
+        }
+        return h1;
+    }
+
+    static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
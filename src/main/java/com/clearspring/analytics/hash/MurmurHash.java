@@ -1,5 +1,8 @@
 package com.clearspring.analytics.hash;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /**
  * Licensed to the Apache Software Foundation (ASF) under one or more
  * contributor license agreements. See the NOTICE file distributed with this
@@ -25,6 +28,11 @@ package com.clearspring.analytics.hash;
  * The C version of MurmurHash 2.0 found at that site was ported to Java by
  * Andrzej Bialecki (ab at getopt org).
  * </p>
+ * <p>
+ * Strings and other {@link CharSequence}s are hashed as their UTF-8 encoding, which is
+ * computed on the fly so no byte array is allocated. Malformed surrogates are encoded as
+ * {@code '?'} like {@link String#getBytes(java.nio.charset.Charset)} does.
+ * </p>
  */
 public class MurmurHash {
 
@@ -44,8 +52,8 @@ public class MurmurHash {
         if (o instanceof Float) {
             return hashLong(Float.floatToRawIntBits((Float) o));
         }
-        if (o instanceof String) {
-            return hash(((String) o).getBytes());
+        if (o instanceof CharSequence) {
+            return hash((CharSequence) o);
         }
         if (o instanceof byte[]) {
             return hash((byte[]) o);
@@ -53,6 +61,153 @@ public class MurmurHash {
         return hash(o.toString());
     }
 
+    /**
+     * @return the same hash as {@link #hash(byte[])} of the UTF-8 bytes of {@code s}
+     */
+    public static int hash(CharSequence s) {
+        return hash(s, -1);
+    }
+
+    public static int hash(CharSequence s, int seed) {
+        int m = 0x5bd1e995;
+        int r = 24;
+
+        int length = utf8Length(s);
+        int h = seed ^ length;
+
+        // Encoded bytes are gathered little-endian into k, four at a time
+        int k = 0;
+        int shift = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            int bytes;
+            int encoded;
+            if (c < 0x80) {
+                bytes = 1;
+                encoded = c;
+            } else if (c < 0x800) {
+                bytes = 2;
+                encoded = (0xc0 | (c >> 6)) | (0x80 | (c & 0x3f)) << 8;
+            } else if (!Character.isSurrogate(c)) {
+                bytes = 3;
+                encoded = (0xe0 | (c >> 12)) | (0x80 | ((c >> 6) & 0x3f)) << 8 | (0x80 | (c & 0x3f)) << 16;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                bytes = 4;
+                encoded = (0xf0 | (cp >> 18)) | (0x80 | ((cp >> 12) & 0x3f)) << 8 |
+                          (0x80 | ((cp >> 6) & 0x3f)) << 16 | (0x80 | (cp & 0x3f)) << 24;
+            } else {
+                bytes = 1;
+                encoded = '?';
+            }
+            for (int j = 0; j < bytes; j++) {
+                k |= ((encoded >>> (j << 3)) & 0xff) << shift;
+                shift += 8;
+                if (shift == 32) {
+                    k *= m;
+                    k ^= k >>> r;
+                    k *= m;
+                    h *= m;
+                    h ^= k;
+                    k = 0;
+                    shift = 0;
+                }
+            }
+        }
+
+        // The trailing bytes are mixed in sign extended, last byte lowest, as in hash(byte[], int, int)
+        int left = shift >> 3;
+        if (left != 0) {
+            for (int j = 0; j < left; j++) {
+                h ^= (int) (byte) (k >>> (j << 3)) << ((left - 1 - j) << 3);
+            }
+            h *= m;
+        }
+
+        h ^= h >>> 13;
+        h *= m;
+        h ^= h >>> 15;
+
+        return h;
+    }
+
+    /**
+     * @return the same hash as {@link #hash(byte[])} of the {@code len} bytes of {@code buffer}
+     *         starting at {@code off}, the buffer's position and limit are ignored
+     */
+    public static int hash(ByteBuffer buffer, int off, int len) {
+        return hash(buffer, off, len, -1);
+    }
+
+    public static int hash(ByteBuffer buffer, int off, int len, int seed) {
+        int m = 0x5bd1e995;
+        int r = 24;
+
+        int h = seed ^ len;
+
+        boolean littleEndian = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+        int len_4 = len >> 2;
+
+        for (int i = 0; i < len_4; i++) {
+            int k = buffer.getInt(off + (i << 2));
+            if (!littleEndian) {
+                k = Integer.reverseBytes(k);
+            }
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+            h *= m;
+            h ^= k;
+        }
+
+        int end = off + len;
+        int left = len - (len_4 << 2);
+
+        if (left != 0) {
+            if (left >= 3) {
+                h ^= (int) buffer.get(end - 3) << 16;
+            }
+            if (left >= 2) {
+                h ^= (int) buffer.get(end - 2) << 8;
+            }
+            if (left >= 1) {
+                h ^= (int) buffer.get(end - 1);
+            }
+
+            h *= m;
+        }
+
+        h ^= h >>> 13;
+        h *= m;
+        h ^= h >>> 15;
+
+        return h;
+    }
+
+    /**
+     * @return the number of bytes in the UTF-8 encoding of {@code s}
+     */
+    static int utf8Length(CharSequence s) {
+        int n = s.length();
+        int length = n;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                length += 1;
+            } else if (!Character.isSurrogate(c)) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                // Two chars, four bytes
+                length += 2;
+                i++;
+            }
+        }
+        return length;
+    }
+
     public static int hash(byte[] data) {
         return hash(data, data.length, -1);
     }
@@ -132,12 +287,82 @@ public class MurmurHash {
         return h;
     }
 
+    /**
+     * @return the same hash as {@link #hash64(Object)} of the boxed value, which hashes its
+     *         decimal string. The at most 20 characters are gathered straight into the words
+     *         the string's bytes would be read as, so nothing is allocated.
+     */
+    public static long hash64(long value) {
+        final long m = 0xc6a4a7935bd1e995L;
+        final int r = 47;
+
+        // negative values have one more digit to spare, so Long.MIN_VALUE needs no special case
+        long v = value > 0 ? -value : value;
+        int digits = 1;
+        while (digits < POWERS_OF_TEN.length && v <= -POWERS_OF_TEN[digits]) {
+            digits++;
+        }
+        int length = value < 0 ? digits + 1 : digits;
+
+        // byte i of the string is byte i % 8 of word i / 8, little-endian
+        long w0 = value < 0 ? '-' : 0;
+        long w1 = 0;
+        long w2 = 0;
+        int i = length;
+        do {
+            long q = v / 10;
+            long c = (long) ('0' + (int) (q * 10 - v)) << ((--i & 7) << 3);
+            if (i < 8) {
+                w0 |= c;
+            } else if (i < 16) {
+                w1 |= c;
+            } else {
+                w2 |= c;
+            }
+            v = q;
+        } while (v != 0);
+
+        long h = (0xe17a1465 & 0xffffffffl) ^ (length * m);
+        int words = length >>> 3;
+        if (words > 0) {
+            h = mix64(h, w0, m, r);
+        }
+        if (words > 1) {
+            h = mix64(h, w1, m, r);
+        }
+        if ((length & 7) != 0) {
+            h ^= words == 0 ? w0 : words == 1 ? w1 : w2;
+            h *= m;
+        }
+
+        h ^= h >>> r;
+        h *= m;
+        h ^= h >>> r;
+
+        return h;
+    }
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+            10000000000L, 100000000000L, 1000000000000L, 10000000000000L, 100000000000000L,
+            1000000000000000L, 10000000000000000L, 100000000000000000L, 1000000000000000000L
+    };
+
+    private static long mix64(long h, long k, long m, int r) {
+        k *= m;
+        k ^= k >>> r;
+        k *= m;
+
+        h ^= k;
+        h *= m;
+        return h;
+    }
+
     public static long hash64(Object o) {
         if (o == null) {
             return 0l;
-        } else if (o instanceof String) {
-            final byte[] bytes = ((String) o).getBytes();
-            return hash64(bytes, bytes.length);
+        } else if (o instanceof CharSequence) {
+            return hash64((CharSequence) o);
         } else if (o instanceof byte[]) {
             final byte[] bytes = (byte[]) o;
             return hash64(bytes, bytes.length);
@@ -145,6 +370,122 @@ public class MurmurHash {
         return hash64(o.toString());
     }
 
+    /**
+     * @return the same hash as {@link #hash64(byte[], int)} of the UTF-8 bytes of {@code s}
+     */
+    public static long hash64(CharSequence s) {
+        return hash64(s, 0xe17a1465);
+    }
+
+    public static long hash64(CharSequence s, int seed) {
+        final long m = 0xc6a4a7935bd1e995L;
+        final int r = 47;
+
+        int length = utf8Length(s);
+        long h = (seed & 0xffffffffl) ^ (length * m);
+
+        // Encoded bytes are gathered little-endian into k, eight at a time
+        long k = 0;
+        int shift = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            int bytes;
+            int encoded;
+            if (c < 0x80) {
+                bytes = 1;
+                encoded = c;
+            } else if (c < 0x800) {
+                bytes = 2;
+                encoded = (0xc0 | (c >> 6)) | (0x80 | (c & 0x3f)) << 8;
+            } else if (!Character.isSurrogate(c)) {
+                bytes = 3;
+                encoded = (0xe0 | (c >> 12)) | (0x80 | ((c >> 6) & 0x3f)) << 8 | (0x80 | (c & 0x3f)) << 16;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                bytes = 4;
+                encoded = (0xf0 | (cp >> 18)) | (0x80 | ((cp >> 12) & 0x3f)) << 8 |
+                          (0x80 | ((cp >> 6) & 0x3f)) << 16 | (0x80 | (cp & 0x3f)) << 24;
+            } else {
+                bytes = 1;
+                encoded = '?';
+            }
+            for (int j = 0; j < bytes; j++) {
+                k |= (long) ((encoded >>> (j << 3)) & 0xff) << shift;
+                shift += 8;
+                if (shift == 64) {
+                    k *= m;
+                    k ^= k >>> r;
+                    k *= m;
+
+                    h ^= k;
+                    h *= m;
+                    k = 0;
+                    shift = 0;
+                }
+            }
+        }
+
+        if (shift != 0) {
+            h ^= k;
+            h *= m;
+        }
+
+        h ^= h >>> r;
+        h *= m;
+        h ^= h >>> r;
+
+        return h;
+    }
+
+    /**
+     * @return the same hash as {@link #hash64(byte[], int)} of the {@code len} bytes of
+     *         {@code buffer} starting at {@code off}, the buffer's position and limit are ignored
+     */
+    public static long hash64(ByteBuffer buffer, int off, int len) {
+        return hash64(buffer, off, len, 0xe17a1465);
+    }
+
+    public static long hash64(ByteBuffer buffer, int off, int len, int seed) {
+        final long m = 0xc6a4a7935bd1e995L;
+        final int r = 47;
+
+        long h = (seed & 0xffffffffl) ^ (len * m);
+
+        boolean littleEndian = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+        int length8 = len / 8;
+
+        for (int i = 0; i < length8; i++) {
+            long k = buffer.getLong(off + i * 8);
+            if (!littleEndian) {
+                k = Long.reverseBytes(k);
+            }
+
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+
+            h ^= k;
+            h *= m;
+        }
+
+        int tail = off + (len & ~7);
+        int left = len % 8;
+        if (left != 0) {
+            long k = 0;
+            for (int j = 0; j < left; j++) {
+                k |= (long) (buffer.get(tail + j) & 0xff) << (j << 3);
+            }
+            h ^= k;
+            h *= m;
+        }
+
+        h ^= h >>> r;
+        h *= m;
+        h ^= h >>> r;
+
+        return h;
+    }
+
     // 64 bit implementation copied from here:  https://github.com/tnm/murmurhash-java
 
     /**
@@ -168,6 +509,19 @@ public class MurmurHash {
      * @return 64 bit hash of the given array
      */
     public static long hash64(final byte[] data, int length, int seed) {
+        return hash64(data, 0, length, seed);
+    }
+
+    /**
+     * Generates 64 bit hash from {@code length} bytes of the array starting at {@code offset}.
+     *
+     * @param data   byte array to hash
+     * @param offset index of the first byte to hash
+     * @param length number of bytes to hash
+     * @param seed   initial seed value
+     * @return 64 bit hash of the given bytes
+     */
+    public static long hash64(final byte[] data, int offset, int length, int seed) {
         final long m = 0xc6a4a7935bd1e995L;
         final int r = 47;
 
@@ -176,7 +530,7 @@ public class MurmurHash {
         int length8 = length / 8;
 
         for (int i = 0; i < length8; i++) {
-            final int i8 = i * 8;
+            final int i8 = offset + i * 8;
             long k = ((long) data[i8 + 0] & 0xff) + (((long) data[i8 + 1] & 0xff) << 8)
                      + (((long) data[i8 + 2] & 0xff) << 16) + (((long) data[i8 + 3] & 0xff) << 24)
                      + (((long) data[i8 + 4] & 0xff) << 32) + (((long) data[i8 + 5] & 0xff) << 40)
@@ -190,21 +544,22 @@ public class MurmurHash {
             h *= m;
         }
 
+        final int tail = offset + (length & ~7);
         switch (length % 8) {
             case 7:
-                h ^= (long) (data[(length & ~7) + 6] & 0xff) << 48;
+                h ^= (long) (data[tail + 6] & 0xff) << 48;
             case 6:
-                h ^= (long) (data[(length & ~7) + 5] & 0xff) << 40;
+                h ^= (long) (data[tail + 5] & 0xff) << 40;
             case 5:
-                h ^= (long) (data[(length & ~7) + 4] & 0xff) << 32;
+                h ^= (long) (data[tail + 4] & 0xff) << 32;
             case 4:
-                h ^= (long) (data[(length & ~7) + 3] & 0xff) << 24;
+                h ^= (long) (data[tail + 3] & 0xff) << 24;
             case 3:
-                h ^= (long) (data[(length & ~7) + 2] & 0xff) << 16;
+                h ^= (long) (data[tail + 2] & 0xff) << 16;
             case 2:
-                h ^= (long) (data[(length & ~7) + 1] & 0xff) << 8;
+                h ^= (long) (data[tail + 1] & 0xff) << 8;
             case 1:
-                h ^= (long) (data[length & ~7] & 0xff);
+                h ^= (long) (data[tail] & 0xff);
                 h *= m;
         }
         ;
@@ -215,4 +570,53 @@ public class MurmurHash {
 
         return h;
     }
+
+    /**
+     * Hashes every id like {@link #hash64(long)}, so the same as {@link #hash64(Object)} of
+     * the boxed ids.
+     *
+     * @param in  the values to hash
+     * @param out receives the hash of {@code in[i]} at index {@code i}, at least as long as {@code in}
+     */
+    public static void hash64Batch(long[] in, long[] out) {
+        checkBatch(in.length, out);
+        for (int i = 0; i < in.length; i++) {
+            out[i] = hash64(in[i]);
+        }
+    }
+
+    /**
+     * Hashes every key like {@link #hash64(byte[], int)}.
+     *
+     * @param in  the keys to hash
+     * @param out receives the hash of {@code in[i]} at index {@code i}, at least as long as {@code in}
+     */
+    public static void hash64Batch(byte[][] in, long[] out) {
+        checkBatch(in.length, out);
+        for (int i = 0; i < in.length; i++) {
+            out[i] = hash64(in[i], 0, in[i].length, 0xe17a1465);
+        }
+    }
+
+    /**
+     * Hashes keys packed back to back into one array like {@link #hash64(byte[], int)}.
+     *
+     * @param data    the packed keys
+     * @param offsets key {@code i} spans {@code [offsets[i], offsets[i + 1])}, so one more
+     *                entry than there are keys
+     * @param out     receives the hash of key {@code i} at index {@code i}
+     */
+    public static void hash64Batch(byte[] data, int[] offsets, long[] out) {
+        int n = offsets.length - 1;
+        checkBatch(n, out);
+        for (int i = 0; i < n; i++) {
+            out[i] = hash64(data, offsets[i], offsets[i + 1] - offsets[i], 0xe17a1465);
+        }
+    }
+
+    private static void checkBatch(int n, long[] out) {
+        if (out.length < n) {
+            throw new IllegalArgumentException("Output holds " + out.length + " hashes, " + n + " are needed");
+        }
+    }
 }
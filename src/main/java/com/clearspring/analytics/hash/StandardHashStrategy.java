@@ -0,0 +1,234 @@
+package com.clearspring.analytics.hash;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * The hash functions of this package as {@link HashStrategy}s.
+ */
+public enum StandardHashStrategy implements HashStrategy {
+
+    /**
+     * {@link MurmurHash}, hashing objects as {@link MurmurHash#hash(Object)} and
+     * {@link MurmurHash#hash64(Object)} do. The default of every sketch but AdaptiveCounting.
+     */
+    MURMUR2(0) {
+        @Override
+        public int hash32(byte[] data, int off, int len) {
+            return off == 0 ? MurmurHash.hash(data, len, -1) : MurmurHash.hash(ByteBuffer.wrap(data), off, len);
+        }
+
+        @Override
+        public int hash32(CharSequence s) {
+            return MurmurHash.hash(s);
+        }
+
+        @Override
+        public int hash32(long value) {
+            return MurmurHash.hashLong(value);
+        }
+
+        @Override
+        public int hash32(Object o) {
+            return MurmurHash.hash(o);
+        }
+
+        @Override
+        public long hash64(byte[] data, int off, int len) {
+            return MurmurHash.hash64(data, off, len, 0xe17a1465);
+        }
+
+        @Override
+        public long hash64(CharSequence s) {
+            return MurmurHash.hash64(s);
+        }
+
+        @Override
+        public long hash64(long value) {
+            return MurmurHash.hash64(value);
+        }
+
+        @Override
+        public long hash64(Object o) {
+            return MurmurHash.hash64(o);
+        }
+    },
+
+    /**
+     * {@link Murmur3}, x86_32 for 32 bit hashes and the first half of x64_128 for 64 bit
+     * hashes, with seed 0.
+     */
+    MURMUR3(1) {
+        @Override
+        public int hash32(byte[] data, int off, int len) {
+            return Murmur3.hash32(data, off, len, 0);
+        }
+
+        @Override
+        public int hash32(CharSequence s) {
+            return Murmur3.hash32(s, 0);
+        }
+
+        @Override
+        public int hash32(long value) {
+            return Murmur3.hash32(value, 0);
+        }
+
+        @Override
+        public long hash64(byte[] data, int off, int len) {
+            return Murmur3.hash64(data, off, len, 0);
+        }
+
+        @Override
+        public long hash64(CharSequence s) {
+            return Murmur3.hash64(s, 0);
+        }
+
+        @Override
+        public long hash64(long value) {
+            return Murmur3.hash64(value, 0);
+        }
+    },
+
+    /**
+     * {@link XxHash64} with seed 0, 32 bit hashes fold the two halves of the 64 bit hash.
+     */
+    XXHASH64(2) {
+        @Override
+        public int hash32(byte[] data, int off, int len) {
+            return fold(XxHash64.hash(data, off, len, 0));
+        }
+
+        @Override
+        public int hash32(CharSequence s) {
+            return fold(XxHash64.hash(s, 0));
+        }
+
+        @Override
+        public int hash32(long value) {
+            return fold(XxHash64.hash(value, 0));
+        }
+
+        @Override
+        public long hash64(byte[] data, int off, int len) {
+            return XxHash64.hash(data, off, len, 0);
+        }
+
+        @Override
+        public long hash64(CharSequence s) {
+            return XxHash64.hash(s, 0);
+        }
+
+        @Override
+        public long hash64(long value) {
+            return XxHash64.hash(value, 0);
+        }
+    },
+
+    /**
+     * {@link Lookup3Hash#lookup3ycs64(CharSequence)}, the default of
+     * {@link com.clearspring.analytics.stream.cardinality.AdaptiveCounting}. Objects other than
+     * byte arrays are hashed by their string, exactly as AdaptiveCounting always has, and so
+     * longs by their decimal string. Byte ranges use {@link Lookup3Hash#hashlittle2}, 32 bit
+     * hashes fold the two halves of the 64 bit hash.
+     */
+    LOOKUP3(3) {
+        @Override
+        public int hash32(byte[] data, int off, int len) {
+            return fold(hash64(data, off, len));
+        }
+
+        @Override
+        public int hash32(CharSequence s) {
+            return fold(hash64(s));
+        }
+
+        @Override
+        public int hash32(long value) {
+            return fold(hash64(value));
+        }
+
+        @Override
+        public int hash32(Object o) {
+            return fold(hash64(o));
+        }
+
+        @Override
+        public long hash64(byte[] data, int off, int len) {
+            return Lookup3Hash.hashlittle2(data, off, len, 0);
+        }
+
+        @Override
+        public long hash64(CharSequence s) {
+            return Lookup3Hash.lookup3ycs64(s);
+        }
+
+        @Override
+        public long hash64(long value) {
+            return Lookup3Hash.lookup3ycs64(Long.toString(value));
+        }
+
+        @Override
+        public long hash64(Object o) {
+            if (o == null) {
+                return 0;
+            } else if (o instanceof byte[]) {
+                byte[] data = (byte[]) o;
+                return hash64(data, 0, data.length);
+            }
+            return Lookup3Hash.lookup3ycs64(o.toString());
+        }
+    };
+
+    private final int id;
+
+    StandardHashStrategy(int id) {
+        this.id = id;
+    }
+
+    @Override
+    public int id() {
+        return id;
+    }
+
+    private static int fold(long h) {
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return the default strategy of the estimators, other than AdaptiveCounting which
+     *         defaults to {@link #LOOKUP3}
+     */
+    public static HashStrategy defaultStrategy() {
+        return MURMUR2;
+    }
+
+    /**
+     * @throws IllegalArgumentException if no standard strategy has the given id
+     * @see HashStrategies#forId(int) for resolving custom strategies too
+     */
+    public static StandardHashStrategy forId(int id) {
+        for (StandardHashStrategy strategy : values()) {
+            if (strategy.id == id) {
+                return strategy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown hash strategy id: " + id);
+    }
+}
@@ -0,0 +1,208 @@
+package com.clearspring.analytics.hash;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * xxHash64 by Yann Collet, see https://github.com/Cyan4973/xxHash for the reference
+ * implementation.
+ * <p/>
+ * <p>
+ * Like {@link Murmur3}, inputs are read as little-endian words without allocating, a
+ * {@link CharSequence} is hashed as its UTF-16 code units in little-endian order and a
+ * {@code long} as its 8 little-endian bytes.
+ * </p>
+ */
+public final class XxHash64 {
+
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2CA63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private XxHash64() {
+    }
+
+    public static long hash(byte[] data) {
+        return hash(data, 0, data.length, 0);
+    }
+
+    public static long hash(byte[] data, int off, int len, long seed) {
+        int end = off + len;
+        int i = off;
+        long h;
+        if (len >= 32) {
+            long v1 = seed + P1 + P2;
+            long v2 = seed + P2;
+            long v3 = seed;
+            long v4 = seed - P1;
+            for (int limit = end - 32; i <= limit; i += 32) {
+                v1 = round(v1, LittleEndian.getLong(data, i));
+                v2 = round(v2, LittleEndian.getLong(data, i + 8));
+                v3 = round(v3, LittleEndian.getLong(data, i + 16));
+                v4 = round(v4, LittleEndian.getLong(data, i + 24));
+            }
+            h = merge(v1, v2, v3, v4);
+        } else {
+            h = seed + P5;
+        }
+        h += len;
+
+        for (; i + 8 <= end; i += 8) {
+            h = mix8(h, LittleEndian.getLong(data, i));
+        }
+        if (i + 4 <= end) {
+            h = mix4(h, LittleEndian.getInt(data, i));
+            i += 4;
+        }
+        for (; i < end; i++) {
+            h = mix1(h, data[i]);
+        }
+        return avalanche(h);
+    }
+
+    public static long hash(ByteBuffer buffer, int off, int len, long seed) {
+        int end = off + len;
+        int i = off;
+        long h;
+        if (len >= 32) {
+            long v1 = seed + P1 + P2;
+            long v2 = seed + P2;
+            long v3 = seed;
+            long v4 = seed - P1;
+            for (int limit = end - 32; i <= limit; i += 32) {
+                v1 = round(v1, LittleEndian.getLong(buffer, i));
+                v2 = round(v2, LittleEndian.getLong(buffer, i + 8));
+                v3 = round(v3, LittleEndian.getLong(buffer, i + 16));
+                v4 = round(v4, LittleEndian.getLong(buffer, i + 24));
+            }
+            h = merge(v1, v2, v3, v4);
+        } else {
+            h = seed + P5;
+        }
+        h += len;
+
+        for (; i + 8 <= end; i += 8) {
+            h = mix8(h, LittleEndian.getLong(buffer, i));
+        }
+        if (i + 4 <= end) {
+            h = mix4(h, LittleEndian.getInt(buffer, i));
+            i += 4;
+        }
+        for (; i < end; i++) {
+            h = mix1(h, buffer.get(i));
+        }
+        return avalanche(h);
+    }
+
+    public static long hash(CharSequence s) {
+        return hash(s, 0);
+    }
+
+    public static long hash(CharSequence s, long seed) {
+        int n = s.length();
+        int i = 0;
+        long h;
+        if (n >= 16) {
+            long v1 = seed + P1 + P2;
+            long v2 = seed + P2;
+            long v3 = seed;
+            long v4 = seed - P1;
+            for (int limit = n - 16; i <= limit; i += 16) {
+                v1 = round(v1, chars(s, i));
+                v2 = round(v2, chars(s, i + 4));
+                v3 = round(v3, chars(s, i + 8));
+                v4 = round(v4, chars(s, i + 12));
+            }
+            h = merge(v1, v2, v3, v4);
+        } else {
+            h = seed + P5;
+        }
+        h += (long) n << 1;
+
+        for (; i + 4 <= n; i += 4) {
+            h = mix8(h, chars(s, i));
+        }
+        if (i + 2 <= n) {
+            h = mix4(h, s.charAt(i) | s.charAt(i + 1) << 16);
+            i += 2;
+        }
+        if (i < n) {
+            char c = s.charAt(i);
+            h = mix1(h, (byte) c);
+            h = mix1(h, (byte) (c >>> 8));
+        }
+        return avalanche(h);
+    }
+
+    public static long hash(long data, long seed) {
+        return avalanche(mix8(seed + P5 + 8, data));
+    }
+
+    /**
+     * Four chars as a little-endian long.
+     */
+    private static long chars(CharSequence s, int i) {
+        return s.charAt(i) | (long) s.charAt(i + 1) << 16 | (long) s.charAt(i + 2) << 32 | (long) s.charAt(i + 3) << 48;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    private static long mergeRound(long acc, long v) {
+        acc ^= round(0, v);
+        return acc * P1 + P4;
+    }
+
+    private static long merge(long v1, long v2, long v3, long v4) {
+        long h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+        h = mergeRound(h, v1);
+        h = mergeRound(h, v2);
+        h = mergeRound(h, v3);
+        return mergeRound(h, v4);
+    }
+
+    private static long mix8(long h, long k) {
+        h ^= round(0, k);
+        return Long.rotateLeft(h, 27) * P1 + P4;
+    }
+
+    private static long mix4(long h, int k) {
+        h ^= (k & 0xffffffffL) * P1;
+        return Long.rotateLeft(h, 23) * P2 + P3;
+    }
+
+    private static long mix1(long h, byte b) {
+        h ^= (b & 0xff) * P5;
+        return Long.rotateLeft(h, 11) * P1;
+    }
+
+    private static long avalanche(long h) {
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return h;
+    }
+}
@@ -16,11 +16,15 @@
 
 package com.clearspring.analytics.stream.cardinality;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 import java.util.Arrays;
 
-import com.clearspring.analytics.hash.Lookup3Hash;
+import com.clearspring.analytics.hash.HashStrategies;
+import com.clearspring.analytics.hash.HashStrategy;
+import com.clearspring.analytics.hash.StandardHashStrategy;
 import com.clearspring.analytics.util.IBuilder;
 
 /**
@@ -46,12 +50,26 @@ public class AdaptiveCounting extends LogLog {
     protected final double B_s = 0.051;
 
     public AdaptiveCounting(int k) {
-        super(k);
+        this(k, StandardHashStrategy.LOOKUP3);
+    }
+
+    /**
+     * @param hash the 64 bit hash applied by {@link #offer(Object)}
+     */
+    public AdaptiveCounting(int k, HashStrategy hash) {
+        super(k, hash);
         b_e = m;
     }
 
+    /**
+     * @param M bytes from {@link #getBytes()}, the hash is restored from them
+     */
     public AdaptiveCounting(byte[] M) {
-        super(M);
+        this(registers(M), hash(M, StandardHashStrategy.LOOKUP3));
+    }
+
+    protected AdaptiveCounting(byte[] M, HashStrategy hash) {
+        super(M, hash);
 
         for (byte b : M) {
             if (b == 0) {
@@ -62,11 +80,38 @@ public class AdaptiveCounting extends LogLog {
 
     @Override
     public boolean offer(Object o) {
+        return offerHashed(hash.hash64(o));
+    }
+
+    @Override
+    protected HashStrategy defaultHash() {
+        return StandardHashStrategy.LOOKUP3;
+    }
+
+    @Override
+    public boolean offerHashed(long hashedLong) {
+        boolean modified = false;
+
+        int j = (int) (hashedLong >>> (Long.SIZE - k));
+        byte r = (byte) (Long.numberOfLeadingZeros((hashedLong << k) | (1 << (k - 1))) + 1);
+        if (M[j] < r) {
+            Rsum += r - M[j];
+            if (M[j] == 0) {
+                b_e--;
+            }
+            M[j] = r;
+            modified = true;
+        }
+
+        return modified;
+    }
+
+    @Override
+    public boolean offerHashed(int hashedInt) {
         boolean modified = false;
 
-        long x = Lookup3Hash.lookup3ycs64(o.toString());
-        int j = (int) (x >>> (Long.SIZE - k));
-        byte r = (byte) (Long.numberOfLeadingZeros((x << k) | (1 << (k - 1))) + 1);
+        int j = hashedInt >>> (Integer.SIZE - k);
+        byte r = (byte) (Integer.numberOfLeadingZeros((hashedInt << k) | (1 << (k - 1))) + 1);
         if (M[j] < r) {
             Rsum += r - M[j];
             if (M[j] == 0) {
@@ -101,12 +146,13 @@ public class AdaptiveCounting extends LogLog {
 
     /**
      * @return this if estimators is null or no arguments are passed
-     * @throws LogLogMergeException if estimators are not mergeable (all estimators must be instances of LogLog of the same size)
+     * @throws LogLogMergeException if estimators are not mergeable (all estimators must be instances of LogLog of the same size
+     *                              and use the same hash)
      */
     @Override
     public ICardinality merge(ICardinality... estimators) throws LogLogMergeException {
         LogLog res = (LogLog) super.merge(estimators);
-        return new AdaptiveCounting(res.M);
+        return new AdaptiveCounting(res.M, res.hash);
     }
 
     /**
@@ -114,7 +160,7 @@ public class AdaptiveCounting extends LogLog {
      *
      * @param estimators
      * @return merged estimator or null if no estimators were provided
-     * @throws LogLogMergeException if estimators are not mergeable (all estimators must be the same size)
+     * @throws LogLogMergeException if estimators are not mergeable (all estimators must be the same size and use the same hash)
      */
     public static AdaptiveCounting mergeEstimators(LogLog... estimators) throws LogLogMergeException {
         if (estimators == null || estimators.length == 0) {
@@ -129,6 +175,11 @@ public class AdaptiveCounting extends LogLog {
 
         protected final int k;
 
+        // serialized by id, see HyperLogLog.Builder; null for the default, which builders
+        // serialized before hashes were configurable also read as
+        protected transient HashStrategy hash = StandardHashStrategy.LOOKUP3;
+        private Integer hashId;
+
         public Builder() {
             this(16);
         }
@@ -137,9 +188,23 @@ public class AdaptiveCounting extends LogLog {
             this.k = k;
         }
 
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            hash = hashId == null ? StandardHashStrategy.LOOKUP3 : HashStrategies.forId(hashId);
+        }
+
+        /**
+         * Sets the hash the built estimators apply to offered objects.
+         */
+        public Builder withHash(HashStrategy hash) {
+            this.hash = hash;
+            this.hashId = hash.id() == StandardHashStrategy.LOOKUP3.id() ? null : hash.id();
+            return this;
+        }
+
         @Override
         public AdaptiveCounting build() {
-            return new AdaptiveCounting(k);
+            return new AdaptiveCounting(k, hash);
         }
 
         @Override
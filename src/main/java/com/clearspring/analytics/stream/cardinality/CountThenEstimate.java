@@ -25,12 +25,18 @@ import java.io.ObjectOutput;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
+import com.clearspring.analytics.hash.HashStrategies;
+import com.clearspring.analytics.hash.HashStrategy;
+import com.clearspring.analytics.hash.MurmurHash;
+import com.clearspring.analytics.hash.StandardHashStrategy;
 import com.clearspring.analytics.util.ExternalizableUtil;
 import com.clearspring.analytics.util.IBuilder;
+import com.clearspring.analytics.util.Varint;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 
 /**
  * Exact -> Estimator cardinality counting
@@ -39,6 +45,12 @@ import com.clearspring.analytics.util.IBuilder;
  * Avoids allocating a large block of memory for cardinality estimation until
  * a specified "tipping point" cardinality is reached.
  * </p>
+ * <p>
+ * Elements are hashed once with {@link MurmurHash#hash64(Object)}, or the
+ * {@link HashStrategy} given at construction. Until the tipping point only the distinct 64
+ * bit hashes are kept, and tipping replays them through the estimator's
+ * {@link ICardinality#offerHashed(long)}, so elements are never rehashed.
+ * </p>
  */
 public class CountThenEstimate implements ICardinality, Externalizable {
 
@@ -48,6 +60,15 @@ public class CountThenEstimate implements ICardinality, Externalizable {
     protected final static byte LLC = 4;
     protected final static byte HLPC = 5;
 
+    /**
+     * Flags of the first serialized byte, the hash strategy id follows when it is not the
+     * default. Without HASHED_FLAG the exact phase is written as the elements themselves,
+     * as it was before elements were hashed up front.
+     */
+    private final static int TIPPED_FLAG = 1;
+    private final static int HASH_FLAG = 2;
+    private final static int HASHED_FLAG = 4;
+
     /**
      * Cardinality after which exact counting gives way to estimation
      */
@@ -70,10 +91,21 @@ public class CountThenEstimate implements ICardinality, Externalizable {
     protected ICardinality estimator;
 
     /**
-     * Cardinality counter
+     * Hashes of the distinct elements seen so far
      * Null after tipping point is reached
      */
-    protected Set<Object> counter;
+    protected LongOpenHashSet counter;
+
+    /**
+     * Hash applied to offered elements
+     */
+    protected HashStrategy hash = StandardHashStrategy.defaultStrategy();
+
+    /**
+     * False for estimators tipped before elements were hashed up front, whose estimator
+     * was fed the elements themselves and keeps being fed that way
+     */
+    protected boolean hashed = true;
 
     /**
      * Default constructor
@@ -90,11 +122,24 @@ public class CountThenEstimate implements ICardinality, Externalizable {
     public CountThenEstimate(int tippingPoint, IBuilder<ICardinality> builder) {
         this.tippingPoint = tippingPoint;
         this.builder = builder;
-        this.counter = new HashSet<Object>();
+        this.counter = new LongOpenHashSet();
+    }
+
+    /**
+     * @param tippingPoint Cardinality at which exact counting gives way to estimation
+     * @param builder      Factory for instantiating estimator after the tipping point is reached
+     * @param hash         64 bit hash applied to offered elements, instead of the estimator's own
+     */
+    public CountThenEstimate(int tippingPoint, IBuilder<ICardinality> builder, HashStrategy hash) {
+        this(tippingPoint, builder);
+        this.hash = hash;
     }
 
     /**
      * Deserialization constructor
+     * <p/>
+     * An exact phase is restored as written and, like one fed elements, tips only once
+     * it holds more than tippingPoint hashes.
      *
      * @param bytes
      * @throws IOException
@@ -103,7 +148,7 @@ public class CountThenEstimate implements ICardinality, Externalizable {
     public CountThenEstimate(byte[] bytes) throws IOException, ClassNotFoundException {
         readExternal(new ObjectInputStream(new ByteArrayInputStream(bytes)));
 
-        if (!tipped && builder.sizeof() <= bytes.length) {
+        if (!tipped && counter.size() > tippingPoint) {
             tip();
         }
     }
@@ -116,24 +161,47 @@ public class CountThenEstimate implements ICardinality, Externalizable {
         return counter.size();
     }
 
+    /**
+     * @param hashedLong the 64 bit hash of an element, as computed by the {@link HashStrategy}
+     *                   for elements offered through {@link #offer(Object)}
+     */
     @Override
     public boolean offerHashed(long hashedLong) {
-        throw new UnsupportedOperationException();
+        boolean modified = false;
+
+        if (tipped) {
+            modified = estimator.offerHashed(hashedLong);
+        } else {
+            if (counter.add(hashedLong)) {
+                modified = true;
+                if (counter.size() > tippingPoint) {
+                    tip();
+                }
+            }
+        }
+
+        return modified;
     }
 
+    /**
+     * The 32 bit hash is spread over 64 bits and counted like {@link #offerHashed(long)},
+     * so an instance should be fed with either int or long hashes, not both.
+     */
     @Override
     public boolean offerHashed(int hashedInt) {
-        throw new UnsupportedOperationException();
+        return offerHashed(Hashes.widen(hashedInt));
     }
 
     @Override
     public boolean offer(Object o) {
         boolean modified = false;
 
-        if (tipped) {
+        if (!hashed) {
             modified = estimator.offer(o);
+        } else if (tipped) {
+            modified = estimator.offerHashed(hash.hash64(o));
         } else {
-            if (counter.add(o)) {
+            if (counter.add(hash.hash64(o))) {
                 modified = true;
                 if (counter.size() > tippingPoint) {
                     tip();
@@ -144,6 +212,10 @@ public class CountThenEstimate implements ICardinality, Externalizable {
         return modified;
     }
 
+    public HashStrategy getHashStrategy() {
+        return hash;
+    }
+
     @Override
     public int sizeof() {
         if (tipped) {
@@ -158,8 +230,8 @@ public class CountThenEstimate implements ICardinality, Externalizable {
     private void tip() {
         estimator = builder.build();
 
-        for (Object o : counter) {
-            estimator.offer(o);
+        for (LongIterator it = counter.iterator(); it.hasNext(); ) {
+            estimator.offerHashed(it.nextLong());
         }
 
         counter = null;
@@ -179,7 +251,12 @@ public class CountThenEstimate implements ICardinality, Externalizable {
     @SuppressWarnings("unchecked")
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-        tipped = in.readBoolean();
+        // Older forms start with a boolean, which reads as the tipped flag alone
+        int flags = in.readByte();
+        boolean hashedBody = (flags & HASHED_FLAG) != 0;
+        tipped = (flags & TIPPED_FLAG) != 0;
+        hashed = !tipped || hashedBody;
+        hash = (flags & HASH_FLAG) != 0 ? HashStrategies.forId(in.readInt()) : StandardHashStrategy.defaultStrategy();
         if (tipped) {
             byte type = in.readByte();
             byte[] bytes = new byte[in.readInt()];
@@ -211,16 +288,28 @@ public class CountThenEstimate implements ICardinality, Externalizable {
 
             assert (count <= tippingPoint) : String.format("Invalid serialization: count (%d) > tippingPoint (%d)", count, tippingPoint);
 
-            counter = new HashSet<Object>(count);
-            for (int i = 0; i < count; i++) {
-                counter.add(in.readObject());
+            counter = new LongOpenHashSet(count);
+            if (hashedBody) {
+                long previous = 0;
+                for (int i = 0; i < count; i++) {
+                    previous += Varint.readUnsignedVarLong(in);
+                    counter.add(previous);
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    counter.add(hash.hash64(in.readObject()));
+                }
             }
         }
     }
 
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
-        out.writeBoolean(tipped);
+        boolean defaultHash = hash.id() == StandardHashStrategy.defaultStrategy().id();
+        out.writeByte((tipped ? TIPPED_FLAG : 0) | (defaultHash ? 0 : HASH_FLAG) | (hashed ? HASHED_FLAG : 0));
+        if (!defaultHash) {
+            out.writeInt(hash.id());
+        }
         if (tipped) {
             if (estimator instanceof LinearCounting) {
                 out.writeByte(LC);
@@ -242,9 +331,14 @@ public class CountThenEstimate implements ICardinality, Externalizable {
         } else {
             out.writeInt(tippingPoint);
             out.writeObject(builder);
-            out.writeInt(counter.size());
-            for (Object o : counter) {
-                out.writeObject(o);
+            long[] hashes = counter.toLongArray();
+            Arrays.sort(hashes);
+            out.writeInt(hashes.length);
+            // Sorted hashes as unsigned varint deltas, the first relative to zero
+            long previous = 0;
+            for (long hash : hashes) {
+                Varint.writeUnsignedVarLong(hash - previous, out);
+                previous = hash;
             }
         }
     }
@@ -265,7 +359,9 @@ public class CountThenEstimate implements ICardinality, Externalizable {
      *
      * @param estimators
      * @return merged estimator or null if no estimators were provided
-     * @throws CountThenEstimateMergeException if estimators are not mergeable (all must be CountThenEstimate made with the same builder)
+     * @throws CountThenEstimateMergeException if estimators are not mergeable (all must be CountThenEstimate made with the same builder
+     *                                         and hash, and either all or none tipped before elements were hashed
+     *                                         up front)
      */
     public static CountThenEstimate mergeEstimators(CountThenEstimate... estimators) throws CardinalityMergeException {
         CountThenEstimate merged = null;
@@ -273,8 +369,13 @@ public class CountThenEstimate implements ICardinality, Externalizable {
         if (numEstimators > 0) {
             List<ICardinality> tipped = new ArrayList<ICardinality>(numEstimators);
             List<CountThenEstimate> untipped = new ArrayList<CountThenEstimate>(numEstimators);
+            HashStrategy hash = estimators[0].hash;
+            boolean hashed = estimators[0].hashed;
 
             for (CountThenEstimate estimator : estimators) {
+                if (estimator.hash.id() != hash.id() || estimator.hashed != hashed) {
+                    throw new CountThenEstimateMergeException("Cannot merge estimators using different hashes");
+                }
                 if (estimator.tipped) {
                     tipped.add(estimator.estimator);
                 } else {
@@ -283,17 +384,18 @@ public class CountThenEstimate implements ICardinality, Externalizable {
             }
 
             if (untipped.size() > 0) {
-                merged = new CountThenEstimate(untipped.get(0).tippingPoint, untipped.get(0).builder);
+                merged = new CountThenEstimate(untipped.get(0).tippingPoint, untipped.get(0).builder, hash);
 
                 for (CountThenEstimate cte : untipped) {
-                    for (Object o : cte.counter) {
-                        merged.offer(o);
+                    for (LongIterator it = cte.counter.iterator(); it.hasNext(); ) {
+                        merged.offerHashed(it.nextLong());
                     }
                 }
             } else {
-                merged = new CountThenEstimate(0, new LinearCounting.Builder(1));
+                merged = new CountThenEstimate(0, new LinearCounting.Builder(1), hash);
                 merged.tip();
                 merged.estimator = tipped.remove(0);
+                merged.hashed = hashed;
             }
 
             if (!tipped.isEmpty()) {
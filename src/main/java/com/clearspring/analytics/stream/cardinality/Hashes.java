@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2011 Clearspring Technologies, Inc. 
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.cardinality;
+
+/**
+ * Helpers for estimators fed with pre-hashed values.
+ */
+final class Hashes {
+
+    private Hashes() {
+    }
+
+    /**
+     * Spreads a 32 bit hash over 64 bits with the murmur3 finalizer, for estimators that
+     * need 64 bits to work with. The finalizer is a bijection, so distinct ints stay distinct.
+     */
+    static long widen(int hashedInt) {
+        long x = hashedInt & 0xFFFFFFFFL;
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return x ^ (x >>> 33);
+    }
+}
@@ -29,7 +29,9 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
 import java.io.Serializable;
 
-import com.clearspring.analytics.hash.MurmurHash;
+import com.clearspring.analytics.hash.HashStrategies;
+import com.clearspring.analytics.hash.HashStrategy;
+import com.clearspring.analytics.hash.StandardHashStrategy;
 import com.clearspring.analytics.util.Bits;
 import com.clearspring.analytics.util.IBuilder;
 
@@ -70,19 +72,30 @@ import com.clearspring.analytics.util.IBuilder;
  * Rather than try to keep up with all available hash functions and to remove
  * the concern of causing future binary incompatibilities this class allows clients
  * to offer the value in hashed int or long form.  This way clients are free
- * to change their hash function on their own time line.  We recommend using Google's
- * Guava Murmur3_128 implementation as it provides good performance and speed when
- * high precision is required.  In our tests the 32bit MurmurHash function included
+ * to change their hash function on their own time line.  We recommend using
+ * {@link com.clearspring.analytics.hash.Murmur3#hash64} or
+ * {@link com.clearspring.analytics.hash.XxHash64} when high precision is required, they
+ * match Guava's Murmur3_128 without allocating per call.  In our tests the 32bit MurmurHash function included
  * in this project is faster and produces better results than the 32 bit murmur3
  * implementation google provides.
  * </p>
+ * <p>
+ * Alternatively the hash {@link #offer(Object)} applies can be chosen with a
+ * {@link com.clearspring.analytics.hash.HashStrategy}. Its id is serialized with the
+ * estimator, and estimators using different hashes refuse to merge.
+ * </p>
  */
 public class HyperLogLog implements ICardinality, Serializable {
 
     private final RegisterSet registerSet;
     private final int log2m;
     private final double alphaMM;
+    private final HashStrategy hash;
 
+    /**
+     * Precedes the hash strategy id in serialized estimators not using the default hash.
+     */
+    private static final int HASH_MARKER = -1;
 
     /**
      * Create a new HyperLogLog instance using the specified standard deviation.
@@ -129,6 +142,17 @@ public class HyperLogLog implements ICardinality, Serializable {
         this(log2m, new RegisterSet(1 << log2m));
     }
 
+    /**
+     * Create a new HyperLogLog instance that hashes offered objects with {@code hash}.
+     * Estimators only merge with estimators using the same hash.
+     *
+     * @param log2m - the number of bits to use as the basis for the HLL instance
+     * @param hash  - the 32 bit hash applied by {@link #offer(Object)}
+     */
+    public HyperLogLog(int log2m, HashStrategy hash) {
+        this(log2m, new RegisterSet(1 << log2m), hash);
+    }
+
     /**
      * Creates a new HyperLogLog instance using the given registers.  Used for unmarshalling a serialized
      * instance and for merging multiple counters together.
@@ -137,9 +161,14 @@ public class HyperLogLog implements ICardinality, Serializable {
      */
     @Deprecated
     public HyperLogLog(int log2m, RegisterSet registerSet) {
+        this(log2m, registerSet, StandardHashStrategy.defaultStrategy());
+    }
+
+    private HyperLogLog(int log2m, RegisterSet registerSet, HashStrategy hash) {
         validateLog2m(log2m);
         this.registerSet = registerSet;
         this.log2m = log2m;
+        this.hash = hash;
         int m = 1 << this.log2m;
 
         alphaMM = getAlphaMM(log2m, m);
@@ -165,10 +194,14 @@ public class HyperLogLog implements ICardinality, Serializable {
 
     @Override
     public boolean offer(Object o) {
-        final int x = MurmurHash.hash(o);
+        final int x = hash.hash32(o);
         return offerHashed(x);
     }
 
+    public HashStrategy getHashStrategy() {
+        return hash;
+    }
+
 
     @Override
     public long cardinality() {
@@ -209,6 +242,11 @@ public class HyperLogLog implements ICardinality, Serializable {
     }
 
     private void writeBytes(DataOutput serializedByteStream) throws IOException {
+        if (hash.id() != StandardHashStrategy.defaultStrategy().id()) {
+            // log2m is never negative, so readers of the plain format see the marker
+            serializedByteStream.writeInt(HASH_MARKER);
+            serializedByteStream.writeInt(hash.id());
+        }
         serializedByteStream.writeInt(log2m);
         serializedByteStream.writeInt(registerSet.size * 4);
         for (int x : registerSet.readOnlyBits()) {
@@ -228,13 +266,16 @@ public class HyperLogLog implements ICardinality, Serializable {
         if (this.sizeof() != other.sizeof()) {
             throw new HyperLogLogMergeException("Cannot merge estimators of different sizes");
         }
+        if (this.hash.id() != other.hash.id()) {
+            throw new HyperLogLogMergeException("Cannot merge estimators using different hashes");
+        }
 
         registerSet.merge(other.registerSet);
     }
 
     @Override
     public ICardinality merge(ICardinality... estimators) throws CardinalityMergeException {
-        HyperLogLog merged = new HyperLogLog(log2m, new RegisterSet(this.registerSet.count));
+        HyperLogLog merged = new HyperLogLog(log2m, new RegisterSet(this.registerSet.count), hash);
         merged.addAll(this);
 
         if (estimators == null) {
@@ -308,6 +349,13 @@ public class HyperLogLog implements ICardinality, Serializable {
         private final double rsd;
         private transient int log2m;
 
+        /**
+         * Serialized by its id, as the size of serialized builders counts towards the
+         * tipping point of {@link CountThenEstimate}
+         */
+        private transient HashStrategy hash = StandardHashStrategy.defaultStrategy();
+        private int hashId = hash.id();
+
         /**
          * Uses the given RSD percentage to determine how many bytes the constructed HyperLogLog will use.
          *
@@ -332,11 +380,21 @@ public class HyperLogLog implements ICardinality, Serializable {
         private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
             in.defaultReadObject();
             this.log2m = log2m(rsd);
+            hash = HashStrategies.forId(hashId);
+        }
+
+        /**
+         * Sets the hash the built estimators apply to offered objects.
+         */
+        public Builder withHash(HashStrategy hash) {
+            this.hash = hash;
+            this.hashId = hash.id();
+            return this;
         }
 
         @Override
         public HyperLogLog build() {
-            return new HyperLogLog(log2m);
+            return new HyperLogLog(log2m, hash);
         }
 
         @Override
@@ -361,10 +419,15 @@ public class HyperLogLog implements ICardinality, Serializable {
         }
 
         public static HyperLogLog build(DataInput serializedByteStream) throws IOException {
+            HashStrategy hash = StandardHashStrategy.defaultStrategy();
             int log2m = serializedByteStream.readInt();
+            if (log2m == HASH_MARKER) {
+                hash = HashStrategies.forId(serializedByteStream.readInt());
+                log2m = serializedByteStream.readInt();
+            }
             int byteArraySize = serializedByteStream.readInt();
             return new HyperLogLog(log2m,
-                    new RegisterSet(1 << log2m, Bits.getBits(serializedByteStream, byteArraySize)));
+                    new RegisterSet(1 << log2m, Bits.getBits(serializedByteStream, byteArraySize)), hash);
         }
     }
 
@@ -25,6 +25,7 @@ import java.io.DataOutputStream;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
 import java.io.Serializable;
 
@@ -36,7 +37,9 @@ import java.util.List;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
-import com.clearspring.analytics.hash.MurmurHash;
+import com.clearspring.analytics.hash.HashStrategies;
+import com.clearspring.analytics.hash.HashStrategy;
+import com.clearspring.analytics.hash.StandardHashStrategy;
 import com.clearspring.analytics.util.Bits;
 import com.clearspring.analytics.util.IBuilder;
 import com.clearspring.analytics.util.Varint;
@@ -78,6 +81,12 @@ public class HyperLogLogPlus implements ICardinality, Serializable {
     /** Used to mark codec version for serialization. */
     private static final int VERSION = 2;
 
+    /**
+     * The version of serialized estimators that do not use the default hash, it is followed
+     * by the hash strategy id.
+     */
+    private static final int HASH_VERSION = 3;
+
     // threshold and bias data taken from google's bias correction data set:  https://docs.google.com/document/d/1gyjfMHy43U9OWBXxfaeG-3MjGzejW1dlpyMwEYAAWEI/view?fullscreen#
     static final double[] thresholdData = {10, 20, 40, 80, 220, 400, 900, 1800, 3100, 6500, 11500, 20000, 50000, 120000, 350000};
 
@@ -158,6 +167,8 @@ public class HyperLogLogPlus implements ICardinality, Serializable {
 
     private final double alphaMM;
 
+    private HashStrategy hash = StandardHashStrategy.defaultStrategy();
+
     //How big the sparse set is allowed to get before we convert to 'normal'
     private int sparseSetThreshold;
 
@@ -191,6 +202,19 @@ public class HyperLogLogPlus implements ICardinality, Serializable {
         this(p, sp, null, null);
     }
 
+    /**
+     * Like {@link #HyperLogLogPlus(int, int)}, hashing offered objects with {@code hash}.
+     * Estimators only merge with estimators using the same hash.
+     *
+     * @param p    - the precision value for the normal set
+     * @param sp   - the precision value for the sparse set
+     * @param hash - the 64 bit hash applied by {@link #offer(Object)}
+     */
+    public HyperLogLogPlus(int p, int sp, HashStrategy hash) {
+        this(p, sp, null, null);
+        this.hash = hash;
+    }
+
     /**
      * Constructor to support instances serialized with the legacy sparse
      * encoding scheme.
@@ -325,17 +349,25 @@ public class HyperLogLogPlus implements ICardinality, Serializable {
         return false;
     }
 
+    /**
+     * The 32 bit hash is spread over 64 bits first, as both the sparse and normal
+     * representations need more than 32 bits of hash.
+     */
     @Override
     public boolean offerHashed(int hashedInt) {
-        throw new UnsupportedOperationException();
+        return offerHashed(Hashes.widen(hashedInt));
     }
 
     @Override
     public boolean offer(Object o) {
-        long x = MurmurHash.hash64(o);
+        long x = hash.hash64(o);
         return offerHashed(x);
     }
 
+    public HashStrategy getHashStrategy() {
+        return hash;
+    }
+
     /**
      * Converts the mode of this estimator from 'sparse' to 'normal'.
      * <p/>
@@ -716,9 +748,13 @@ public class HyperLogLogPlus implements ICardinality, Serializable {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         DataOutputStream dos = new DataOutputStream(baos);
         // write version flag (always negative)
-        dos.writeInt(-VERSION);
+        boolean defaultHash = hash.id() == StandardHashStrategy.defaultStrategy().id();
+        dos.writeInt(defaultHash ? -VERSION : -HASH_VERSION);
         Varint.writeUnsignedVarInt(p, dos);
         Varint.writeUnsignedVarInt(sp, dos);
+        if (!defaultHash) {
+            Varint.writeUnsignedVarInt(hash.id(), dos);
+        }
         if (format == Format.SPARSE) {
             mergeTempList();
         }
@@ -820,6 +856,9 @@ public class HyperLogLogPlus implements ICardinality, Serializable {
         if (other.sizeof() != sizeof()) {
             throw new HyperLogLogPlusMergeException("Cannot merge estimators of different sizes");
         }
+        if (other.hash.id() != hash.id()) {
+            throw new HyperLogLogPlusMergeException("Cannot merge estimators using different hashes");
+        }
         if (format == Format.SPARSE) {
             mergeTempList();
         }
@@ -879,7 +918,7 @@ public class HyperLogLogPlus implements ICardinality, Serializable {
      */
     @Override
     public ICardinality merge(ICardinality... estimators) throws CardinalityMergeException {
-        HyperLogLogPlus merged = new HyperLogLogPlus(p, sp);
+        HyperLogLogPlus merged = new HyperLogLogPlus(p, sp, hash);
         merged.addAll(this);
 
         if (estimators == null) {
@@ -910,15 +949,32 @@ public class HyperLogLogPlus implements ICardinality, Serializable {
 
         private final int p;
         private final int sp;
+        // serialized by id, see HyperLogLog.Builder
+        private transient HashStrategy hash = StandardHashStrategy.defaultStrategy();
+        private int hashId = hash.id();
 
         public Builder(int p, int sp) {
             this.p = p;
             this.sp = sp;
         }
 
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            hash = HashStrategies.forId(hashId);
+        }
+
+        /**
+         * Sets the hash the built estimators apply to offered objects.
+         */
+        public Builder withHash(HashStrategy hash) {
+            this.hash = hash;
+            this.hashId = hash.id();
+            return this;
+        }
+
         @Override
         public HyperLogLogPlus build() {
-            return new HyperLogLogPlus(p, sp);
+            return new HyperLogLogPlus(p, sp, hash);
         }
 
         @Override
@@ -936,7 +992,7 @@ public class HyperLogLogPlus implements ICardinality, Serializable {
             // is not present then we'll use the legacy
             // decoding method
             if (version < 0) {
-                return decodeBytes(oi);
+                return decodeBytes(oi, version);
             } else {
                 // need to re-create this stream
                 // because the first int read above
@@ -954,7 +1010,7 @@ public class HyperLogLogPlus implements ICardinality, Serializable {
             // is not present then we'll use the legacy
             // decoding method
             if (version < 0) {
-                return decodeBytes(oi);
+                return decodeBytes(oi, version);
             } else {
                 return legacyDecode(oi);
             }
@@ -986,9 +1042,13 @@ public class HyperLogLogPlus implements ICardinality, Serializable {
             }
         }
 
-        private static HyperLogLogPlus decodeBytes(DataInput oi) throws IOException {
+        private static HyperLogLogPlus decodeBytes(DataInput oi, int version) throws IOException {
             int p = Varint.readUnsignedVarInt(oi);
             int sp = Varint.readUnsignedVarInt(oi);
+            HashStrategy hash = StandardHashStrategy.defaultStrategy();
+            if (version <= -HASH_VERSION) {
+                hash = HashStrategies.forId(Varint.readUnsignedVarInt(oi));
+            }
             int formatType = Varint.readUnsignedVarInt(oi);
             if (formatType == 0) {
                 int size = Varint.readUnsignedVarInt(oi);
@@ -996,6 +1056,7 @@ public class HyperLogLogPlus implements ICardinality, Serializable {
                 oi.readFully(longArrayBytes);
                 HyperLogLogPlus hyperLogLogPlus = new HyperLogLogPlus(p, sp, new RegisterSet(1 << p, Bits.getBits(longArrayBytes)));
                 hyperLogLogPlus.format = Format.NORMAL;
+                hyperLogLogPlus.hash = hash;
                 return hyperLogLogPlus;
             } else {
                 int[] rehydratedSparseSet = new int[Varint.readUnsignedVarInt(oi)];
@@ -1007,6 +1068,7 @@ public class HyperLogLogPlus implements ICardinality, Serializable {
                 }
                 HyperLogLogPlus hyperLogLogPlus = new HyperLogLogPlus(p, sp, rehydratedSparseSet);
                 hyperLogLogPlus.format = Format.SPARSE;
+                hyperLogLogPlus.hash = hash;
                 return hyperLogLogPlus;
             }
         }
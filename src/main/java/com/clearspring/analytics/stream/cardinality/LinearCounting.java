@@ -17,11 +17,15 @@
 package com.clearspring.analytics.stream.cardinality;
 
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 import java.util.Arrays;
 
-import com.clearspring.analytics.hash.MurmurHash;
+import com.clearspring.analytics.hash.HashStrategies;
+import com.clearspring.analytics.hash.HashStrategy;
+import com.clearspring.analytics.hash.StandardHashStrategy;
 import com.clearspring.analytics.util.IBuilder;
 
 import static java.lang.Math.exp;
@@ -51,18 +55,41 @@ public class LinearCounting implements ICardinality {
      */
     protected int count;
 
+    /**
+     * Hash applied to offered objects
+     */
+    protected final HashStrategy hash;
+
     /**
      * @param size of bit array in bytes
      */
     public LinearCounting(int size) {
+        this(size, StandardHashStrategy.defaultStrategy());
+    }
+
+    /**
+     * @param size of bit array in bytes
+     * @param hash the 32 bit hash applied by {@link #offer(Object)}
+     */
+    public LinearCounting(int size, HashStrategy hash) {
         this.length = 8 * size;
         this.count = this.length;
+        this.hash = hash;
         map = new byte[size];
     }
 
     public LinearCounting(byte[] map) {
+        this(map, StandardHashStrategy.defaultStrategy());
+    }
+
+    /**
+     * The map returned by {@link #getBytes()} does not record the hash, callers restoring
+     * an estimator that did not use the default hash have to pass it again.
+     */
+    public LinearCounting(byte[] map, HashStrategy hash) {
         this.map = map;
         this.length = 8 * map.length;
+        this.hash = hash;
         this.count = computeCount();
     }
 
@@ -78,20 +105,26 @@ public class LinearCounting implements ICardinality {
 
     @Override
     public boolean offerHashed(long hashedLong) {
-        throw new UnsupportedOperationException();
+        return offerBit((int) Long.remainderUnsigned(hashedLong, length));
     }
 
     @Override
     public boolean offerHashed(int hashedInt) {
-        throw new UnsupportedOperationException();
+        return offerBit((int) ((hashedInt & 0xFFFFFFFFL) % (long) length));
     }
 
     @Override
     public boolean offer(Object o) {
+        return offerHashed(hash.hash32(o));
+    }
+
+    public HashStrategy getHashStrategy() {
+        return hash;
+    }
+
+    private boolean offerBit(int bit) {
         boolean modified = false;
 
-        long hash = (long) MurmurHash.hash(o);
-        int bit = (int) ((hash & 0xFFFFFFFFL) % (long) length);
         int i = bit / 8;
         byte b = map[i];
         byte mask = (byte) (1 << (bit % 8));
@@ -157,7 +190,7 @@ public class LinearCounting implements ICardinality {
     @Override
     public ICardinality merge(ICardinality... estimators) throws LinearCountingMergeException {
         if (estimators == null) {
-            return new LinearCounting(map);
+            return new LinearCounting(map, hash);
         }
         LinearCounting[] lcs = Arrays.copyOf(estimators, estimators.length + 1, LinearCounting[].class);
         lcs[lcs.length - 1] = this;
@@ -169,25 +202,30 @@ public class LinearCounting implements ICardinality {
      *
      * @param estimators
      * @return merged estimator or null if no estimators were provided
-     * @throws LinearCountingMergeException if estimators are not mergeable (all estimators must be the same size)
+     * @throws LinearCountingMergeException if estimators are not mergeable (all estimators must be the same size
+     *                                      and use the same hash)
      */
     public static LinearCounting mergeEstimators(LinearCounting... estimators) throws LinearCountingMergeException {
         LinearCounting merged = null;
         if (estimators != null && estimators.length > 0) {
             int size = estimators[0].map.length;
+            HashStrategy hash = estimators[0].hash;
             byte[] mergedBytes = new byte[size];
 
             for (LinearCounting estimator : estimators) {
                 if (estimator.map.length != size) {
                     throw new LinearCountingMergeException("Cannot merge estimators of different sizes");
                 }
+                if (estimator.hash.id() != hash.id()) {
+                    throw new LinearCountingMergeException("Cannot merge estimators using different hashes");
+                }
 
                 for (int b = 0; b < size; b++) {
                     mergedBytes[b] |= estimator.map[b];
                 }
             }
 
-            merged = new LinearCounting(mergedBytes);
+            merged = new LinearCounting(mergedBytes, hash);
         }
         return merged;
     }
@@ -219,6 +257,10 @@ public class LinearCounting implements ICardinality {
 
         protected final int size;
 
+        // serialized by id, see HyperLogLog.Builder
+        protected transient HashStrategy hash = StandardHashStrategy.defaultStrategy();
+        private int hashId = hash.id();
+
         public Builder() {
             this(65536);
         }
@@ -227,9 +269,23 @@ public class LinearCounting implements ICardinality {
             this.size = size;
         }
 
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            hash = HashStrategies.forId(hashId);
+        }
+
+        /**
+         * Sets the hash the built estimators apply to offered objects.
+         */
+        public Builder withHash(HashStrategy hash) {
+            this.hash = hash;
+            this.hashId = hash.id();
+            return this;
+        }
+
         @Override
         public LinearCounting build() {
-            return new LinearCounting(size);
+            return new LinearCounting(size, hash);
         }
 
         @Override
@@ -18,7 +18,9 @@ package com.clearspring.analytics.stream.cardinality;
 
 import java.util.Arrays;
 
-import com.clearspring.analytics.hash.MurmurHash;
+import com.clearspring.analytics.hash.HashStrategies;
+import com.clearspring.analytics.hash.HashStrategy;
+import com.clearspring.analytics.hash.StandardHashStrategy;
 import com.clearspring.analytics.util.IBuilder;
 
 public class LogLog implements ICardinality {
@@ -64,13 +66,33 @@ public class LogLog implements ICardinality {
             852576365.81999
     };
 
+    /**
+     * Starts the trailer {@link #getBytes()} appends to the registers to record a hash other
+     * than the default, followed by the hash id.  Five bytes long, so the length of the bytes
+     * is never a power of two with it and always is without.
+     */
+    private static final byte HASH_MARKER = -1;
+    private static final int HASH_TRAILER = 5;
+
     protected final int k;
     protected int m;
     protected double Ca;
     protected byte[] M;
     protected int Rsum = 0;
 
+    /**
+     * Hash applied to offered objects
+     */
+    protected final HashStrategy hash;
+
     public LogLog(int k) {
+        this(k, StandardHashStrategy.defaultStrategy());
+    }
+
+    /**
+     * @param hash the 32 bit hash applied by {@link #offer(Object)}
+     */
+    public LogLog(int k, HashStrategy hash) {
         if (k >= (mAlpha.length - 1)) {
             throw new IllegalArgumentException(String.format("Max k (%d) exceeded: k=%d", mAlpha.length - 1, k));
         }
@@ -79,10 +101,23 @@ public class LogLog implements ICardinality {
         this.m = 1 << k;
         this.Ca = mAlpha[k];
         this.M = new byte[m];
+        this.hash = hash;
     }
 
+    /**
+     * @param M bytes from {@link #getBytes()}, the hash is restored from them
+     */
     public LogLog(byte[] M) {
+        this(registers(M), hash(M, StandardHashStrategy.defaultStrategy()));
+    }
+
+    /**
+     * @param M    registers, without a hash trailer
+     * @param hash the hash the registers were filled with
+     */
+    protected LogLog(byte[] M, HashStrategy hash) {
         this.M = M;
+        this.hash = hash;
         this.m = M.length;
         this.k = Integer.numberOfTrailingZeros(m);
         assert (m == (1 << k)) : "Invalid array size: M.length must be a power of 2";
@@ -92,9 +127,67 @@ public class LogLog implements ICardinality {
         }
     }
 
+    /**
+     * @return the registers, followed by the id of the hash if it isn't the default
+     */
     @Override
     public byte[] getBytes() {
-        return M;
+        if (hash.id() == defaultHash().id()) {
+            return M;
+        }
+        byte[] bytes = Arrays.copyOf(M, m + HASH_TRAILER);
+        bytes[m] = HASH_MARKER;
+        int id = hash.id();
+        for (int i = 1; i < HASH_TRAILER; i++) {
+            bytes[m + i] = (byte) (id >>> (8 * (HASH_TRAILER - 1 - i)));
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the hash offered objects are hashed with unless a strategy is given
+     */
+    protected HashStrategy defaultHash() {
+        return StandardHashStrategy.defaultStrategy();
+    }
+
+    public HashStrategy getHashStrategy() {
+        return hash;
+    }
+
+    /**
+     * @return the registers in bytes from {@link #getBytes()}
+     */
+    protected static byte[] registers(byte[] bytes) {
+        if (!hasTrailer(bytes)) {
+            return bytes;
+        }
+        return Arrays.copyOf(bytes, bytes.length - HASH_TRAILER);
+    }
+
+    /**
+     * @return the hash recorded in bytes from {@link #getBytes()}, or defaultHash if none is
+     */
+    protected static HashStrategy hash(byte[] bytes, HashStrategy defaultHash) {
+        if (!hasTrailer(bytes)) {
+            return defaultHash;
+        }
+        int id = 0;
+        for (int i = bytes.length - HASH_TRAILER + 1; i < bytes.length; i++) {
+            id = (id << 8) | (bytes[i] & 0xff);
+        }
+        return HashStrategies.forId(id);
+    }
+
+    private static boolean hasTrailer(byte[] bytes) {
+        if (Integer.bitCount(bytes.length) == 1) {
+            return false;
+        }
+        int m = bytes.length - HASH_TRAILER;
+        if (m <= 0 || Integer.bitCount(m) != 1 || bytes[m] != HASH_MARKER) {
+            throw new IllegalArgumentException("Invalid array size: must be a power of 2, plus a hash trailer");
+        }
+        return true;
     }
 
     public int sizeof() {
@@ -115,7 +208,16 @@ public class LogLog implements ICardinality {
 
     @Override
     public boolean offerHashed(long hashedLong) {
-        throw new UnsupportedOperationException();
+        boolean modified = false;
+        int j = (int) (hashedLong >>> (Long.SIZE - k));
+        byte r = (byte) (Long.numberOfLeadingZeros((hashedLong << k) | (1L << (k - 1))) + 1);
+        if (M[j] < r) {
+            Rsum += r - M[j];
+            M[j] = r;
+            modified = true;
+        }
+
+        return modified;
     }
 
     @Override
@@ -134,7 +236,7 @@ public class LogLog implements ICardinality {
 
     @Override
     public boolean offer(Object o) {
-        int x = MurmurHash.hash(o);
+        int x = hash.hash32(o);
         return offerHashed(x);
     }
 
@@ -149,12 +251,13 @@ public class LogLog implements ICardinality {
 
     /**
      * @return this if estimators is null or no arguments are passed
-     * @throws LogLogMergeException if estimators are not mergeable (all estimators must be instances of LogLog of the same size)
+     * @throws LogLogMergeException if estimators are not mergeable (all estimators must be instances of LogLog of the same size
+     *                              and use the same hash)
      */
     @Override
     public ICardinality merge(ICardinality... estimators) throws LogLogMergeException {
         if (estimators == null) {
-            return new LogLog(M);
+            return new LogLog(M, hash);
         }
 
         byte[] mergedBytes = Arrays.copyOf(this.M, this.M.length);
@@ -166,12 +269,15 @@ public class LogLog implements ICardinality {
                 throw new LogLogMergeException("Cannot merge estimators of different sizes");
             }
             LogLog ll = (LogLog) estimator;
+            if (ll.hash.id() != hash.id()) {
+                throw new LogLogMergeException("Cannot merge estimators using different hashes");
+            }
             for (int i = 0; i < mergedBytes.length; ++i) {
                 mergedBytes[i] = (byte) Math.max(mergedBytes[i], ll.M[i]);
             }
         }
 
-        return new LogLog(mergedBytes);
+        return new LogLog(mergedBytes, hash);
     }
 
     /**
@@ -179,7 +285,7 @@ public class LogLog implements ICardinality {
      *
      * @param estimators
      * @return merged estimator or null if no estimators were provided
-     * @throws LogLogMergeException if estimators are not mergeable (all estimators must be the same size)
+     * @throws LogLogMergeException if estimators are not mergeable (all estimators must be the same size and use the same hash)
      */
     public static LogLog mergeEstimators(LogLog... estimators) throws LogLogMergeException {
         if (estimators == null || estimators.length == 0) {
@@ -200,6 +306,7 @@ public class LogLog implements ICardinality {
     public static class Builder implements IBuilder<ICardinality> {
 
         protected final int k;
+        protected HashStrategy hash = StandardHashStrategy.defaultStrategy();
 
         public Builder() {
             this(16);
@@ -209,9 +316,17 @@ public class LogLog implements ICardinality {
             this.k = k;
         }
 
+        /**
+         * Sets the hash the built estimators apply to offered objects.
+         */
+        public Builder withHash(HashStrategy hash) {
+            this.hash = hash;
+            return this;
+        }
+
         @Override
         public LogLog build() {
-            return new LogLog(k);
+            return new LogLog(k, hash);
         }
 
         @Override
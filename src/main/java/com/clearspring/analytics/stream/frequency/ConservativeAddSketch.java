@@ -14,7 +14,7 @@
 
 package com.clearspring.analytics.stream.frequency;
 
-import com.clearspring.analytics.stream.membership.Filter;
+import com.clearspring.analytics.hash.HashStrategy;
 
 /**
  * A more accurate (by some large, but ill-defined amount), but slower (by some
@@ -24,6 +24,21 @@ import com.clearspring.analytics.stream.membership.Filter;
  */
 public class ConservativeAddSketch extends CountMinSketch {
 
+    /**
+     * Number of items whose buckets are computed together by {@link #addAll(long[], long[])}.
+     */
+    private static final int BATCH_SIZE = 1024;
+
+    /**
+     * Bucket indexes for one batch, laid out row by row: {@code scratch[row * BATCH_SIZE + item]}.
+     */
+    private transient int[] scratch;
+
+    /**
+     * The values the row hashes are applied to for one batch, see {@link #key(long)}.
+     */
+    private transient long[] keys;
+
     ConservativeAddSketch() {
         super();
     }
@@ -32,10 +47,18 @@ public class ConservativeAddSketch extends CountMinSketch {
         super(depth, width, seed);
     }
 
+    public ConservativeAddSketch(int depth, int width, int seed, HashStrategy hash) {
+        super(depth, width, seed, hash);
+    }
+
     public ConservativeAddSketch(double epsOfTotalCount, double confidence, int seed) {
         super(epsOfTotalCount, confidence, seed);
     }
 
+    public ConservativeAddSketch(double epsOfTotalCount, double confidence, int seed, HashStrategy hash) {
+        super(epsOfTotalCount, confidence, seed, hash);
+    }
+
     ConservativeAddSketch(int depth, int width, long size, long[] hashA, long[][] table) {
         super(depth, width, size, hashA, table);
     }
@@ -48,8 +71,9 @@ public class ConservativeAddSketch extends CountMinSketch {
             throw new IllegalArgumentException("Negative increments not implemented");
         }
         int[] buckets = new int[depth];
+        long key = key(item);
         for (int i = 0; i < depth; ++i) {
-            buckets[i] = hash(item, i);
+            buckets[i] = hash(key, i);
         }
         long min = table[0][buckets[0]];
         for (int i = 1; i < depth; ++i) {
@@ -69,7 +93,7 @@ public class ConservativeAddSketch extends CountMinSketch {
             // play nicely with this algorithm anyway
             throw new IllegalArgumentException("Negative increments not implemented");
         }
-        int[] buckets = Filter.getHashBuckets(item, depth, width);
+        int[] buckets = buckets(item);
         long min = table[0][buckets[0]];
         for (int i = 1; i < depth; ++i) {
             min = Math.min(min, table[i][buckets[i]]);
@@ -80,4 +104,56 @@ public class ConservativeAddSketch extends CountMinSketch {
         }
         size += count;
     }
+
+    /**
+     * Adds a batch of pre-aggregated items. The result is identical to calling
+     * {@link #add(long, long)} for each pair in order, but the bucket indexes for a
+     * whole batch are computed up front, one hash row at a time, before the
+     * conservative updates are applied.
+     *
+     * @param items  the items to add
+     * @param counts the count for each item, must be non-negative
+     */
+    public void addAll(long[] items, long[] counts) {
+        if (items.length != counts.length) {
+            throw new IllegalArgumentException("Items and counts must have the same length: " +
+                                               items.length + " != " + counts.length);
+        }
+        for (long count : counts) {
+            if (count < 0) {
+                throw new IllegalArgumentException("Negative increments not implemented");
+            }
+        }
+        if (scratch == null) {
+            scratch = new int[depth * BATCH_SIZE];
+            keys = new long[BATCH_SIZE];
+        }
+        for (int start = 0; start < items.length; start += BATCH_SIZE) {
+            int len = Math.min(BATCH_SIZE, items.length - start);
+            for (int j = 0; j < len; ++j) {
+                keys[j] = key(items[start + j]);
+            }
+            for (int i = 0; i < depth; ++i) {
+                int rowStart = i * BATCH_SIZE;
+                for (int j = 0; j < len; ++j) {
+                    scratch[rowStart + j] = hash(keys[j], i);
+                }
+            }
+            for (int j = 0; j < len; ++j) {
+                long count = counts[start + j];
+                long min = table[0][scratch[j]];
+                for (int i = 1; i < depth; ++i) {
+                    min = Math.min(min, table[i][scratch[i * BATCH_SIZE + j]]);
+                }
+                long newVal = min + count;
+                for (int i = 0; i < depth; ++i) {
+                    int bucket = scratch[i * BATCH_SIZE + j];
+                    if (table[i][bucket] < newVal) {
+                        table[i][bucket] = newVal;
+                    }
+                }
+                size += count;
+            }
+        }
+    }
 }
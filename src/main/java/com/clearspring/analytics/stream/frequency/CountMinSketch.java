@@ -19,11 +19,15 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 import java.util.Arrays;
 import java.util.Random;
 
+import com.clearspring.analytics.hash.HashStrategies;
+import com.clearspring.analytics.hash.HashStrategy;
+import com.clearspring.analytics.hash.StandardHashStrategy;
 import com.clearspring.analytics.stream.membership.Filter;
 import com.clearspring.analytics.util.Preconditions;
 
@@ -31,12 +35,24 @@ import com.clearspring.analytics.util.Preconditions;
  * Count-Min Sketch datastructure.
  * An Improved Data Stream Summary: The Count-Min Sketch and its Applications
  * https://web.archive.org/web/20060907232042/http://www.eecs.harvard.edu/~michaelm/CS222/countmin.pdf
+ * <p/>
+ * With the default {@link HashStrategy} items are hashed as they always were: long items go
+ * straight into the linear hash of each row and strings get their buckets from
+ * {@link Filter#getHashBuckets(String, int, int)}. Any other strategy hashes long items
+ * before the linear hashes and supplies the two hashes the string buckets are derived from.
  */
 public class CountMinSketch implements IFrequency, Serializable {
 
     public static final long PRIME_MODULUS = (1L << 31) - 1;
     private static final long serialVersionUID = -5084982213094657923L;
 
+    /**
+     * Written by {@link #serialize(CountMinSketch)} in place of the size, which is never
+     * negative, when the sketch does not use the default hash. The hash id, as a long to keep
+     * the values 8 byte aligned for {@link MappedCountMinSketch}, and then the size follow.
+     */
+    static final long HASH_MARKER = -1;
+
     int depth;
     int width;
     long[][] table;
@@ -45,10 +61,22 @@ public class CountMinSketch implements IFrequency, Serializable {
     double eps;
     double confidence;
 
+    // serialized by id, see HyperLogLog.Builder
+    transient HashStrategy hash = StandardHashStrategy.defaultStrategy();
+    private int hashId = hash.id();
+
     CountMinSketch() {
     }
 
     public CountMinSketch(int depth, int width, int seed) {
+        this(depth, width, seed, StandardHashStrategy.defaultStrategy());
+    }
+
+    /**
+     * @param hash the hash items are hashed with
+     */
+    public CountMinSketch(int depth, int width, int seed, HashStrategy hash) {
+        setHash(hash);
         this.depth = depth;
         this.width = width;
         this.eps = 2.0 / width;
@@ -57,6 +85,14 @@ public class CountMinSketch implements IFrequency, Serializable {
     }
 
     public CountMinSketch(double epsOfTotalCount, double confidence, int seed) {
+        this(epsOfTotalCount, confidence, seed, StandardHashStrategy.defaultStrategy());
+    }
+
+    /**
+     * @param hash the hash items are hashed with
+     */
+    public CountMinSketch(double epsOfTotalCount, double confidence, int seed, HashStrategy hash) {
+        setHash(hash);
         // 2/w = eps ; w = 2/eps
         // 1/2^depth <= 1-confidence ; depth >= -log2 (1-confidence)
         this.eps = epsOfTotalCount;
@@ -67,6 +103,11 @@ public class CountMinSketch implements IFrequency, Serializable {
     }
 
     CountMinSketch(int depth, int width, long size, long[] hashA, long[][] table) {
+        this(depth, width, size, hashA, table, StandardHashStrategy.defaultStrategy());
+    }
+
+    CountMinSketch(int depth, int width, long size, long[] hashA, long[][] table, HashStrategy hash) {
+        setHash(hash);
         this.depth = depth;
         this.width = width;
         this.eps = 2.0 / width;
@@ -78,6 +119,50 @@ public class CountMinSketch implements IFrequency, Serializable {
         this.size = size;
     }
 
+    private void setHash(HashStrategy hash) {
+        this.hash = hash;
+        this.hashId = hash.id();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        hash = HashStrategies.forId(hashId);
+    }
+
+    public HashStrategy getHashStrategy() {
+        return hash;
+    }
+
+    boolean hasDefaultHash() {
+        return isDefault(hash);
+    }
+
+    static boolean isDefault(HashStrategy hash) {
+        return hash.id() == StandardHashStrategy.defaultStrategy().id();
+    }
+
+    long key(long item) {
+        return key(hash, item);
+    }
+
+    int[] buckets(String item) {
+        return buckets(hash, item, depth, width);
+    }
+
+    /**
+     * @return the value the linear hash of each row is applied to for {@code item}
+     */
+    static long key(HashStrategy hash, long item) {
+        return isDefault(hash) ? item : hash.hash64(item);
+    }
+
+    /**
+     * @return the bucket of {@code item} in each row
+     */
+    static int[] buckets(HashStrategy hash, String item, int depth, int width) {
+        return isDefault(hash) ? Filter.getHashBuckets(item, depth, width) : Filter.getHashBuckets(hash.hash64(item), depth, width);
+    }
+
     @Override
     public String toString() {
         return "CountMinSketch{" +
@@ -118,6 +203,10 @@ public class CountMinSketch implements IFrequency, Serializable {
             return false;
         }
 
+        if (hashId != that.hashId) {
+            return false;
+        }
+
         if (!Arrays.deepEquals(table, that.table)) {
             return false;
         }
@@ -142,7 +231,11 @@ public class CountMinSketch implements IFrequency, Serializable {
 
     private void initTablesWith(int depth, int width, int seed) {
         this.table = new long[depth][width];
-        this.hashA = new long[depth];
+        this.hashA = initHashes(depth, seed);
+    }
+
+    static long[] initHashes(int depth, int seed) {
+        long[] hashA = new long[depth];
         Random r = new Random(seed);
         // We're using a linear hash functions
         // of the form (a*x+b) mod p.
@@ -153,6 +246,7 @@ public class CountMinSketch implements IFrequency, Serializable {
         for (int i = 0; i < depth; ++i) {
             hashA[i] = r.nextInt(Integer.MAX_VALUE);
         }
+        return hashA;
     }
 
     public double getRelativeError() {
@@ -198,8 +292,9 @@ public class CountMinSketch implements IFrequency, Serializable {
             // parameter to constructor.
             throw new IllegalArgumentException("Negative increments not implemented");
         }
+        long key = key(item);
         for (int i = 0; i < depth; ++i) {
-            table[i][hash(item, i)] += count;
+            table[i][hash(key, i)] += count;
         }
 
         checkSizeAfterAdd(String.valueOf(item), count);
@@ -214,7 +309,7 @@ public class CountMinSketch implements IFrequency, Serializable {
             // parameter to constructor.
             throw new IllegalArgumentException("Negative increments not implemented");
         }
-        int[] buckets = Filter.getHashBuckets(item, depth, width);
+        int[] buckets = buckets(item);
         for (int i = 0; i < depth; ++i) {
             table[i][buckets[i]] += count;
         }
@@ -234,8 +329,9 @@ public class CountMinSketch implements IFrequency, Serializable {
     @Override
     public long estimateCount(long item) {
         long res = Long.MAX_VALUE;
+        long key = key(item);
         for (int i = 0; i < depth; ++i) {
-            res = Math.min(res, table[i][hash(item, i)]);
+            res = Math.min(res, table[i][hash(key, i)]);
         }
         return res;
     }
@@ -243,7 +339,7 @@ public class CountMinSketch implements IFrequency, Serializable {
     @Override
     public long estimateCount(String item) {
         long res = Long.MAX_VALUE;
-        int[] buckets = Filter.getHashBuckets(item, depth, width);
+        int[] buckets = buckets(item);
         for (int i = 0; i < depth; ++i) {
             res = Math.min(res, table[i][buckets[i]]);
         }
@@ -255,7 +351,7 @@ public class CountMinSketch implements IFrequency, Serializable {
      *
      * @param estimators
      * @return merged estimator or null if no estimators were provided
-     * @throws CMSMergeException if estimators are not mergeable (same depth, width and seed)
+     * @throws CMSMergeException if estimators are not mergeable (same depth, width, seed and hash)
      */
     public static CountMinSketch merge(CountMinSketch... estimators) throws CMSMergeException {
         CountMinSketch merged = null;
@@ -263,6 +359,7 @@ public class CountMinSketch implements IFrequency, Serializable {
             int depth = estimators[0].depth;
             int width = estimators[0].width;
             long[] hashA = Arrays.copyOf(estimators[0].hashA, estimators[0].hashA.length);
+            HashStrategy hash = estimators[0].hash;
 
             long[][] table = new long[depth][width];
             long size = 0;
@@ -277,6 +374,9 @@ public class CountMinSketch implements IFrequency, Serializable {
                 if (!Arrays.equals(estimator.hashA, hashA)) {
                     throw new CMSMergeException("Cannot merge estimators of different seed");
                 }
+                if (estimator.hashId != hash.id()) {
+                    throw new CMSMergeException("Cannot merge estimators using different hashes");
+                }
 
                 for (int i = 0; i < table.length; i++) {
                     for (int j = 0; j < table[i].length; j++) {
@@ -289,7 +389,7 @@ public class CountMinSketch implements IFrequency, Serializable {
                 checkSizeAfterOperation(previousSize, "merge(" + estimator + ")", size);
             }
 
-            merged = new CountMinSketch(depth, width, size, hashA, table);
+            merged = new CountMinSketch(depth, width, size, hashA, table, hash);
         }
 
         return merged;
@@ -299,6 +399,10 @@ public class CountMinSketch implements IFrequency, Serializable {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         DataOutputStream s = new DataOutputStream(bos);
         try {
+            if (!sketch.hasDefaultHash()) {
+                s.writeLong(HASH_MARKER);
+                s.writeLong(sketch.hashId);
+            }
             s.writeLong(sketch.size);
             s.writeInt(sketch.depth);
             s.writeInt(sketch.width);
@@ -322,6 +426,10 @@ public class CountMinSketch implements IFrequency, Serializable {
         try {
             CountMinSketch sketch = new CountMinSketch();
             sketch.size = s.readLong();
+            if (sketch.size == HASH_MARKER) {
+                sketch.setHash(HashStrategies.forId((int) s.readLong()));
+                sketch.size = s.readLong();
+            }
             sketch.depth = s.readInt();
             sketch.width = s.readInt();
             sketch.eps = 2.0 / sketch.width;
@@ -0,0 +1,318 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.frequency;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.clearspring.analytics.hash.HashStrategies;
+import com.clearspring.analytics.hash.HashStrategy;
+import com.clearspring.analytics.hash.StandardHashStrategy;
+
+/**
+ * Count-Min Sketch whose table lives in a memory-mapped file instead of on the heap.
+ * <p/>
+ * The file uses exactly the layout written by {@link CountMinSketch#serialize(CountMinSketch)}:
+ * the size, depth and width followed by one row per hash function, each row prefixed by its
+ * hash coefficient. A sketch using a {@link HashStrategy} other than the default has the
+ * marker and hash id in front, and items are hashed with it. A serialized sketch can therefore be opened in place, and the file backing
+ * a mapped sketch can be read back with {@link CountMinSketch#deserialize(byte[])}.
+ * <p/>
+ * Updates are written straight into the mapping. Call {@link #force()} to flush them to disk.
+ * Instances are not thread safe.
+ */
+public class MappedCountMinSketch implements IFrequency, Closeable {
+
+    static final int HEADER_BYTES = 8 + 4 + 4;
+
+    /**
+     * Bytes of the hash marker and id in front of the header of a sketch using a hash other
+     * than the default.
+     */
+    static final int HASH_BYTES = 8 + 8;
+
+    /**
+     * Every value in the file is a long at an 8 byte aligned offset, so with power of two
+     * segments a value never straddles two mappings.
+     */
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] segments;
+    private final boolean readOnly;
+    private final int depth;
+    private final int width;
+    private final long[] hashA;
+    private final HashStrategy hash;
+    // offset of the header, past the hash marker and id if there are any
+    private final long base;
+    private long size;
+
+    private MappedCountMinSketch(RandomAccessFile file, FileChannel.MapMode mode) throws IOException {
+        this.file = file;
+        this.readOnly = mode == FileChannel.MapMode.READ_ONLY;
+        FileChannel channel = file.getChannel();
+        long length = channel.size();
+        if (length < HEADER_BYTES) {
+            throw new IOException("File is too short to hold a count min sketch: " + length + " bytes");
+        }
+        int numSegments = (int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        this.segments = new MappedByteBuffer[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            long position = (long) i << SEGMENT_SHIFT;
+            segments[i] = channel.map(mode, position, Math.min(SEGMENT_MASK + 1, length - position));
+        }
+
+        if (getLong(0) == CountMinSketch.HASH_MARKER) {
+            if (length < HASH_BYTES + HEADER_BYTES) {
+                throw new IOException("File is too short to hold a count min sketch: " + length + " bytes");
+            }
+            this.hash = HashStrategies.forId((int) getLong(8));
+            this.base = HASH_BYTES;
+        } else {
+            this.hash = StandardHashStrategy.defaultStrategy();
+            this.base = 0;
+        }
+        this.size = getLong(base);
+        this.depth = segments[0].getInt((int) base + 8);
+        this.width = segments[0].getInt((int) base + 12);
+        if (depth <= 0 || width <= 0 || length != base + fileLength(depth, width)) {
+            throw new IOException("Corrupt count min sketch header: depth=" + depth + ", width=" + width +
+                                  ", file length=" + length);
+        }
+        this.hashA = new long[depth];
+        for (int i = 0; i < depth; ++i) {
+            hashA[i] = getLong(rowOffset(i) - 8);
+        }
+    }
+
+    /**
+     * Creates a new, empty sketch backed by {@code file}, replacing any existing content.
+     * Hash coefficients are derived from {@code seed} the same way as {@link CountMinSketch},
+     * so the result can be merged with heap sketches built from the same parameters.
+     */
+    public static MappedCountMinSketch create(File file, int depth, int width, int seed) throws IOException {
+        return create(file, depth, width, seed, StandardHashStrategy.defaultStrategy());
+    }
+
+    /**
+     * @param hash the hash items are hashed with, recorded in the file
+     */
+    public static MappedCountMinSketch create(File file, int depth, int width, int seed, HashStrategy hash)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long base = CountMinSketch.isDefault(hash) ? 0 : HASH_BYTES;
+            raf.setLength(0);
+            raf.setLength(base + fileLength(depth, width));
+            if (base > 0) {
+                raf.writeLong(CountMinSketch.HASH_MARKER);
+                raf.writeLong(hash.id());
+            }
+            raf.writeLong(0);
+            raf.writeInt(depth);
+            raf.writeInt(width);
+            long[] hashA = CountMinSketch.initHashes(depth, seed);
+            for (int i = 0; i < depth; ++i) {
+                raf.seek(base + HEADER_BYTES + i * rowBytes(width));
+                raf.writeLong(hashA[i]);
+            }
+            return new MappedCountMinSketch(raf, FileChannel.MapMode.READ_WRITE);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    public static MappedCountMinSketch create(File file, double epsOfTotalCount, double confidence, int seed)
+            throws IOException {
+        int width = (int) Math.ceil(2 / epsOfTotalCount);
+        int depth = (int) Math.ceil(-Math.log(1 - confidence) / Math.log(2));
+        return create(file, depth, width, seed);
+    }
+
+    /**
+     * Opens a sketch previously written by {@link #create} or {@link CountMinSketch#serialize}
+     * for reading and in-place updates.
+     */
+    public static MappedCountMinSketch open(File file) throws IOException {
+        return open(file, false);
+    }
+
+    public static MappedCountMinSketch open(File file, boolean readOnly) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, readOnly ? "r" : "rw");
+        try {
+            return new MappedCountMinSketch(raf, readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private static long rowBytes(int width) {
+        return 8 + 8L * width;
+    }
+
+    static long fileLength(int depth, int width) {
+        return HEADER_BYTES + depth * rowBytes(width);
+    }
+
+    private long rowOffset(int row) {
+        return base + HEADER_BYTES + row * rowBytes(width) + 8;
+    }
+
+    private long getLong(long offset) {
+        return segments[(int) (offset >>> SEGMENT_SHIFT)].getLong((int) (offset & SEGMENT_MASK));
+    }
+
+    private void putLong(long offset, long value) {
+        segments[(int) (offset >>> SEGMENT_SHIFT)].putLong((int) (offset & SEGMENT_MASK), value);
+    }
+
+    private long cellOffset(int row, int bucket) {
+        return rowOffset(row) + 8L * bucket;
+    }
+
+    public HashStrategy getHashStrategy() {
+        return hash;
+    }
+
+    public double getRelativeError() {
+        return 2.0 / width;
+    }
+
+    public double getConfidence() {
+        return 1 - 1 / Math.pow(2, depth);
+    }
+
+    int hash(long item, int i) {
+        long hash = hashA[i] * item;
+        // See CountMinSketch#hash
+        hash += hash >> 32;
+        hash &= CountMinSketch.PRIME_MODULUS;
+        return ((int) hash) % width;
+    }
+
+    private void addToSize(String item, long count) {
+        long previousSize = size;
+        size += count;
+        if (size < previousSize) {
+            size = previousSize;
+            throw new IllegalStateException("Overflow error: the size after calling `add(" + item + "," + count +
+                                            ")` is smaller than the previous size. " +
+                                            "Previous size: " + previousSize);
+        }
+        putLong(base, size);
+    }
+
+    @Override
+    public void add(long item, long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative increments not implemented");
+        }
+        long key = CountMinSketch.key(hash, item);
+        for (int i = 0; i < depth; ++i) {
+            long offset = cellOffset(i, hash(key, i));
+            putLong(offset, getLong(offset) + count);
+        }
+        addToSize(String.valueOf(item), count);
+    }
+
+    @Override
+    public void add(String item, long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative increments not implemented");
+        }
+        int[] buckets = CountMinSketch.buckets(hash, item, depth, width);
+        for (int i = 0; i < depth; ++i) {
+            long offset = cellOffset(i, buckets[i]);
+            putLong(offset, getLong(offset) + count);
+        }
+        addToSize(item, count);
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public long estimateCount(long item) {
+        long res = Long.MAX_VALUE;
+        long key = CountMinSketch.key(hash, item);
+        for (int i = 0; i < depth; ++i) {
+            res = Math.min(res, getLong(cellOffset(i, hash(key, i))));
+        }
+        return res;
+    }
+
+    @Override
+    public long estimateCount(String item) {
+        long res = Long.MAX_VALUE;
+        int[] buckets = CountMinSketch.buckets(hash, item, depth, width);
+        for (int i = 0; i < depth; ++i) {
+            res = Math.min(res, getLong(cellOffset(i, buckets[i])));
+        }
+        return res;
+    }
+
+    /**
+     * Copies the mapped table into a regular heap {@link CountMinSketch}.
+     */
+    public CountMinSketch toCountMinSketch() {
+        long[][] table = new long[depth][width];
+        for (int i = 0; i < depth; ++i) {
+            long offset = rowOffset(i);
+            for (int j = 0; j < width; ++j) {
+                table[i][j] = getLong(offset + 8L * j);
+            }
+        }
+        return new CountMinSketch(depth, width, size, hashA.clone(), table, hash);
+    }
+
+    /**
+     * Flushes all updates made so far to the underlying file.
+     */
+    public void force() {
+        if (readOnly) {
+            return;
+        }
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    @Override
+    public String toString() {
+        return "MappedCountMinSketch{" +
+                "eps=" + getRelativeError() +
+                ", confidence=" + getConfidence() +
+                ", depth=" + depth +
+                ", width=" + width +
+                ", size=" + size +
+                '}';
+    }
+}
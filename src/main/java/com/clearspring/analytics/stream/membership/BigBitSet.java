@@ -30,18 +30,23 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.LongBuffer;
 import java.util.*;
-import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.StreamSupport;
 
 /**
  * This class implements a vector of bits that grows as needed. Each
  * component of the bit set has a {@code boolean} value. The
- * bits of a {@code BitSet} are indexed by nonnegative integers.
+ * bits of a {@code BitSet} are indexed by nonnegative longs.
  * Individual indexed bits can be examined, set, or cleared. One
  * {@code BitSet} may be used to modify the contents of another
  * {@code BitSet} through logical AND, logical inclusive OR, and
  * logical exclusive OR operations.
  *
+ * <p>Unlike {@link java.util.BitSet} the words are kept in a number of
+ * segments rather than a single array, so the size of the set is not
+ * bounded by the maximum length of a Java array. Bulk operations on
+ * large sets run on the fork-join pool over chunks of words.
+ *
  * <p>By default, all bits in the set initially have the value
  * {@code false}.
  *
@@ -73,29 +78,52 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
     private final static int BITS_PER_WORD = 1 << ADDRESS_BITS_PER_WORD;
     private final static int BIT_INDEX_MASK = BITS_PER_WORD - 1;
 
+    /*
+     * Words are stored in segments of 2^27 longs (1 GiB). Every segment
+     * but the last one is full; the last one grows as needed.
+     */
+    final static int DEFAULT_SEGMENT_SHIFT = 27;
+
     /* Used to shift left or right for a partial word mask */
     private static final long WORD_MASK = 0xffffffffffffffffL;
 
     /**
      * @serialField bits long[]
      *
-     * The bits in this BitSet.  The ith bit is stored in bits[i/64] at
-     * bit position i % 64 (where bit position 0 refers to the least
-     * significant bit and 63 refers to the most significant bit).
+     * The bits in this BitSet when they fit in a single segment.  The ith
+     * bit is stored in bits[i/64] at bit position i % 64 (where bit
+     * position 0 refers to the least significant bit and 63 refers to the
+     * most significant bit).
+     *
+     * @serialField segments long[][]
+     *
+     * The bits in this BitSet when they span more than one segment, in
+     * the same order as if the segments were concatenated.
      */
     private static final ObjectStreamField[] serialPersistentFields = {
             new ObjectStreamField("bits", long[].class),
+            new ObjectStreamField("segments", long[][].class),
     };
 
     /**
-     * The internal field corresponding to the serialField "bits".
+     * The words of this BitSet, split into segments.
+     */
+    private transient long[][] segments;
+
+    /**
+     * log2 of the number of words in a full segment.
      */
-    private long[] words;
+    private transient int segmentShift = DEFAULT_SEGMENT_SHIFT;
+
+    /**
+     * The total number of words in all segments.
+     */
+    private transient long capacity;
 
     /**
      * The number of words in the logical size of this BitSet.
      */
-    private transient int wordsInUse = 0;
+    private transient long wordsInUse = 0;
 
     /**
      * Whether the size of "words" is user-specified.  If so, we assume
@@ -109,17 +137,92 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
     /**
      * Given a bit index, return word index containing it.
      */
-    private static int wordIndex(long bitIndex) {
-        return (int)(bitIndex >> ADDRESS_BITS_PER_WORD);
+    private static long wordIndex(long bitIndex) {
+        return bitIndex >> ADDRESS_BITS_PER_WORD;
+    }
+
+    private int segment(long wordIndex) {
+        return (int)(wordIndex >>> segmentShift);
+    }
+
+    private int offset(long wordIndex) {
+        return (int)(wordIndex & ((1L << segmentShift) - 1));
+    }
+
+    /**
+     * Returns the word at the given word index, which must be less than
+     * the capacity of this BitSet.
+     */
+    long word(long wordIndex) {
+        return segments[segment(wordIndex)][offset(wordIndex)];
+    }
+
+    private void setWord(long wordIndex, long word) {
+        segments[segment(wordIndex)][offset(wordIndex)] = word;
+    }
+
+    /**
+     * Returns the number of words in the logical size of this BitSet.
+     */
+    long wordsInUse() {
+        return wordsInUse;
+    }
+
+    /**
+     * Returns the arrays backing this BitSet, so serializers can fill or
+     * drain them in bulk. Call {@link #wordsChanged()} after writing them.
+     */
+    long[][] segments() {
+        return segments;
+    }
+
+    /**
+     * Restores the invariants after the segments were written directly.
+     */
+    void wordsChanged() {
+        wordsInUse = capacity;
+        recalculateWordsInUse();
+        checkInvariants();
+    }
+
+    /**
+     * Returns the number of words of segment {@code s} that lie below
+     * {@code words}.
+     */
+    private int wordsInSegment(int s, long words) {
+        return (int)Math.min(1L << segmentShift, words - ((long)s << segmentShift));
+    }
+
+    private int segmentsFor(long words) {
+        return (int)((words + (1L << segmentShift) - 1) >>> segmentShift);
+    }
+
+    private interface WordRangeOp {
+        long apply(int segment, int from, int to);
+    }
+
+    /**
+     * Applies {@code op} to the first {@code words} words in chunks that
+     * never cross a segment boundary, on the fork-join pool once there
+     * are enough of them, and sums the results.
+     */
+    private long forEachChunk(final long words, final WordRangeOp op) {
+        final int chunkShift = Math.min(ParallelChunks.CHUNK_SHIFT, segmentShift);
+        return ParallelChunks.run(ParallelChunks.chunks(words, 1 << chunkShift), c -> {
+            long first = c << chunkShift;
+            int from = offset(first);
+            int to = from + (int)(Math.min(words, first + (1L << chunkShift)) - first);
+            return op.apply(segment(first), from, to);
+        });
     }
 
     /**
      * Every public method must preserve these invariants.
      */
     private void checkInvariants() {
-        assert(wordsInUse == 0 || words[wordsInUse - 1] != 0);
-        assert(wordsInUse >= 0 && wordsInUse <= words.length);
-        assert(wordsInUse == words.length || words[wordsInUse] == 0);
+        assert(wordsInUse == 0 || word(wordsInUse - 1) != 0);
+        assert(wordsInUse >= 0 && wordsInUse <= capacity);
+        assert(wordsInUse == capacity || word(wordsInUse) == 0);
     }
 
     /**
@@ -129,9 +232,9 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      */
     private void recalculateWordsInUse() {
         // Traverse the bitset until a used word is found
-        int i;
+        long i;
         for (i = wordsInUse-1; i >= 0; i--)
-            if (words[i] != 0)
+            if (word(i) != 0)
                 break;
 
         wordsInUse = i+1; // The new logical size
@@ -155,16 +258,25 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      *         is negative
      */
     public BigBitSet(long nbits) {
+        this(nbits, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    /*
+     * Lets tests use small segments.
+     */
+    BigBitSet(long nbits, int segmentShift) {
         // nbits can't be negative; size 0 is OK
         if (nbits < 0)
             throw new NegativeArraySizeException("nbits < 0: " + nbits);
 
+        this.segmentShift = segmentShift;
         initWords(nbits);
         sizeIsSticky = true;
     }
 
     private void initWords(long nbits) {
-        words = new long[(int)wordIndex(nbits-1) + 1];
+        segments = new long[0][];
+        resize(wordIndex(nbits-1) + 1);
     }
 
     /**
@@ -172,11 +284,59 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      * The last word (if there is one) must be non-zero.
      */
     private BigBitSet(long[] words) {
-        this.words = words;
+        adopt(words);
         this.wordsInUse = words.length;
         checkInvariants();
     }
 
+    /**
+     * Makes {@code words} the contents of this BitSet, using the array
+     * itself as the only segment when it fits.
+     */
+    private void adopt(long[] words) {
+        if (words.length <= 1L << segmentShift) {
+            segments = new long[][] { words };
+            capacity = words.length;
+        } else {
+            segments = new long[0][];
+            resize(words.length);
+            copyWords(words, 0);
+        }
+    }
+
+    /**
+     * Copies {@code words} into this BitSet starting at word index
+     * {@code toWord}, which must leave room for all of them.
+     */
+    private void copyWords(long[] words, long toWord) {
+        int from = 0;
+        while (from < words.length) {
+            int s = segment(toWord);
+            int offset = offset(toWord);
+            int len = Math.min(segments[s].length - offset, words.length - from);
+            System.arraycopy(words, from, segments[s], offset, len);
+            from += len;
+            toWord += len;
+        }
+    }
+
+    /**
+     * Grows or shrinks the segments to hold exactly {@code words} words.
+     */
+    private void resize(long words) {
+        int n = segmentsFor(words);
+        long[][] resized = Arrays.copyOf(segments, n);
+        for (int s = 0; s < n; s++) {
+            int len = wordsInSegment(s, words);
+            if (resized[s] == null)
+                resized[s] = new long[len];
+            else if (resized[s].length != len)
+                resized[s] = Arrays.copyOf(resized[s], len);
+        }
+        segments = resized;
+        capacity = words;
+    }
+
     /**
      * Returns a new bit set containing all the bits in the given long array.
      *
@@ -292,20 +452,23 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      *
      * @return a byte array containing a little-endian representation
      *         of all the bits in this bit set
+     * @throws IllegalStateException if the bits do not fit in an array
      * @since 1.7
      */
     public byte[] toByteArray() {
-        int n = wordsInUse;
+        long n = wordsInUse;
         if (n == 0)
             return new byte[0];
-        int len = 8 * (n-1);
-        for (long x = words[n - 1]; x != 0; x >>>= 8)
+        if (n > Integer.MAX_VALUE / 8)
+            throw new IllegalStateException("Too many bits for a byte array: " + length());
+        int len = 8 * (int)(n-1);
+        for (long x = word(n - 1); x != 0; x >>>= 8)
             len++;
         byte[] bytes = new byte[len];
         ByteBuffer bb = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
-        for (int i = 0; i < n - 1; i++)
-            bb.putLong(words[i]);
-        for (long x = words[n - 1]; x != 0; x >>>= 8)
+        for (long i = 0; i < n - 1; i++)
+            bb.putLong(word(i));
+        for (long x = word(n - 1); x != 0; x >>>= 8)
             bb.put((byte) (x & 0xff));
         return bytes;
     }
@@ -321,10 +484,16 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      *
      * @return a long array containing a little-endian representation
      *         of all the bits in this bit set
+     * @throws IllegalStateException if the bits do not fit in an array
      * @since 1.7
      */
     public long[] toLongArray() {
-        return Arrays.copyOf(words, wordsInUse);
+        if (wordsInUse > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("Too many bits for a long array: " + length());
+        long[] longs = new long[(int)wordsInUse];
+        for (int s = 0, n = segmentsFor(wordsInUse); s < n; s++)
+            System.arraycopy(segments[s], 0, longs, s << segmentShift, wordsInSegment(s, wordsInUse));
+        return longs;
     }
 
     /**
@@ -332,10 +501,10 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      * @param wordsRequired the minimum acceptable number of words.
      */
     private void ensureCapacity(long wordsRequired) {
-        if (words.length < wordsRequired) {
+        if (capacity < wordsRequired) {
             // Allocate larger of doubled size or required size
-            long request = Math.max(2 * words.length, wordsRequired);
-            words = Arrays.copyOf(words, (int)request);
+            long request = Math.max(2 * capacity, wordsRequired);
+            resize(request);
             sizeIsSticky = false;
         }
     }
@@ -351,7 +520,7 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
         long wordsRequired = wordIndex+1;
         if (wordsInUse < wordsRequired) {
             ensureCapacity(wordsRequired);
-            wordsInUse = (int)wordsRequired;
+            wordsInUse = wordsRequired;
         }
     }
 
@@ -368,6 +537,20 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
                     " > toIndex: " + toIndex);
     }
 
+    /**
+     * Sets the words from {@code fromWord} (inclusive) to {@code toWord}
+     * (exclusive) to {@code value}.
+     */
+    private void fillWords(long fromWord, long toWord, long value) {
+        while (fromWord < toWord) {
+            int s = segment(fromWord);
+            int from = offset(fromWord);
+            int to = (int)Math.min(segments[s].length, from + (toWord - fromWord));
+            Arrays.fill(segments[s], from, to, value);
+            fromWord += to - from;
+        }
+    }
+
     /**
      * Sets the bit at the specified index to the complement of its
      * current value.
@@ -383,7 +566,7 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
         long wordIndex = wordIndex(bitIndex);
         expandTo(wordIndex);
 
-        words[(int)wordIndex] ^= (1L << bitIndex);
+        segments[segment(wordIndex)][offset(wordIndex)] ^= (1L << bitIndex);
 
         recalculateWordsInUse();
         checkInvariants();
@@ -407,26 +590,26 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
         if (fromIndex == toIndex)
             return;
 
-        int startWordIndex = (int)wordIndex(fromIndex);
-        int endWordIndex   = (int)wordIndex(toIndex - 1);
+        long startWordIndex = wordIndex(fromIndex);
+        long endWordIndex   = wordIndex(toIndex - 1);
         expandTo(endWordIndex);
 
         long firstWordMask = WORD_MASK << fromIndex;
         long lastWordMask  = WORD_MASK >>> -toIndex;
         if (startWordIndex == endWordIndex) {
             // Case 1: One word
-            words[startWordIndex] ^= (firstWordMask & lastWordMask);
+            setWord(startWordIndex, word(startWordIndex) ^ (firstWordMask & lastWordMask));
         } else {
             // Case 2: Multiple words
             // Handle first word
-            words[startWordIndex] ^= firstWordMask;
+            setWord(startWordIndex, word(startWordIndex) ^ firstWordMask);
 
             // Handle intermediate words, if any
-            for (int i = startWordIndex+1; i < endWordIndex; i++)
-                words[i] ^= WORD_MASK;
+            for (long i = startWordIndex+1; i < endWordIndex; i++)
+                setWord(i, ~word(i));
 
             // Handle last word
-            words[endWordIndex] ^= lastWordMask;
+            setWord(endWordIndex, word(endWordIndex) ^ lastWordMask);
         }
 
         recalculateWordsInUse();
@@ -447,7 +630,7 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
         long wordIndex = wordIndex(bitIndex);
         expandTo(wordIndex);
 
-        words[(int)wordIndex] |= (1L << bitIndex); // Restores invariants
+        segments[segment(wordIndex)][offset(wordIndex)] |= (1L << bitIndex); // Restores invariants
 
         checkInvariants();
     }
@@ -478,7 +661,7 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      *         larger than {@code toIndex}
      * @since  1.4
      */
-    public void set(int fromIndex, int toIndex) {
+    public void set(long fromIndex, long toIndex) {
         checkRange(fromIndex, toIndex);
 
         if (fromIndex == toIndex)
@@ -493,18 +676,17 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
         long lastWordMask  = WORD_MASK >>> -toIndex;
         if (startWordIndex == endWordIndex) {
             // Case 1: One word
-            words[(int)startWordIndex] |= (firstWordMask & lastWordMask);
+            setWord(startWordIndex, word(startWordIndex) | (firstWordMask & lastWordMask));
         } else {
             // Case 2: Multiple words
             // Handle first word
-            words[(int)startWordIndex] |= firstWordMask;
+            setWord(startWordIndex, word(startWordIndex) | firstWordMask);
 
             // Handle intermediate words, if any
-            for (long i = startWordIndex+1; i < endWordIndex; i++)
-                words[(int)i] = WORD_MASK;
+            fillWords(startWordIndex+1, endWordIndex, WORD_MASK);
 
             // Handle last word (restores invariants)
-            words[(int)endWordIndex] |= lastWordMask;
+            setWord(endWordIndex, word(endWordIndex) | lastWordMask);
         }
 
         checkInvariants();
@@ -522,7 +704,7 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      *         larger than {@code toIndex}
      * @since  1.4
      */
-    public void set(int fromIndex, int toIndex, boolean value) {
+    public void set(long fromIndex, long toIndex, boolean value) {
         if (value)
             set(fromIndex, toIndex);
         else
@@ -544,7 +726,7 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
         if (wordIndex >= wordsInUse)
             return;
 
-        words[(int)wordIndex] &= ~(1L << bitIndex);
+        segments[segment(wordIndex)][offset(wordIndex)] &= ~(1L << bitIndex);
 
         recalculateWordsInUse();
         checkInvariants();
@@ -581,18 +763,17 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
         long lastWordMask  = WORD_MASK >>> -toIndex;
         if (startWordIndex == endWordIndex) {
             // Case 1: One word
-            words[(int)startWordIndex] &= ~(firstWordMask & lastWordMask);
+            setWord(startWordIndex, word(startWordIndex) & ~(firstWordMask & lastWordMask));
         } else {
             // Case 2: Multiple words
             // Handle first word
-            words[(int)startWordIndex] &= ~firstWordMask;
+            setWord(startWordIndex, word(startWordIndex) & ~firstWordMask);
 
             // Handle intermediate words, if any
-            for (long i = startWordIndex+1; i < endWordIndex; i++)
-                words[(int)i] = 0;
+            fillWords(startWordIndex+1, endWordIndex, 0);
 
             // Handle last word
-            words[(int)endWordIndex] &= ~lastWordMask;
+            setWord(endWordIndex, word(endWordIndex) & ~lastWordMask);
         }
 
         recalculateWordsInUse();
@@ -605,8 +786,8 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      * @since 1.4
      */
     public void clear() {
-        while (wordsInUse > 0)
-            words[--wordsInUse] = 0;
+        fillWords(0, wordsInUse, 0);
+        wordsInUse = 0;
     }
 
     /**
@@ -625,9 +806,9 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
 
         checkInvariants();
 
-        int wordIndex = wordIndex(bitIndex);
+        long wordIndex = wordIndex(bitIndex);
         return (wordIndex < wordsInUse)
-                && ((words[wordIndex] & (1L << bitIndex)) != 0);
+                && ((word(wordIndex) & (1L << bitIndex)) != 0);
     }
 
     /**
@@ -642,12 +823,12 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      *         larger than {@code toIndex}
      * @since  1.4
      */
-    public BigBitSet get(int fromIndex, int toIndex) {
+    public BigBitSet get(long fromIndex, long toIndex) {
         checkRange(fromIndex, toIndex);
 
         checkInvariants();
 
-        int len = length();
+        long len = length();
 
         // If no set bits in range return empty bitset
         if (len <= fromIndex || fromIndex == toIndex)
@@ -658,25 +839,25 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
             toIndex = len;
 
         BigBitSet result = new BigBitSet(toIndex - fromIndex);
-        int targetWords = wordIndex(toIndex - fromIndex - 1) + 1;
-        int sourceIndex = wordIndex(fromIndex);
+        long targetWords = wordIndex(toIndex - fromIndex - 1) + 1;
+        long sourceIndex = wordIndex(fromIndex);
         boolean wordAligned = ((fromIndex & BIT_INDEX_MASK) == 0);
 
         // Process all words but the last word
-        for (int i = 0; i < targetWords - 1; i++, sourceIndex++)
-            result.words[i] = wordAligned ? words[sourceIndex] :
-                    (words[sourceIndex] >>> fromIndex) |
-                            (words[sourceIndex+1] << -fromIndex);
+        for (long i = 0; i < targetWords - 1; i++, sourceIndex++)
+            result.setWord(i, wordAligned ? word(sourceIndex) :
+                    (word(sourceIndex) >>> fromIndex) |
+                            (word(sourceIndex+1) << -fromIndex));
 
         // Process the last word
         long lastWordMask = WORD_MASK >>> -toIndex;
-        result.words[targetWords - 1] =
+        result.setWord(targetWords - 1,
                 ((toIndex-1) & BIT_INDEX_MASK) < (fromIndex & BIT_INDEX_MASK)
                         ? /* straddles source words */
-                        ((words[sourceIndex] >>> fromIndex) |
-                                (words[sourceIndex+1] & lastWordMask) << -fromIndex)
+                        ((word(sourceIndex) >>> fromIndex) |
+                                (word(sourceIndex+1) & lastWordMask) << -fromIndex)
                         :
-                        ((words[sourceIndex] & lastWordMask) >>> fromIndex);
+                        ((word(sourceIndex) & lastWordMask) >>> fromIndex));
 
         // Set wordsInUse correctly
         result.wordsInUse = targetWords;
@@ -695,11 +876,8 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      * use the following loop:
      *
      *  <pre> {@code
-     * for (int i = bs.nextSetBit(0); i >= 0; i = bs.nextSetBit(i+1)) {
+     * for (long i = bs.nextSetBit(0); i >= 0; i = bs.nextSetBit(i+1)) {
      *     // operate on index i here
-     *     if (i == Integer.MAX_VALUE) {
-     *         break; // or (i+1) would overflow
-     *     }
      * }}</pre>
      *
      * @param  fromIndex the index to start checking from (inclusive)
@@ -708,24 +886,24 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      * @throws IndexOutOfBoundsException if the specified index is negative
      * @since  1.4
      */
-    public int nextSetBit(int fromIndex) {
+    public long nextSetBit(long fromIndex) {
         if (fromIndex < 0)
             throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
 
         checkInvariants();
 
-        int u = wordIndex(fromIndex);
+        long u = wordIndex(fromIndex);
         if (u >= wordsInUse)
             return -1;
 
-        long word = words[u] & (WORD_MASK << fromIndex);
+        long word = word(u) & (WORD_MASK << fromIndex);
 
         while (true) {
             if (word != 0)
                 return (u * BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
             if (++u == wordsInUse)
                 return -1;
-            word = words[u];
+            word = word(u);
         }
     }
 
@@ -738,26 +916,24 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      * @throws IndexOutOfBoundsException if the specified index is negative
      * @since  1.4
      */
-    public int nextClearBit(int fromIndex) {
-        // Neither spec nor implementation handle bitsets of maximal length.
-        // See 4816253.
+    public long nextClearBit(long fromIndex) {
         if (fromIndex < 0)
             throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
 
         checkInvariants();
 
-        int u = wordIndex(fromIndex);
+        long u = wordIndex(fromIndex);
         if (u >= wordsInUse)
             return fromIndex;
 
-        long word = ~words[u] & (WORD_MASK << fromIndex);
+        long word = ~word(u) & (WORD_MASK << fromIndex);
 
         while (true) {
             if (word != 0)
                 return (u * BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
             if (++u == wordsInUse)
                 return wordsInUse * BITS_PER_WORD;
-            word = ~words[u];
+            word = ~word(u);
         }
     }
 
@@ -771,7 +947,7 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      * use the following loop:
      *
      *  <pre> {@code
-     * for (int i = bs.length(); (i = bs.previousSetBit(i-1)) >= 0; ) {
+     * for (long i = bs.length(); (i = bs.previousSetBit(i-1)) >= 0; ) {
      *     // operate on index i here
      * }}</pre>
      *
@@ -782,7 +958,7 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      *         than {@code -1}
      * @since  1.7
      */
-    public int previousSetBit(int fromIndex) {
+    public long previousSetBit(long fromIndex) {
         if (fromIndex < 0) {
             if (fromIndex == -1)
                 return -1;
@@ -792,18 +968,18 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
 
         checkInvariants();
 
-        int u = wordIndex(fromIndex);
+        long u = wordIndex(fromIndex);
         if (u >= wordsInUse)
             return length() - 1;
 
-        long word = words[u] & (WORD_MASK >>> -(fromIndex+1));
+        long word = word(u) & (WORD_MASK >>> -(fromIndex+1));
 
         while (true) {
             if (word != 0)
                 return (u+1) * BITS_PER_WORD - 1 - Long.numberOfLeadingZeros(word);
             if (u-- == 0)
                 return -1;
-            word = words[u];
+            word = word(u);
         }
     }
 
@@ -820,7 +996,7 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      *         than {@code -1}
      * @since  1.7
      */
-    public int previousClearBit(int fromIndex) {
+    public long previousClearBit(long fromIndex) {
         if (fromIndex < 0) {
             if (fromIndex == -1)
                 return -1;
@@ -830,18 +1006,18 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
 
         checkInvariants();
 
-        int u = wordIndex(fromIndex);
+        long u = wordIndex(fromIndex);
         if (u >= wordsInUse)
             return fromIndex;
 
-        long word = ~words[u] & (WORD_MASK >>> -(fromIndex+1));
+        long word = ~word(u) & (WORD_MASK >>> -(fromIndex+1));
 
         while (true) {
             if (word != 0)
                 return (u+1) * BITS_PER_WORD -1 - Long.numberOfLeadingZeros(word);
             if (u-- == 0)
                 return -1;
-            word = ~words[u];
+            word = ~word(u);
         }
     }
 
@@ -853,12 +1029,12 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      * @return the logical size of this {@code BitSet}
      * @since  1.2
      */
-    public int length() {
+    public long length() {
         if (wordsInUse == 0)
             return 0;
 
         return BITS_PER_WORD * (wordsInUse - 1) +
-                (BITS_PER_WORD - Long.numberOfLeadingZeros(words[wordsInUse - 1]));
+                (BITS_PER_WORD - Long.numberOfLeadingZeros(word(wordsInUse - 1)));
     }
 
     /**
@@ -882,8 +1058,8 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      * @since  1.4
      */
     public boolean intersects(BigBitSet set) {
-        for (int i = Math.min(wordsInUse, set.wordsInUse) - 1; i >= 0; i--)
-            if ((words[i] & set.words[i]) != 0)
+        for (long i = Math.min(wordsInUse, set.wordsInUse) - 1; i >= 0; i--)
+            if ((word(i) & set.word(i)) != 0)
                 return true;
         return false;
     }
@@ -894,11 +1070,23 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      * @return the number of bits set to {@code true} in this {@code BitSet}
      * @since  1.4
      */
-    public int cardinality() {
-        int sum = 0;
-        for (int i = 0; i < wordsInUse; i++)
-            sum += Long.bitCount(words[i]);
-        return sum;
+    public long cardinality() {
+        return forEachChunk(wordsInUse, (s, from, to) ->
+                ParallelChunks.bitCount(segments[s], from, to));
+    }
+
+    /**
+     * Returns {@code set}, or a copy of it split into segments of the same
+     * size as this BitSet's so that segments can be combined one to one.
+     */
+    private BigBitSet aligned(BigBitSet set) {
+        if (set.segmentShift == segmentShift)
+            return set;
+        BigBitSet result = new BigBitSet(set.wordsInUse * BITS_PER_WORD, segmentShift);
+        for (long i = 0; i < set.wordsInUse; i++)
+            result.setWord(i, set.word(i));
+        result.wordsInUse = set.wordsInUse;
+        return result;
     }
 
     /**
@@ -914,12 +1102,21 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
         if (this == set)
             return;
 
-        while (wordsInUse > set.wordsInUse)
-            words[--wordsInUse] = 0;
+        final BigBitSet other = aligned(set);
+
+        if (wordsInUse > other.wordsInUse) {
+            fillWords(other.wordsInUse, wordsInUse, 0);
+            wordsInUse = other.wordsInUse;
+        }
 
         // Perform logical AND on words in common
-        for (int i = 0; i < wordsInUse; i++)
-            words[i] &= set.words[i];
+        final long n = wordsInUse;
+        forEachChunk(n, (s, from, to) -> {
+            long[] words = segments[s], otherWords = other.segments[s];
+            for (int i = from; i < to; i++)
+                words[i] &= otherWords[i];
+            return 0;
+        });
 
         recalculateWordsInUse();
         checkInvariants();
@@ -938,27 +1135,68 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
         if (this == set)
             return;
 
-        int wordsInCommon = Math.min(wordsInUse, set.wordsInUse);
+        final BigBitSet other = aligned(set);
 
-        if (wordsInUse < set.wordsInUse) {
-            ensureCapacity(set.wordsInUse);
-            wordsInUse = set.wordsInUse;
+        if (wordsInUse < other.wordsInUse) {
+            ensureCapacity(other.wordsInUse);
+            wordsInUse = other.wordsInUse;
         }
 
-        // Perform logical OR on words in common
-        for (int i = 0; i < wordsInCommon; i++)
-            words[i] |= set.words[i];
-
-        // Copy any remaining words
-        if (wordsInCommon < set.wordsInUse)
-            System.arraycopy(set.words, wordsInCommon,
-                    words, wordsInCommon,
-                    wordsInUse - wordsInCommon);
+        // Words of ours past the end of the argument are unchanged, and
+        // words past our end are zero, so OR-ing copies the remainder
+        final long n = other.wordsInUse;
+        forEachChunk(n, (s, from, to) -> {
+            long[] words = segments[s], otherWords = other.segments[s];
+            for (int i = from; i < to; i++)
+                words[i] |= otherWords[i];
+            return 0;
+        });
 
         // recalculateWordsInUse() is unnecessary
         checkInvariants();
     }
 
+    /**
+     * Performs a logical <b>OR</b> of this bit set with all of the
+     * argument bit sets at once. Each chunk of words is read from every
+     * argument while it is in cache, instead of making a pass over this
+     * bit set per argument.
+     *
+     * @param sets the bit sets to OR into this one
+     * @return the cardinality of this bit set afterwards, counted in the
+     *         same pass
+     */
+    public long orAll(BigBitSet... sets) {
+        final BigBitSet[] others = new BigBitSet[sets.length];
+        long n = wordsInUse;
+        for (int i = 0; i < sets.length; i++) {
+            others[i] = aligned(sets[i]);
+            n = Math.max(n, others[i].wordsInUse);
+        }
+
+        if (wordsInUse < n) {
+            ensureCapacity(n);
+            wordsInUse = n;
+        }
+
+        long cardinality = forEachChunk(n, (s, from, to) -> {
+            long[] words = segments[s];
+            long first = (long)s << segmentShift;
+            for (BigBitSet other : others) {
+                int end = (int)Math.max(from, Math.min(to, other.wordsInUse - first));
+                if (other == this || end <= from)
+                    continue;
+                long[] otherWords = other.segments[s];
+                for (int i = from; i < end; i++)
+                    words[i] |= otherWords[i];
+            }
+            return ParallelChunks.bitCount(words, from, to);
+        });
+
+        checkInvariants();
+        return cardinality;
+    }
+
     /**
      * Performs a logical <b>XOR</b> of this bit set with the bit set
      * argument. This bit set is modified so that a bit in it has the
@@ -974,22 +1212,21 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      * @param  set a bit set
      */
     public void xor(BigBitSet set) {
-        int wordsInCommon = Math.min(wordsInUse, set.wordsInUse);
+        final BigBitSet other = aligned(set);
 
-        if (wordsInUse < set.wordsInUse) {
-            ensureCapacity(set.wordsInUse);
-            wordsInUse = set.wordsInUse;
+        if (wordsInUse < other.wordsInUse) {
+            ensureCapacity(other.wordsInUse);
+            wordsInUse = other.wordsInUse;
         }
 
-        // Perform logical XOR on words in common
-        for (int i = 0; i < wordsInCommon; i++)
-            words[i] ^= set.words[i];
-
-        // Copy any remaining words
-        if (wordsInCommon < set.wordsInUse)
-            System.arraycopy(set.words, wordsInCommon,
-                    words, wordsInCommon,
-                    set.wordsInUse - wordsInCommon);
+        // Perform logical XOR on the argument's words, copying any past our end
+        final long n = other.wordsInUse;
+        forEachChunk(n, (s, from, to) -> {
+            long[] words = segments[s], otherWords = other.segments[s];
+            for (int i = from; i < to; i++)
+                words[i] ^= otherWords[i];
+            return 0;
+        });
 
         recalculateWordsInUse();
         checkInvariants();
@@ -1004,9 +1241,16 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      * @since  1.2
      */
     public void andNot(BigBitSet set) {
+        final BigBitSet other = aligned(set);
+
         // Perform logical (a & !b) on words in common
-        for (int i = Math.min(wordsInUse, set.wordsInUse) - 1; i >= 0; i--)
-            words[i] &= ~set.words[i];
+        final long n = Math.min(wordsInUse, other.wordsInUse);
+        forEachChunk(n, (s, from, to) -> {
+            long[] words = segments[s], otherWords = other.segments[s];
+            for (int i = from; i < to; i++)
+                words[i] &= ~otherWords[i];
+            return 0;
+        });
 
         recalculateWordsInUse();
         checkInvariants();
@@ -1032,8 +1276,8 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      */
     public int hashCode() {
         long h = 1234;
-        for (int i = wordsInUse; --i >= 0; )
-            h ^= words[i] * (i + 1);
+        for (long i = wordsInUse; --i >= 0; )
+            h ^= word(i) * (i + 1);
 
         return (int)((h >> 32) ^ h);
     }
@@ -1046,7 +1290,7 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      * @return the number of bits currently in this bit set
      */
     public long size() {
-        return (long)words.length * BITS_PER_WORD;
+        return capacity * BITS_PER_WORD;
     }
 
     /**
@@ -1054,7 +1298,7 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      * The result is {@code true} if and only if the argument is
      * not {@code null} and is a {@code Bitset} object that has
      * exactly the same set of bits set to {@code true} as this bit
-     * set. That is, for every nonnegative {@code int} index {@code k},
+     * set. That is, for every nonnegative {@code long} index {@code k},
      * <pre>((BitSet)obj).get(k) == this.get(k)</pre>
      * must be true. The current sizes of the two bit sets are not compared.
      *
@@ -1078,8 +1322,8 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
             return false;
 
         // Check words in use by both BitSets
-        for (int i = 0; i < wordsInUse; i++)
-            if (words[i] != set.words[i])
+        for (long i = 0; i < wordsInUse; i++)
+            if (word(i) != set.word(i))
                 return false;
 
         return true;
@@ -1100,7 +1344,9 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
 
         try {
             BigBitSet result = (BigBitSet) super.clone();
-            result.words = words.clone();
+            result.segments = segments.clone();
+            for (int s = 0; s < segments.length; s++)
+                result.segments[s] = segments[s].clone();
             result.checkInvariants();
             return result;
         } catch (CloneNotSupportedException e) {
@@ -1114,15 +1360,16 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      * returned by a subsequent call to the {@link #size()} method.
      */
     private void trimToSize() {
-        if (wordsInUse != words.length) {
-            words = Arrays.copyOf(words, wordsInUse);
+        if (wordsInUse != capacity) {
+            resize(wordsInUse);
             checkInvariants();
         }
     }
 
     /**
      * Save the state of the {@code BitSet} instance to a stream (i.e.,
-     * serialize it).
+     * serialize it).  A set that fits in one segment is written in the
+     * same form as before segmentation.
      */
     private void writeObject(ObjectOutputStream s)
             throws IOException {
@@ -1133,7 +1380,10 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
             trimToSize();
 
         ObjectOutputStream.PutField fields = s.putFields();
-        fields.put("bits", words);
+        if (segments.length <= 1)
+            fields.put("bits", segments.length == 0 ? new long[0] : segments[0]);
+        else
+            fields.put("segments", segments);
         s.writeFields();
     }
 
@@ -1145,14 +1395,31 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
             throws IOException, ClassNotFoundException {
 
         ObjectInputStream.GetField fields = s.readFields();
-        words = (long[]) fields.get("bits", null);
+        long[] bits = (long[]) fields.get("bits", null);
+        long[][] segs = (long[][]) fields.get("segments", null);
+
+        segmentShift = DEFAULT_SEGMENT_SHIFT;
+        if (segs == null) {
+            adopt(bits);
+        } else {
+            segments = new long[0][];
+            long words = 0;
+            for (long[] seg : segs)
+                words += seg.length;
+            resize(words);
+            long i = 0;
+            for (long[] seg : segs) {
+                copyWords(seg, i);
+                i += seg.length;
+            }
+        }
 
         // Assume maximum length then find real length
         // because recalculateWordsInUse assumes maintenance
         // or reduction in logical size
-        wordsInUse = words.length;
+        wordsInUse = capacity;
         recalculateWordsInUse();
-        sizeIsSticky = (words.length > 0 && words[words.length-1] == 0L); // heuristic
+        sizeIsSticky = (capacity > 0 && word(capacity-1) == 0L); // heuristic
         checkInvariants();
     }
 
@@ -1182,18 +1449,16 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
     public String toString() {
         checkInvariants();
 
-        int numBits = (wordsInUse > 128) ?
-                cardinality() : wordsInUse * BITS_PER_WORD;
-        StringBuilder b = new StringBuilder(6*numBits + 2);
+        StringBuilder b = new StringBuilder();
         b.append('{');
 
-        int i = nextSetBit(0);
+        long i = nextSetBit(0);
         if (i != -1) {
             b.append(i);
             while (true) {
                 if (++i < 0) break;
                 if ((i = nextSetBit(i)) < 0) break;
-                int endOfRun = nextClearBit(i);
+                long endOfRun = nextClearBit(i);
                 do { b.append(", ").append(i); }
                 while (++i != endOfRun);
             }
@@ -1214,12 +1479,12 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
      * terminal stream operation.  Otherwise, the result of the terminal
      * stream operation is undefined.
      *
-     * @return a stream of integers representing set indices
+     * @return a stream of longs representing set indices
      * @since 1.8
      */
-    public IntStream stream() {
-        class BitSetIterator implements PrimitiveIterator.OfInt {
-            int next = nextSetBit(0);
+    public LongStream stream() {
+        class BitSetIterator implements PrimitiveIterator.OfLong {
+            long next = nextSetBit(0);
 
             @Override
             public boolean hasNext() {
@@ -1227,9 +1492,9 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
             }
 
             @Override
-            public int nextInt() {
+            public long nextLong() {
                 if (next != -1) {
-                    int ret = next;
+                    long ret = next;
                     next = nextSetBit(next+1);
                     return ret;
                 } else {
@@ -1238,7 +1503,7 @@ public class BigBitSet implements Cloneable, java.io.Serializable {
             }
         }
 
-        return StreamSupport.intStream(
+        return StreamSupport.longStream(
                 () -> Spliterators.spliterator(
                         new BitSetIterator(), cardinality(),
                         Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED),
@@ -53,7 +53,7 @@ public class BigBloomFilter extends BigFilter {
     }
 
     public long buckets() {
-        return (long)filter_.size();
+        return filter_.size();
     }
 
     BigBitSet filter() {
@@ -109,14 +109,8 @@ public class BigBloomFilter extends BigFilter {
         return filter_.toString();
     }
 
-    int emptyBuckets() {
-        int n = 0;
-        for (int i = 0; i < buckets(); i++) {
-            if (!filter_.get(i)) {
-                n++;
-            }
-        }
-        return n;
+    long emptyBuckets() {
+        return buckets() - filter_.cardinality();
     }
 
     public void addAll(BigBloomFilter other) {
@@ -127,6 +121,27 @@ public class BigBloomFilter extends BigFilter {
         this.filter().or(other.filter());
     }
 
+    /**
+     * @return a new filter holding the union of this filter and {@code filters}, built in a
+     *         single pass over their bits
+     */
+    public BigBloomFilter merge(BigBloomFilter... filters) {
+        BigBitSet merged = (BigBitSet) filter_.clone();
+        if (filters == null) {
+            return new BigBloomFilter(hashCount, merged);
+        }
+
+        BigBitSet[] sets = new BigBitSet[filters.length];
+        for (int i = 0; i < filters.length; i++) {
+            if (this.getHashCount() != filters[i].getHashCount()) {
+                throw new IllegalArgumentException("Cannot merge filters of different sizes");
+            }
+            sets[i] = filters[i].filter();
+        }
+        merged.orAll(sets);
+        return new BigBloomFilter(hashCount, merged);
+    }
+
     /**
      * @return a BloomFilter that always returns a positive match, for testing
      */
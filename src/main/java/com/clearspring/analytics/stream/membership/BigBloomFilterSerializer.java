@@ -3,7 +3,10 @@ package com.clearspring.analytics.stream.membership;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.BitSet;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 public class BigBloomFilterSerializer implements ICompactSerializer<BigBloomFilter> {
 
@@ -18,4 +21,56 @@ public class BigBloomFilterSerializer implements ICompactSerializer<BigBloomFilt
         BigBitSet bs = BigBitSetSerializer.deserialize(dis);
         return new BigBloomFilter(hashes, bs);
     }
+
+    /**
+     * Writes the filter in the layout described in {@link LongChannels}, straight from the
+     * segments of its bit set, a large chunk of words at a time.
+     */
+    public void serialize(BigBloomFilter bf, WritableByteChannel channel) throws IOException {
+        long buckets = bf.buckets();
+        ByteBuffer buffer = LongChannels.buffer(buckets >>> 6);
+        LongChannels.writeHeader(channel, buffer, LongChannels.BIG_BLOOM_FILTER, bf.getHashCount(), buckets);
+        for (long[] segment : bf.filter().segments()) {
+            LongChannels.write(channel, buffer, segment, 0, segment.length);
+        }
+    }
+
+    public BigBloomFilter deserialize(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = LongChannels.buffer(0);
+        LongChannels.readHeader(channel, buffer, LongChannels.BIG_BLOOM_FILTER);
+        int hashes = buffer.getInt(0);
+        BigBitSet bs = new BigBitSet(checkBuckets(buffer.getLong(8)));
+        buffer = LongChannels.buffer(bs.size() >>> 6);
+        for (long[] segment : bs.segments()) {
+            LongChannels.read(channel, buffer, segment, 0, segment.length);
+        }
+        bs.wordsChanged();
+        return new BigBloomFilter(hashes, bs);
+    }
+
+    /**
+     * Reads the words by mapping the file one segment at a time rather than through a
+     * buffer. The channel is left positioned after the filter.
+     */
+    public BigBloomFilter deserialize(FileChannel channel) throws IOException {
+        ByteBuffer buffer = LongChannels.buffer(0);
+        LongChannels.readHeader(channel, buffer, LongChannels.BIG_BLOOM_FILTER);
+        int hashes = buffer.getInt(0);
+        BigBitSet bs = new BigBitSet(checkBuckets(buffer.getLong(8)));
+        long position = channel.position();
+        for (long[] segment : bs.segments()) {
+            LongChannels.map(channel, position, segment);
+            position += segment.length * 8L;
+        }
+        channel.position(position);
+        bs.wordsChanged();
+        return new BigBloomFilter(hashes, bs);
+    }
+
+    private static long checkBuckets(long buckets) throws IOException {
+        if (buckets < 0 || (buckets & 63) != 0) {
+            throw new IOException("Invalid number of buckets for a BigBloomFilter: " + buckets);
+        }
+        return buckets;
+    }
 }
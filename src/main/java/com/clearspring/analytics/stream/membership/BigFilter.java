@@ -47,7 +47,7 @@ public abstract class BigFilter {
     public abstract boolean isPresent(String key);
 
     // for testing
-    abstract int emptyBuckets();
+    abstract long emptyBuckets();
 
     // Murmur is faster than an SHA-based approach and provides as-good collision
     // resistance.  The combinatorial generation approach described in
@@ -21,11 +21,28 @@ package com.clearspring.analytics.stream.membership;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.LongBuffer;
 
 import java.util.BitSet;
 
+import com.clearspring.analytics.hash.HashStrategy;
+import com.clearspring.analytics.hash.MurmurHash;
+import com.clearspring.analytics.hash.StandardHashStrategy;
+
+/**
+ * With the default {@link HashStrategy} keys are hashed as they always were, with two 32 bit
+ * Murmur hashes of their bytes, see {@link #hash(byte[])}. Any other strategy's 64 bit hash
+ * supplies the two hashes in its low and high halves.
+ */
 public class BloomFilter extends Filter {
 
+    /**
+     * Number of keys whose buckets are computed before any of them is probed by the batch
+     * lookups.
+     */
+    private static final int BATCH_SIZE = 32;
+
     static ICompactSerializer<BloomFilter> serializer_ = new BloomFilterSerializer();
 
     public static ICompactSerializer<BloomFilter> serializer() {
@@ -33,24 +50,78 @@ public class BloomFilter extends Filter {
     }
 
     private BitSet filter_;
+    private final HashStrategy hash;
 
     public BloomFilter(int numElements, int bucketsPerElement) {
-        this(BloomCalculations.computeBestK(bucketsPerElement), new BitSet(numElements * bucketsPerElement + 20));
+        this(numElements, bucketsPerElement, StandardHashStrategy.defaultStrategy());
+    }
+
+    /**
+     * @param hash the hash keys are hashed with
+     */
+    public BloomFilter(int numElements, int bucketsPerElement, HashStrategy hash) {
+        this(BloomCalculations.computeBestK(bucketsPerElement), new BitSet(numElements * bucketsPerElement + 20), hash);
     }
 
     public BloomFilter(int numElements, double maxFalsePosProbability) {
+        this(numElements, maxFalsePosProbability, StandardHashStrategy.defaultStrategy());
+    }
+
+    /**
+     * @param hash the hash keys are hashed with
+     */
+    public BloomFilter(int numElements, double maxFalsePosProbability, HashStrategy hash) {
         BloomCalculations.BloomSpecification spec = BloomCalculations
                 .computeBucketsAndK(maxFalsePosProbability);
         filter_ = new BitSet(numElements * spec.bucketsPerElement + 20);
         hashCount = spec.K;
+        this.hash = hash;
     }
 
     /*
      * This version is only used by the deserializer.
      */
     BloomFilter(int hashes, BitSet filter) {
+        this(hashes, filter, StandardHashStrategy.defaultStrategy());
+    }
+
+    BloomFilter(int hashes, BitSet filter, HashStrategy hash) {
         hashCount = hashes;
         filter_ = filter;
+        this.hash = hash;
+    }
+
+    public HashStrategy getHashStrategy() {
+        return hash;
+    }
+
+    boolean hasDefaultHash() {
+        return isDefault(hash);
+    }
+
+    static boolean isDefault(HashStrategy hash) {
+        return hash.id() == StandardHashStrategy.defaultStrategy().id();
+    }
+
+    @Override
+    public int[] getHashBuckets(String key) {
+        return getHashBuckets(hash, key, hashCount, buckets());
+    }
+
+    @Override
+    public int[] getHashBuckets(byte[] key) {
+        return getHashBuckets(hash, key, hashCount, buckets());
+    }
+
+    /**
+     * @return the buckets of {@code key} under {@code hash}, as described for the class
+     */
+    static int[] getHashBuckets(HashStrategy hash, String key, int hashCount, int max) {
+        return isDefault(hash) ? Filter.getHashBuckets(key, hashCount, max) : Filter.getHashBuckets(hash.hash64(key), hashCount, max);
+    }
+
+    static int[] getHashBuckets(HashStrategy hash, byte[] key, int hashCount, int max) {
+        return isDefault(hash) ? Filter.getHashBuckets(key, hashCount, max) : Filter.getHashBuckets(hash.hash64(key, 0, key.length), hashCount, max);
     }
 
     public void clear() {
@@ -110,6 +181,94 @@ public class BloomFilter extends Filter {
         }
     }
 
+    /**
+     * @return the two Murmur hashes {@link Filter#getHashBuckets(String, int, int)} derives
+     *         the buckets of {@code key} from, the first in the low and the second in the high
+     *         32 bits, as taken by {@link #containsAll(long[], boolean[])} of a filter using
+     *         the default hash
+     * @see #hashKey(byte[])
+     */
+    public static long hash(byte[] key) {
+        int hash1 = MurmurHash.hash(key, key.length, 0);
+        int hash2 = MurmurHash.hash(key, key.length, hash1);
+        return (hash1 & 0xffffffffL) | ((long) hash2 << 32);
+    }
+
+    public static long hash(String key) {
+        try {
+            return hash(key.getBytes("UTF-16"));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the hash {@link #containsAll(long[], boolean[])} takes for {@code key}, under
+     *         the hash of this filter
+     */
+    public long hashKey(byte[] key) {
+        return hasDefaultHash() ? hash(key) : hash.hash64(key, 0, key.length);
+    }
+
+    /**
+     * Looks up many keys at once, given their {@link #hashKey(byte[])}. The buckets of a batch of
+     * keys are computed first and then probed one hash function at a time across the batch,
+     * so the memory accesses of different keys overlap instead of each lookup waiting on the
+     * previous one. Each result is the same as {@link #isPresent(byte[])} for that key.
+     *
+     * @param hashes the hashes of the keys
+     * @param out    receives whether each key may be present, at the same index
+     */
+    public void containsAll(long[] hashes, boolean[] out) {
+        if (out.length < hashes.length) {
+            throw new IllegalArgumentException("Output holds " + out.length + " results for " + hashes.length + " keys");
+        }
+        containsAll(hashes, hashes.length, out);
+    }
+
+    private void containsAll(long[] hashes, int count, boolean[] out) {
+        int max = buckets();
+        int[] buckets = new int[BATCH_SIZE * hashCount];
+        for (int base = 0; base < count; base += BATCH_SIZE) {
+            int n = Math.min(BATCH_SIZE, count - base);
+            for (int i = 0; i < n; i++) {
+                int hash1 = (int) hashes[base + i];
+                int hash2 = (int) (hashes[base + i] >>> 32);
+                for (int j = 0; j < hashCount; j++) {
+                    buckets[j * BATCH_SIZE + i] = Math.abs((hash1 + j * hash2) % max);
+                }
+                out[base + i] = true;
+            }
+            for (int j = 0; j < hashCount; j++) {
+                for (int i = 0; i < n; i++) {
+                    if (out[base + i] && !filter_.get(buckets[j * BATCH_SIZE + i])) {
+                        out[base + i] = false;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks up many keys at once, as {@link #containsAll(long[], boolean[])}.
+     *
+     * @param out bit i is set if {@code keys[i]} may be present and cleared otherwise
+     */
+    public void containsAll(byte[][] keys, BitSet out) {
+        long[] hashes = new long[Math.min(BATCH_SIZE * 64, keys.length)];
+        boolean[] present = new boolean[hashes.length];
+        for (int base = 0; base < keys.length; base += hashes.length) {
+            int n = Math.min(hashes.length, keys.length - base);
+            for (int i = 0; i < n; i++) {
+                hashes[i] = hashKey(keys[base + i]);
+            }
+            containsAll(hashes, n, present);
+            for (int i = 0; i < n; i++) {
+                out.set(base + i, present[i]);
+            }
+        }
+    }
+
     public String toString() {
         return filter_.toString();
     }
@@ -132,26 +291,69 @@ public class BloomFilter extends Filter {
         if (this.getHashCount() != other.getHashCount()) {
             throw new IllegalArgumentException("Cannot merge filters of different sizes");
         }
+        if (this.hash.id() != other.hash.id()) {
+            throw new IllegalArgumentException("Cannot merge filters using different hashes");
+        }
 
         this.filter().or(other.filter());
     }
 
+    /**
+     * ORs all the filters in one parallel pass over chunks of their words, rather than one
+     * pass per filter. Each chunk of the inputs is copied out of its BitSet on its own, so
+     * only the merged words are held in full.
+     */
     public Filter merge(Filter... filters) {
-        BloomFilter merged = new BloomFilter(this.getHashCount(), (BitSet) this.filter().clone());
-
         if (filters == null) {
-            return merged;
+            return new BloomFilter(this.getHashCount(), (BitSet) this.filter().clone(), hash);
         }
 
-        for (Filter filter : filters) {
-            if (!(filter instanceof BloomFilter)) {
+        final BitSet[] sets = new BitSet[filters.length + 1];
+        sets[0] = filter_;
+        int buckets = buckets();
+        for (int i = 0; i < filters.length; i++) {
+            if (!(filters[i] instanceof BloomFilter)) {
                 throw new IllegalArgumentException("Cannot merge filters of different class");
             }
-            BloomFilter bf = (BloomFilter) filter;
-            merged.addAll(bf);
+            BloomFilter bf = (BloomFilter) filters[i];
+            if (this.getHashCount() != bf.getHashCount()) {
+                throw new IllegalArgumentException("Cannot merge filters of different sizes");
+            }
+            if (this.hash.id() != bf.hash.id()) {
+                throw new IllegalArgumentException("Cannot merge filters using different hashes");
+            }
+            sets[i + 1] = bf.filter();
+            buckets = Math.max(buckets, bf.buckets());
         }
 
-        return merged;
+        final long[] words = new long[buckets >>> 6];
+        ParallelChunks.run(ParallelChunks.chunks(words.length, ParallelChunks.CHUNK_WORDS), c -> {
+            int from = (int) c << ParallelChunks.CHUNK_SHIFT;
+            int to = Math.min(words.length, from + ParallelChunks.CHUNK_WORDS);
+            for (BitSet set : sets) {
+                long[] chunk = set.get(from << 6, to << 6).toLongArray();
+                for (int i = 0; i < chunk.length; i++) {
+                    words[from + i] |= chunk[i];
+                }
+            }
+            return 0;
+        });
+        return new BloomFilter(this.getHashCount(), bitSet(LongBuffer.wrap(words), buckets), hash);
+    }
+
+    /**
+     * @return a BitSet of {@code buckets} bits holding {@code words}. {@link BitSet#valueOf(LongBuffer)}
+     *         drops trailing zero words, which would change the number of buckets, so those
+     *         are copied once more into a BitSet of the full size.
+     */
+    static BitSet bitSet(LongBuffer words, int buckets) {
+        BitSet bs = BitSet.valueOf(words);
+        if (bs.size() == buckets) {
+            return bs;
+        }
+        BitSet sized = new BitSet(buckets);
+        sized.or(bs);
+        return sized;
     }
 
     /**
@@ -3,19 +3,118 @@ package com.clearspring.analytics.stream.membership;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.BitSet;
 
+import com.clearspring.analytics.hash.HashStrategies;
+import com.clearspring.analytics.hash.HashStrategy;
+import com.clearspring.analytics.hash.StandardHashStrategy;
+
 public class BloomFilterSerializer implements ICompactSerializer<BloomFilter> {
 
+    /**
+     * Written in place of the hash count, which is never negative, when the filter does not
+     * use the default hash. The hash id and then the hash count follow.
+     */
+    private static final int HASH_MARKER = -1;
+
     public void serialize(BloomFilter bf, DataOutputStream dos)
             throws IOException {
+        if (!bf.hasDefaultHash()) {
+            dos.writeInt(HASH_MARKER);
+            dos.writeInt(bf.getHashStrategy().id());
+        }
         dos.writeInt(bf.getHashCount());
         BitSetSerializer.serialize(bf.filter(), dos);
     }
 
     public BloomFilter deserialize(DataInputStream dis) throws IOException {
         int hashes = dis.readInt();
+        HashStrategy hash = StandardHashStrategy.defaultStrategy();
+        if (hashes == HASH_MARKER) {
+            hash = HashStrategies.forId(dis.readInt());
+            hashes = dis.readInt();
+        }
         BitSet bs = BitSetSerializer.deserialize(dis);
-        return new BloomFilter(hashes, bs);
+        return new BloomFilter(hashes, bs, hash);
+    }
+
+    /**
+     * Writes the filter in the layout described in {@link LongChannels}, a large chunk of
+     * words at a time. Only one chunk of the words is copied out of the filter at once.
+     */
+    public void serialize(BloomFilter bf, WritableByteChannel channel) throws IOException {
+        BitSet filter = bf.filter();
+        int buckets = bf.buckets();
+        int words = buckets >>> 6;
+        ByteBuffer buffer = LongChannels.buffer(words);
+        if (bf.hasDefaultHash()) {
+            LongChannels.writeHeader(channel, buffer, LongChannels.BLOOM_FILTER, bf.getHashCount(), buckets);
+        } else {
+            LongChannels.writeHeader(channel, buffer, LongChannels.HASHED_BLOOM_FILTER, bf.getHashCount(), buckets);
+            LongChannels.write(channel, buffer, new long[]{bf.getHashStrategy().id()}, 0, 1);
+        }
+        int chunk = buffer.capacity() / 8;
+        for (int from = 0; from < words; from += chunk) {
+            int n = Math.min(chunk, words - from);
+            // get() drops trailing zero words, which are written as padding
+            long[] part = filter.get(from << 6, (from + n) << 6).toLongArray();
+            LongChannels.write(channel, buffer, part, 0, part.length);
+            if (part.length < n) {
+                LongChannels.writeZeros(channel, buffer, n - part.length);
+            }
+        }
+    }
+
+    public BloomFilter deserialize(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = LongChannels.buffer(0);
+        LongChannels.readHeader(channel, buffer);
+        int hashes = buffer.getInt(0);
+        int buckets = checkBuckets(buffer.getLong(8));
+        HashStrategy hash = readHash(channel, buffer, buffer.getInt(4));
+        long[] words = new long[buckets >>> 6];
+        LongChannels.read(channel, LongChannels.buffer(words.length), words, 0, words.length);
+        return new BloomFilter(hashes, BloomFilter.bitSet(LongBuffer.wrap(words), buckets), hash);
+    }
+
+    /**
+     * Reads the words by mapping the file rather than through a buffer, building the BitSet
+     * straight from the mapping. The channel is left positioned after the filter.
+     */
+    public BloomFilter deserialize(FileChannel channel) throws IOException {
+        ByteBuffer buffer = LongChannels.buffer(0);
+        LongChannels.readHeader(channel, buffer);
+        int hashes = buffer.getInt(0);
+        int buckets = checkBuckets(buffer.getLong(8));
+        HashStrategy hash = readHash(channel, buffer, buffer.getInt(4));
+        int words = buckets >>> 6;
+        LongBuffer mapped = LongChannels.map(channel, channel.position(), words);
+        channel.position(channel.position() + words * 8L);
+        return new BloomFilter(hashes, BloomFilter.bitSet(mapped, buckets), hash);
+    }
+
+    /**
+     * @return the hash of a filter with the given layout, reading its id if it follows the
+     *         header
+     */
+    private static HashStrategy readHash(ReadableByteChannel channel, ByteBuffer buffer, int layout) throws IOException {
+        if (layout == LongChannels.BLOOM_FILTER) {
+            return StandardHashStrategy.defaultStrategy();
+        }
+        LongChannels.checkLayout(layout, LongChannels.HASHED_BLOOM_FILTER);
+        long[] id = new long[1];
+        LongChannels.read(channel, buffer, id, 0, 1);
+        return HashStrategies.forId((int) id[0]);
+    }
+
+    private static int checkBuckets(long buckets) throws IOException {
+        if (buckets < 0 || buckets > Integer.MAX_VALUE || (buckets & 63) != 0) {
+            throw new IOException("Invalid number of buckets for a BloomFilter: " + buckets);
+        }
+        return (int) buckets;
     }
 }
@@ -0,0 +1,1208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.membership;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A compressed alternative to {@link BigBitSet} for sparse bitmaps over a 64 bit index space.
+ * <p/>
+ * Bits are grouped by their high 48 bits; each group of 2^16 bits is held in a container that
+ * is either a sorted array of the set positions (sparse groups), a plain 8KB bitmap (dense
+ * groups) or a list of runs (clustered groups). Memory use is therefore proportional to the
+ * number of set bits rather than to the largest index. The layout follows Roaring bitmaps,
+ * see "Consistently faster and smaller compressed bitmaps with Roaring", Lemire et al.
+ * https://arxiv.org/abs/1603.06549
+ * <p/>
+ * {@link #and}, {@link #or}, {@link #xor} and {@link #andNot} work container by container and
+ * never expand the whole bitmap. Call {@link #runOptimize()} after bulk loading to convert
+ * containers to runs where that is smaller.
+ * <p/>
+ * Like {@link BigBitSet} this class is not safe for multithreaded use without external
+ * synchronization.
+ */
+public class CompressedBigBitSet implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = -2486371256311843621L;
+
+    static final int CONTAINER_BITS = 16;
+    static final int CONTAINER_SIZE = 1 << CONTAINER_BITS;
+    private static final long LOW_MASK = CONTAINER_SIZE - 1;
+
+    /**
+     * Largest cardinality kept as an array container; beyond it a bitmap is smaller.
+     */
+    static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = CONTAINER_SIZE / 64;
+    private static final int BITMAP_BYTES = BITMAP_WORDS * 8;
+
+    private long[] keys;
+    private Container[] containers;
+    private int size;
+
+    public CompressedBigBitSet() {
+        keys = new long[4];
+        containers = new Container[4];
+    }
+
+    /**
+     * Returns a new bit set containing all the bits in the given little-endian long array,
+     * as in {@link BigBitSet#valueOf(long[])}.
+     */
+    public static CompressedBigBitSet valueOf(long[] longs) {
+        CompressedBigBitSet result = new CompressedBigBitSet();
+        for (int from = 0; from < longs.length; from += BITMAP_WORDS) {
+            long[] words = new long[BITMAP_WORDS];
+            System.arraycopy(longs, from, words, 0, Math.min(BITMAP_WORDS, longs.length - from));
+            BitmapContainer bitmap = new BitmapContainer(words);
+            if (bitmap.cardinality() > 0) {
+                result.append(from / BITMAP_WORDS, bitmap.runOptimize());
+            }
+        }
+        return result;
+    }
+
+    public static CompressedBigBitSet valueOf(BigBitSet set) {
+        CompressedBigBitSet result = new CompressedBigBitSet();
+        long wordsInUse = set.wordsInUse();
+        for (long from = 0; from < wordsInUse; from += BITMAP_WORDS) {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < BITMAP_WORDS && from + i < wordsInUse; i++) {
+                words[i] = set.word(from + i);
+            }
+            BitmapContainer bitmap = new BitmapContainer(words);
+            if (bitmap.cardinality() > 0) {
+                result.append(from / BITMAP_WORDS, bitmap.runOptimize());
+            }
+        }
+        return result;
+    }
+
+    private static long highBits(long bitIndex) {
+        return bitIndex >>> CONTAINER_BITS;
+    }
+
+    private static int lowBits(long bitIndex) {
+        return (int) (bitIndex & LOW_MASK);
+    }
+
+    private static void checkIndex(long bitIndex) {
+        if (bitIndex < 0) {
+            throw new IndexOutOfBoundsException("bitIndex < 0: " + bitIndex);
+        }
+    }
+
+    private static void checkRange(long fromIndex, long toIndex) {
+        if (fromIndex < 0) {
+            throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        }
+        if (toIndex < 0) {
+            throw new IndexOutOfBoundsException("toIndex < 0: " + toIndex);
+        }
+        if (fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + " > toIndex: " + toIndex);
+        }
+    }
+
+    private int findKey(long key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void ensureCapacity(int required) {
+        if (keys.length < required) {
+            int newLength = Math.max(required, keys.length * 2);
+            keys = Arrays.copyOf(keys, newLength);
+            containers = Arrays.copyOf(containers, newLength);
+        }
+    }
+
+    private void append(long key, Container container) {
+        ensureCapacity(size + 1);
+        keys[size] = key;
+        containers[size] = container;
+        size++;
+    }
+
+    private void insertAt(int pos, long key, Container container) {
+        ensureCapacity(size + 1);
+        System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+        System.arraycopy(containers, pos, containers, pos + 1, size - pos);
+        keys[pos] = key;
+        containers[pos] = container;
+        size++;
+    }
+
+    private void removeAt(int pos) {
+        System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+        System.arraycopy(containers, pos + 1, containers, pos, size - pos - 1);
+        size--;
+        containers[size] = null;
+    }
+
+    private void trimToSize() {
+        if (keys.length != size) {
+            keys = Arrays.copyOf(keys, size);
+            containers = Arrays.copyOf(containers, size);
+        }
+    }
+
+    /**
+     * Sets the bit at the specified index to {@code true}.
+     */
+    public void set(long bitIndex) {
+        checkIndex(bitIndex);
+        long key = highBits(bitIndex);
+        int pos = findKey(key);
+        if (pos >= 0) {
+            containers[pos] = containers[pos].add(lowBits(bitIndex));
+        } else {
+            insertAt(-pos - 1, key, new ArrayContainer().add(lowBits(bitIndex)));
+        }
+    }
+
+    public void set(long bitIndex, boolean value) {
+        if (value) {
+            set(bitIndex);
+        } else {
+            clear(bitIndex);
+        }
+    }
+
+    /**
+     * Sets the bits from {@code fromIndex} (inclusive) to {@code toIndex} (exclusive).
+     * Fully covered groups are stored as a single run.
+     */
+    public void set(long fromIndex, long toIndex) {
+        checkRange(fromIndex, toIndex);
+        if (fromIndex == toIndex) {
+            return;
+        }
+        long firstKey = highBits(fromIndex);
+        long lastKey = highBits(toIndex - 1);
+        for (long key = firstKey; key <= lastKey; key++) {
+            int from = key == firstKey ? lowBits(fromIndex) : 0;
+            int to = key == lastKey ? lowBits(toIndex - 1) + 1 : CONTAINER_SIZE;
+            int pos = findKey(key);
+            Container container;
+            if (from == 0 && to == CONTAINER_SIZE) {
+                container = RunContainer.full();
+            } else if (pos >= 0) {
+                container = containers[pos].addRange(from, to);
+            } else {
+                container = new ArrayContainer().addRange(from, to);
+            }
+            if (pos >= 0) {
+                containers[pos] = container;
+            } else {
+                insertAt(-pos - 1, key, container);
+            }
+        }
+    }
+
+    /**
+     * Sets the bit at the specified index to {@code false}.
+     */
+    public void clear(long bitIndex) {
+        checkIndex(bitIndex);
+        int pos = findKey(highBits(bitIndex));
+        if (pos >= 0) {
+            Container container = containers[pos].remove(lowBits(bitIndex));
+            if (container.cardinality() == 0) {
+                removeAt(pos);
+            } else {
+                containers[pos] = container;
+            }
+        }
+    }
+
+    /**
+     * Sets all of the bits in this bit set to {@code false}.
+     */
+    public void clear() {
+        Arrays.fill(containers, 0, size, null);
+        size = 0;
+    }
+
+    public boolean get(long bitIndex) {
+        checkIndex(bitIndex);
+        int pos = findKey(highBits(bitIndex));
+        return pos >= 0 && containers[pos].contains(lowBits(bitIndex));
+    }
+
+    /**
+     * Returns the index of the first bit that is set to {@code true} that occurs on or after
+     * the specified starting index, or -1 if there is no such bit.
+     */
+    public long nextSetBit(long fromIndex) {
+        checkIndex(fromIndex);
+        long key = highBits(fromIndex);
+        int pos = findKey(key);
+        if (pos >= 0) {
+            int next = containers[pos].nextSetBit(lowBits(fromIndex));
+            if (next >= 0) {
+                return (key << CONTAINER_BITS) | next;
+            }
+            pos++;
+        } else {
+            pos = -pos - 1;
+        }
+        if (pos < size) {
+            return (keys[pos] << CONTAINER_BITS) | containers[pos].nextSetBit(0);
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the highest set bit plus one, or zero if no bits are set.
+     */
+    public long length() {
+        if (size == 0) {
+            return 0;
+        }
+        return ((keys[size - 1] << CONTAINER_BITS) | containers[size - 1].last()) + 1;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long cardinality() {
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += containers[i].cardinality();
+        }
+        return sum;
+    }
+
+    /**
+     * Returns an estimate of the heap used by the containers, in bytes.
+     */
+    public long sizeInBytes() {
+        long sum = (long) keys.length * 12;
+        for (int i = 0; i < size; i++) {
+            sum += containers[i].sizeInBytes();
+        }
+        return sum;
+    }
+
+    /**
+     * Converts every container to its most compact representation.
+     */
+    public void runOptimize() {
+        for (int i = 0; i < size; i++) {
+            containers[i] = containers[i].runOptimize();
+        }
+    }
+
+    public void and(CompressedBigBitSet set) {
+        if (this == set) {
+            return;
+        }
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < size && j < set.size) {
+            if (keys[i] < set.keys[j]) {
+                i++;
+            } else if (keys[i] > set.keys[j]) {
+                j++;
+            } else {
+                Container container = and(containers[i], set.containers[j]);
+                if (container.cardinality() > 0) {
+                    keys[n] = keys[i];
+                    containers[n] = container;
+                    n++;
+                }
+                i++;
+                j++;
+            }
+        }
+        Arrays.fill(containers, n, size, null);
+        size = n;
+    }
+
+    public void or(CompressedBigBitSet set) {
+        if (this == set) {
+            return;
+        }
+        long[] newKeys = new long[size + set.size];
+        Container[] newContainers = new Container[size + set.size];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < size || j < set.size) {
+            if (j == set.size || (i < size && keys[i] < set.keys[j])) {
+                newKeys[n] = keys[i];
+                newContainers[n++] = containers[i++];
+            } else if (i == size || keys[i] > set.keys[j]) {
+                newKeys[n] = set.keys[j];
+                newContainers[n++] = set.containers[j++].copy();
+            } else {
+                newKeys[n] = keys[i];
+                newContainers[n++] = or(containers[i++], set.containers[j++]);
+            }
+        }
+        keys = newKeys;
+        containers = newContainers;
+        size = n;
+    }
+
+    public void xor(CompressedBigBitSet set) {
+        if (this == set) {
+            clear();
+            return;
+        }
+        long[] newKeys = new long[size + set.size];
+        Container[] newContainers = new Container[size + set.size];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < size || j < set.size) {
+            if (j == set.size || (i < size && keys[i] < set.keys[j])) {
+                newKeys[n] = keys[i];
+                newContainers[n++] = containers[i++];
+            } else if (i == size || keys[i] > set.keys[j]) {
+                newKeys[n] = set.keys[j];
+                newContainers[n++] = set.containers[j++].copy();
+            } else {
+                Container container = xor(containers[i], set.containers[j]);
+                if (container.cardinality() > 0) {
+                    newKeys[n] = keys[i];
+                    newContainers[n++] = container;
+                }
+                i++;
+                j++;
+            }
+        }
+        keys = newKeys;
+        containers = newContainers;
+        size = n;
+    }
+
+    public void andNot(CompressedBigBitSet set) {
+        if (this == set) {
+            clear();
+            return;
+        }
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < size) {
+            while (j < set.size && set.keys[j] < keys[i]) {
+                j++;
+            }
+            Container container = containers[i];
+            if (j < set.size && set.keys[j] == keys[i]) {
+                container = andNot(container, set.containers[j]);
+            }
+            if (container.cardinality() > 0) {
+                keys[n] = keys[i];
+                containers[n] = container;
+                n++;
+            }
+            i++;
+        }
+        Arrays.fill(containers, n, size, null);
+        size = n;
+    }
+
+    public boolean intersects(CompressedBigBitSet set) {
+        int i = 0;
+        int j = 0;
+        while (i < size && j < set.size) {
+            if (keys[i] < set.keys[j]) {
+                i++;
+            } else if (keys[i] > set.keys[j]) {
+                j++;
+            } else {
+                if (and(containers[i], set.containers[j]).cardinality() > 0) {
+                    return true;
+                }
+                i++;
+                j++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a stream of the indices of the set bits, in increasing order.
+     */
+    public LongStream stream() {
+        class BitSetIterator implements PrimitiveIterator.OfLong {
+            long next = nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return next != -1;
+            }
+
+            @Override
+            public long nextLong() {
+                if (next == -1) {
+                    throw new NoSuchElementException();
+                }
+                long ret = next;
+                next = ret == Long.MAX_VALUE ? -1 : nextSetBit(ret + 1);
+                return ret;
+            }
+        }
+
+        return StreamSupport.longStream(
+                () -> Spliterators.spliterator(
+                        new BitSetIterator(), cardinality(),
+                        Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED),
+                Spliterator.SIZED | Spliterator.SUBSIZED |
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED,
+                false);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CompressedBigBitSet)) {
+            return false;
+        }
+        CompressedBigBitSet set = (CompressedBigBitSet) obj;
+        if (size != set.size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (keys[i] != set.keys[i] || !containers[i].sameBits(set.containers[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1234;
+        for (int i = 0; i < size; i++) {
+            h = 31 * h + (int) (keys[i] ^ (keys[i] >>> 32));
+            Container container = containers[i];
+            for (int v = container.nextSetBit(0); v >= 0; v = container.nextSetBit(v + 1)) {
+                h = 31 * h + v;
+            }
+        }
+        return h;
+    }
+
+    @Override
+    public CompressedBigBitSet clone() {
+        try {
+            CompressedBigBitSet result = (CompressedBigBitSet) super.clone();
+            result.keys = Arrays.copyOf(keys, Math.max(size, 1));
+            result.containers = new Container[result.keys.length];
+            for (int i = 0; i < size; i++) {
+                result.containers[i] = containers[i].copy();
+            }
+            return result;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+    }
+
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        trimToSize();
+        s.defaultWriteObject();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("{");
+        for (long i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+            if (b.length() > 1) {
+                b.append(", ");
+            }
+            b.append(i);
+        }
+        return b.append('}').toString();
+    }
+
+    // Binary operations between containers. None of them modify their arguments.
+
+    static Container and(Container a, Container b) {
+        if (a instanceof ArrayContainer) {
+            return ((ArrayContainer) a).filter(b, true);
+        }
+        if (b instanceof ArrayContainer) {
+            return ((ArrayContainer) b).filter(a, true);
+        }
+        long[] x = a.asBitmap().words;
+        long[] y = b.asBitmap().words;
+        long[] words = new long[BITMAP_WORDS];
+        for (int k = 0; k < BITMAP_WORDS; k++) {
+            words[k] = x[k] & y[k];
+        }
+        return new BitmapContainer(words).shrink();
+    }
+
+    static Container or(Container a, Container b) {
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer
+            && a.cardinality() + b.cardinality() <= ARRAY_MAX) {
+            return ((ArrayContainer) a).merge((ArrayContainer) b, false);
+        }
+        BitmapContainer result = a.toBitmap();
+        result.orInPlace(b);
+        return result.shrink();
+    }
+
+    static Container xor(Container a, Container b) {
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+            ArrayContainer merged = ((ArrayContainer) a).merge((ArrayContainer) b, true);
+            return merged.cardinality() > ARRAY_MAX ? merged.toBitmap() : merged;
+        }
+        BitmapContainer result = a.toBitmap();
+        result.xorInPlace(b);
+        return result.shrink();
+    }
+
+    static Container andNot(Container a, Container b) {
+        if (a instanceof ArrayContainer) {
+            return ((ArrayContainer) a).filter(b, false);
+        }
+        BitmapContainer result = a.toBitmap();
+        result.andNotInPlace(b);
+        return result.shrink();
+    }
+
+    /**
+     * Holds the set positions of one group of 2^16 bits. Values are passed as ints in
+     * {@code [0, 65536)}. Mutators return the container that should replace this one.
+     */
+    abstract static class Container implements Cloneable, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        abstract Container add(int x);
+
+        abstract Container remove(int x);
+
+        abstract boolean contains(int x);
+
+        abstract int cardinality();
+
+        /**
+         * @return the first set position at or after {@code from}, or -1
+         */
+        abstract int nextSetBit(int from);
+
+        abstract int last();
+
+        abstract Container addRange(int from, int to);
+
+        /**
+         * @return a new bitmap holding the same bits
+         */
+        abstract BitmapContainer toBitmap();
+
+        abstract int numberOfRuns();
+
+        abstract int sizeInBytes();
+
+        abstract Container copy();
+
+        /**
+         * @return this container as a bitmap, without copying if it already is one
+         */
+        BitmapContainer asBitmap() {
+            return toBitmap();
+        }
+
+        /**
+         * @return the smallest of the array, bitmap or run representation of these bits
+         */
+        Container runOptimize() {
+            int card = cardinality();
+            int runBytes = RunContainer.sizeInBytes(numberOfRuns());
+            int otherBytes = card <= ARRAY_MAX ? ArrayContainer.sizeInBytes(card) : BITMAP_BYTES;
+            if (runBytes < otherBytes) {
+                return this instanceof RunContainer ? this : RunContainer.of(this);
+            }
+            if (card <= ARRAY_MAX) {
+                return this instanceof ArrayContainer ? this : ArrayContainer.of(this);
+            }
+            return this instanceof BitmapContainer ? this : toBitmap();
+        }
+
+        boolean sameBits(Container other) {
+            if (cardinality() != other.cardinality()) {
+                return false;
+            }
+            int a = nextSetBit(0);
+            int b = other.nextSetBit(0);
+            while (a >= 0) {
+                if (a != b) {
+                    return false;
+                }
+                a = nextSetBit(a + 1);
+                b = other.nextSetBit(b + 1);
+            }
+            return b < 0;
+        }
+    }
+
+    static final class ArrayContainer extends Container {
+
+        private static final long serialVersionUID = 1L;
+
+        char[] content;
+        int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] content, int cardinality) {
+            this.content = content;
+            this.cardinality = cardinality;
+        }
+
+        static int sizeInBytes(int cardinality) {
+            return 2 * cardinality;
+        }
+
+        static ArrayContainer of(Container container) {
+            char[] content = new char[container.cardinality()];
+            int n = 0;
+            for (int v = container.nextSetBit(0); v >= 0; v = container.nextSetBit(v + 1)) {
+                content[n++] = (char) v;
+            }
+            return new ArrayContainer(content, n);
+        }
+
+        private int indexOf(int x) {
+            return Arrays.binarySearch(content, 0, cardinality, (char) x);
+        }
+
+        @Override
+        Container add(int x) {
+            int pos = indexOf(x);
+            if (pos >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX) {
+                return toBitmap().add(x);
+            }
+            pos = -pos - 1;
+            if (cardinality == content.length) {
+                content = Arrays.copyOf(content, Math.min(ARRAY_MAX, content.length * 2));
+            }
+            System.arraycopy(content, pos, content, pos + 1, cardinality - pos);
+            content[pos] = (char) x;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(int x) {
+            int pos = indexOf(x);
+            if (pos >= 0) {
+                System.arraycopy(content, pos + 1, content, pos, cardinality - pos - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(int x) {
+            return indexOf(x) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int nextSetBit(int from) {
+            if (from >= CONTAINER_SIZE) {
+                return -1;
+            }
+            int pos = indexOf(from);
+            if (pos < 0) {
+                pos = -pos - 1;
+            }
+            return pos < cardinality ? content[pos] : -1;
+        }
+
+        @Override
+        int last() {
+            return cardinality == 0 ? -1 : content[cardinality - 1];
+        }
+
+        @Override
+        Container addRange(int from, int to) {
+            BitmapContainer bitmap = toBitmap();
+            bitmap.addRange(from, to);
+            return bitmap.runOptimize();
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                words[content[i] >>> 6] |= 1L << content[i];
+            }
+            return new BitmapContainer(words, cardinality);
+        }
+
+        @Override
+        int numberOfRuns() {
+            int runs = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (i == 0 || content[i] != content[i - 1] + 1) {
+                    runs++;
+                }
+            }
+            return runs;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return sizeInBytes(content.length);
+        }
+
+        /**
+         * @return the values of this array that are (or, with {@code keep} false, are not)
+         * contained in {@code other}
+         */
+        ArrayContainer filter(Container other, boolean keep) {
+            char[] result = new char[cardinality];
+            int n = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(content[i]) == keep) {
+                    result[n++] = content[i];
+                }
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        /**
+         * @return the union, or with {@code exclusive} the symmetric difference, of both arrays
+         */
+        ArrayContainer merge(ArrayContainer other, boolean exclusive) {
+            char[] result = new char[cardinality + other.cardinality];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < cardinality && j < other.cardinality) {
+                char a = content[i];
+                char b = other.content[j];
+                if (a < b) {
+                    result[n++] = a;
+                    i++;
+                } else if (a > b) {
+                    result[n++] = b;
+                    j++;
+                } else {
+                    if (!exclusive) {
+                        result[n++] = a;
+                    }
+                    i++;
+                    j++;
+                }
+            }
+            while (i < cardinality) {
+                result[n++] = content[i++];
+            }
+            while (j < other.cardinality) {
+                result[n++] = other.content[j++];
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        ArrayContainer copy() {
+            return new ArrayContainer(Arrays.copyOf(content, Math.max(cardinality, 1)), cardinality);
+        }
+    }
+
+    static final class BitmapContainer extends Container {
+
+        private static final long serialVersionUID = 1L;
+
+        final long[] words;
+        int cardinality;
+
+        BitmapContainer(long[] words) {
+            this(words, -1);
+            computeCardinality();
+        }
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        private void computeCardinality() {
+            int sum = 0;
+            for (long word : words) {
+                sum += Long.bitCount(word);
+            }
+            cardinality = sum;
+        }
+
+        @Override
+        Container add(int x) {
+            long mask = 1L << x;
+            long word = words[x >>> 6];
+            if ((word & mask) == 0) {
+                words[x >>> 6] = word | mask;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(int x) {
+            long mask = 1L << x;
+            long word = words[x >>> 6];
+            if ((word & mask) != 0) {
+                words[x >>> 6] = word & ~mask;
+                cardinality--;
+                if (cardinality <= ARRAY_MAX) {
+                    return ArrayContainer.of(this);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(int x) {
+            return (words[x >>> 6] & (1L << x)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int nextSetBit(int from) {
+            if (from >= CONTAINER_SIZE) {
+                return -1;
+            }
+            int u = from >>> 6;
+            long word = words[u] & (-1L << from);
+            while (true) {
+                if (word != 0) {
+                    return (u << 6) + Long.numberOfTrailingZeros(word);
+                }
+                if (++u == BITMAP_WORDS) {
+                    return -1;
+                }
+                word = words[u];
+            }
+        }
+
+        int nextClearBit(int from) {
+            if (from >= CONTAINER_SIZE) {
+                return CONTAINER_SIZE;
+            }
+            int u = from >>> 6;
+            long word = ~words[u] & (-1L << from);
+            while (true) {
+                if (word != 0) {
+                    return (u << 6) + Long.numberOfTrailingZeros(word);
+                }
+                if (++u == BITMAP_WORDS) {
+                    return CONTAINER_SIZE;
+                }
+                word = ~words[u];
+            }
+        }
+
+        @Override
+        int last() {
+            for (int u = BITMAP_WORDS - 1; u >= 0; u--) {
+                if (words[u] != 0) {
+                    return (u << 6) + 63 - Long.numberOfLeadingZeros(words[u]);
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Container addRange(int from, int to) {
+            setRange(words, from, to);
+            computeCardinality();
+            return this;
+        }
+
+        static void setRange(long[] words, int from, int to) {
+            int startWord = from >>> 6;
+            int endWord = (to - 1) >>> 6;
+            long firstWordMask = -1L << from;
+            long lastWordMask = -1L >>> -to;
+            if (startWord == endWord) {
+                words[startWord] |= firstWordMask & lastWordMask;
+            } else {
+                words[startWord] |= firstWordMask;
+                for (int u = startWord + 1; u < endWord; u++) {
+                    words[u] = -1L;
+                }
+                words[endWord] |= lastWordMask;
+            }
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        BitmapContainer asBitmap() {
+            return this;
+        }
+
+        @Override
+        int numberOfRuns() {
+            int runs = 0;
+            long previous = 0;
+            for (long word : words) {
+                // a run starts wherever a set bit follows a clear one
+                runs += Long.bitCount(word & ~((word << 1) | (previous >>> 63)));
+                previous = word;
+            }
+            return runs;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return BITMAP_BYTES;
+        }
+
+        Container shrink() {
+            return cardinality <= ARRAY_MAX ? ArrayContainer.of(this) : this;
+        }
+
+        void orInPlace(Container other) {
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    words[array.content[i] >>> 6] |= 1L << array.content[i];
+                }
+            } else if (other instanceof RunContainer) {
+                RunContainer run = (RunContainer) other;
+                for (int r = 0; r < run.nbrruns; r++) {
+                    setRange(words, run.start(r), run.end(r) + 1);
+                }
+            } else {
+                long[] otherWords = ((BitmapContainer) other).words;
+                for (int u = 0; u < BITMAP_WORDS; u++) {
+                    words[u] |= otherWords[u];
+                }
+            }
+            computeCardinality();
+        }
+
+        void xorInPlace(Container other) {
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    words[array.content[i] >>> 6] ^= 1L << array.content[i];
+                }
+            } else {
+                long[] otherWords = other.asBitmap().words;
+                for (int u = 0; u < BITMAP_WORDS; u++) {
+                    words[u] ^= otherWords[u];
+                }
+            }
+            computeCardinality();
+        }
+
+        void andNotInPlace(Container other) {
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    words[array.content[i] >>> 6] &= ~(1L << array.content[i]);
+                }
+            } else {
+                long[] otherWords = other.asBitmap().words;
+                for (int u = 0; u < BITMAP_WORDS; u++) {
+                    words[u] &= ~otherWords[u];
+                }
+            }
+            computeCardinality();
+        }
+
+        @Override
+        BitmapContainer copy() {
+            return toBitmap();
+        }
+    }
+
+    static final class RunContainer extends Container {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Pairs of (start, length - 1), sorted and non-adjacent.
+         */
+        final char[] runs;
+        final int nbrruns;
+        final int cardinality;
+
+        RunContainer(char[] runs, int nbrruns) {
+            this.runs = runs;
+            this.nbrruns = nbrruns;
+            int sum = 0;
+            for (int r = 0; r < nbrruns; r++) {
+                sum += runs[2 * r + 1] + 1;
+            }
+            this.cardinality = sum;
+        }
+
+        static RunContainer full() {
+            return new RunContainer(new char[]{0, (char) (CONTAINER_SIZE - 1)}, 1);
+        }
+
+        static int sizeInBytes(int runs) {
+            return 2 + 4 * runs;
+        }
+
+        static RunContainer of(Container container) {
+            int nbrruns = container.numberOfRuns();
+            char[] runs = new char[2 * nbrruns];
+            BitmapContainer bitmap = container.asBitmap();
+            int r = 0;
+            for (int start = bitmap.nextSetBit(0); start >= 0; ) {
+                int end = bitmap.nextClearBit(start);
+                runs[2 * r] = (char) start;
+                runs[2 * r + 1] = (char) (end - start - 1);
+                r++;
+                start = bitmap.nextSetBit(end);
+            }
+            return new RunContainer(runs, nbrruns);
+        }
+
+        int start(int run) {
+            return runs[2 * run];
+        }
+
+        int end(int run) {
+            return runs[2 * run] + runs[2 * run + 1];
+        }
+
+        /**
+         * @return the index of the last run starting at or before {@code x}, or -1
+         */
+        private int floorRun(int x) {
+            int lo = 0;
+            int hi = nbrruns - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (start(mid) <= x) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return hi;
+        }
+
+        private Container expand() {
+            return cardinality <= ARRAY_MAX ? ArrayContainer.of(this) : toBitmap();
+        }
+
+        @Override
+        Container add(int x) {
+            return contains(x) ? this : expand().add(x);
+        }
+
+        @Override
+        Container remove(int x) {
+            return contains(x) ? expand().remove(x) : this;
+        }
+
+        @Override
+        boolean contains(int x) {
+            int run = floorRun(x);
+            return run >= 0 && x <= end(run);
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int nextSetBit(int from) {
+            if (from >= CONTAINER_SIZE) {
+                return -1;
+            }
+            int run = floorRun(from);
+            if (run >= 0 && from <= end(run)) {
+                return from;
+            }
+            return run + 1 < nbrruns ? start(run + 1) : -1;
+        }
+
+        @Override
+        int last() {
+            return nbrruns == 0 ? -1 : end(nbrruns - 1);
+        }
+
+        @Override
+        Container addRange(int from, int to) {
+            BitmapContainer bitmap = toBitmap();
+            bitmap.addRange(from, to);
+            return bitmap.runOptimize();
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            long[] words = new long[BITMAP_WORDS];
+            for (int r = 0; r < nbrruns; r++) {
+                BitmapContainer.setRange(words, start(r), end(r) + 1);
+            }
+            return new BitmapContainer(words, cardinality);
+        }
+
+        @Override
+        int numberOfRuns() {
+            return nbrruns;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return sizeInBytes(nbrruns);
+        }
+
+        @Override
+        RunContainer copy() {
+            // run containers are never modified in place
+            return this;
+        }
+    }
+}
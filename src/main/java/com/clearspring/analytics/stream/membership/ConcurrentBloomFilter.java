@@ -0,0 +1,243 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.membership;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.clearspring.analytics.hash.HashStrategy;
+import com.clearspring.analytics.hash.StandardHashStrategy;
+
+/**
+ * A {@link BloomFilter} that can be shared between threads without locking.
+ * <p/>
+ * Bits live in an {@link AtomicLongArray} and are set with a compare-and-set loop that
+ * bails out as soon as the bit is seen set, so adding a key that is already present costs
+ * no more than {@link #isPresent(String)}. Lookups are plain volatile reads.
+ * <p/>
+ * It is sized and hashed exactly like {@link BloomFilter}, with the same {@link HashStrategy},
+ * and {@link #serializer()} produces the same bytes as {@link BloomFilterSerializer}, so the
+ * two can be converted freely.
+ */
+public class ConcurrentBloomFilter extends Filter {
+
+    static ICompactSerializer<ConcurrentBloomFilter> serializer_ = new ConcurrentBloomFilterSerializer();
+
+    public static ICompactSerializer<ConcurrentBloomFilter> serializer() {
+        return serializer_;
+    }
+
+    private final AtomicLongArray words;
+    private final HashStrategy hash;
+
+    public ConcurrentBloomFilter(int numElements, int bucketsPerElement) {
+        this(numElements, bucketsPerElement, StandardHashStrategy.defaultStrategy());
+    }
+
+    /**
+     * @param hash the hash keys are hashed with
+     */
+    public ConcurrentBloomFilter(int numElements, int bucketsPerElement, HashStrategy hash) {
+        this(BloomCalculations.computeBestK(bucketsPerElement), wordsFor(numElements * bucketsPerElement + 20), hash);
+    }
+
+    public ConcurrentBloomFilter(int numElements, double maxFalsePosProbability) {
+        this(numElements, maxFalsePosProbability, StandardHashStrategy.defaultStrategy());
+    }
+
+    /**
+     * @param hash the hash keys are hashed with
+     */
+    public ConcurrentBloomFilter(int numElements, double maxFalsePosProbability, HashStrategy hash) {
+        this(BloomCalculations.computeBucketsAndK(maxFalsePosProbability), numElements, hash);
+    }
+
+    private ConcurrentBloomFilter(BloomCalculations.BloomSpecification spec, int numElements, HashStrategy hash) {
+        this(spec.K, wordsFor(numElements * spec.bucketsPerElement + 20), hash);
+    }
+
+    /*
+     * Copies {@code words}, whose length fixes the number of buckets.
+     */
+    ConcurrentBloomFilter(int hashes, long[] words, HashStrategy hash) {
+        hashCount = hashes;
+        this.words = new AtomicLongArray(words);
+        this.hash = hash;
+    }
+
+    private static long[] wordsFor(int nbits) {
+        return new long[(nbits + 63) >>> 6];
+    }
+
+    /**
+     * @return a thread safe copy of {@code filter}
+     */
+    public static ConcurrentBloomFilter of(BloomFilter filter) {
+        BitSet bits = filter.filter();
+        long[] words = new long[bits.size() >>> 6];
+        long[] used = bits.toLongArray();
+        System.arraycopy(used, 0, words, 0, used.length);
+        return new ConcurrentBloomFilter(filter.getHashCount(), words, filter.getHashStrategy());
+    }
+
+    /**
+     * @return a {@link BloomFilter} holding a snapshot of the current bits
+     */
+    public BloomFilter toBloomFilter() {
+        BitSet bits = new BitSet(buckets());
+        bits.or(BitSet.valueOf(toLongArray()));
+        return new BloomFilter(hashCount, bits, hash);
+    }
+
+    public HashStrategy getHashStrategy() {
+        return hash;
+    }
+
+    @Override
+    public int[] getHashBuckets(String key) {
+        return BloomFilter.getHashBuckets(hash, key, hashCount, buckets());
+    }
+
+    @Override
+    public int[] getHashBuckets(byte[] key) {
+        return BloomFilter.getHashBuckets(hash, key, hashCount, buckets());
+    }
+
+    long[] toLongArray() {
+        long[] result = new long[words.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = words.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Not atomic with respect to concurrent adds.
+     */
+    public void clear() {
+        for (int i = 0; i < words.length(); i++) {
+            words.set(i, 0L);
+        }
+    }
+
+    public int buckets() {
+        return words.length() << 6;
+    }
+
+    private boolean get(int bitIndex) {
+        return (words.get(bitIndex >>> 6) & (1L << bitIndex)) != 0;
+    }
+
+    /**
+     * @return true if this call changed the bit from clear to set
+     */
+    private boolean set(int bitIndex) {
+        int wordIndex = bitIndex >>> 6;
+        long mask = 1L << bitIndex;
+        long old;
+        do {
+            old = words.get(wordIndex);
+            if ((old & mask) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(wordIndex, old, old | mask));
+        return true;
+    }
+
+    private boolean isPresent(int[] buckets) {
+        for (int bucketIndex : buckets) {
+            if (!get(bucketIndex)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean put(int[] buckets) {
+        boolean changed = false;
+        for (int bucketIndex : buckets) {
+            changed |= set(bucketIndex);
+        }
+        return changed;
+    }
+
+    public boolean isPresent(String key) {
+        return isPresent(getHashBuckets(key));
+    }
+
+    public boolean isPresent(byte[] key) {
+        return isPresent(getHashBuckets(key));
+    }
+
+    public void add(String key) {
+        put(getHashBuckets(key));
+    }
+
+    public void add(byte[] key) {
+        put(getHashBuckets(key));
+    }
+
+    /**
+     * Adds {@code key} and reports whether it was new. When several threads race to put the
+     * same new key at least one of them gets {@code true}.
+     *
+     * @return true if at least one bit of the key was not already set
+     */
+    public boolean put(String key) {
+        return put(getHashBuckets(key));
+    }
+
+    public boolean put(byte[] key) {
+        return put(getHashBuckets(key));
+    }
+
+    public void addAll(ConcurrentBloomFilter other) {
+        if (this.getHashCount() != other.getHashCount() || this.words.length() != other.words.length()) {
+            throw new IllegalArgumentException("Cannot merge filters of different sizes");
+        }
+        if (this.hash.id() != other.hash.id()) {
+            throw new IllegalArgumentException("Cannot merge filters using different hashes");
+        }
+        for (int i = 0; i < words.length(); i++) {
+            long bits = other.words.get(i);
+            if (bits == 0) {
+                continue;
+            }
+            long old;
+            do {
+                old = words.get(i);
+                if ((old | bits) == old) {
+                    break;
+                }
+            } while (!words.compareAndSet(i, old, old | bits));
+        }
+    }
+
+    int emptyBuckets() {
+        int n = 0;
+        for (int i = 0; i < words.length(); i++) {
+            n += 64 - Long.bitCount(words.get(i));
+        }
+        return n;
+    }
+
+    public String toString() {
+        return toBloomFilter().toString();
+    }
+}
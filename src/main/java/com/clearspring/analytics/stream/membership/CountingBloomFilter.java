@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.membership;
+
+import java.util.Arrays;
+
+/**
+ * A Bloom filter with a 4 bit counter instead of a single bit per bucket, which makes it
+ * possible to delete keys. Sixteen counters are packed into each {@code long}.
+ * <p/>
+ * A counter that reaches 15 sticks there: it is never decremented again, since the true
+ * count is no longer known. Deleting a key that was never added can cause false negatives.
+ */
+public class CountingBloomFilter extends Filter {
+
+    private static final int BITS_PER_COUNTER = 4;
+    private static final int COUNTERS_PER_WORD = 64 / BITS_PER_COUNTER;
+    private static final long COUNTER_MASK = (1L << BITS_PER_COUNTER) - 1;
+
+    static ICompactSerializer<CountingBloomFilter> serializer_ = new CountingBloomFilterSerializer();
+
+    public static ICompactSerializer<CountingBloomFilter> serializer() {
+        return serializer_;
+    }
+
+    private final int buckets;
+    private final long[] counters_;
+
+    public CountingBloomFilter(int numElements, int bucketsPerElement) {
+        this(BloomCalculations.computeBestK(bucketsPerElement), numElements * bucketsPerElement + 20, null);
+    }
+
+    public CountingBloomFilter(int numElements, double maxFalsePosProbability) {
+        this(BloomCalculations.computeBucketsAndK(maxFalsePosProbability), numElements);
+    }
+
+    private CountingBloomFilter(BloomCalculations.BloomSpecification spec, int numElements) {
+        this(spec.K, numElements * spec.bucketsPerElement + 20, null);
+    }
+
+    /*
+     * Allocates empty counters when {@code counters} is null, the deserializer passes its own.
+     */
+    CountingBloomFilter(int hashes, int buckets, long[] counters) {
+        hashCount = hashes;
+        this.buckets = buckets;
+        counters_ = counters != null ? counters : new long[(buckets + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD];
+    }
+
+    long[] counters() {
+        return counters_;
+    }
+
+    public void clear() {
+        Arrays.fill(counters_, 0L);
+    }
+
+    @Override
+    public int buckets() {
+        return buckets;
+    }
+
+    int count(int bucket) {
+        int shift = (bucket % COUNTERS_PER_WORD) * BITS_PER_COUNTER;
+        return (int) ((counters_[bucket / COUNTERS_PER_WORD] >>> shift) & COUNTER_MASK);
+    }
+
+    private void increment(int bucket) {
+        int word = bucket / COUNTERS_PER_WORD;
+        int shift = (bucket % COUNTERS_PER_WORD) * BITS_PER_COUNTER;
+        if (((counters_[word] >>> shift) & COUNTER_MASK) != COUNTER_MASK) {
+            counters_[word] += 1L << shift;
+        }
+    }
+
+    private void decrement(int bucket) {
+        int word = bucket / COUNTERS_PER_WORD;
+        int shift = (bucket % COUNTERS_PER_WORD) * BITS_PER_COUNTER;
+        long counter = (counters_[word] >>> shift) & COUNTER_MASK;
+        if (counter != 0 && counter != COUNTER_MASK) {
+            counters_[word] -= 1L << shift;
+        }
+    }
+
+    private boolean isPresent(int[] buckets) {
+        for (int bucketIndex : buckets) {
+            if (count(bucketIndex) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean delete(int[] buckets) {
+        if (!isPresent(buckets)) {
+            return false;
+        }
+        for (int bucketIndex : buckets) {
+            decrement(bucketIndex);
+        }
+        return true;
+    }
+
+    public boolean isPresent(String key) {
+        return isPresent(getHashBuckets(key));
+    }
+
+    public boolean isPresent(byte[] key) {
+        return isPresent(getHashBuckets(key));
+    }
+
+    public void add(String key) {
+        for (int bucketIndex : getHashBuckets(key)) {
+            increment(bucketIndex);
+        }
+    }
+
+    public void add(byte[] key) {
+        for (int bucketIndex : getHashBuckets(key)) {
+            increment(bucketIndex);
+        }
+    }
+
+    /**
+     * Removes a previously added key.
+     *
+     * @return false if the key was definitely not present, in which case nothing changes
+     */
+    public boolean delete(String key) {
+        return delete(getHashBuckets(key));
+    }
+
+    public boolean delete(byte[] key) {
+        return delete(getHashBuckets(key));
+    }
+
+    int emptyBuckets() {
+        int n = 0;
+        for (int i = 0; i < buckets; i++) {
+            if (count(i) == 0) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    public String toString() {
+        return "CountingBloomFilter{buckets=" + buckets + ", hashCount=" + hashCount + '}';
+    }
+}
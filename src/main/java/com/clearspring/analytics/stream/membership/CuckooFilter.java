@@ -0,0 +1,348 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.membership;
+
+import java.io.UnsupportedEncodingException;
+
+import java.util.Arrays;
+
+import com.clearspring.analytics.hash.MurmurHash;
+
+/**
+ * Cuckoo filter: a membership filter that, unlike {@link BloomFilter}, supports deletes.
+ * <p/>
+ * Each key is reduced to a 16 bit fingerprint that is stored in one of two candidate
+ * buckets of four slots; a bucket is packed into a single {@code long}. The false positive
+ * rate is about {@code 8 / 2^16}, roughly 0.012%. The table is sized for a 95% load, so a
+ * filter holding the number of keys it was made for takes about 17 bits per key, where a
+ * Bloom filter needs 19 for the same rate; it takes more while it holds fewer.
+ * <p/>
+ * See "Cuckoo Filter: Practically Better Than Bloom", Fan et al.
+ * https://www.cs.cmu.edu/~dga/papers/cuckoo-conext2014.pdf
+ * <p/>
+ * Only delete keys that were previously added: deleting a key that was never added may
+ * remove the fingerprint of a different key that shares it.
+ * <p/>
+ * Adding a key again stores another copy of its fingerprint, and a key has only eight slots
+ * to its name. Once it has been added eight times, the next add of it is parked as the
+ * homeless fingerprint and any add after that fails as if the filter were full.
+ */
+public class CuckooFilter extends Filter {
+
+    static final int SLOTS_PER_BUCKET = 4;
+    static final int FINGERPRINT_BITS = 16;
+    private static final int FINGERPRINT_MASK = (1 << FINGERPRINT_BITS) - 1;
+    private static final double MAX_LOAD_FACTOR = 0.95;
+    private static final int MAX_KICKS = 500;
+
+    /**
+     * The most buckets a filter can have, so that its number of slots fits in an int.
+     */
+    static final int MAX_BUCKETS = 1 << 28;
+
+    static ICompactSerializer<CuckooFilter> serializer_ = new CuckooFilterSerializer();
+
+    public static ICompactSerializer<CuckooFilter> serializer() {
+        return serializer_;
+    }
+
+    private final long[] buckets_;
+    private long count;
+
+    /*
+     * When an insert runs out of kicks the fingerprint that was left homeless is parked here,
+     * so no key is ever lost. While it is occupied the filter refuses further adds.
+     */
+    private int victimIndex;
+    private int victimFingerprint;
+
+    private int kickSeed = 0x9e3779b9;
+
+    /**
+     * @param numElements the expected number of keys; the table is sized for a 95% load factor
+     */
+    public CuckooFilter(long numElements) {
+        this(new long[bucketCount(numElements)]);
+    }
+
+    /*
+     * This version is only used by the deserializer.
+     */
+    CuckooFilter(long[] buckets) {
+        if (buckets.length == 0 || buckets.length > MAX_BUCKETS) {
+            throw new IllegalArgumentException("Number of buckets must be between 1 and " + MAX_BUCKETS + ": " + buckets.length);
+        }
+        hashCount = 2;
+        buckets_ = buckets;
+    }
+
+    static int bucketCount(long numElements) {
+        long needed = (long) Math.ceil(numElements / (SLOTS_PER_BUCKET * MAX_LOAD_FACTOR));
+        if (needed > MAX_BUCKETS) {
+            throw new IllegalArgumentException("Too many elements for a cuckoo filter: " + numElements);
+        }
+        return (int) Math.max(1, needed);
+    }
+
+    long[] table() {
+        return buckets_;
+    }
+
+    /**
+     * @return the number of keys currently stored
+     */
+    public long count() {
+        return count;
+    }
+
+    public double loadFactor() {
+        return (double) count / buckets();
+    }
+
+    public void clear() {
+        Arrays.fill(buckets_, 0L);
+        count = 0;
+        victimFingerprint = 0;
+    }
+
+    @Override
+    int buckets() {
+        return buckets_.length * SLOTS_PER_BUCKET;
+    }
+
+    @Override
+    int emptyBuckets() {
+        return buckets() - (int) count;
+    }
+
+    static long hash(long key) {
+        // the 64-bit finalizer from MurmurHash3
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    static long hash(byte[] key) {
+        return MurmurHash.hash64(key, key.length);
+    }
+
+    static long hash(String key) {
+        try {
+            return hash(key.getBytes("UTF-16"));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int fingerprint(long hash) {
+        int fp = (int) (hash >>> (64 - FINGERPRINT_BITS));
+        return fp == 0 ? 1 : fp;
+    }
+
+    private int index(long hash) {
+        // the low 32 bits scaled to the number of buckets
+        return (int) (((hash & 0xffffffffL) * buckets_.length) >>> 32);
+    }
+
+    /*
+     * The other bucket of a fingerprint. The two add up to a fingerprint derived offset, modulo
+     * the number of buckets, so each is the alternate of the other for any table size.
+     */
+    private int altIndex(int index, int fingerprint) {
+        int offset = (int) (((fingerprint * 0x5bd1e995) & 0xffffffffL) % buckets_.length);
+        int alt = offset - index;
+        return alt < 0 ? alt + buckets_.length : alt;
+    }
+
+    private static int slot(long bucket, int slot) {
+        return (int) (bucket >>> (slot * FINGERPRINT_BITS)) & FINGERPRINT_MASK;
+    }
+
+    private boolean bucketContains(int index, int fingerprint) {
+        long bucket = buckets_[index];
+        for (int s = 0; s < SLOTS_PER_BUCKET; s++) {
+            if (slot(bucket, s) == fingerprint) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean insertIntoBucket(int index, int fingerprint) {
+        long bucket = buckets_[index];
+        for (int s = 0; s < SLOTS_PER_BUCKET; s++) {
+            if (slot(bucket, s) == 0) {
+                buckets_[index] = bucket | ((long) fingerprint << (s * FINGERPRINT_BITS));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean deleteFromBucket(int index, int fingerprint) {
+        long bucket = buckets_[index];
+        for (int s = 0; s < SLOTS_PER_BUCKET; s++) {
+            if (slot(bucket, s) == fingerprint) {
+                buckets_[index] = bucket & ~((long) FINGERPRINT_MASK << (s * FINGERPRINT_BITS));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int nextKickSlot() {
+        // xorshift, only used to pick which slot gets evicted
+        kickSeed ^= kickSeed << 13;
+        kickSeed ^= kickSeed >>> 17;
+        kickSeed ^= kickSeed << 5;
+        return kickSeed & (SLOTS_PER_BUCKET - 1);
+    }
+
+    private void addHashed(long hash) {
+        if (victimFingerprint != 0) {
+            throw new IllegalStateException("Cuckoo filter is full: " + count + " keys in " + buckets() + " slots");
+        }
+        int fingerprint = fingerprint(hash);
+        int i1 = index(hash);
+        count++;
+        if (insertIntoBucket(i1, fingerprint)) {
+            return;
+        }
+        int index = altIndex(i1, fingerprint);
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            if (insertIntoBucket(index, fingerprint)) {
+                return;
+            }
+            int s = nextKickSlot() * FINGERPRINT_BITS;
+            long bucket = buckets_[index];
+            int evicted = (int) (bucket >>> s) & FINGERPRINT_MASK;
+            buckets_[index] = (bucket & ~((long) FINGERPRINT_MASK << s)) | ((long) fingerprint << s);
+            fingerprint = evicted;
+            index = altIndex(index, fingerprint);
+        }
+        victimIndex = index;
+        victimFingerprint = fingerprint;
+    }
+
+    private boolean containsHashed(long hash) {
+        int fingerprint = fingerprint(hash);
+        int i1 = index(hash);
+        int i2 = altIndex(i1, fingerprint);
+        if (bucketContains(i1, fingerprint) || bucketContains(i2, fingerprint)) {
+            return true;
+        }
+        return victimFingerprint == fingerprint && (victimIndex == i1 || victimIndex == i2);
+    }
+
+    private boolean deleteHashed(long hash) {
+        int fingerprint = fingerprint(hash);
+        int i1 = index(hash);
+        int i2 = altIndex(i1, fingerprint);
+        if (deleteFromBucket(i1, fingerprint) || deleteFromBucket(i2, fingerprint)) {
+            count--;
+            if (victimFingerprint != 0) {
+                // there may be room again, try to give the parked fingerprint a home
+                int fp = victimFingerprint;
+                if (insertIntoBucket(victimIndex, fp) || insertIntoBucket(altIndex(victimIndex, fp), fp)) {
+                    victimFingerprint = 0;
+                }
+            }
+            return true;
+        }
+        if (victimFingerprint == fingerprint && (victimIndex == i1 || victimIndex == i2)) {
+            victimFingerprint = 0;
+            count--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @throws IllegalStateException if the filter is full
+     */
+    public void add(long key) {
+        addHashed(hash(key));
+    }
+
+    /**
+     * @throws IllegalStateException if the filter is full
+     */
+    public void add(byte[] key) {
+        addHashed(hash(key));
+    }
+
+    /**
+     * @throws IllegalStateException if the filter is full
+     */
+    @Override
+    public void add(String key) {
+        addHashed(hash(key));
+    }
+
+    public boolean isPresent(long key) {
+        return containsHashed(hash(key));
+    }
+
+    public boolean isPresent(byte[] key) {
+        return containsHashed(hash(key));
+    }
+
+    @Override
+    public boolean isPresent(String key) {
+        return containsHashed(hash(key));
+    }
+
+    /**
+     * Removes one occurrence of a previously added key.
+     *
+     * @return true if a matching fingerprint was found and removed
+     */
+    public boolean delete(long key) {
+        return deleteHashed(hash(key));
+    }
+
+    public boolean delete(byte[] key) {
+        return deleteHashed(hash(key));
+    }
+
+    public boolean delete(String key) {
+        return deleteHashed(hash(key));
+    }
+
+    int victimIndex() {
+        return victimIndex;
+    }
+
+    int victimFingerprint() {
+        return victimFingerprint;
+    }
+
+    void restore(long count, int victimIndex, int victimFingerprint) {
+        this.count = count;
+        this.victimIndex = victimIndex;
+        this.victimFingerprint = victimFingerprint;
+    }
+
+    public String toString() {
+        return "CuckooFilter{buckets=" + buckets_.length + ", count=" + count + '}';
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.membership;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class CuckooFilterSerializer implements ICompactSerializer<CuckooFilter> {
+
+    public void serialize(CuckooFilter cf, DataOutputStream dos) throws IOException {
+        long[] table = cf.table();
+        dos.writeInt(table.length);
+        dos.writeLong(cf.count());
+        dos.writeInt(cf.victimIndex());
+        dos.writeShort(cf.victimFingerprint());
+        for (long bucket : table) {
+            dos.writeLong(bucket);
+        }
+    }
+
+    public CuckooFilter deserialize(DataInputStream dis) throws IOException {
+        int numBuckets = dis.readInt();
+        long count = dis.readLong();
+        int victimIndex = dis.readInt();
+        int victimFingerprint = dis.readUnsignedShort();
+        long[] table = new long[numBuckets];
+        for (int i = 0; i < numBuckets; i++) {
+            table[i] = dis.readLong();
+        }
+        CuckooFilter cf = new CuckooFilter(table);
+        cf.restore(count, victimIndex, victimFingerprint);
+        return cf;
+    }
+}
@@ -77,9 +77,19 @@ public abstract class Filter {
     }
 
     static int[] getHashBuckets(byte[] b, int hashCount, int max) {
-        int[] result = new int[hashCount];
         int hash1 = MurmurHash.hash(b, b.length, 0);
         int hash2 = MurmurHash.hash(b, b.length, hash1);
+        return getHashBuckets((hash1 & 0xffffffffL) | ((long) hash2 << 32), hashCount, max);
+    }
+
+    /**
+     * @param hash the two hashes the buckets are derived from, the first in the low and the
+     *             second in the high 32 bits
+     */
+    public static int[] getHashBuckets(long hash, int hashCount, int max) {
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        int[] result = new int[hashCount];
         for (int i = 0; i < hashCount; i++) {
             result[i] = Math.abs((hash1 + i * hash2) % max);
         }
@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.membership;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Moves words between {@code long} arrays and channels through a direct buffer and its
+ * {@link LongBuffer} view, a large chunk at a time, so no intermediate byte arrays are
+ * created on the heap.
+ * <p/>
+ * Filters written this way start with a 16 byte header, the hash count, an int telling
+ * which hashing the filter uses and the number of buckets, followed by the words.
+ * Everything is little-endian.
+ */
+final class LongChannels {
+
+    static final int HEADER_BYTES = 16;
+
+    /**
+     * Layout of a {@link BloomFilter}, hashed with {@link Filter#getHashBuckets(String, int, int)}.
+     */
+    static final int BLOOM_FILTER = 0;
+
+    /**
+     * Layout of a {@link BigBloomFilter}, hashed with {@link BigFilter#getHashBuckets(String, int, long)}.
+     */
+    static final int BIG_BLOOM_FILTER = 1;
+
+    /**
+     * Layout of a {@link BloomFilter} using a hash other than the default, whose id follows
+     * the header in a word of its own.
+     */
+    static final int HASHED_BLOOM_FILTER = 2;
+
+    private static final int CHUNK_BYTES = 1 << 23;
+
+    private LongChannels() {
+    }
+
+    /**
+     * @return a direct little-endian buffer big enough for {@code words} words, up to the
+     *         chunk size
+     */
+    static ByteBuffer buffer(long words) {
+        int bytes = (int) Math.max(HEADER_BYTES, Math.min(CHUNK_BYTES, words * 8));
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static void writeHeader(WritableByteChannel channel, ByteBuffer buffer, int layout, int hashCount, long buckets)
+            throws IOException {
+        buffer.clear();
+        buffer.putInt(hashCount).putInt(layout).putLong(buckets);
+        buffer.flip();
+        writeFully(channel, buffer);
+    }
+
+    /**
+     * Reads the header into {@code buffer}, leaving the hash count at offset 0 and the
+     * number of buckets at offset 8.
+     *
+     * @throws IOException if the filter was not written with {@code layout}
+     */
+    static ByteBuffer readHeader(ReadableByteChannel channel, ByteBuffer buffer, int layout) throws IOException {
+        readHeader(channel, buffer);
+        checkLayout(buffer.getInt(4), layout);
+        return buffer;
+    }
+
+    /**
+     * Reads the header into {@code buffer} whatever its layout, which is left at offset 4.
+     */
+    static ByteBuffer readHeader(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        buffer.limit(HEADER_BYTES);
+        readFully(channel, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    static void checkLayout(int actual, int expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Unexpected filter layout " + actual + ", expected " + expected);
+        }
+    }
+
+    static void write(WritableByteChannel channel, ByteBuffer buffer, long[] words, int off, int len)
+            throws IOException {
+        buffer.clear();
+        LongBuffer view = buffer.asLongBuffer();
+        while (len > 0) {
+            int n = Math.min(len, view.capacity());
+            view.clear();
+            view.put(words, off, n);
+            buffer.clear();
+            buffer.limit(n * 8);
+            writeFully(channel, buffer);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes {@code len} zero words, used to pad a filter out to its full number of buckets.
+     */
+    static void writeZeros(WritableByteChannel channel, ByteBuffer buffer, long len) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+        while (len > 0) {
+            int n = (int) Math.min(len, buffer.capacity() / 8);
+            buffer.clear();
+            buffer.limit(n * 8);
+            writeFully(channel, buffer);
+            len -= n;
+        }
+    }
+
+    static void read(ReadableByteChannel channel, ByteBuffer buffer, long[] words, int off, int len)
+            throws IOException {
+        buffer.clear();
+        LongBuffer view = buffer.asLongBuffer();
+        while (len > 0) {
+            int n = Math.min(len, view.capacity());
+            buffer.clear();
+            buffer.limit(n * 8);
+            readFully(channel, buffer);
+            view.clear();
+            view.get(words, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Fills {@code words} from the file region starting at {@code position} by mapping it,
+     * so the words are copied once, straight from the page cache.
+     */
+    static void map(FileChannel channel, long position, long[] words) throws IOException {
+        map(channel, position, words.length).get(words);
+    }
+
+    /**
+     * @return a read-only view of {@code words} words of the file starting at {@code position}
+     */
+    static LongBuffer map(FileChannel channel, long position, int words) throws IOException {
+        if (position + words * 8L > channel.size()) {
+            throw new EOFException("File too short for " + words + " words at " + position);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, words * 8L)
+                      .order(ByteOrder.LITTLE_ENDIAN)
+                      .asLongBuffer();
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+}
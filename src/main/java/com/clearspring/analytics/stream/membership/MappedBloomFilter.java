@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.membership;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.clearspring.analytics.hash.HashStrategies;
+import com.clearspring.analytics.hash.HashStrategy;
+import com.clearspring.analytics.hash.StandardHashStrategy;
+
+/**
+ * A read-only Bloom filter answered straight from a memory-mapped file.
+ * <p/>
+ * The file is one written by the channel overloads of {@link BloomFilterSerializer} or
+ * {@link BigBloomFilterSerializer}. Opening it only maps it, pages are read in by the OS as
+ * lookups touch them and are shared with every other process mapping the same file. Keys
+ * are hashed exactly as the filter that wrote the file hashes them, with the
+ * {@link HashStrategy} recorded in the file if it is not the default.
+ * <p/>
+ * Lookups only read the mapping, so an instance can be shared between threads.
+ */
+public class MappedBloomFilter implements Closeable {
+
+    /**
+     * Words sit at 8 byte aligned offsets, so with power of two segments a word never
+     * straddles two mappings.
+     */
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] segments;
+    private final int layout;
+    private final int hashCount;
+    private final long buckets;
+    private final HashStrategy hash;
+    // offset of the first word, past the hash id of a HASHED_BLOOM_FILTER
+    private final long wordsOffset;
+
+    private MappedBloomFilter(RandomAccessFile file) throws IOException {
+        this.file = file;
+        FileChannel channel = file.getChannel();
+        long length = channel.size();
+        if (length < LongChannels.HEADER_BYTES) {
+            throw new IOException("File is too short to hold a bloom filter: " + length + " bytes");
+        }
+        int numSegments = (int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        this.segments = new MappedByteBuffer[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            long position = (long) i << SEGMENT_SHIFT;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_MASK + 1, length - position));
+            segments[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        this.hashCount = segments[0].getInt(0);
+        this.layout = segments[0].getInt(4);
+        this.buckets = segments[0].getLong(8);
+        if (layout == LongChannels.HASHED_BLOOM_FILTER) {
+            if (length < LongChannels.HEADER_BYTES + 8) {
+                throw new IOException("File is too short to hold a bloom filter: " + length + " bytes");
+            }
+            this.hash = HashStrategies.forId((int) segments[0].getLong(LongChannels.HEADER_BYTES));
+            this.wordsOffset = LongChannels.HEADER_BYTES + 8;
+        } else if (layout == LongChannels.BLOOM_FILTER || layout == LongChannels.BIG_BLOOM_FILTER) {
+            this.hash = StandardHashStrategy.defaultStrategy();
+            this.wordsOffset = LongChannels.HEADER_BYTES;
+        } else {
+            throw new IOException("Unknown bloom filter layout: " + layout);
+        }
+        if (hashCount <= 0 || buckets <= 0 || (buckets & 63) != 0 ||
+            (layout != LongChannels.BIG_BLOOM_FILTER && buckets > Integer.MAX_VALUE) ||
+            length < wordsOffset + buckets / 8) {
+            throw new IOException("Corrupt bloom filter header: hashCount=" + hashCount + ", buckets=" + buckets +
+                                  ", file length=" + length);
+        }
+    }
+
+    /**
+     * Maps a filter previously written to {@code file} through a channel.
+     */
+    public static MappedBloomFilter open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return new MappedBloomFilter(raf);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    public long buckets() {
+        return buckets;
+    }
+
+    public HashStrategy getHashStrategy() {
+        return hash;
+    }
+
+    private boolean get(long bucketIndex) {
+        long offset = wordsOffset + ((bucketIndex >>> 6) << 3);
+        long word = segments[(int) (offset >>> SEGMENT_SHIFT)].getLong((int) (offset & SEGMENT_MASK));
+        return (word & (1L << bucketIndex)) != 0;
+    }
+
+    public boolean isPresent(String key) {
+        if (layout == LongChannels.HASHED_BLOOM_FILTER) {
+            return isPresent(BloomFilter.getHashBuckets(hash, key, hashCount, (int) buckets));
+        }
+        byte[] b;
+        try {
+            b = key.getBytes("UTF-16");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        return isPresent(b);
+    }
+
+    public boolean isPresent(byte[] key) {
+        if (layout == LongChannels.BIG_BLOOM_FILTER) {
+            for (long bucketIndex : BigFilter.getHashBuckets(key, hashCount, buckets)) {
+                if (!get(bucketIndex)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return isPresent(BloomFilter.getHashBuckets(hash, key, hashCount, (int) buckets));
+    }
+
+    private boolean isPresent(int[] buckets) {
+        for (int bucketIndex : buckets) {
+            if (!get(bucketIndex)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Unmapping is left to the garbage collector, the mapping stays valid after this call
+     * until the instance is no longer referenced.
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    @Override
+    public String toString() {
+        return "MappedBloomFilter{" +
+                "hashCount=" + hashCount +
+                ", buckets=" + buckets +
+                ", layout=" + layout +
+                ", hash=" + hash +
+                '}';
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.membership;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs word-wise bit set operations over fixed size chunks of words on the common
+ * fork-join pool.
+ * <p/>
+ * A chunk is 64 KiB of words, small enough that an n-way operation can stream every input
+ * through it while the output words stay in cache.
+ */
+final class ParallelChunks {
+
+    static final int CHUNK_SHIFT = 13;
+    static final int CHUNK_WORDS = 1 << CHUNK_SHIFT;
+
+    /**
+     * Below this many chunks the work is done on the calling thread.
+     */
+    private static final int SEQUENTIAL_CHUNKS = 4;
+
+    interface ChunkOp {
+
+        /**
+         * Processes one chunk.
+         *
+         * @return a count to be summed over all chunks, usually the cardinality of the chunk
+         */
+        long apply(long chunk);
+    }
+
+    private ParallelChunks() {
+    }
+
+    static long chunks(long words, int chunkWords) {
+        return (words + chunkWords - 1) / chunkWords;
+    }
+
+    /**
+     * Applies {@code op} to every chunk in {@code [0, chunks)} and sums the results.
+     */
+    static long run(long chunks, ChunkOp op) {
+        if (chunks <= SEQUENTIAL_CHUNKS) {
+            long sum = 0;
+            for (long c = 0; c < chunks; c++) {
+                sum += op.apply(c);
+            }
+            return sum;
+        }
+        return ForkJoinPool.commonPool().invoke(new Task(op, 0, chunks));
+    }
+
+    static long bitCount(long[] words, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += Long.bitCount(words[i]);
+        }
+        return sum;
+    }
+
+    private static class Task extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = -3516372415583760915L;
+
+        private final ChunkOp op;
+        private final long from;
+        private final long to;
+
+        Task(ChunkOp op, long from, long to) {
+            this.op = op;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= SEQUENTIAL_CHUNKS) {
+                long sum = 0;
+                for (long c = from; c < to; c++) {
+                    sum += op.apply(c);
+                }
+                return sum;
+            }
+            long mid = (from + to) >>> 1;
+            Task left = new Task(op, from, mid);
+            left.fork();
+            long right = new Task(op, mid, to).compute();
+            return left.join() + right;
+        }
+    }
+}
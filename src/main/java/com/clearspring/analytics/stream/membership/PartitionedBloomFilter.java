@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.membership;
+
+import java.io.UnsupportedEncodingException;
+
+import java.util.Arrays;
+
+/**
+ * A Bloom filter whose bits are split into one slice per hash function: probe i of every
+ * key lands in slice i. Slices are whole words, so no word is shared between two slices
+ * and each can be merged or cleared independently.
+ * <p/>
+ * It is sized like {@link BloomFilter}, with the number of hash functions taken from
+ * {@link BloomCalculations}, and each slice gets an equal share of the buckets. Keys are
+ * hashed with the same double hashing as {@link Filter#getHashBuckets(String, int, int)},
+ * reduced modulo the slice size instead of the whole filter.
+ */
+public class PartitionedBloomFilter extends Filter {
+
+    static ICompactSerializer<PartitionedBloomFilter> serializer_ = new PartitionedBloomFilterSerializer();
+
+    public static ICompactSerializer<PartitionedBloomFilter> serializer() {
+        return serializer_;
+    }
+
+    private final int sliceBuckets;
+    private final long[] words;
+
+    public PartitionedBloomFilter(int numElements, int bucketsPerElement) {
+        this(new BloomCalculations.BloomSpecification(BloomCalculations.computeBestK(bucketsPerElement),
+                                                      bucketsPerElement), numElements);
+    }
+
+    public PartitionedBloomFilter(int numElements, double maxFalsePosProbability) {
+        this(BloomCalculations.computeBucketsAndK(maxFalsePosProbability), numElements);
+    }
+
+    private PartitionedBloomFilter(BloomCalculations.BloomSpecification spec, int numElements) {
+        this(spec.K, sliceBuckets(spec.K, numElements * spec.bucketsPerElement + 20), null);
+    }
+
+    /*
+     * Allocates empty slices when {@code words} is null, the deserializer passes its own.
+     */
+    PartitionedBloomFilter(int hashes, int sliceBuckets, long[] words) {
+        if (sliceBuckets <= 0 || (sliceBuckets & 63) != 0) {
+            throw new IllegalArgumentException("Slice size must be a positive multiple of 64: " + sliceBuckets);
+        }
+        hashCount = hashes;
+        this.sliceBuckets = sliceBuckets;
+        this.words = words != null ? words : new long[hashes * (sliceBuckets >>> 6)];
+    }
+
+    /**
+     * Rounds each slice up to a whole number of words.
+     */
+    private static int sliceBuckets(int hashes, int buckets) {
+        int perSlice = (buckets + hashes - 1) / hashes;
+        return (perSlice + 63) & ~63;
+    }
+
+    int sliceBuckets() {
+        return sliceBuckets;
+    }
+
+    long[] words() {
+        return words;
+    }
+
+    @Override
+    public int buckets() {
+        return hashCount * sliceBuckets;
+    }
+
+    /**
+     * @return the index of the bucket each hash function picks for {@code key}, probe i
+     *         falling in {@code [i * sliceBuckets, (i + 1) * sliceBuckets)}
+     */
+    @Override
+    public int[] getHashBuckets(String key) {
+        byte[] b;
+        try {
+            b = key.getBytes("UTF-16");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        return getHashBuckets(b);
+    }
+
+    @Override
+    public int[] getHashBuckets(byte[] key) {
+        int[] result = Filter.getHashBuckets(key, hashCount, sliceBuckets);
+        for (int i = 0; i < result.length; i++) {
+            result[i] += i * sliceBuckets;
+        }
+        return result;
+    }
+
+    private boolean get(int bucketIndex) {
+        return (words[bucketIndex >>> 6] & (1L << bucketIndex)) != 0;
+    }
+
+    private void set(int bucketIndex) {
+        words[bucketIndex >>> 6] |= 1L << bucketIndex;
+    }
+
+    private boolean isPresent(int[] buckets) {
+        for (int bucketIndex : buckets) {
+            if (!get(bucketIndex)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isPresent(String key) {
+        return isPresent(getHashBuckets(key));
+    }
+
+    public boolean isPresent(byte[] key) {
+        return isPresent(getHashBuckets(key));
+    }
+
+    public void add(String key) {
+        for (int bucketIndex : getHashBuckets(key)) {
+            set(bucketIndex);
+        }
+    }
+
+    public void add(byte[] key) {
+        for (int bucketIndex : getHashBuckets(key)) {
+            set(bucketIndex);
+        }
+    }
+
+    public boolean put(String key) {
+        boolean res = true;
+        for (int bucketIndex : getHashBuckets(key)) {
+            res &= get(bucketIndex);
+            set(bucketIndex);
+        }
+        return !res;
+    }
+
+    /**
+     * Clears all slices, in parallel chunks for large filters.
+     */
+    public void clear() {
+        ParallelChunks.run(ParallelChunks.chunks(words.length, ParallelChunks.CHUNK_WORDS), c -> {
+            int from = (int) c << ParallelChunks.CHUNK_SHIFT;
+            Arrays.fill(words, from, Math.min(words.length, from + ParallelChunks.CHUNK_WORDS), 0L);
+            return 0;
+        });
+    }
+
+    /**
+     * Adds all keys of {@code other}, which must have the same hash count and slice size,
+     * ORing the slices in parallel chunks.
+     */
+    public void addAll(PartitionedBloomFilter other) {
+        if (this.getHashCount() != other.getHashCount() || this.sliceBuckets != other.sliceBuckets) {
+            throw new IllegalArgumentException("Cannot merge filters of different sizes");
+        }
+        final long[] otherWords = other.words;
+        ParallelChunks.run(ParallelChunks.chunks(words.length, ParallelChunks.CHUNK_WORDS), c -> {
+            int from = (int) c << ParallelChunks.CHUNK_SHIFT;
+            for (int i = from, end = Math.min(words.length, from + ParallelChunks.CHUNK_WORDS); i < end; i++) {
+                words[i] |= otherWords[i];
+            }
+            return 0;
+        });
+    }
+
+    int emptyBuckets() {
+        return buckets() - (int) ParallelChunks.bitCount(words, 0, words.length);
+    }
+
+    public String toString() {
+        return "PartitionedBloomFilter{hashCount=" + hashCount + ", sliceBuckets=" + sliceBuckets + '}';
+    }
+}
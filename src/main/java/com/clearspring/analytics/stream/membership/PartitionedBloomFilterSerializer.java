@@ -0,0 +1,44 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.membership;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class PartitionedBloomFilterSerializer implements ICompactSerializer<PartitionedBloomFilter> {
+
+    public void serialize(PartitionedBloomFilter bf, DataOutputStream dos) throws IOException {
+        dos.writeInt(bf.getHashCount());
+        dos.writeInt(bf.sliceBuckets());
+        for (long word : bf.words()) {
+            dos.writeLong(word);
+        }
+    }
+
+    public PartitionedBloomFilter deserialize(DataInputStream dis) throws IOException {
+        int hashes = dis.readInt();
+        int sliceBuckets = dis.readInt();
+        long[] words = new long[hashes * (sliceBuckets >>> 6)];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = dis.readLong();
+        }
+        return new PartitionedBloomFilter(hashes, sliceBuckets, words);
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.membership;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Bloom filter that grows as keys are added while holding its false positive target.
+ * <p/>
+ * Keys go into a chain of {@link BloomFilter}s. Once the newest one holds as many distinct
+ * keys as it was sized for, a new filter is appended that is {@code growthFactor} times
+ * larger and whose false positive probability is {@code tighteningRatio} times smaller.
+ * With a first stage probability of {@code p * (1 - tighteningRatio)} the compound
+ * probability stays below {@code p}, limited by the smallest rate {@link BloomCalculations}
+ * can provide.
+ * <p/>
+ * See "Scalable Bloom Filters", Almeida et al.
+ * http://gsd.di.uminho.pt/members/cbm/ps/dbloom.pdf
+ */
+public class ScalableBloomFilter extends Filter {
+
+    public static final int DEFAULT_GROWTH_FACTOR = 2;
+    public static final double DEFAULT_TIGHTENING_RATIO = 0.5;
+
+    static ICompactSerializer<ScalableBloomFilter> serializer_ = new ScalableBloomFilterSerializer();
+
+    public static ICompactSerializer<ScalableBloomFilter> serializer() {
+        return serializer_;
+    }
+
+    private final int initialCapacity;
+    private final double maxFalsePosProbability;
+    private final int growthFactor;
+    private final double tighteningRatio;
+
+    private final List<BloomFilter> filters;
+    private final List<Integer> capacities;
+    private int lastCount;
+
+    public ScalableBloomFilter(int initialCapacity, double maxFalsePosProbability) {
+        this(initialCapacity, maxFalsePosProbability, DEFAULT_GROWTH_FACTOR, DEFAULT_TIGHTENING_RATIO);
+    }
+
+    public ScalableBloomFilter(int initialCapacity, double maxFalsePosProbability, int growthFactor,
+                               double tighteningRatio) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("Initial capacity must be positive: " + initialCapacity);
+        }
+        if (growthFactor < 1) {
+            throw new IllegalArgumentException("Growth factor must be at least 1: " + growthFactor);
+        }
+        if (tighteningRatio <= 0 || tighteningRatio >= 1) {
+            throw new IllegalArgumentException("Tightening ratio must be in (0, 1): " + tighteningRatio);
+        }
+        this.initialCapacity = initialCapacity;
+        this.maxFalsePosProbability = maxFalsePosProbability;
+        this.growthFactor = growthFactor;
+        this.tighteningRatio = tighteningRatio;
+        this.filters = new ArrayList<BloomFilter>();
+        this.capacities = new ArrayList<Integer>();
+        addStage();
+    }
+
+    /*
+     * This version is only used by the deserializer.
+     */
+    ScalableBloomFilter(int initialCapacity, double maxFalsePosProbability, int growthFactor,
+                        double tighteningRatio, List<BloomFilter> filters, List<Integer> capacities,
+                        int lastCount) {
+        this.initialCapacity = initialCapacity;
+        this.maxFalsePosProbability = maxFalsePosProbability;
+        this.growthFactor = growthFactor;
+        this.tighteningRatio = tighteningRatio;
+        this.filters = filters;
+        this.capacities = capacities;
+        this.lastCount = lastCount;
+        this.hashCount = filters.get(0).getHashCount();
+    }
+
+    private void addStage() {
+        int stage = filters.size();
+        long capacity = initialCapacity * (long) Math.pow(growthFactor, stage);
+        double p = maxFalsePosProbability * (1 - tighteningRatio) * Math.pow(tighteningRatio, stage);
+        // the BloomFilter sizes its bit set as capacity * bucketsPerElement + 20 in int arithmetic
+        int bucketsPerElement = BloomCalculations.computeBucketsAndK(p).bucketsPerElement;
+        if (capacity > Integer.MAX_VALUE || capacity * bucketsPerElement + 20 > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Scalable bloom filter cannot grow past " + filters.size() + " stages");
+        }
+        BloomFilter filter = new BloomFilter((int) capacity, p);
+        if (stage == 0) {
+            hashCount = filter.getHashCount();
+        }
+        filters.add(filter);
+        capacities.add((int) capacity);
+        lastCount = 0;
+    }
+
+    int initialCapacity() {
+        return initialCapacity;
+    }
+
+    double maxFalsePosProbability() {
+        return maxFalsePosProbability;
+    }
+
+    int growthFactor() {
+        return growthFactor;
+    }
+
+    double tighteningRatio() {
+        return tighteningRatio;
+    }
+
+    List<BloomFilter> filters() {
+        return filters;
+    }
+
+    List<Integer> capacities() {
+        return capacities;
+    }
+
+    int lastCount() {
+        return lastCount;
+    }
+
+    /**
+     * @return the number of underlying Bloom filters
+     */
+    public int stages() {
+        return filters.size();
+    }
+
+    public void clear() {
+        filters.clear();
+        capacities.clear();
+        addStage();
+    }
+
+    @Override
+    int buckets() {
+        int n = 0;
+        for (BloomFilter filter : filters) {
+            n += filter.buckets();
+        }
+        return n;
+    }
+
+    @Override
+    int emptyBuckets() {
+        int n = 0;
+        for (BloomFilter filter : filters) {
+            n += filter.emptyBuckets();
+        }
+        return n;
+    }
+
+    private BloomFilter current() {
+        if (lastCount >= capacities.get(capacities.size() - 1)) {
+            addStage();
+        }
+        return filters.get(filters.size() - 1);
+    }
+
+    public boolean isPresent(String key) {
+        for (int i = filters.size() - 1; i >= 0; i--) {
+            if (filters.get(i).isPresent(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isPresent(byte[] key) {
+        for (int i = filters.size() - 1; i >= 0; i--) {
+            if (filters.get(i).isPresent(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void add(String key) {
+        if (!isPresent(key)) {
+            current().add(key);
+            lastCount++;
+        }
+    }
+
+    public void add(byte[] key) {
+        if (!isPresent(key)) {
+            current().add(key);
+            lastCount++;
+        }
+    }
+
+    public String toString() {
+        return "ScalableBloomFilter{stages=" + filters.size() + ", capacities=" + capacities + '}';
+    }
+}
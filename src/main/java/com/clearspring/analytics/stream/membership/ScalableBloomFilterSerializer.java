@@ -0,0 +1,61 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.membership;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ScalableBloomFilterSerializer implements ICompactSerializer<ScalableBloomFilter> {
+
+    public void serialize(ScalableBloomFilter bf, DataOutputStream dos) throws IOException {
+        dos.writeInt(bf.initialCapacity());
+        dos.writeDouble(bf.maxFalsePosProbability());
+        dos.writeInt(bf.growthFactor());
+        dos.writeDouble(bf.tighteningRatio());
+        dos.writeInt(bf.lastCount());
+        List<BloomFilter> filters = bf.filters();
+        List<Integer> capacities = bf.capacities();
+        dos.writeInt(filters.size());
+        for (int i = 0; i < filters.size(); i++) {
+            dos.writeInt(capacities.get(i));
+            BloomFilter.serializer().serialize(filters.get(i), dos);
+        }
+    }
+
+    public ScalableBloomFilter deserialize(DataInputStream dis) throws IOException {
+        int initialCapacity = dis.readInt();
+        double maxFalsePosProbability = dis.readDouble();
+        int growthFactor = dis.readInt();
+        double tighteningRatio = dis.readDouble();
+        int lastCount = dis.readInt();
+        int stages = dis.readInt();
+        List<BloomFilter> filters = new ArrayList<BloomFilter>(stages);
+        List<Integer> capacities = new ArrayList<Integer>(stages);
+        for (int i = 0; i < stages; i++) {
+            capacities.add(dis.readInt());
+            filters.add(BloomFilter.serializer().deserialize(dis));
+        }
+        return new ScalableBloomFilter(initialCapacity, maxFalsePosProbability, growthFactor, tighteningRatio,
+                                       filters, capacities, lastCount);
+    }
+}
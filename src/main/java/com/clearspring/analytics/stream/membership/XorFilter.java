@@ -0,0 +1,301 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.membership;
+
+import java.io.UnsupportedEncodingException;
+
+import java.util.Arrays;
+
+import com.clearspring.analytics.hash.MurmurHash;
+
+/**
+ * An immutable membership filter for a fixed set of keys, as described in
+ * "Xor Filters: Faster and Smaller Than Bloom and Cuckoo Filters" by Graf and Lemire.
+ * <p/>
+ * Every key maps to one slot in each of three blocks, and the fingerprints stored there are
+ * chosen at build time so that they XOR to the key's own fingerprint. A lookup therefore
+ * reads exactly three array entries. With 8 bit fingerprints the filter takes about 9.84
+ * bits per key for a false positive rate of about 1/256; 16 bit fingerprints take about
+ * 19.7 bits per key for about 1/65536.
+ * <p/>
+ * Filters are built from 64 bit key hashes, see {@link #hash(String)} for hashing other
+ * keys. Duplicate hashes are allowed.
+ */
+public class XorFilter {
+
+    private static final int MAX_ATTEMPTS = 100;
+
+    static ICompactSerializer<XorFilter> serializer_ = new XorFilterSerializer();
+
+    public static ICompactSerializer<XorFilter> serializer() {
+        return serializer_;
+    }
+
+    private final int fingerprintBits;
+    private final int size;
+    private final long seed;
+    private final int blockLength;
+    private final byte[] fingerprints8;
+    private final short[] fingerprints16;
+
+    /*
+     * This version is only used by build and the deserializer, exactly one of the arrays is
+     * non null depending on {@code fingerprintBits}.
+     */
+    XorFilter(int fingerprintBits, int size, long seed, int blockLength, byte[] fingerprints8, short[] fingerprints16) {
+        this.fingerprintBits = fingerprintBits;
+        this.size = size;
+        this.seed = seed;
+        this.blockLength = blockLength;
+        this.fingerprints8 = fingerprints8;
+        this.fingerprints16 = fingerprints16;
+    }
+
+    /**
+     * Builds a filter with 8 bit fingerprints.
+     */
+    public static XorFilter build(long[] keys) {
+        return build(keys, 8);
+    }
+
+    /**
+     * @param keys            64 bit hashes of the keys, not modified
+     * @param fingerprintBits 8 or 16
+     */
+    public static XorFilter build(long[] keys, int fingerprintBits) {
+        if (fingerprintBits != 8 && fingerprintBits != 16) {
+            throw new IllegalArgumentException("Fingerprints must be 8 or 16 bits: " + fingerprintBits);
+        }
+        keys = distinct(keys);
+        int size = keys.length;
+        int capacity = 32 + (int) Math.ceil(1.23 * size);
+        int blockLength = capacity / 3;
+        int arrayLength = 3 * blockLength;
+
+        long[] stackHashes = new long[size];
+        int[] stackIndexes = new int[size];
+        long seed = 0;
+        for (int attempt = 0; ; attempt++) {
+            if (attempt == MAX_ATTEMPTS) {
+                throw new IllegalStateException("Could not build an xor filter for " + size + " keys");
+            }
+            seed = mix(seed + 0x9e3779b97f4a7c15L);
+            if (peel(keys, seed, blockLength, arrayLength, stackHashes, stackIndexes)) {
+                break;
+            }
+        }
+
+        // Assign fingerprints in reverse peeling order, every slot written is the only one
+        // of its key still free
+        byte[] fingerprints8 = fingerprintBits == 8 ? new byte[arrayLength] : null;
+        short[] fingerprints16 = fingerprintBits == 16 ? new short[arrayLength] : null;
+        XorFilter filter = new XorFilter(fingerprintBits, size, seed, blockLength, fingerprints8, fingerprints16);
+        for (int i = size - 1; i >= 0; i--) {
+            long hash = stackHashes[i];
+            int index = stackIndexes[i];
+            int h0 = filter.h0(hash);
+            int h1 = filter.h1(hash);
+            int h2 = filter.h2(hash);
+            int value = filter.fingerprint(hash) ^ filter.get(h0) ^ filter.get(h1) ^ filter.get(h2) ^ filter.get(index);
+            filter.set(index, value);
+        }
+        return filter;
+    }
+
+    private static long[] distinct(long[] keys) {
+        long[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        return n == sorted.length ? sorted : Arrays.copyOf(sorted, n);
+    }
+
+    /**
+     * Repeatedly removes a key that is alone in one of its slots, recording the key and that
+     * slot.
+     *
+     * @return true if every key could be removed this way
+     */
+    private static boolean peel(long[] keys, long seed, int blockLength, int arrayLength,
+                                long[] stackHashes, int[] stackIndexes) {
+        int[] counts = new int[arrayLength];
+        long[] xors = new long[arrayLength];
+        for (long key : keys) {
+            long hash = mix(key + seed);
+            for (int b = 0; b < 3; b++) {
+                int h = slot(hash, b, blockLength);
+                counts[h]++;
+                xors[h] ^= hash;
+            }
+        }
+
+        int[] queue = new int[arrayLength];
+        int queued = 0;
+        for (int i = 0; i < arrayLength; i++) {
+            if (counts[i] == 1) {
+                queue[queued++] = i;
+            }
+        }
+        int stacked = 0;
+        while (queued > 0) {
+            int index = queue[--queued];
+            if (counts[index] != 1) {
+                continue;
+            }
+            long hash = xors[index];
+            stackHashes[stacked] = hash;
+            stackIndexes[stacked] = index;
+            stacked++;
+            for (int b = 0; b < 3; b++) {
+                int h = slot(hash, b, blockLength);
+                counts[h]--;
+                xors[h] ^= hash;
+                if (counts[h] == 1) {
+                    queue[queued++] = h;
+                }
+            }
+        }
+        return stacked == keys.length;
+    }
+
+    /*
+     * The splitmix64 / murmur3 finalizer.
+     */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return x ^ (x >>> 33);
+    }
+
+    /**
+     * Maps a 32 bit value to {@code [0, n)} without a division.
+     */
+    private static int reduce(int hash, int n) {
+        return (int) (((hash & 0xffffffffL) * n) >>> 32);
+    }
+
+    private static int slot(long hash, int block, int blockLength) {
+        int r = (int) Long.rotateLeft(hash, 21 * block);
+        return reduce(r, blockLength) + block * blockLength;
+    }
+
+    private int h0(long hash) {
+        return slot(hash, 0, blockLength);
+    }
+
+    private int h1(long hash) {
+        return slot(hash, 1, blockLength);
+    }
+
+    private int h2(long hash) {
+        return slot(hash, 2, blockLength);
+    }
+
+    private int fingerprint(long hash) {
+        int f = (int) (hash ^ (hash >>> 32));
+        return fingerprintBits == 8 ? f & 0xff : f & 0xffff;
+    }
+
+    private int get(int index) {
+        return fingerprints8 != null ? fingerprints8[index] & 0xff : fingerprints16[index] & 0xffff;
+    }
+
+    private void set(int index, int value) {
+        if (fingerprints8 != null) {
+            fingerprints8[index] = (byte) value;
+        } else {
+            fingerprints16[index] = (short) value;
+        }
+    }
+
+    /**
+     * @param key a 64 bit key hash, as passed to {@link #build}
+     * @return false if the key is definitely not in the set
+     */
+    public boolean mayContain(long key) {
+        long hash = mix(key + seed);
+        int f = fingerprint(hash);
+        if (fingerprints8 != null) {
+            return f == ((fingerprints8[h0(hash)] ^ fingerprints8[h1(hash)] ^ fingerprints8[h2(hash)]) & 0xff);
+        }
+        return f == ((fingerprints16[h0(hash)] ^ fingerprints16[h1(hash)] ^ fingerprints16[h2(hash)]) & 0xffff);
+    }
+
+    public boolean isPresent(String key) {
+        return mayContain(hash(key));
+    }
+
+    public boolean isPresent(byte[] key) {
+        return mayContain(hash(key));
+    }
+
+    /**
+     * @return the 64 bit hash of {@code key} to build a filter from and look it up with
+     */
+    public static long hash(byte[] key) {
+        return MurmurHash.hash64(key, key.length);
+    }
+
+    public static long hash(String key) {
+        try {
+            return hash(key.getBytes("UTF-16"));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the number of distinct keys the filter was built from
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getFingerprintBits() {
+        return fingerprintBits;
+    }
+
+    long seed() {
+        return seed;
+    }
+
+    int blockLength() {
+        return blockLength;
+    }
+
+    byte[] fingerprints8() {
+        return fingerprints8;
+    }
+
+    short[] fingerprints16() {
+        return fingerprints16;
+    }
+
+    public long sizeInBytes() {
+        return 3L * blockLength * fingerprintBits / 8;
+    }
+
+    public String toString() {
+        return "XorFilter{size=" + size + ", fingerprintBits=" + fingerprintBits + ", blockLength=" + blockLength + '}';
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.membership;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class XorFilterSerializer implements ICompactSerializer<XorFilter> {
+
+    public void serialize(XorFilter filter, DataOutputStream dos) throws IOException {
+        dos.writeInt(filter.getFingerprintBits());
+        dos.writeInt(filter.size());
+        dos.writeLong(filter.seed());
+        dos.writeInt(filter.blockLength());
+        if (filter.getFingerprintBits() == 8) {
+            dos.write(filter.fingerprints8());
+        } else {
+            for (short fingerprint : filter.fingerprints16()) {
+                dos.writeShort(fingerprint);
+            }
+        }
+    }
+
+    public XorFilter deserialize(DataInputStream dis) throws IOException {
+        int fingerprintBits = dis.readInt();
+        int size = dis.readInt();
+        long seed = dis.readLong();
+        int blockLength = dis.readInt();
+        if (fingerprintBits == 8) {
+            byte[] fingerprints = new byte[3 * blockLength];
+            dis.readFully(fingerprints);
+            return new XorFilter(fingerprintBits, size, seed, blockLength, fingerprints, null);
+        }
+        if (fingerprintBits != 16) {
+            throw new IOException("Invalid fingerprint size: " + fingerprintBits);
+        }
+        short[] fingerprints = new short[3 * blockLength];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = dis.readShort();
+        }
+        return new XorFilter(fingerprintBits, size, seed, blockLength, null, fingerprints);
+    }
+}
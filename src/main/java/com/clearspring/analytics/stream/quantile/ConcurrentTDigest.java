@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.quantile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.clearspring.analytics.util.Preconditions;
+
+/**
+ * A {@link TDigest} that many threads can add samples to at once.
+ * <p/>
+ * Samples are appended without locking to one of several striped buffers, picked by thread.
+ * Whichever writer takes the last slot of a buffer queues it and swaps in an empty one before
+ * writing its own sample, and a writer that still finds the full buffer in its stripe swaps it
+ * out itself, so {@link #add(double)} never waits on another thread. The writer that filled the
+ * buffer then merges the queued buffers into a single digest with
+ * {@link TDigest#addAll(double[], int, int)}, unless another thread is already doing so.
+ * <p/>
+ * Queries drain what has been buffered and answer from a {@link TDigestSnapshot} that is kept
+ * until more samples arrive, so repeated queries between writes don't rebuild it. A snapshot
+ * doesn't wait for writes in progress: a buffer one of them is still writing to is left queued
+ * for a later drain, along with the samples already in it. Queries do wait for a merge already
+ * running in another thread, and for each other.
+ * <p/>
+ * Ideally used in multithreaded applications, otherwise see {@link TDigest}
+ */
+public class ConcurrentTDigest {
+
+    private static final int DEFAULT_BUFFER_SIZE = 512;
+
+    private final TDigest digest;
+    private final int bufferSize;
+    private final AtomicReferenceArray<Buffer> stripes;
+    private final ConcurrentLinkedQueue<Buffer> full = new ConcurrentLinkedQueue<Buffer>();
+    private final ReentrantLock drainLock = new ReentrantLock();
+
+    public ConcurrentTDigest(double compression) {
+        this(compression, new Random());
+    }
+
+    public ConcurrentTDigest(double compression, Random random) {
+        this(compression, random, 2 * Runtime.getRuntime().availableProcessors(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param stripes    how many buffers writers spread over, rounded up to a power of two
+     * @param bufferSize how many samples each buffer holds before it is drained
+     */
+    public ConcurrentTDigest(double compression, Random random, int stripes, int bufferSize) {
+        Preconditions.checkArgument(stripes > 0, "Need at least one stripe");
+        Preconditions.checkArgument(bufferSize > 0, "Buffers must hold at least one sample");
+        this.digest = new TDigest(compression, random);
+        this.bufferSize = bufferSize;
+        int n = Integer.highestOneBit(stripes);
+        this.stripes = new AtomicReferenceArray<Buffer>(n < stripes ? n << 1 : n);
+        for (int i = 0; i < this.stripes.length(); i++) {
+            this.stripes.set(i, new Buffer(bufferSize));
+        }
+    }
+
+    /**
+     * Adds a sample without locking or waiting on other writers. The writer that fills a
+     * buffer also merges the full buffers if no other thread is.
+     */
+    public void add(double x) {
+        int stripe = stripe();
+        while (true) {
+            Buffer buffer = stripes.get(stripe);
+            int i = buffer.reserved.getAndIncrement();
+            if (i >= bufferSize) {
+                // full or closed, and not swapped out yet
+                stripes.compareAndSet(stripe, buffer, new Buffer(bufferSize));
+                continue;
+            }
+            if (i == bufferSize - 1) {
+                // queued before it is swapped out, so a snapshot finds it in one place or the
+                // other
+                full.add(buffer);
+                stripes.compareAndSet(stripe, buffer, new Buffer(bufferSize));
+            }
+            buffer.values[i] = x;
+            buffer.written.incrementAndGet();
+            if (i == bufferSize - 1 && drainLock.tryLock()) {
+                try {
+                    drainFull();
+                } finally {
+                    drainLock.unlock();
+                }
+            }
+            return;
+        }
+    }
+
+    private int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 32)) & (stripes.length() - 1);
+    }
+
+    /**
+     * Waits only for a merge or snapshot already running in another thread.
+     *
+     * @return a snapshot of every sample added before this call, but for those sharing a buffer
+     * with an add still in progress, which later snapshots include
+     */
+    public TDigestSnapshot snapshot() {
+        drainLock.lock();
+        try {
+            for (int i = 0; i < stripes.length(); i++) {
+                Buffer buffer = stripes.get(i);
+                if (buffer.reserved.get() > 0 && stripes.compareAndSet(i, buffer, new Buffer(bufferSize))) {
+                    full.add(buffer);
+                }
+            }
+            drainFull();
+            return digest.snapshot();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    public double quantile(double q) {
+        return snapshot().quantile(q);
+    }
+
+    public double[] quantiles(double[] qs) {
+        return snapshot().quantiles(qs);
+    }
+
+    public double cdf(double x) {
+        return snapshot().cdf(x);
+    }
+
+    /**
+     * @return the number of samples added so far
+     */
+    public int size() {
+        return snapshot().size();
+    }
+
+    public double compression() {
+        return digest.compression();
+    }
+
+    /*
+     * Must hold drainLock. Buffers still being written to are queued again for the next drain.
+     */
+    private void drainFull() {
+        List<Buffer> unfinished = new ArrayList<Buffer>();
+        Buffer buffer;
+        while ((buffer = full.poll()) != null) {
+            if (!drain(buffer)) {
+                unfinished.add(buffer);
+            }
+        }
+        full.addAll(unfinished);
+    }
+
+    /*
+     * Must hold drainLock. A buffer may be queued twice, by the writer that filled it and by a
+     * snapshot that found it still in its stripe, so each is drained once.
+     *
+     * @return false if a writer that got a slot before the buffer was closed hasn't written yet
+     */
+    private boolean drain(Buffer buffer) {
+        if (buffer.drained) {
+            return true;
+        }
+        if (buffer.size < 0) {
+            // no slots are handed out once closed
+            buffer.size = Math.min(buffer.reserved.getAndSet(bufferSize), bufferSize);
+        }
+        if (buffer.written.get() < buffer.size) {
+            return false;
+        }
+        buffer.drained = true;
+        digest.addAll(buffer.values, 0, buffer.size);
+        return true;
+    }
+
+    private static final class Buffer {
+
+        final double[] values;
+        final AtomicInteger reserved = new AtomicInteger();
+        final AtomicInteger written = new AtomicInteger();
+        // guarded by drainLock, the samples it holds once closed
+        int size = -1;
+        // guarded by drainLock
+        boolean drained;
+
+        Buffer(int size) {
+            values = new double[size];
+        }
+    }
+}
@@ -17,157 +17,283 @@
 
 package com.clearspring.analytics.stream.quantile;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 import com.clearspring.analytics.util.AbstractIterator;
+import com.clearspring.analytics.util.Lists;
 import com.clearspring.analytics.util.Preconditions;
 
 /**
  * A tree containing TDigest.Group.  This adds to the normal NavigableSet the
  * ability to sum up the size of elements to the left of a particular group.
+ * <p/>
+ * The tree is an AVL tree whose nodes live in parallel arrays and are addressed by index, so
+ * searches compare primitive means and ids instead of following references to groups, and
+ * adding or removing a group allocates nothing once the arrays are large enough.  The mean,
+ * id and count of a group are copied into its node when it is added, so a group must be
+ * removed before it is changed and added back afterwards.
  */
 public class GroupTree implements Iterable<TDigest.Group> {
 
-    private int count;
-    private int size;
-    private int depth;
-    private TDigest.Group leaf;
-    private GroupTree left, right;
+    // index of the empty subtree, its depth, size and sum stay zero
+    private static final int NIL = 0;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private double[] mean;
+    private int[] id;
+    private int[] count;
+    private TDigest.Group[] group;
+
+    private int[] left;
+    private int[] right;
+    private int[] depth;
+    private int[] size;
+    private int[] sum;
+
+    private int root = NIL;
+    // lowest index never handed out
+    private int next = 1;
+    // released nodes, chained through left
+    private int free = NIL;
 
     public GroupTree() {
-        count = size = depth = 0;
-        leaf = null;
-        left = right = null;
+        this(INITIAL_CAPACITY);
     }
 
     public GroupTree(TDigest.Group leaf) {
-        size = depth = 1;
-        this.leaf = leaf;
-        count = leaf.count();
-        left = right = null;
+        this();
+        add(leaf);
     }
 
+    /**
+     * Joins two trees, every group in {@code left} must be less than every group in {@code right}.
+     */
     public GroupTree(GroupTree left, GroupTree right) {
-        this.left = left;
-        this.right = right;
-        count = left.count + right.count;
-        size = left.size + right.size;
-        rebalance();
-        leaf = this.right.first();
+        this(left.size() + right.size() + 1);
+        List<TDigest.Group> sorted = Lists.newArrayList(left);
+        for (TDigest.Group g : right) {
+            sorted.add(g);
+        }
+        root = build(sorted, 0, sorted.size());
     }
 
-    public void add(TDigest.Group group) {
-        if (size == 0) {
-            leaf = group;
-            depth = 1;
-            count = group.count();
-            size = 1;
-            return;
-        } else if (size == 1) {
-            int order = group.compareTo(leaf);
-            if (order < 0) {
-                left = new GroupTree(group);
-                right = new GroupTree(leaf);
-            } else if (order > 0) {
-                left = new GroupTree(leaf);
-                right = new GroupTree(group);
-                leaf = group;
-            }
-        } else if (group.compareTo(leaf) < 0) {
-            left.add(group);
+    private GroupTree(int nodes) {
+        allocate(Math.max(nodes + 1, 2));
+    }
+
+    /**
+     * Builds a balanced tree in linear time.
+     *
+     * @param sorted groups in ascending order
+     */
+    static GroupTree build(List<TDigest.Group> sorted) {
+        GroupTree r = new GroupTree(sorted.size());
+        r.root = r.build(sorted, 0, sorted.size());
+        return r;
+    }
+
+    private int build(List<TDigest.Group> sorted, int from, int to) {
+        if (from >= to) {
+            return NIL;
+        }
+        int mid = (from + to) >>> 1;
+        int node = node(sorted.get(mid));
+        left[node] = build(sorted, from, mid);
+        right[node] = build(sorted, mid + 1, to);
+        update(node);
+        return node;
+    }
+
+    private void allocate(int capacity) {
+        mean = new double[capacity];
+        id = new int[capacity];
+        count = new int[capacity];
+        group = new TDigest.Group[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        depth = new int[capacity];
+        size = new int[capacity];
+        sum = new int[capacity];
+    }
+
+    private void grow() {
+        int capacity = mean.length * 2;
+        mean = Arrays.copyOf(mean, capacity);
+        id = Arrays.copyOf(id, capacity);
+        count = Arrays.copyOf(count, capacity);
+        group = Arrays.copyOf(group, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        depth = Arrays.copyOf(depth, capacity);
+        size = Arrays.copyOf(size, capacity);
+        sum = Arrays.copyOf(sum, capacity);
+    }
+
+    /**
+     * @return a detached node holding {@code g}
+     */
+    private int node(TDigest.Group g) {
+        int node;
+        if (free != NIL) {
+            node = free;
+            free = left[node];
         } else {
-            right.add(group);
+            if (next == mean.length) {
+                grow();
+            }
+            node = next++;
         }
-        count += group.count();
-        size++;
-        depth = Math.max(left.depth, right.depth) + 1;
+        mean[node] = g.mean();
+        id[node] = g.id();
+        count[node] = g.count();
+        group[node] = g;
+        left[node] = right[node] = NIL;
+        depth[node] = size[node] = 1;
+        sum[node] = count[node];
+        return node;
+    }
 
-        rebalance();
+    private void release(int node) {
+        group[node] = null;
+        left[node] = free;
+        free = node;
     }
 
-    private void rebalance() {
-        int l = left.depth();
-        int r = right.depth();
-        if (l > r + 1) {
-            if (left.left.depth() > left.right.depth()) {
-                rotate(left.left.left, left.left.right, left.right, right);
-            } else {
-                rotate(left.left, left.right.left, left.right.right, right);
+    /**
+     * Orders like {@link TDigest.Group#compareTo}.
+     */
+    private int compare(TDigest.Group g, int node) {
+        return compare(g.mean(), g.id(), node);
+    }
+
+    private int compare(double m, int i, int node) {
+        int r = Double.compare(m, mean[node]);
+        if (r == 0) {
+            r = i - id[node];
+        }
+        return r;
+    }
+
+    public void add(TDigest.Group group) {
+        root = insert(root, node(group));
+    }
+
+    private int insert(int node, int n) {
+        if (node == NIL) {
+            return n;
+        }
+        if (compare(mean[n], id[n], node) < 0) {
+            left[node] = insert(left[node], n);
+        } else {
+            right[node] = insert(right[node], n);
+        }
+        return rebalance(node);
+    }
+
+    /**
+     * Restores the depth difference of at most one between the children of {@code node},
+     * whose subtrees must already be balanced, and refreshes its cached totals.
+     *
+     * @return the node now at the top of this subtree
+     */
+    private int rebalance(int node) {
+        int l = left[node];
+        int r = right[node];
+        if (depth[l] > depth[r] + 1) {
+            if (depth[left[l]] < depth[right[l]]) {
+                left[node] = rotateLeft(l);
             }
-        } else if (r > l + 1) {
-            if (right.left.depth() > right.right.depth()) {
-                rotate(left, right.left.left, right.left.right, right.right);
-            } else {
-                rotate(left, right.left, right.right.left, right.right.right);
+            return rotateRight(node);
+        } else if (depth[r] > depth[l] + 1) {
+            if (depth[right[r]] < depth[left[r]]) {
+                right[node] = rotateRight(r);
             }
-        } else {
-            depth = Math.max(left.depth(), right.depth()) + 1;
+            return rotateLeft(node);
         }
+        update(node);
+        return node;
+    }
+
+    private int rotateLeft(int node) {
+        int r = right[node];
+        right[node] = left[r];
+        left[r] = node;
+        update(node);
+        update(r);
+        return r;
     }
 
-    private void rotate(GroupTree a, GroupTree b, GroupTree c, GroupTree d) {
-        left = new GroupTree(a, b);
-        right = new GroupTree(c, d);
-        count = left.count + right.count;
-        size = left.size + right.size;
-        depth = Math.max(left.depth(), right.depth()) + 1;
-        leaf = right.first();
+    private int rotateRight(int node) {
+        int l = left[node];
+        left[node] = right[l];
+        right[l] = node;
+        update(node);
+        update(l);
+        return l;
     }
 
-    private int depth() {
-        return depth;
+    private void update(int node) {
+        int l = left[node];
+        int r = right[node];
+        depth[node] = Math.max(depth[l], depth[r]) + 1;
+        size[node] = size[l] + size[r] + 1;
+        sum[node] = sum[l] + sum[r] + count[node];
     }
 
     public int size() {
-        return size;
+        return size[root];
     }
 
     /**
      * @return the number of items strictly before the current element
      */
     public int headCount(TDigest.Group base) {
-        if (size == 0) {
-            return 0;
-        } else if (left == null) {
-            return leaf.compareTo(base) < 0 ? 1 : 0;
-        } else {
-            if (base.compareTo(leaf) < 0) {
-                return left.headCount(base);
+        int r = 0;
+        int node = root;
+        while (node != NIL) {
+            if (compare(base, node) <= 0) {
+                node = left[node];
             } else {
-                return left.size + right.headCount(base);
+                r += size[left[node]] + 1;
+                node = right[node];
             }
         }
+        return r;
     }
 
     /**
      * @return the sum of the size() function for all elements strictly before the current element.
      */
     public int headSum(TDigest.Group base) {
-        if (size == 0) {
-            return 0;
-        } else if (left == null) {
-            return leaf.compareTo(base) < 0 ? count : 0;
-        } else {
-            if (base.compareTo(leaf) <= 0) {
-                return left.headSum(base);
+        int r = 0;
+        int node = root;
+        while (node != NIL) {
+            if (compare(base, node) <= 0) {
+                node = left[node];
             } else {
-                return left.count + right.headSum(base);
+                r += sum[left[node]] + count[node];
+                node = right[node];
             }
         }
+        return r;
     }
 
     /**
      * @return the first Group in this set
      */
     public TDigest.Group first() {
-        Preconditions.checkState(size > 0, "No first element of empty set");
-        if (left == null) {
-            return leaf;
-        } else {
-            return left.first();
+        Preconditions.checkState(root != NIL, "No first element of empty set");
+        return group[first(root)];
+    }
+
+    private int first(int node) {
+        while (left[node] != NIL) {
+            node = left[node];
         }
+        return node;
     }
 
     /**
@@ -186,144 +312,118 @@ public class GroupTree implements Iterable<TDigest.Group> {
      */
     private Iterator<TDigest.Group> iterator(final TDigest.Group start) {
         return new AbstractIterator<TDigest.Group>() {
+            // the nodes still to be returned whose right subtrees haven't been visited, the
+            // next one on top
+            final int[] stack = new int[depth[root]];
+            int top = 0;
+
             {
-                stack = new ArrayDeque<GroupTree>();
-                push(GroupTree.this, start);
+                push(root, start);
             }
 
-            Deque<GroupTree> stack;
-
-            // recurses down to the leaf that is >= start
-            // pending right hand branches on the way are put on the stack
-            private void push(GroupTree z, TDigest.Group start) {
-                while (z.left != null) {
-                    if (start == null || start.compareTo(z.leaf) < 0) {
-                        // remember we will have to process the right hand branch later
-                        stack.push(z.right);
-                        // note that there is no guarantee that z.left has any good data
-                        z = z.left;
+            // walks down to the first node that is >= start
+            private void push(int node, TDigest.Group start) {
+                while (node != NIL) {
+                    if (start == null || compare(start, node) <= 0) {
+                        stack[top++] = node;
+                        node = left[node];
                     } else {
-                        // if the left hand branch doesn't contain start, then no push
-                        z = z.right;
+                        node = right[node];
                     }
                 }
-                // put the leaf value on the stack if it is valid
-                if (start == null || z.leaf.compareTo(start) >= 0) {
-                    stack.push(z);
-                }
             }
 
             @Override
             protected TDigest.Group computeNext() {
-                GroupTree r = stack.poll();
-                while (r != null && r.left != null) {
-                    // unpack r onto the stack
-                    push(r, start);
-                    r = stack.poll();
+                if (top == 0) {
+                    return endOfData();
                 }
-
-                // at this point, r == null or r.left == null
-                // if r == null, stack is empty and we are done
-                // if r != null, then r.left != null and we have a result
-                if (r != null) {
-                    return r.leaf;
-                }
-                return endOfData();
+                int node = stack[--top];
+                // everything to the right is after start already
+                push(right[node], null);
+                return group[node];
             }
         };
     }
 
     public void remove(TDigest.Group base) {
-        Preconditions.checkState(size > 0, "Cannot remove from empty set");
-        if (size == 1) {
-            Preconditions.checkArgument(base.compareTo(leaf) == 0, "Element %s not found", base);
-            count = size = 0;
-            leaf = null;
+        Preconditions.checkState(root != NIL, "Cannot remove from empty set");
+        root = delete(root, base);
+    }
+
+    private int delete(int node, TDigest.Group base) {
+        Preconditions.checkArgument(node != NIL, "Element %s not found", base);
+        int order = compare(base, node);
+        if (order < 0) {
+            left[node] = delete(left[node], base);
+        } else if (order > 0) {
+            right[node] = delete(right[node], base);
         } else {
-            if (base.compareTo(leaf) < 0) {
-                if (left.size > 1) {
-                    left.remove(base);
-                    count -= base.count();
-                    size--;
-                    rebalance();
-                } else {
-                    size = right.size;
-                    count = right.count;
-                    depth = right.depth;
-                    leaf = right.leaf;
-                    left = right.left;
-                    right = right.right;
-                }
-            } else {
-                if (right.size > 1) {
-                    right.remove(base);
-                    leaf = right.first();
-                    count -= base.count();
-                    size--;
-                    rebalance();
-                } else {
-                    size = left.size;
-                    count = left.count;
-                    depth = left.depth;
-                    leaf = left.leaf;
-                    right = left.right;
-                    left = left.left;
-                }
+            int l = left[node];
+            int r = right[node];
+            release(node);
+            if (l == NIL) {
+                return r;
+            } else if (r == NIL) {
+                return l;
             }
+            // the successor takes the place of the removed node
+            node = first(r);
+            right[node] = deleteFirst(r);
+            left[node] = l;
+        }
+        return rebalance(node);
+    }
+
+    private int deleteFirst(int node) {
+        if (left[node] == NIL) {
+            return right[node];
         }
+        left[node] = deleteFirst(left[node]);
+        return rebalance(node);
     }
 
     /**
      * @return the largest element less than or equal to base
      */
     public TDigest.Group floor(TDigest.Group base) {
-        if (size == 0) {
-            return null;
-        } else {
-            if (size == 1) {
-                return base.compareTo(leaf) >= 0 ? leaf : null;
+        int r = NIL;
+        int node = root;
+        while (node != NIL) {
+            if (compare(base, node) < 0) {
+                node = left[node];
             } else {
-                if (base.compareTo(leaf) < 0) {
-                    return left.floor(base);
-                } else {
-                    TDigest.Group floor = right.floor(base);
-                    if (floor == null) {
-                        floor = left.last();
-                    }
-                    return floor;
-                }
+                r = node;
+                node = right[node];
             }
         }
+        return group[r];
     }
 
     public TDigest.Group last() {
-        Preconditions.checkState(size > 0, "Cannot find last element of empty set");
-        if (size == 1) {
-            return leaf;
-        } else {
-            return right.last();
+        Preconditions.checkState(root != NIL, "Cannot find last element of empty set");
+        int node = root;
+        while (right[node] != NIL) {
+            node = right[node];
         }
+        return group[node];
     }
 
     /**
      * @return the smallest element greater than or equal to base.
      */
     public TDigest.Group ceiling(TDigest.Group base) {
-        if (size == 0) {
-            return null;
-        } else if (size == 1) {
-            return base.compareTo(leaf) <= 0 ? leaf : null;
-        } else {
-            if (base.compareTo(leaf) < 0) {
-                TDigest.Group r = left.ceiling(base);
-                if (r == null) {
-                    r = right.first();
-                }
-                return r;
+        int r = NIL;
+        int node = root;
+        while (node != NIL) {
+            if (compare(base, node) <= 0) {
+                r = node;
+                node = left[node];
             } else {
-                return right.ceiling(base);
+                node = right[node];
             }
         }
+        return group[r];
     }
 
     /**
@@ -339,32 +439,42 @@ public class GroupTree implements Iterable<TDigest.Group> {
     }
 
     public int sum() {
-        return count;
+        return sum[root];
     }
 
     public void checkBalance() {
-        if (left != null) {
-            Preconditions.checkState(Math.abs(left.depth() - right.depth()) < 2, "Imbalanced");
-            int l = left.depth();
-            int r = right.depth();
-            Preconditions.checkState(depth == Math.max(l, r) + 1, "Depth doesn't match children");
-            Preconditions.checkState(size == left.size + right.size, "Sizes don't match children");
-            Preconditions.checkState(count == left.count + right.count, "Counts don't match children");
-            Preconditions.checkState(leaf.compareTo(right.first()) == 0, "Split is wrong %.5d != %.5d or %d != %d", leaf.mean(), right.first().mean(), leaf.id(), right.first().id());
-            left.checkBalance();
-            right.checkBalance();
+        checkBalance(root);
+    }
+
+    private void checkBalance(int node) {
+        if (node != NIL) {
+            int l = left[node];
+            int r = right[node];
+            Preconditions.checkState(Math.abs(depth[l] - depth[r]) < 2, "Imbalanced");
+            Preconditions.checkState(depth[node] == Math.max(depth[l], depth[r]) + 1, "Depth doesn't match children");
+            Preconditions.checkState(size[node] == size[l] + size[r] + 1, "Sizes don't match children");
+            Preconditions.checkState(sum[node] == sum[l] + sum[r] + count[node], "Counts don't match children");
+            Preconditions.checkState(l == NIL || compare(mean[l], id[l], node) < 0, "Left child %s is not before %s", group[l], group[node]);
+            Preconditions.checkState(r == NIL || compare(mean[r], id[r], node) > 0, "Right child %s is not after %s", group[r], group[node]);
+            checkBalance(l);
+            checkBalance(r);
         }
     }
 
     public void print(int depth) {
-        for (int i = 0; i < depth; i++) {
-            System.out.printf("| ");
+        print(root, depth);
+    }
+
+    private void print(int node, int indent) {
+        if (node == NIL) {
+            return;
         }
-        int imbalance = Math.abs((left != null ? left.depth : 1) - (right != null ? right.depth : 1));
-        System.out.printf("%s%s, %d, %d, %d\n", (imbalance > 1 ? "* " : "") + (right != null && leaf.compareTo(right.first()) != 0 ? "+ " : ""), leaf, size, count, this.depth);
-        if (left != null) {
-            left.print(depth + 1);
-            right.print(depth + 1);
+        for (int i = 0; i < indent; i++) {
+            System.out.printf("| ");
         }
+        int imbalance = Math.abs(depth[left[node]] - depth[right[node]]);
+        System.out.printf("%s%s, %d, %d, %d\n", imbalance > 1 ? "* " : "", group[node], size[node], sum[node], depth[node]);
+        print(left[node], indent + 1);
+        print(right[node], indent + 1);
     }
 }
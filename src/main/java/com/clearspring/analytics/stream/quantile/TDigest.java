@@ -17,6 +17,7 @@
 
 package com.clearspring.analytics.stream.quantile;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -28,6 +29,9 @@ import java.nio.ByteBuffer;
 import com.clearspring.analytics.util.Lists;
 import com.clearspring.analytics.util.Preconditions;
 
+import it.unimi.dsi.fastutil.Swapper;
+import it.unimi.dsi.fastutil.ints.IntComparator;
+
 /**
  * Adaptive histogram based on something like streaming k-means crossed with Q-digest.
  * <p/>
@@ -55,6 +59,10 @@ public class TDigest {
     private GroupTree summary = new GroupTree();
     private int count = 0;
     private boolean recordAllData = false;
+    private boolean autoCompress = true;
+
+    // answers queries until the next change to the summary
+    private TDigestSnapshot snapshot;
 
     /**
      * A histogram structure that will record a sketch of a distribution.
@@ -95,6 +103,7 @@ public class TDigest {
     }
 
     private void add(double x, int w, Group base) {
+        snapshot = null;
         Group start = summary.floor(base);
         if (start == null) {
             start = summary.ceiling(base);
@@ -151,13 +160,11 @@ public class TDigest {
             }
             count += w;
 
-            if (summary.size() > 100 * compression) {
+            if (autoCompress && needsCompression()) {
                 // something such as sequential ordering of data points
                 // has caused a pathological expansion of our summary.
-                // To fight this, we simply replay the current centroids
-                // in random order.
-
-                // this causes us to forget the diagnostic recording of data points
+                // To fight this, we merge adjacent centroids in one
+                // ordered pass.
                 compress();
             }
         }
@@ -172,6 +179,120 @@ public class TDigest {
         }
     }
 
+    /**
+     * Adds a batch of samples.  The batch is sorted and merged with the existing centroids in
+     * one ordered pass, using the size bound of {@link #compress()}, so this is much faster than
+     * adding the samples one at a time.
+     *
+     * @param values the samples, not modified
+     * @param off    the index of the first sample to add
+     * @param len    the number of samples to add
+     */
+    public void addAll(double[] values, int off, int len) {
+        checkRange(values.length, off, len);
+        double[] sorted = Arrays.copyOfRange(values, off, off + len);
+        Arrays.sort(sorted);
+        merge(sorted, null, len);
+    }
+
+    /**
+     * Adds a batch of weighted samples, see {@link #addAll(double[], int, int)}.
+     *
+     * @param weights the weight of each sample, all positive, not modified
+     */
+    public void addAll(double[] values, int[] weights, int off, int len) {
+        checkRange(values.length, off, len);
+        checkRange(weights.length, off, len);
+        final double[] sorted = Arrays.copyOfRange(values, off, off + len);
+        final int[] sortedWeights = Arrays.copyOfRange(weights, off, off + len);
+        for (int w : sortedWeights) {
+            Preconditions.checkArgument(w > 0, "Weights must be positive: %s", w);
+        }
+        it.unimi.dsi.fastutil.Arrays.quickSort(0, len, new IntComparator() {
+            @Override
+            public int compare(int a, int b) {
+                return Double.compare(sorted[a], sorted[b]);
+            }
+        }, new Swapper() {
+            @Override
+            public void swap(int a, int b) {
+                double x = sorted[a];
+                sorted[a] = sorted[b];
+                sorted[b] = x;
+                int w = sortedWeights[a];
+                sortedWeights[a] = sortedWeights[b];
+                sortedWeights[b] = w;
+            }
+        });
+        merge(sorted, sortedWeights, len);
+    }
+
+    private static void checkRange(int length, int off, int len) {
+        Preconditions.checkArgument(off >= 0 && len >= 0 && off <= length - len,
+                                    "Range [%s, %s) out of bounds for length %s", off, off + len, length);
+    }
+
+    /**
+     * Merges sorted samples into the centroids the same way {@link #compress()} merges
+     * neighbouring centroids.  Groups are only created for the centroids that come out.
+     *
+     * @param weights null if every sample has weight one
+     */
+    private void merge(double[] sorted, int[] weights, int len) {
+        if (len == 0) {
+            return;
+        }
+        int total = count;
+        for (int i = 0; i < len; i++) {
+            total += weights == null ? 1 : weights[i];
+        }
+
+        List<Group> merged = Lists.newArrayList();
+        Iterator<Group> existing = summary.iterator();
+        Group next = existing.hasNext() ? existing.next() : null;
+        Group current = null;
+        int sum = 0;
+        int i = 0;
+        while (next != null || i < len) {
+            // existing centroids go before samples with the same mean
+            Group group = null;
+            double x;
+            int w;
+            if (i == len || (next != null && next.mean() <= sorted[i])) {
+                group = next;
+                x = group.mean();
+                w = group.count();
+                next = existing.hasNext() ? existing.next() : null;
+            } else {
+                x = sorted[i];
+                w = weights == null ? 1 : weights[i];
+                i++;
+            }
+
+            if (current != null) {
+                double q0 = (double) sum / total;
+                double q1 = (double) (sum + current.count() + w) / total;
+                double k = 4 * total * Math.min(q0 * (1 - q0), q1 * (1 - q1)) / compression;
+                if (current.count() + w <= k) {
+                    current.add(x, w, group != null ? group.data() : null);
+                    continue;
+                }
+                merged.add(current);
+                sum += current.count();
+            }
+            if (group != null) {
+                current = group;
+            } else {
+                current = Group.createWeighted(x, w, recordAllData ? Collections.singletonList(x) : null);
+            }
+        }
+        merged.add(current);
+
+        summary = GroupTree.build(merged);
+        count = total;
+        snapshot = null;
+    }
+
     public static TDigest merge(double compression, Iterable<TDigest> subData) {
         Preconditions.checkArgument(subData.iterator().hasNext(), "Can't merge 0 digests");
         List<TDigest> elements = Lists.newArrayList(subData);
@@ -190,22 +311,59 @@ public class TDigest {
         return r;
     }
 
+    /**
+     * Merges adjacent centroids wherever the merged centroid stays within the same size bound
+     * that {@link #add(double, int)} applies.  This is a single pass over the centroids in
+     * order, so it takes time linear in their number rather than re-adding each of them, and
+     * the data recorded by the centroids is kept.
+     */
     public void compress() {
-        compress(summary);
-    }
-
-    private void compress(GroupTree other) {
-        TDigest reduced = new TDigest(compression, gen);
-        if (recordAllData) {
-            reduced.recordAllData();
+        if (summary.size() < 2) {
+            return;
         }
-        List<Group> tmp = Lists.newArrayList(other);
-        Collections.shuffle(tmp, gen);
-        for (Group group : tmp) {
-            reduced.add(group.mean(), group.count(), group);
+        List<Group> merged = Lists.newArrayList();
+        Group current = null;
+        int sum = 0;
+        for (Group group : summary) {
+            if (current == null) {
+                current = group;
+                continue;
+            }
+            // bound the merged centroid by whichever of its ends is closer to a tail
+            double q0 = (double) sum / count;
+            double q1 = (double) (sum + current.count() + group.count()) / count;
+            double k = 4 * count * Math.min(q0 * (1 - q0), q1 * (1 - q1)) / compression;
+            if (current.count() + group.count() <= k) {
+                // the old tree is discarded, so its groups can be merged in place
+                current.add(group.mean(), group.count(), group.data());
+            } else {
+                merged.add(current);
+                sum += current.count();
+                current = group;
+            }
         }
+        merged.add(current);
+        summary = GroupTree.build(merged);
+        snapshot = null;
+    }
 
-        summary = reduced.summary;
+    /**
+     * @return true when the summary has grown past the size at which {@link #add(double, int)}
+     * compresses it
+     */
+    public boolean needsCompression() {
+        return summary.size() > 100 * compression;
+    }
+
+    /**
+     * Stops {@link #add(double, int)} from compressing the summary when it grows too large.  The
+     * owner is then expected to call {@link #compress()} whenever {@link #needsCompression()},
+     * for example from a background task that holds the same lock as the writers, so that no
+     * add ever pays for a compression.
+     */
+    public TDigest deferCompression() {
+        autoCompress = false;
+        return this;
     }
 
     /**
@@ -223,48 +381,7 @@ public class TDigest {
      * @return the approximate fraction of all samples that were less than or equal to x.
      */
     public double cdf(double x) {
-        GroupTree values = summary;
-        if (values.size() == 0) {
-            return Double.NaN;
-        } else if (values.size() == 1) {
-            return x < values.first().mean() ? 0 : 1;
-        } else {
-            double r = 0;
-
-            // we scan a across the centroids
-            Iterator<Group> it = values.iterator();
-            Group a = it.next();
-
-            // b is the look-ahead to the next centroid
-            Group b = it.next();
-
-            // initially, we set left width equal to right width
-            double left = (b.mean() - a.mean()) / 2;
-            double right = left;
-
-            // scan to next to last element
-            while (it.hasNext()) {
-                if (x < a.mean() + right) {
-                    return (r + a.count() * interpolate(x, a.mean() - left, a.mean() + right)) / count;
-                }
-                r += a.count();
-
-                a = b;
-                b = it.next();
-
-                left = right;
-                right = (b.mean() - a.mean()) / 2;
-            }
-
-            // for the last element, assume right width is same as left
-            left = right;
-            a = b;
-            if (x < a.mean() + right) {
-                return (r + a.count() * interpolate(x, a.mean() - left, a.mean() + right)) / count;
-            } else {
-                return 1;
-            }
-        }
+        return snapshot().cdf(x);
     }
 
     /**
@@ -272,57 +389,36 @@ public class TDigest {
      * @return The minimum value x such that we think that the proportion of samples is <= x is q.
      */
     public double quantile(double q) {
-        GroupTree values = summary;
-        Preconditions.checkArgument(values.size() > 1);
-
-        Iterator<Group> it = values.iterator();
-        Group center = it.next();
-        Group leading = it.next();
-        if (!it.hasNext()) {
-            // only two centroids because of size limits
-            // both a and b have to have just a single element
-            double diff = (leading.mean() - center.mean()) / 2;
-            if (q > 0.75) {
-                return leading.mean() + diff * (4 * q - 3);
-            } else {
-                return center.mean() + diff * (4 * q - 1);
-            }
-        } else {
-            q *= count;
-            double right = (leading.mean() - center.mean()) / 2;
-            // we have nothing else to go on so make left hanging width same as right to start
-            double left = right;
-
-            double t = center.count();
-            while (it.hasNext()) {
-                if (t + center.count() / 2 >= q) {
-                    // left side of center
-                    return center.mean() - left * 2 * (q - t) / center.count();
-                } else if (t + leading.count() >= q) {
-                    // right of b but left of the left-most thing beyond
-                    return center.mean() + right * 2.0 * (center.count() - (q - t)) / center.count();
-                }
-                t += center.count();
+        return snapshot().quantile(q);
+    }
 
-                center = leading;
-                leading = it.next();
-                left = right;
-                right = (leading.mean() - center.mean()) / 2;
-            }
-            // ran out of data ... assume final width is symmetrical
-            center = leading;
-            left = right;
-            if (t + center.count() / 2 >= q) {
-                // left side of center
-                return center.mean() - left * 2 * (q - t) / center.count();
-            } else if (t + leading.count() >= q) {
-                // right of center but left of leading
-                return center.mean() + right * 2.0 * (center.count() - (q - t)) / center.count();
-            } else {
-                // shouldn't be possible
-                return 1;
+    /**
+     * @param qs The quantiles desired, each in the range [0,1].
+     * @return The value for each of the quantiles, as returned by {@link #quantile(double)}.
+     */
+    public double[] quantiles(double[] qs) {
+        return snapshot().quantiles(qs);
+    }
+
+    /**
+     * Returns a read-only copy of the current centroids that answers quantile and cdf queries in
+     * time logarithmic in their number.  It is built on the first query after a change and
+     * reused until the next one, and later changes to this digest don't affect it.
+     */
+    public TDigestSnapshot snapshot() {
+        if (snapshot == null) {
+            int n = summary.size();
+            double[] means = new double[n];
+            int[] counts = new int[n];
+            int i = 0;
+            for (Group group : summary) {
+                means[i] = group.mean();
+                counts[i] = group.count();
+                i++;
             }
+            snapshot = new TDigestSnapshot(means, counts, count);
         }
+        return snapshot;
     }
 
     public int centroidCount() {
@@ -470,10 +566,6 @@ public class TDigest {
         return new Group(mean, id, recordAllData);
     }
 
-    private double interpolate(double x, double x0, double x1) {
-        return (x - x0) / (x1 - x0);
-    }
-
     public static class Group implements Comparable<Group> {
 
         private static final AtomicInteger uniqueCount = new AtomicInteger(1);
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.quantile;
+
+import com.clearspring.analytics.util.Preconditions;
+
+/**
+ * An immutable copy of the centroids of a {@link TDigest}, for answering queries.
+ * <p/>
+ * The centroid means and counts are kept in sorted arrays along with the running totals of
+ * the counts, so {@link #quantile(double)} and {@link #cdf(double)} find the centroid they
+ * interpolate in by binary search rather than by walking the centroids from the start.  The
+ * answers are exactly those of the digest the snapshot was taken from.
+ * <p/>
+ * Being immutable, a snapshot can be shared between threads.
+ */
+public final class TDigestSnapshot {
+
+    private final int count;
+    private final double[] mean;
+    private final int[] weight;
+    // sum of the weights before each centroid, with the total at the end
+    private final long[] cumulative;
+    // half the gap from each centroid to the next
+    private final double[] halfGap;
+
+    /**
+     * @param mean   centroid means in ascending order, not copied
+     * @param weight centroid counts, not copied
+     * @param count  the number of samples in the digest
+     */
+    TDigestSnapshot(double[] mean, int[] weight, int count) {
+        int n = mean.length;
+        this.count = count;
+        this.mean = mean;
+        this.weight = weight;
+        this.cumulative = new long[n + 1];
+        for (int i = 0; i < n; i++) {
+            cumulative[i + 1] = cumulative[i] + weight[i];
+        }
+        this.halfGap = new double[Math.max(n - 1, 0)];
+        for (int i = 0; i < n - 1; i++) {
+            halfGap[i] = (mean[i + 1] - mean[i]) / 2;
+        }
+    }
+
+    /**
+     * @return the number of samples represented
+     */
+    public int size() {
+        return count;
+    }
+
+    public int centroidCount() {
+        return mean.length;
+    }
+
+    /**
+     * @see TDigest#cdf(double)
+     */
+    public double cdf(double x) {
+        int n = mean.length;
+        if (n == 0) {
+            return Double.NaN;
+        } else if (n == 1) {
+            return x < mean[0] ? 0 : 1;
+        }
+
+        // the first centroid, short of the last two, whose right edge is past x
+        int lo = 0;
+        int hi = n - 2;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (x < mean[mid] + halfGap[mid]) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        if (lo < n - 2) {
+            double left = lo == 0 ? halfGap[0] : halfGap[lo - 1];
+            double right = halfGap[lo];
+            return (cumulative[lo] + weight[lo] * interpolate(x, mean[lo] - left, mean[lo] + right)) / count;
+        }
+
+        // the second to last centroid is never interpolated in, and for the last one the
+        // left width is taken as its right width
+        double width = halfGap[n - 2];
+        if (x < mean[n - 1] + width) {
+            return (cumulative[n - 2] + weight[n - 1] * interpolate(x, mean[n - 1] - width, mean[n - 1] + width)) / count;
+        } else {
+            return 1;
+        }
+    }
+
+    /**
+     * @see TDigest#quantile(double)
+     */
+    public double quantile(double q) {
+        int n = mean.length;
+        Preconditions.checkArgument(n > 1);
+
+        if (n == 2) {
+            // only two centroids because of size limits
+            // both have to have just a single element
+            double diff = (mean[1] - mean[0]) / 2;
+            if (q > 0.75) {
+                return mean[1] + diff * (4 * q - 3);
+            } else {
+                return mean[0] + diff * (4 * q - 1);
+            }
+        }
+
+        q *= count;
+        // the scan in TDigest stops at centroid i, short of the last two, if either q falls in
+        // its left half, which becomes true at some i and stays true, or q is below the
+        // running total plus the next centroid's weight.  The second implies the first two
+        // centroids on, so only the two before the first found by binary search need checking.
+        int lo = 0;
+        int hi = n - 2;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (runningTotal(mid) + weight[mid] / 2 >= q) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        for (int i = Math.max(lo - 2, 0); i < lo; i++) {
+            if (runningTotal(i) + weight[i + 1] >= q) {
+                double t = runningTotal(i);
+                return mean[i] + halfGap[i] * 2.0 * (weight[i] - (q - t)) / weight[i];
+            }
+        }
+        if (lo < n - 2) {
+            // left side of centroid lo
+            double left = lo == 0 ? halfGap[0] : halfGap[lo - 1];
+            return mean[lo] - left * 2 * (q - runningTotal(lo)) / weight[lo];
+        }
+
+        // ran out of data ... assume final width is symmetrical
+        double t = runningTotal(n - 2);
+        double width = halfGap[n - 2];
+        int last = weight[n - 1];
+        if (t + last / 2 >= q) {
+            return mean[n - 1] - width * 2 * (q - t) / last;
+        } else if (t + last >= q) {
+            return mean[n - 1] + width * 2.0 * (last - (q - t)) / last;
+        } else {
+            // shouldn't be possible
+            return 1;
+        }
+    }
+
+    /**
+     * @return the quantiles at each of {@code qs}
+     */
+    public double[] quantiles(double[] qs) {
+        double[] r = new double[qs.length];
+        for (int i = 0; i < qs.length; i++) {
+            r[i] = quantile(qs[i]);
+        }
+        return r;
+    }
+
+    /**
+     * The running total TDigest keeps while scanning, which starts out at the weight of the
+     * first centroid rather than at zero.
+     */
+    private double runningTotal(int i) {
+        return weight[0] + cumulative[i];
+    }
+
+    private static double interpolate(double x, double x0, double x1) {
+        return (x - x0) / (x1 - x0);
+    }
+}
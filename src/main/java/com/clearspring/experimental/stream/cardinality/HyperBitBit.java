@@ -16,7 +16,8 @@
 
 package com.clearspring.experimental.stream.cardinality;
 
-import com.clearspring.analytics.hash.MurmurHash;
+import com.clearspring.analytics.hash.HashStrategy;
+import com.clearspring.analytics.hash.StandardHashStrategy;
 import com.clearspring.analytics.stream.cardinality.ICardinality;
 import com.clearspring.analytics.stream.cardinality.CardinalityMergeException;
 
@@ -56,6 +57,7 @@ public class HyperBitBit implements ICardinality {
     int lgN;
     long sketch;
     long sketch2;
+    final HashStrategy hash;
 
     /**
      * Create a new HyperBitBit instance.
@@ -63,14 +65,24 @@ public class HyperBitBit implements ICardinality {
      * Remember that it does not work well for small cardinalities!
      */
     public HyperBitBit() {
+        this(StandardHashStrategy.defaultStrategy());
+    }
+
+    /**
+     * Create a new HyperBitBit instance that hashes offered objects with {@code hash}.
+     *
+     * @param hash the 64 bit hash applied by {@link #offer(Object)}
+     */
+    public HyperBitBit(HashStrategy hash) {
         lgN = 5;
         sketch = 0;
         sketch2 = 0;
+        this.hash = hash;
     }
 
     @Override
     public boolean offer(Object o) {
-        final long x = MurmurHash.hash64(o);
+        final long x = hash.hash64(o);
         return offerHashed(x);
     }
 
@@ -79,7 +91,21 @@ public class HyperBitBit implements ICardinality {
         long k = (hashedLong << 58) >> 58;
         // Calculate the position of the leftmost 1-bit.
         int r = Long.numberOfLeadingZeros(hashedLong >> 6) - 6;
+        return update(k, r);
+    }
+
+    /**
+     * Same as {@link #offerHashed(long)}, with the run length taken from the 26 bits above
+     * the bucket bits.
+     */
+    @Override
+    public boolean offerHashed(int hashedInt) {
+        int k = (hashedInt << 26) >> 26;
+        int r = Integer.numberOfLeadingZeros(hashedInt >> 6) - 6;
+        return update(k, r);
+    }
 
+    private boolean update(long k, int r) {
         boolean modified = false;
 
         if (r > lgN) {
@@ -100,11 +126,6 @@ public class HyperBitBit implements ICardinality {
         return modified;
     }
 
-    @Override
-    public boolean offerHashed(int hashedInt) {
-        throw new UnsupportedOperationException();
-    }
-
     @Override
     public long cardinality() {
         double exponent = lgN + 5.4 + Long.bitCount(sketch)/32.0;
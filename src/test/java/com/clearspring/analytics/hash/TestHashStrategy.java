@@ -0,0 +1,211 @@
+package com.clearspring.analytics.hash;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.clearspring.analytics.stream.cardinality.HyperLogLog;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TestHashStrategy {
+
+    @Test
+    public void testMurmur2MatchesMurmurHash() {
+        HashStrategy hash = StandardHashStrategy.MURMUR2;
+        Object[] objects = {"", "abc", "été", 42L, 7, 3.5, new byte[]{1, 2, 3, 4, 5}, null};
+        for (Object o : objects) {
+            assertEquals(MurmurHash.hash(o), hash.hash32(o));
+            assertEquals(MurmurHash.hash64(o), hash.hash64(o));
+        }
+    }
+
+    @Test
+    public void testMurmur2ByteRanges() {
+        HashStrategy hash = StandardHashStrategy.MURMUR2;
+        Random random = new Random(7);
+        byte[] data = new byte[64];
+        random.nextBytes(data);
+        for (int off = 0; off < 8; off++) {
+            for (int len = 0; off + len <= data.length; len += 5) {
+                byte[] range = Arrays.copyOfRange(data, off, off + len);
+                assertEquals(MurmurHash.hash(range), hash.hash32(data, off, len));
+                assertEquals(MurmurHash.hash64(range, len), hash.hash64(data, off, len));
+            }
+        }
+    }
+
+    @Test
+    public void testMurmur2Longs() {
+        HashStrategy hash = StandardHashStrategy.MURMUR2;
+        Random random = new Random(3);
+        long[] values = new long[105];
+        values[0] = 0;
+        values[1] = -1;
+        values[2] = 7;
+        values[3] = Long.MIN_VALUE;
+        values[4] = Long.MAX_VALUE;
+        for (int i = 5; i < values.length; i++) {
+            values[i] = i % 2 == 0 ? random.nextLong() : random.nextInt();
+        }
+        for (long value : values) {
+            assertEquals(MurmurHash.hash64(Long.toString(value)), MurmurHash.hash64(value));
+            assertEquals(hash.hash64((Object) value), hash.hash64(value));
+            assertEquals(hash.hash32((Object) value), hash.hash32(value));
+            if (value == (int) value) {
+                assertEquals(hash.hash64((Object) (int) value), hash.hash64(value));
+                assertEquals(hash.hash32((Object) (int) value), hash.hash32(value));
+            }
+        }
+    }
+
+    @Test
+    public void testMurmur3AndXxHash64() {
+        byte[] data = {9, 8, 7, 6, 5, 4, 3, 2, 1};
+        assertEquals(Murmur3.hash32(data, 2, 5, 0), StandardHashStrategy.MURMUR3.hash32(data, 2, 5));
+        assertEquals(Murmur3.hash64(data, 2, 5, 0), StandardHashStrategy.MURMUR3.hash64(data, 2, 5));
+        assertEquals(Murmur3.hash32("abc", 0), StandardHashStrategy.MURMUR3.hash32("abc"));
+        assertEquals(Murmur3.hash64(123L, 0), StandardHashStrategy.MURMUR3.hash64(123L));
+        assertEquals(XxHash64.hash(data, 2, 5, 0), StandardHashStrategy.XXHASH64.hash64(data, 2, 5));
+        assertEquals(XxHash64.hash("abc", 0), StandardHashStrategy.XXHASH64.hash64("abc"));
+        assertEquals(XxHash64.hash(123L, 0), StandardHashStrategy.XXHASH64.hash64(123L));
+    }
+
+    @Test
+    public void testObjectDispatch() {
+        HashStrategy hash = StandardHashStrategy.MURMUR3;
+        assertEquals(hash.hash64(123L), hash.hash64((Object) 123L));
+        assertEquals(hash.hash64(123L), hash.hash64((Object) 123));
+        assertEquals(hash.hash32("abc"), hash.hash32((Object) "abc"));
+        assertEquals(hash.hash64(Double.doubleToRawLongBits(1.5)), hash.hash64((Object) 1.5));
+        assertEquals(hash.hash64("[a]"), hash.hash64((Object) Arrays.asList("a")));
+        byte[] data = {1, 2, 3};
+        assertEquals(hash.hash64(data, 0, 3), hash.hash64((Object) data));
+    }
+
+    @Test
+    public void testForId() {
+        for (StandardHashStrategy strategy : StandardHashStrategy.values()) {
+            assertSame(strategy, StandardHashStrategy.forId(strategy.id()));
+        }
+        assertSame(StandardHashStrategy.MURMUR2, StandardHashStrategy.defaultStrategy());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownId() {
+        StandardHashStrategy.forId(99);
+    }
+
+    @Test
+    public void testRegister() throws IOException {
+        HashStrategy custom = new SeededXxHash64(1);
+        HashStrategies.register(custom);
+        HashStrategies.register(new SeededXxHash64(1));
+        assertSame(custom, HashStrategies.forId(custom.id()));
+        assertSame(StandardHashStrategy.MURMUR3, HashStrategies.forId(StandardHashStrategy.MURMUR3.id()));
+
+        HyperLogLog hll = HyperLogLog.Builder.withLog2m(10).withHash(custom).build();
+        hll.offer("a");
+        HyperLogLog clone = HyperLogLog.Builder.build(hll.getBytes());
+        assertSame(custom, clone.getHashStrategy());
+        assertEquals(hll.cardinality(), clone.cardinality());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegisterTakenId() {
+        HashStrategies.register(new SeededXxHash64(2));
+        HashStrategies.register(new SeededXxHash64(2) {
+            @Override
+            public long hash64(long value) {
+                return value;
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegisterStandardId() {
+        HashStrategies.register(new SeededXxHash64(StandardHashStrategy.XXHASH64.id() - 1000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnregisteredId() {
+        HashStrategies.forId(999);
+    }
+
+    /**
+     * {@link XxHash64} with a seed of its own
+     */
+    private static class SeededXxHash64 implements HashStrategy {
+
+        private final int seed;
+
+        SeededXxHash64(int seed) {
+            this.seed = seed;
+        }
+
+        @Override
+        public int id() {
+            return 1000 + seed;
+        }
+
+        @Override
+        public int hash32(byte[] data, int off, int len) {
+            return (int) hash64(data, off, len);
+        }
+
+        @Override
+        public int hash32(CharSequence s) {
+            return (int) hash64(s);
+        }
+
+        @Override
+        public int hash32(long value) {
+            return (int) hash64(value);
+        }
+
+        @Override
+        public long hash64(byte[] data, int off, int len) {
+            return XxHash64.hash(data, off, len, seed);
+        }
+
+        @Override
+        public long hash64(CharSequence s) {
+            return XxHash64.hash(s, seed);
+        }
+
+        @Override
+        public long hash64(long value) {
+            return XxHash64.hash(value, seed);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o != null && o.getClass() == SeededXxHash64.class && ((SeededXxHash64) o).seed == seed;
+        }
+
+        @Override
+        public int hashCode() {
+            return seed;
+        }
+    }
+}
@@ -16,6 +16,10 @@ package com.clearspring.analytics.hash;
  * limitations under the License.
  */
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
 import java.util.Random;
 
 import org.junit.Test;
@@ -110,5 +114,99 @@ public class TestLookup3Hash {
         }
     }
 
+    @Test
+    public void testMixedText() {
+        Random r = new Random(1);
+        int[] utf32 = new int[40];
+        char[] pool = {'a', 'Z', ' ', '0', '\u00e9', '\u4e2d', '\ue000', '\uffff'};
+        for (int iter = 0; iter < 10000; iter++) {
+            int len = r.nextInt(utf32.length + 1);
+            for (int i = 0; i < len; i++) {
+                utf32[i] = r.nextInt(10) == 0 ? 0x10000 + r.nextInt(0x100000) : pool[r.nextInt(pool.length)];
+            }
+            tstEquiv(utf32, len);
+        }
+    }
+
+    @Test
+    public void testLoneSurrogates() {
+        String[] strings = {"abc\ud800", "abcdef\ud800", "\udc00abcdefg", "abcd\udc00efgh\ud800"};
+        for (String s : strings) {
+            int[] chars = new int[s.length()];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = s.charAt(i);
+            }
+            assertEquals(Lookup3Hash.lookup3ycs(chars, 0, chars.length, 7), Lookup3Hash.lookup3ycs(s, 0, s.length(), 7));
+        }
+    }
+
+    // Values from the driver in lookup3.c
+
+    @Test
+    public void testHashlittleReferenceValues() {
+        byte[] empty = new byte[0];
+        assertEquals(0xdeadbeef, Lookup3Hash.hashlittle(empty, 0, 0, 0));
+        assertEquals(0xbd5b7dde, Lookup3Hash.hashlittle(empty, 0, 0, 0xdeadbeef));
+        byte[] text = "Four score and seven years ago".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0x17770551, Lookup3Hash.hashlittle(text, 0, text.length, 0));
+        assertEquals(0xcd628161, Lookup3Hash.hashlittle(text, 0, text.length, 1));
+    }
+
+    @Test
+    public void testHashlittleMatchesLookup3() {
+        Random r = new Random(2);
+        for (int iter = 0; iter < 1000; iter++) {
+            int len = r.nextInt(20);
+            int[] k = new int[len];
+            int offset = r.nextInt(5);
+            ByteBuffer le = ByteBuffer.allocate(offset + 4 * len).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < len; i++) {
+                k[i] = r.nextInt();
+                le.putInt(offset + 4 * i, k[i]);
+            }
+            int initval = r.nextInt();
+            int expected = Lookup3Hash.lookup3(k, 0, len, initval);
+            byte[] bytes = le.array();
+            assertEquals(expected, Lookup3Hash.hashlittle(bytes, offset, 4 * len, initval));
+            assertEquals(expected, (int) Lookup3Hash.hashlittle2(bytes, offset, 4 * len, initval & 0xffffffffL));
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+            direct.put(bytes);
+            assertEquals(expected, Lookup3Hash.hashlittle(direct, offset, 4 * len, initval));
+            assertEquals(expected, Lookup3Hash.hashlittle(ByteBuffer.wrap(bytes), offset, 4 * len, initval));
+        }
+    }
+
+    @Test
+    public void testHashlittle2MatchesLookup3ycs64() {
+        Random r = new Random(3);
+        for (int iter = 0; iter < 1000; iter++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = r.nextInt(20); i > 0; i--) {
+                sb.append((char) ('a' + r.nextInt(26)));
+            }
+            String s = sb.toString();
+            byte[] utf32 = new byte[4 * s.length()];
+            for (int i = 0; i < s.length(); i++) {
+                utf32[4 * i] = (byte) s.charAt(i);
+            }
+            long initval = r.nextInt(1 << 20) | (long) r.nextInt() << 32;
+            assertEquals(Lookup3Hash.lookup3ycs64(s, 0, s.length(), initval + (s.length() << 2)),
+                         Lookup3Hash.hashlittle2(utf32, 0, utf32.length, initval));
+        }
+    }
 
+    @Test
+    public void testByteTails() {
+        Random r = new Random(4);
+        byte[] data = new byte[40];
+        r.nextBytes(data);
+        for (int len = 0; len <= 32; len++) {
+            byte[] copy = new byte[len + 3];
+            System.arraycopy(data, 0, copy, 3, len);
+            long expected = Lookup3Hash.hashlittle2(data, 0, len, 42);
+            assertEquals(expected, Lookup3Hash.hashlittle2(copy, 3, len, 42));
+            assertEquals(expected, Lookup3Hash.hashlittle2(ByteBuffer.wrap(copy), 3, len, 42));
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package com.clearspring.analytics.hash;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import java.util.Random;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestMurmur3 {
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) random.nextInt(0x10000));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testMatchesGuava() {
+        Random random = new Random(0);
+        long[] out = new long[2];
+        for (int len = 0; len < 100; len++) {
+            byte[] data = new byte[len];
+            random.nextBytes(data);
+            int seed = random.nextInt();
+            // Guava sign extends the seed of the 128 bit hash, the reference zero extends it
+            int seed128 = seed >>> 1;
+
+            assertEquals(Hashing.murmur3_32(seed).hashBytes(data).asInt(), Murmur3.hash32(data, 0, len, seed));
+            HashCode expected = Hashing.murmur3_128(seed128).hashBytes(data);
+            assertEquals(expected.asLong(), Murmur3.hash64(data, 0, len, seed128));
+            assertEquals(expected.asLong(), Murmur3.hash128(data, 0, len, seed128, out));
+            ByteBuffer halves = ByteBuffer.wrap(expected.asBytes()).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(halves.getLong(0), out[0]);
+            assertEquals(halves.getLong(8), out[1]);
+
+            String s = randomString(random, len);
+            assertEquals(Hashing.murmur3_32(seed).hashUnencodedChars(s).asInt(), Murmur3.hash32(s, seed));
+            assertEquals(Hashing.murmur3_128(seed128).hashUnencodedChars(s).asLong(), Murmur3.hash64(s, seed128));
+
+            long value = random.nextLong();
+            assertEquals(Hashing.murmur3_32(seed).hashLong(value).asInt(), Murmur3.hash32(value, seed));
+            assertEquals(Hashing.murmur3_128(seed128).hashLong(value).asLong(), Murmur3.hash64(value, seed128));
+        }
+        assertEquals(Hashing.murmur3_32().hashBytes(new byte[0]).asInt(), Murmur3.hash32(new byte[0]));
+        assertEquals(Hashing.murmur3_128().hashString("hashthis", StandardCharsets.UTF_8).asLong(),
+                     Murmur3.hash64("hashthis".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testByteBuffer() {
+        Random random = new Random(1);
+        for (int len = 0; len < 40; len++) {
+            byte[] data = new byte[len];
+            random.nextBytes(data);
+            int off = random.nextInt(8);
+            for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(len + off), ByteBuffer.allocateDirect(len + off)}) {
+                for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+                    buffer.order(order);
+                    buffer.position(off);
+                    buffer.put(data);
+                    assertEquals(Murmur3.hash32(data, 0, len, 5), Murmur3.hash32(buffer, off, len, 5));
+                    assertEquals(Murmur3.hash64(data, 0, len, 5), Murmur3.hash64(buffer, off, len, 5));
+                }
+            }
+        }
+    }
+}
@@ -16,8 +16,15 @@ package com.clearspring.analytics.hash;
  * limitations under the License.
  */
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import java.util.Random;
+
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -70,4 +77,121 @@ public class TestMurmurHash {
 
         assertEquals("MurmurHash.hash(String) returns wrong hash value", expectedHash, actualHash);
     }
-}
\ No newline at end of file
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(6)) {
+                case 0:
+                    sb.append((char) (0x80 + random.nextInt(0x780)));
+                    break;
+                case 1:
+                    sb.append((char) (0x800 + random.nextInt(0xd000)));
+                    break;
+                case 2:
+                    sb.appendCodePoint(0x10000 + random.nextInt(0x100000));
+                    break;
+                case 3:
+                    // A lone surrogate, encoded as '?'
+                    sb.append((char) (0xd800 + random.nextInt(0x800)));
+                    break;
+                default:
+                    sb.append((char) random.nextInt(0x80));
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testHashCharSequenceMatchesUtf8Bytes() {
+        Random random = new Random(0);
+        for (int i = 0; i < 2000; i++) {
+            String s = randomString(random, i % 40);
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            assertEquals(s, utf8.length, MurmurHash.utf8Length(s));
+            assertEquals(s, MurmurHash.hash(utf8), MurmurHash.hash(s));
+            assertEquals(s, MurmurHash.hash(utf8, 42), MurmurHash.hash(s, 42));
+            assertEquals(s, MurmurHash.hash64(utf8, utf8.length), MurmurHash.hash64(s));
+            assertEquals(s, MurmurHash.hash64(utf8, utf8.length, 42), MurmurHash.hash64(s, 42));
+
+            CharSequence builder = new StringBuilder(s);
+            assertEquals(MurmurHash.hash(utf8), MurmurHash.hash((Object) builder));
+            assertEquals(MurmurHash.hash64(utf8, utf8.length), MurmurHash.hash64((Object) builder));
+        }
+    }
+
+    @Test
+    public void testHashByteBuffer() {
+        Random random = new Random(1);
+        for (int len = 0; len < 40; len++) {
+            byte[] data = new byte[len];
+            random.nextBytes(data);
+            int off = random.nextInt(8);
+            for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(len + off), ByteBuffer.allocateDirect(len + off)}) {
+                for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+                    buffer.order(order);
+                    buffer.position(off);
+                    buffer.put(data);
+                    buffer.position(0);
+                    assertEquals(MurmurHash.hash(data), MurmurHash.hash(buffer, off, len));
+                    assertEquals(MurmurHash.hash(data, len, 7), MurmurHash.hash(buffer, off, len, 7));
+                    assertEquals(MurmurHash.hash64(data, len), MurmurHash.hash64(buffer, off, len));
+                    assertEquals(MurmurHash.hash64(data, len, 7), MurmurHash.hash64(buffer, off, len, 7));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testHash64LongMatchesDecimalString() {
+        Random random = new Random(42);
+        long p = 1;
+        for (int digits = 1; digits <= 19; digits++) {
+            for (long value : new long[]{p - 1, p, p + 1, -p + 1, -p, -p - 1, random.nextLong() % (p * 10 - p) + p}) {
+                byte[] bytes = Long.toString(value).getBytes(StandardCharsets.UTF_8);
+                assertEquals(MurmurHash.hash64(bytes, bytes.length), MurmurHash.hash64(value));
+            }
+            p = digits < 19 ? p * 10 : p;
+        }
+        for (long value : new long[]{0, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1}) {
+            byte[] bytes = Long.toString(value).getBytes(StandardCharsets.UTF_8);
+            assertEquals(MurmurHash.hash64(bytes, bytes.length), MurmurHash.hash64(value));
+        }
+    }
+
+    @Test
+    public void testHash64Batch() {
+        Random random = new Random(11);
+        long[] ids = new long[37];
+        byte[][] keys = new byte[ids.length][];
+        int[] offsets = new int[ids.length + 1];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = random.nextLong();
+            keys[i] = new byte[random.nextInt(20)];
+            random.nextBytes(keys[i]);
+            offsets[i + 1] = offsets[i] + keys[i].length;
+        }
+        byte[] packed = new byte[offsets[ids.length]];
+        for (int i = 0; i < ids.length; i++) {
+            System.arraycopy(keys[i], 0, packed, offsets[i], keys[i].length);
+        }
+
+        long[] out = new long[ids.length];
+        MurmurHash.hash64Batch(ids, out);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(MurmurHash.hash64((Object) ids[i]), out[i]);
+        }
+        MurmurHash.hash64Batch(keys, out);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(MurmurHash.hash64(keys[i], keys[i].length), out[i]);
+        }
+        long[] packedOut = new long[ids.length];
+        MurmurHash.hash64Batch(packed, offsets, packedOut);
+        assertArrayEquals(out, packedOut);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHash64BatchShortOutput() {
+        MurmurHash.hash64Batch(new long[4], new long[3]);
+    }
+}
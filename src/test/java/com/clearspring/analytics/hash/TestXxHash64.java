@@ -0,0 +1,71 @@
+package com.clearspring.analytics.hash;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestXxHash64 {
+
+    // Reference values from https://github.com/Cyan4973/xxHash
+
+    @Test
+    public void testReferenceValues() {
+        assertEquals(0xEF46DB3751D8E999L, XxHash64.hash(new byte[0]));
+        assertEquals(0xD24EC4F1A98C6E5BL, XxHash64.hash("a".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(0x44BC2CF5AD770999L, XxHash64.hash("abc".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void testInputsAgree() {
+        Random random = new Random(0);
+        for (int len = 0; len < 100; len++) {
+            byte[] data = new byte[len];
+            random.nextBytes(data);
+            long seed = random.nextLong();
+            long expected = XxHash64.hash(data, 0, len, seed);
+
+            int off = random.nextInt(8);
+            for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(len + off), ByteBuffer.allocateDirect(len + off)}) {
+                for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+                    buffer.order(order);
+                    buffer.position(off);
+                    buffer.put(data);
+                    assertEquals(expected, XxHash64.hash(buffer, off, len, seed));
+                }
+            }
+
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < len; i++) {
+                sb.append((char) random.nextInt(0xd800));
+            }
+            byte[] utf16 = sb.toString().getBytes(StandardCharsets.UTF_16LE);
+            assertEquals(XxHash64.hash(utf16, 0, utf16.length, seed), XxHash64.hash(sb, seed));
+        }
+
+        long value = random.nextLong();
+        byte[] bytes = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(value).array();
+        assertEquals(XxHash64.hash(bytes, 0, 8, 3), XxHash64.hash(value, 3));
+    }
+}
@@ -16,8 +16,16 @@
 
 package com.clearspring.analytics.stream.cardinality;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import java.util.Arrays;
 
+import com.clearspring.analytics.hash.Lookup3Hash;
+import com.clearspring.analytics.hash.StandardHashStrategy;
+
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -115,6 +123,33 @@ public class TestAdaptiveCounting {
         testSerialization(ac);
     }
 
+    @Test
+    public void testHashStrategy() throws Exception {
+        AdaptiveCounting lookup3 = new AdaptiveCounting(10);
+        AdaptiveCounting hashed = new AdaptiveCounting(10);
+        for (int i = 0; i < 1000; i++) {
+            lookup3.offer(i);
+            hashed.offerHashed(Lookup3Hash.lookup3ycs64(Integer.toString(i)));
+        }
+        assertArrayEquals(hashed.getBytes(), lookup3.getBytes());
+        assertEquals(1024, lookup3.getBytes().length);
+
+        AdaptiveCounting.Builder builder = new AdaptiveCounting.Builder(10).withHash(StandardHashStrategy.MURMUR3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(builder);
+        out.close();
+        builder = (AdaptiveCounting.Builder) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        AdaptiveCounting murmur3 = builder.build();
+        assertEquals(StandardHashStrategy.MURMUR3, murmur3.getHashStrategy());
+        testSerialization(murmur3);
+        assertEquals(StandardHashStrategy.MURMUR3, new AdaptiveCounting(murmur3.getBytes()).getHashStrategy());
+        AdaptiveCounting merged = AdaptiveCounting.mergeEstimators(murmur3, new AdaptiveCounting(10, StandardHashStrategy.MURMUR3));
+        assertEquals(StandardHashStrategy.MURMUR3, merged.getHashStrategy());
+        assertEquals(murmur3.cardinality(), merged.cardinality());
+    }
+
     private void testSerialization(AdaptiveCounting ac) {
         AdaptiveCounting clone = new AdaptiveCounting(ac.getBytes());
         assertAdaptiveCountingEquals(ac, clone);
@@ -138,6 +173,7 @@ public class TestAdaptiveCounting {
 
     private void assertAdaptiveCountingEquals(AdaptiveCounting expected, AdaptiveCounting actual) {
         assertArrayEquals(expected.M, actual.M);
+        assertEquals(expected.getHashStrategy(), actual.getHashStrategy());
         assertEquals(expected.k, actual.k);
         assertEquals(expected.m, actual.m);
         assertEquals(expected.Ca, actual.Ca, 0.00000001);
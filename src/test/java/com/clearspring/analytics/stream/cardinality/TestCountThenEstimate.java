@@ -18,12 +18,18 @@ package com.clearspring.analytics.stream.cardinality;
 
 import java.io.IOException;
 
+import com.clearspring.analytics.hash.MurmurHash;
+import com.clearspring.analytics.hash.StandardHashStrategy;
+
+import com.google.common.io.Resources;
+
 import org.junit.Test;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TestCountThenEstimate {
 
@@ -135,12 +141,11 @@ public class TestCountThenEstimate {
             cte.offer(Integer.toString(i));
         }
 
+        // Deserialized exact phases tip at the tipping point too, whatever their size
         clone = new CountThenEstimate(cte.getBytes());
         assertFalse(cte.tipped());
         assertEquals(256, cte.cardinality());
-        assertTrue(clone.tipped());
-        double error = Math.abs(cte.cardinality() - 256) / 256D;
-        assertEquals(0.1, error, 0.1);
+        assertCountThenEstimateEquals(cte, clone);
 
     }
 
@@ -229,6 +234,83 @@ public class TestCountThenEstimate {
     }
 
 
+    @Test
+    public void testOfferHashed() throws IOException {
+        CountThenEstimate offered = new CountThenEstimate(100, new HyperLogLog.Builder(0.05));
+        CountThenEstimate hashed = new CountThenEstimate(100, new HyperLogLog.Builder(0.05));
+        for (int i = 0; i < 1000; i++) {
+            String key = Integer.toString(i % 500);
+            assertEquals(offered.offer(key), hashed.offerHashed(MurmurHash.hash64(key)));
+            if (i == 99) {
+                assertFalse(hashed.tipped());
+                assertEquals(100, hashed.cardinality());
+            }
+        }
+        assertTrue(hashed.tipped());
+        assertCountThenEstimateEquals(offered, hashed);
+    }
+
+    @Test
+    public void testCompactSerialization() throws IOException, ClassNotFoundException {
+        int count = 1000;
+        CountThenEstimate cte = new CountThenEstimate(10000, new LinearCounting.Builder(1 << 20));
+        for (long i = 0; i < count; i++) {
+            cte.offerHashed(i * 1000);
+        }
+        byte[] bytes = cte.getBytes();
+        // Deltas of 1000 take two bytes each
+        assertTrue(bytes.length < 3 * count);
+
+        CountThenEstimate clone = new CountThenEstimate(bytes);
+        assertFalse(clone.tipped());
+        assertCountThenEstimateEquals(cte, clone);
+        assertFalse(clone.offerHashed(5000L));
+        assertTrue(clone.offerHashed(5001L));
+    }
+
+    @Test
+    public void testUnhashedSerialization() throws IOException, ClassNotFoundException {
+        // Written before elements were hashed: "a", 7 and 2.5 offered to
+        // new CountThenEstimate(100, new LinearCounting.Builder(1 << 20))
+        CountThenEstimate cte = new CountThenEstimate(Resources.toByteArray(Resources.getResource(TestCountThenEstimate.class, "untipped_linear_counting.cte")));
+        assertFalse(cte.tipped());
+        assertEquals(3, cte.cardinality());
+        assertFalse(cte.offer("a"));
+        assertFalse(cte.offer(7));
+        assertFalse(cte.offer(2.5));
+        assertTrue(cte.offer("b"));
+        assertCountThenEstimateEquals(cte, new CountThenEstimate(cte.getBytes()));
+    }
+
+    @Test
+    public void testUnhashedTipped() throws IOException, ClassNotFoundException, CardinalityMergeException {
+        // Written before elements were hashed: "0" to "99" offered to
+        // new CountThenEstimate(2, new HyperLogLog.Builder(0.05))
+        byte[] bytes = Resources.toByteArray(Resources.getResource(TestCountThenEstimate.class, "tipped_hyperloglog.cte"));
+        CountThenEstimate cte = new CountThenEstimate(bytes);
+        assertTrue(cte.tipped());
+        long cardinality = cte.cardinality();
+        for (int i = 0; i < 100; i++) {
+            cte.offer(Integer.toString(i));
+        }
+        assertEquals(cardinality, cte.cardinality());
+
+        CountThenEstimate clone = new CountThenEstimate(cte.getBytes());
+        assertArrayEquals(bytes, clone.getBytes());
+        assertEquals(cardinality, CountThenEstimate.mergeEstimators(cte, clone).cardinality());
+
+        CountThenEstimate current = new CountThenEstimate(2, new HyperLogLog.Builder(0.05));
+        for (int i = 0; i < 100; i++) {
+            current.offer(Integer.toString(i));
+        }
+        try {
+            cte.merge(current);
+            fail("Merged estimators fed differently hashed elements");
+        } catch (CountThenEstimate.CountThenEstimateMergeException e) {
+            // expected
+        }
+    }
+
     private void assertCountThenEstimateEquals(CountThenEstimate expected, CountThenEstimate actual) throws IOException {
         assertEquals(expected.tipped, actual.tipped);
         if (expected.tipped) {
@@ -247,4 +329,27 @@ public class TestCountThenEstimate {
         assertEquals(expected.cardinality(), actual.cardinality());
 
     }
+
+    @Test
+    public void testHashStrategySerialization() throws IOException, ClassNotFoundException {
+        CountThenEstimate cte = new CountThenEstimate(3, new LinearCounting.Builder(1024), StandardHashStrategy.XXHASH64);
+        cte.offer("1");
+        cte.offer("2");
+        CountThenEstimate clone = new CountThenEstimate(cte.getBytes());
+        assertEquals(StandardHashStrategy.XXHASH64, clone.getHashStrategy());
+        assertCountThenEstimateEquals(cte, clone);
+        assertTrue(clone.counter.contains(StandardHashStrategy.XXHASH64.hash64("1")));
+
+        cte.offer("3");
+        cte.offer("4");
+        clone = new CountThenEstimate(cte.getBytes());
+        assertEquals(StandardHashStrategy.XXHASH64, clone.getHashStrategy());
+        assertCountThenEstimateEquals(cte, clone);
+    }
+
+    @Test(expected = CountThenEstimate.CountThenEstimateMergeException.class)
+    public void testMergeDifferentHashes() throws CardinalityMergeException {
+        CountThenEstimate cte = new CountThenEstimate(3, new LinearCounting.Builder(1024));
+        cte.merge(new CountThenEstimate(3, new LinearCounting.Builder(1024), StandardHashStrategy.MURMUR3));
+    }
 }
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.util.Arrays;
 
 import com.clearspring.analytics.TestUtils;
+import com.clearspring.analytics.hash.StandardHashStrategy;
 
 import com.google.common.base.Charsets;
 import com.google.common.hash.HashFunction;
@@ -180,4 +181,27 @@ public class TestHyperLogLog {
         assertTrue("g128 estimate bigger than expected", g128Estimate >= cardinality - (2 * se));
         assertTrue("g128 estimate smaller than expected", g128Estimate <= cardinality + (2 * se));
     }
+
+    @Test
+    public void testHashStrategy() throws IOException {
+        HyperLogLog hll = HyperLogLog.Builder.withLog2m(10).withHash(StandardHashStrategy.XXHASH64).build();
+        for (int i = 0; i < 1000; i++) {
+            hll.offer("item" + i);
+        }
+        assertEquals(1000, hll.cardinality(), 100);
+
+        HyperLogLog clone = HyperLogLog.Builder.build(hll.getBytes());
+        assertEquals(StandardHashStrategy.XXHASH64, clone.getHashStrategy());
+        assertEquals(hll.cardinality(), clone.cardinality());
+
+        // the default hash keeps the original format
+        HyperLogLog plain = new HyperLogLog(10);
+        assertEquals(8 + plain.sizeof(), plain.getBytes().length);
+    }
+
+    @Test(expected = HyperLogLog.HyperLogLogMergeException.class)
+    public void testMergeDifferentHashes() throws CardinalityMergeException {
+        HyperLogLog hll = new HyperLogLog(10);
+        hll.merge(new HyperLogLog(10, StandardHashStrategy.MURMUR3));
+    }
 }
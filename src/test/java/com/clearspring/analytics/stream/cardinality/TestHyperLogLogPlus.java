@@ -30,6 +30,7 @@ import java.util.UUID;
 
 import com.clearspring.analytics.TestUtils;
 import com.clearspring.analytics.util.Varint;
+import com.clearspring.analytics.hash.StandardHashStrategy;
 
 import org.apache.commons.lang3.RandomStringUtils;
 
@@ -525,4 +526,26 @@ public class TestHyperLogLogPlus {
         // test against old serialization
         assertArrayEquals(new byte[]{-1, -1, -1, -2, 14, 25, 1, 4, 25, -27, -1, -1, 15, -101, -128, -128, -16, 7, -27, -1, -1, -97, 8}, hll.getBytes());
     }
+
+    @Test
+    public void testHashStrategy() throws IOException, CardinalityMergeException {
+        HyperLogLogPlus sparse = new HyperLogLogPlus.Builder(14, 25).withHash(StandardHashStrategy.MURMUR3).build();
+        HyperLogLogPlus normal = new HyperLogLogPlus(14, 0, StandardHashStrategy.MURMUR3);
+        for (int i = 0; i < 1000; i++) {
+            sparse.offer("item" + i);
+            normal.offer("item" + i);
+        }
+        for (HyperLogLogPlus hll : Arrays.asList(sparse, normal)) {
+            HyperLogLogPlus clone = HyperLogLogPlus.Builder.build(hll.getBytes());
+            assertEquals(StandardHashStrategy.MURMUR3, clone.getHashStrategy());
+            assertEquals(hll.cardinality(), clone.cardinality());
+        }
+        assertEquals(sparse.cardinality(), sparse.merge(normal).cardinality(), 10);
+    }
+
+    @Test(expected = HyperLogLogPlus.HyperLogLogPlusMergeException.class)
+    public void testMergeDifferentHashes() throws CardinalityMergeException {
+        HyperLogLogPlus hll = new HyperLogLogPlus(14, 25);
+        hll.addAll(new HyperLogLogPlus(14, 25, StandardHashStrategy.XXHASH64));
+    }
 }
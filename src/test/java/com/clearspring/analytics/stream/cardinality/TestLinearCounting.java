@@ -20,6 +20,7 @@ import java.util.Arrays;
 
 import com.clearspring.analytics.stream.cardinality.LinearCounting.Builder;
 import com.clearspring.analytics.stream.cardinality.LinearCounting.LinearCountingMergeException;
+import com.clearspring.analytics.hash.StandardHashStrategy;
 
 import org.junit.Test;
 
@@ -154,4 +155,21 @@ public class TestLinearCounting {
         long baselineEstimate = baseline.cardinality();
         assertEquals(baselineEstimate, mergedEstimate);
     }
+
+    @Test
+    public void testHashStrategy() throws LinearCountingMergeException {
+        LinearCounting lc = new LinearCounting.Builder(1024).withHash(StandardHashStrategy.MURMUR3).build();
+        for (int i = 0; i < 1000; i++) {
+            lc.offer("item" + i);
+        }
+        assertEquals(1000, lc.cardinality(), 50);
+        LinearCounting merged = LinearCounting.mergeEstimators(lc, new LinearCounting(1024, StandardHashStrategy.MURMUR3));
+        assertEquals(StandardHashStrategy.MURMUR3, merged.getHashStrategy());
+        assertEquals(lc.cardinality(), merged.cardinality());
+    }
+
+    @Test(expected = LinearCountingMergeException.class)
+    public void testMergeDifferentHashes() throws LinearCountingMergeException {
+        LinearCounting.mergeEstimators(new LinearCounting(1024), new LinearCounting(1024, StandardHashStrategy.MURMUR3));
+    }
 }
@@ -20,6 +20,9 @@ import java.io.IOException;
 
 import java.util.Arrays;
 
+import com.clearspring.analytics.hash.StandardHashStrategy;
+import com.clearspring.analytics.stream.cardinality.LogLog.LogLogMergeException;
+
 import com.google.common.base.Charsets;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
@@ -27,6 +30,7 @@ import com.google.common.hash.Hashing;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -45,6 +49,31 @@ public class TestLogLog {
         assertEquals(hll.cardinality(), hll2.cardinality());
     }
 
+    @Test
+    public void testHashStrategy() throws LogLogMergeException {
+        LogLog ll = new LogLog.Builder(8).withHash(StandardHashStrategy.MURMUR3).build();
+        for (int i = 0; i < 1000; i++) {
+            ll.offer("item" + i);
+        }
+        // the id trails the registers only when the hash isn't the default
+        assertEquals(256, new LogLog(8).getBytes().length);
+        assertEquals(256 + 5, ll.getBytes().length);
+
+        LogLog clone = new LogLog(ll.getBytes());
+        assertEquals(StandardHashStrategy.MURMUR3, clone.getHashStrategy());
+        assertArrayEquals(ll.getBytes(), clone.getBytes());
+        assertEquals(ll.cardinality(), clone.cardinality());
+
+        LogLog merged = LogLog.mergeEstimators(ll, new LogLog(8, StandardHashStrategy.MURMUR3));
+        assertEquals(StandardHashStrategy.MURMUR3, merged.getHashStrategy());
+        assertEquals(ll.cardinality(), merged.cardinality());
+    }
+
+    @Test(expected = LogLogMergeException.class)
+    public void testMergeDifferentHashes() throws LogLogMergeException {
+        LogLog.mergeEstimators(new LogLog(8), new LogLog(8, StandardHashStrategy.MURMUR3));
+    }
+
     @Test
     public void testHighCardinality() {
         long start = System.currentTimeMillis();
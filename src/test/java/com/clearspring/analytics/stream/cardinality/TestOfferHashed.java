@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2011 Clearspring Technologies, Inc. 
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.cardinality;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+import com.clearspring.experimental.stream.cardinality.HyperBitBit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class TestOfferHashed {
+
+    private static final int N = 100000;
+
+    private final ICardinality intEstimator;
+    private final ICardinality longEstimator;
+    private final double maxError;
+
+    public TestOfferHashed(ICardinality intEstimator, ICardinality longEstimator, double maxError) {
+        this.intEstimator = intEstimator;
+        this.longEstimator = longEstimator;
+        this.maxError = maxError;
+    }
+
+    @Parameters
+    public static Collection<Object[]> estimators() {
+        return Arrays.asList(new Object[][]{
+                {new LinearCounting(65536), new LinearCounting(65536), 0.05},
+                {new LogLog(14), new LogLog(14), 0.1},
+                {new AdaptiveCounting(14), new AdaptiveCounting(14), 0.1},
+                {new HyperLogLog(14), new HyperLogLog(14), 0.05},
+                {new HyperLogLogPlus(14, 25), new HyperLogLogPlus(14, 25), 0.05},
+                {new CountThenEstimate(1000, new HyperLogLog.Builder(0.01)),
+                 new CountThenEstimate(1000, new HyperLogLog.Builder(0.01)), 0.05},
+                {new HyperBitBit(), new HyperBitBit(), 0.5},
+        });
+    }
+
+    private void assertEstimate(ICardinality estimator) {
+        double error = Math.abs(estimator.cardinality() - N) / (double) N;
+        assertTrue(estimator.getClass().getSimpleName() + " error " + error, error < maxError);
+    }
+
+    @Test
+    public void testOfferHashedInt() {
+        Random random = new Random(0);
+        for (int i = 0; i < N; i++) {
+            intEstimator.offerHashed(random.nextInt());
+        }
+        assertEstimate(intEstimator);
+    }
+
+    @Test
+    public void testOfferHashedLong() {
+        Random random = new Random(1);
+        for (int i = 0; i < N; i++) {
+            longEstimator.offerHashed(random.nextLong());
+        }
+        assertEstimate(longEstimator);
+    }
+
+    @Test
+    public void testDuplicateHashes() {
+        if (intEstimator instanceof HyperBitBit || intEstimator instanceof HyperLogLogPlus) {
+            // HyperBitBit can change on repeats and HyperLogLogPlus buffers sparse offers
+            return;
+        }
+        Random random = new Random(2);
+        int[] hashes = new int[1000];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = random.nextInt();
+            intEstimator.offerHashed(hashes[i]);
+            longEstimator.offerHashed((long) hashes[i] << 32 | i);
+        }
+        for (int i = 0; i < hashes.length; i++) {
+            assertFalse(intEstimator.offerHashed(hashes[i]));
+            assertFalse(longEstimator.offerHashed((long) hashes[i] << 32 | i));
+        }
+    }
+}
@@ -19,11 +19,14 @@ import java.util.Map;
 import java.util.Random;
 import java.util.TreeSet;
 
+import com.clearspring.analytics.hash.StandardHashStrategy;
+
 import org.apache.commons.lang3.RandomStringUtils;
 
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 public class ConservativeAddSketchTest {
@@ -189,4 +192,32 @@ public class ConservativeAddSketchTest {
             assertTrue(merge <= std);
         }
     }
+
+    @Test
+    public void testAddAllMatchesAdd() {
+        int seed = 7364181;
+        Random r = new Random(seed);
+        int numItems = 5000;
+        long[] items = new long[numItems];
+        long[] counts = new long[numItems];
+        for (int i = 0; i < numItems; i++) {
+            items[i] = r.nextInt(2000);
+            counts[i] = r.nextInt(100);
+        }
+
+        ConservativeAddSketch sketch = new ConservativeAddSketch(5, 500, seed);
+        ConservativeAddSketch batchSketch = new ConservativeAddSketch(5, 500, seed);
+        ConservativeAddSketch hashed = new ConservativeAddSketch(5, 500, seed, StandardHashStrategy.XXHASH64);
+        ConservativeAddSketch batchHashed = new ConservativeAddSketch(5, 500, seed, StandardHashStrategy.XXHASH64);
+        for (int i = 0; i < numItems; i++) {
+            sketch.add(items[i], counts[i]);
+            hashed.add(items[i], counts[i]);
+        }
+        batchSketch.addAll(items, counts);
+        batchHashed.addAll(items, counts);
+
+        assertEquals(sketch, batchSketch);
+        assertEquals(hashed, batchHashed);
+        assertNotEquals(sketch, hashed);
+    }
 }
@@ -20,6 +20,7 @@ import java.util.Map;
 import java.util.Random;
 import java.util.TreeSet;
 
+import com.clearspring.analytics.hash.StandardHashStrategy;
 import com.clearspring.analytics.stream.frequency.CountMinSketch.CMSMergeException;
 import com.clearspring.analytics.TestUtils;
 
@@ -223,6 +224,38 @@ public class CountMinSketchTest {
         CountMinSketch.merge(cms1, cms2);
     }
 
+    @Test
+    public void testHashStrategy() throws Exception {
+        CountMinSketch sketch = new CountMinSketch(5, 200, 1, StandardHashStrategy.MURMUR3);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add(i % 100, 1);
+            sketch.add("item" + (i % 100), 2);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(sketch.estimateCount(i) >= 10);
+            assertTrue(sketch.estimateCount("item" + i) >= 20);
+        }
+
+        // the id is written only when the hash is not the default
+        CountMinSketch plain = new CountMinSketch(5, 200, 1);
+        assertEquals(CountMinSketch.serialize(plain).length + 16, CountMinSketch.serialize(sketch).length);
+        CountMinSketch read = CountMinSketch.deserialize(CountMinSketch.serialize(sketch));
+        assertEquals(StandardHashStrategy.MURMUR3, read.getHashStrategy());
+        assertEquals(sketch, read);
+        assertEquals(sketch.estimateCount("item7"), read.estimateCount("item7"));
+        checkCountMinSketchSerialization(sketch);
+        assertNotEquals(plain, new CountMinSketch(5, 200, 1, StandardHashStrategy.MURMUR3));
+
+        CountMinSketch merged = CountMinSketch.merge(sketch, new CountMinSketch(5, 200, 1, StandardHashStrategy.MURMUR3));
+        assertEquals(StandardHashStrategy.MURMUR3, merged.getHashStrategy());
+        assertEquals(sketch.estimateCount(7), merged.estimateCount(7));
+    }
+
+    @Test(expected = CMSMergeException.class)
+    public void testMergeDifferentHashes() throws CMSMergeException {
+        CountMinSketch.merge(new CountMinSketch(5, 200, 1), new CountMinSketch(5, 200, 1, StandardHashStrategy.MURMUR3));
+    }
+
     private static void checkCountMinSketchSerialization(CountMinSketch cms) throws IOException, ClassNotFoundException {
         byte[] bytes = TestUtils.serialize(cms);
         CountMinSketch serializedCms = (CountMinSketch)TestUtils.deserialize(bytes);
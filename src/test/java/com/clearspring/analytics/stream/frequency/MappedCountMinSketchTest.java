@@ -0,0 +1,134 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.frequency;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import com.clearspring.analytics.hash.StandardHashStrategy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+public class MappedCountMinSketchTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMatchesHeapSketch() throws IOException {
+        int seed = 7364181;
+        Random r = new Random(seed);
+        File file = folder.newFile();
+        CountMinSketch heap = new CountMinSketch(7, 2000, seed);
+        MappedCountMinSketch mapped = MappedCountMinSketch.create(file, 7, 2000, seed);
+        for (int i = 0; i < 100000; i++) {
+            long x = r.nextInt(5000);
+            heap.add(x, 1);
+            mapped.add(x, 1);
+            heap.add("s" + x, 2);
+            mapped.add("s" + x, 2);
+        }
+        assertEquals(heap.size(), mapped.size());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(heap.estimateCount(i), mapped.estimateCount(i));
+            assertEquals(heap.estimateCount("s" + i), mapped.estimateCount("s" + i));
+        }
+        assertEquals(heap, mapped.toCountMinSketch());
+        mapped.force();
+        mapped.close();
+
+        assertEquals(heap, CountMinSketch.deserialize(Files.readAllBytes(file.toPath())));
+
+        MappedCountMinSketch reopened = MappedCountMinSketch.open(file, true);
+        assertEquals(heap.size(), reopened.size());
+        assertEquals(heap, reopened.toCountMinSketch());
+        reopened.close();
+    }
+
+    @Test
+    public void testOpenSerializedSketch() throws IOException {
+        CountMinSketch heap = new CountMinSketch(5, 1000, 1);
+        for (int i = 0; i < 1000; i++) {
+            heap.add(i, i);
+        }
+        File file = folder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(CountMinSketch.serialize(heap));
+        out.close();
+
+        MappedCountMinSketch mapped = MappedCountMinSketch.open(file);
+        assertEquals(heap.size(), mapped.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(heap.estimateCount(i), mapped.estimateCount(i));
+        }
+        mapped.add(42, 10);
+        heap.add(42, 10);
+        mapped.close();
+        assertEquals(heap, CountMinSketch.deserialize(Files.readAllBytes(file.toPath())));
+    }
+
+    @Test
+    public void testHashStrategy() throws IOException {
+        CountMinSketch heap = new CountMinSketch(5, 1000, 1, StandardHashStrategy.MURMUR3);
+        for (int i = 0; i < 1000; i++) {
+            heap.add(i, i);
+            heap.add("s" + i, 1);
+        }
+        File file = folder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(CountMinSketch.serialize(heap));
+        out.close();
+
+        MappedCountMinSketch mapped = MappedCountMinSketch.open(file);
+        assertEquals(StandardHashStrategy.MURMUR3, mapped.getHashStrategy());
+        assertEquals(heap.size(), mapped.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(heap.estimateCount(i), mapped.estimateCount(i));
+            assertEquals(heap.estimateCount("s" + i), mapped.estimateCount("s" + i));
+        }
+        mapped.add(42, 10);
+        mapped.add("s42", 3);
+        heap.add(42, 10);
+        heap.add("s42", 3);
+        assertEquals(heap, mapped.toCountMinSketch());
+        mapped.close();
+        assertEquals(heap, CountMinSketch.deserialize(Files.readAllBytes(file.toPath())));
+
+        File created = folder.newFile();
+        MappedCountMinSketch fresh = MappedCountMinSketch.create(created, 5, 1000, 1, StandardHashStrategy.MURMUR3);
+        fresh.add(7, 1);
+        fresh.close();
+        CountMinSketch read = CountMinSketch.deserialize(Files.readAllBytes(created.toPath()));
+        assertEquals(StandardHashStrategy.MURMUR3, read.getHashStrategy());
+        assertEquals(1, read.estimateCount(7));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeIncrement() throws IOException {
+        MappedCountMinSketch mapped = MappedCountMinSketch.create(folder.newFile(), 3, 16, 1);
+        try {
+            mapped.add(1, -1);
+        } finally {
+            mapped.close();
+        }
+    }
+}
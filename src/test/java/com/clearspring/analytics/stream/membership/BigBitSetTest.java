@@ -0,0 +1,174 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*
+*/
+package com.clearspring.analytics.stream.membership;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BigBitSetTest {
+
+    private static final int BITS = 5000;
+
+    /*
+     * Eight words per segment, so a few thousand bits span many segments.
+     */
+    private static final int SMALL_SEGMENT_SHIFT = 3;
+
+    private static void fill(Random r, BitSet expected, BigBitSet actual) {
+        for (int i = 0; i < 300; i++) {
+            int bit = r.nextInt(BITS);
+            expected.set(bit);
+            actual.set(bit);
+        }
+        int from = r.nextInt(BITS);
+        int to = from + r.nextInt(BITS - from);
+        expected.set(from, to);
+        actual.set(from, to);
+    }
+
+    private static void assertSame(BitSet expected, BigBitSet actual) {
+        assertEquals(expected.length(), actual.length());
+        assertEquals(expected.cardinality(), actual.cardinality());
+        for (int i = 0; i <= BITS + 64; i++) {
+            assertEquals(expected.get(i), actual.get(i));
+            assertEquals(expected.nextSetBit(i), actual.nextSetBit(i));
+            assertEquals(expected.nextClearBit(i), actual.nextClearBit(i));
+            assertEquals(expected.previousSetBit(i), actual.previousSetBit(i));
+            assertEquals(expected.previousClearBit(i), actual.previousClearBit(i));
+        }
+        assertArrayEquals(expected.toLongArray(), actual.toLongArray());
+    }
+
+    @Test
+    public void testMatchesBitSetAcrossSegments() {
+        Random r = new Random(7);
+        BitSet expected = new BitSet();
+        BigBitSet actual = new BigBitSet(0, SMALL_SEGMENT_SHIFT);
+        fill(r, expected, actual);
+        assertSame(expected, actual);
+
+        for (int i = 0; i < 20; i++) {
+            int from = r.nextInt(BITS);
+            int to = from + r.nextInt(BITS - from);
+            switch (i % 3) {
+                case 0:
+                    expected.clear(from, to);
+                    actual.clear(from, to);
+                    break;
+                case 1:
+                    expected.flip(from, to);
+                    actual.flip(from, to);
+                    break;
+                default:
+                    expected.set(from, to);
+                    actual.set(from, to);
+            }
+            assertSame(expected, actual);
+            assertArrayEquals(expected.get(from, to).toLongArray(), actual.get(from, to).toLongArray());
+        }
+        assertArrayEquals(expected.stream().asLongStream().toArray(), actual.stream().toArray());
+
+        actual.clear();
+        assertEquals(0, actual.length());
+        assertEquals(-1, actual.nextSetBit(0));
+    }
+
+    @Test
+    public void testBulkOperations() {
+        Random r = new Random(11);
+        for (int op = 0; op < 4; op++) {
+            BitSet a = new BitSet();
+            BitSet b = new BitSet();
+            BigBitSet bigA = new BigBitSet(0, SMALL_SEGMENT_SHIFT);
+            // Different segment sizes on either side must still line up
+            BigBitSet bigB = new BigBitSet(0, SMALL_SEGMENT_SHIFT + op % 2);
+            fill(r, a, bigA);
+            fill(r, b, bigB);
+            assertEquals(a.intersects(b), bigA.intersects(bigB));
+            switch (op) {
+                case 0:
+                    a.and(b);
+                    bigA.and(bigB);
+                    break;
+                case 1:
+                    a.or(b);
+                    bigA.or(bigB);
+                    break;
+                case 2:
+                    a.xor(b);
+                    bigA.xor(bigB);
+                    break;
+                default:
+                    a.andNot(b);
+                    bigA.andNot(bigB);
+            }
+            assertSame(a, bigA);
+            assertEquals(BigBitSet.valueOf(a.toLongArray()), bigA);
+        }
+    }
+
+    @Test
+    public void testSerialize() throws IOException, ClassNotFoundException {
+        Random r = new Random(13);
+        BitSet expected = new BitSet();
+        BigBitSet segmented = new BigBitSet(0, SMALL_SEGMENT_SHIFT);
+        fill(r, expected, segmented);
+
+        for (BigBitSet set : new BigBitSet[]{segmented, BigBitSet.valueOf(expected.toLongArray())}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(set);
+            out.close();
+            BigBitSet read = (BigBitSet) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+            assertEquals(set, read);
+            assertSame(expected, read);
+        }
+    }
+
+    @Test
+    public void testOrAll() {
+        Random r = new Random(17);
+        BitSet expected = new BitSet();
+        BigBitSet actual = new BigBitSet(0, SMALL_SEGMENT_SHIFT);
+        fill(r, expected, actual);
+        BigBitSet[] others = new BigBitSet[5];
+        for (int i = 0; i < others.length - 1; i++) {
+            BitSet other = new BitSet();
+            others[i] = new BigBitSet(0, SMALL_SEGMENT_SHIFT + i % 2);
+            fill(r, other, others[i]);
+            expected.or(other);
+        }
+        others[4] = actual;
+
+        assertEquals(expected.cardinality(), actual.orAll(others));
+        assertSame(expected, actual);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*
+*/
+package com.clearspring.analytics.stream.membership;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BigBloomFilterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEmptyBuckets() {
+        BigBloomFilter bf = new BigBloomFilter(1000, 10);
+        assertEquals(bf.buckets(), bf.emptyBuckets());
+        bf.add("a");
+        assertTrue(bf.emptyBuckets() < bf.buckets());
+        assertTrue(bf.emptyBuckets() >= bf.buckets() - bf.getHashCount());
+    }
+
+    @Test
+    public void testMerge() {
+        BigBloomFilter[] filters = new BigBloomFilter[4];
+        for (int i = 0; i < filters.length; i++) {
+            filters[i] = new BigBloomFilter(100000, 10);
+            for (int j = 0; j < 1000; j++) {
+                filters[i].add("key" + i + "-" + j);
+            }
+        }
+        BigBloomFilter merged = filters[0].merge(filters[1], filters[2], filters[3]);
+        for (int i = 0; i < filters.length; i++) {
+            for (int j = 0; j < 1000; j++) {
+                assertTrue(merged.isPresent("key" + i + "-" + j));
+            }
+        }
+        assertFalse(filters[0].isPresent("key1-0") && filters[0].isPresent("key2-0") && filters[0].isPresent("key3-0"));
+
+        BigBloomFilter pairwise = filters[0].merge();
+        for (int i = 1; i < filters.length; i++) {
+            pairwise.addAll(filters[i]);
+        }
+        assertEquals(pairwise.filter(), merged.filter());
+        assertEquals(merged.buckets(), filters[0].buckets());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeException() {
+        new BigBloomFilter(1000, 10).merge(new BigBloomFilter(1000, 1));
+    }
+
+    @Test
+    public void testSerializeChannel() throws IOException {
+        // Small segments, so reading back has to split the words differently
+        BigBloomFilter bf = new BigBloomFilter(5, new BigBitSet(100000, 6));
+        for (int i = 0; i < 5000; i++) {
+            bf.add(Integer.toString(i));
+        }
+        BigBloomFilterSerializer serializer = new BigBloomFilterSerializer();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(bf, Channels.newChannel(out));
+        assertEquals(LongChannels.HEADER_BYTES + bf.buckets() / 8, out.size());
+
+        BigBloomFilter read = serializer.deserialize(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+        assertEquals(bf.getHashCount(), read.getHashCount());
+        assertEquals(bf.buckets(), read.buckets());
+        assertEquals(bf.filter(), read.filter());
+
+        File file = folder.newFile();
+        FileOutputStream fos = new FileOutputStream(file);
+        serializer.serialize(bf, fos.getChannel());
+        fos.close();
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            BigBloomFilter mapped = serializer.deserialize(channel);
+            assertEquals(bf.buckets(), mapped.buckets());
+            assertEquals(bf.filter(), mapped.filter());
+            assertTrue(mapped.isPresent("42"));
+            assertEquals(channel.size(), channel.position());
+        } finally {
+            channel.close();
+        }
+    }
+}
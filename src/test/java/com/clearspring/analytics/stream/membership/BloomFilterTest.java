@@ -19,19 +19,30 @@
 */
 package com.clearspring.analytics.stream.membership;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
 
+import com.clearspring.analytics.hash.StandardHashStrategy;
 import com.clearspring.analytics.stream.membership.KeyGenerator.RandomStringGenerator;
 
 import org.junit.Before;
 import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -76,6 +87,109 @@ public class BloomFilterTest {
         assertTrue(mergeBf.isPresent("c"));
     }
 
+    @Test
+    public void testMergeMany() {
+        BloomFilter[] filters = new BloomFilter[5];
+        BloomFilter pairwise = new BloomFilter(ELEMENTS * 20, spec.bucketsPerElement);
+        for (int i = 0; i < filters.length; i++) {
+            filters[i] = new BloomFilter(ELEMENTS * 20, spec.bucketsPerElement);
+            for (int j = 0; j < ELEMENTS; j++) {
+                filters[i].add(i + ":" + j);
+            }
+            pairwise.addAll(filters[i]);
+        }
+        BloomFilter merged = (BloomFilter) new BloomFilter(ELEMENTS * 20, spec.bucketsPerElement).merge(filters);
+        assertEquals(pairwise.filter(), merged.filter());
+        assertEquals(pairwise.buckets(), merged.buckets());
+        assertTrue(merged.isPresent("3:7"));
+    }
+
+    @Test
+    public void testMergeEmpty() {
+        // trailing zero words must not shrink the merged filter
+        BloomFilter empty = new BloomFilter(ELEMENTS, spec.bucketsPerElement);
+        BloomFilter merged = (BloomFilter) empty.merge(new BloomFilter(ELEMENTS, spec.bucketsPerElement));
+        assertEquals(empty.buckets(), merged.buckets());
+        assertEquals(0, merged.filter().cardinality());
+    }
+
+    @Test
+    public void testContainsAllMatchesIsPresent() {
+        int n = ELEMENTS * 3 + 17;
+        byte[][] keys = new byte[n][];
+        long[] hashes = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = Integer.toString(i).getBytes();
+            hashes[i] = BloomFilter.hash(keys[i]);
+        }
+        for (int i = 0; i < ELEMENTS; i++) {
+            bf.add(keys[i]);
+        }
+        bf.add("1");
+
+        boolean[] out = new boolean[n];
+        bf.containsAll(hashes, out);
+        BitSet bits = new BitSet();
+        bits.set(0, n);
+        bf.containsAll(keys, bits);
+        int present = 0;
+        for (int i = 0; i < n; i++) {
+            assertEquals(bf.isPresent(keys[i]), out[i]);
+            assertEquals(bf.isPresent(keys[i]), bits.get(i));
+            present += out[i] ? 1 : 0;
+        }
+        assertTrue(present >= ELEMENTS);
+
+        boolean[] one = new boolean[1];
+        bf.containsAll(new long[]{BloomFilter.hash("1")}, one);
+        assertTrue(one[0]);
+    }
+
+    @Test
+    public void testHashStrategy() throws IOException {
+        BloomFilter hashed = new BloomFilter(ELEMENTS, spec.bucketsPerElement, StandardHashStrategy.MURMUR3);
+        byte[][] keys = new byte[ELEMENTS][];
+        long[] hashes = new long[ELEMENTS];
+        for (int i = 0; i < ELEMENTS; i++) {
+            keys[i] = Integer.toString(i).getBytes();
+            hashes[i] = hashed.hashKey(keys[i]);
+            hashed.add(keys[i]);
+            hashed.add(Integer.toString(i));
+        }
+        boolean[] out = new boolean[ELEMENTS];
+        hashed.containsAll(hashes, out);
+        for (int i = 0; i < ELEMENTS; i++) {
+            assertTrue(hashed.isPresent(keys[i]));
+            assertTrue(hashed.isPresent(Integer.toString(i)));
+            assertTrue(out[i]);
+        }
+        FilterTest.testFalsePositives(new BloomFilter(ELEMENTS, spec.bucketsPerElement, StandardHashStrategy.MURMUR3),
+                FilterTest.intKeys(), FilterTest.randomKeys2());
+
+        // the id is written only when the hash is not the default
+        assertEquals(serialize(bf).length + 8, serialize(hashed).length);
+        BloomFilter read = BloomFilter.deserialize(BloomFilter.serialize(hashed));
+        assertEquals(StandardHashStrategy.MURMUR3, read.getHashStrategy());
+        assertEquals(hashed.filter(), read.filter());
+
+        BloomFilterSerializer serializer = new BloomFilterSerializer();
+        ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+        serializer.serialize(hashed, Channels.newChannel(channelOut));
+        assertEquals(LongChannels.HEADER_BYTES + 8 + hashed.buckets() / 8, channelOut.size());
+        read = serializer.deserialize(Channels.newChannel(new ByteArrayInputStream(channelOut.toByteArray())));
+        assertEquals(StandardHashStrategy.MURMUR3, read.getHashStrategy());
+        assertEquals(hashed.filter(), read.filter());
+
+        BloomFilter merged = (BloomFilter) hashed.merge(new BloomFilter(ELEMENTS, spec.bucketsPerElement, StandardHashStrategy.MURMUR3));
+        assertEquals(StandardHashStrategy.MURMUR3, merged.getHashStrategy());
+        assertEquals(hashed.filter(), merged.filter());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testMergeDifferentHashes() {
+        bf.merge(new BloomFilter(ELEMENTS, spec.bucketsPerElement, StandardHashStrategy.MURMUR3));
+    }
+
     @Test(expected=IllegalArgumentException.class)
     public void testMergeException() {
         BloomFilter bf3 = new BloomFilter(ELEMENTS*10, 1);
@@ -111,6 +225,41 @@ public class BloomFilterTest {
         FilterTest.testSerialize(bf);
     }
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSerializeChannel() throws IOException {
+        for (int i = 0; i < ELEMENTS; i++) {
+            bf.add(Integer.toString(i));
+        }
+        BloomFilterSerializer serializer = new BloomFilterSerializer();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(bf, Channels.newChannel(out));
+        assertEquals(LongChannels.HEADER_BYTES + bf.buckets() / 8, out.size());
+
+        BloomFilter read = serializer.deserialize(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+        assertEquals(bf.getHashCount(), read.getHashCount());
+        assertEquals(bf.buckets(), read.buckets());
+        assertEquals(bf.filter(), read.filter());
+
+        File file = folder.newFile();
+        FileOutputStream fos = new FileOutputStream(file);
+        serializer.serialize(bf, fos.getChannel());
+        serializer.serialize(bf2, fos.getChannel());
+        fos.close();
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            BloomFilter mapped = serializer.deserialize(channel);
+            assertEquals(bf.buckets(), mapped.buckets());
+            assertEquals(bf.filter(), mapped.filter());
+            assertEquals(bf2.filter(), serializer.deserialize(channel).filter());
+            assertEquals(channel.size(), channel.position());
+        } finally {
+            channel.close();
+        }
+    }
+
     @Test
     public void testGetFalsePositiveProbability() {
         // These probabilities are taken from the bloom filter probability table at
@@ -0,0 +1,188 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*
+*/
+package com.clearspring.analytics.stream.membership;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompressedBigBitSetTest {
+
+    /**
+     * Mixes sparse, dense and clustered groups so every container type is exercised.
+     */
+    private static void fill(Random r, BitSet expected, CompressedBigBitSet actual) {
+        for (int i = 0; i < 2000; i++) {
+            int bit = r.nextInt(1 << 22);
+            expected.set(bit);
+            actual.set(bit);
+        }
+        int denseBase = r.nextInt(16) << 16;
+        for (int i = 0; i < 30000; i++) {
+            int bit = denseBase + r.nextInt(1 << 16);
+            expected.set(bit);
+            actual.set(bit);
+        }
+        int from = r.nextInt(1 << 22);
+        int to = from + r.nextInt(200000);
+        expected.set(from, to);
+        actual.set(from, to);
+    }
+
+    private static void assertSame(BitSet expected, CompressedBigBitSet actual) {
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertEquals(expected.length(), actual.length());
+        assertArrayEquals(expected.stream().asLongStream().toArray(), actual.stream().toArray());
+        for (int i = expected.nextSetBit(0); i >= 0; i = expected.nextSetBit(i + 1)) {
+            assertEquals(i, actual.nextSetBit(i));
+            assertTrue(actual.get(i));
+        }
+        assertEquals(CompressedBigBitSet.valueOf(expected.toLongArray()), actual);
+    }
+
+    @Test
+    public void testSetGetClear() {
+        CompressedBigBitSet set = new CompressedBigBitSet();
+        assertTrue(set.isEmpty());
+        set.set(3);
+        set.set(1L << 36);
+        assertTrue(set.get(3));
+        assertTrue(set.get(1L << 36));
+        assertFalse(set.get(4));
+        assertEquals(2, set.cardinality());
+        assertEquals((1L << 36) + 1, set.length());
+        assertEquals(1L << 36, set.nextSetBit(4));
+        assertEquals(-1, set.nextSetBit((1L << 36) + 1));
+        set.clear(3);
+        assertFalse(set.get(3));
+        assertEquals(1, set.cardinality());
+        set.clear(1L << 36);
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void testMatchesBitSet() {
+        Random r = new Random(1);
+        BitSet expected = new BitSet();
+        CompressedBigBitSet actual = new CompressedBigBitSet();
+        fill(r, expected, actual);
+        assertSame(expected, actual);
+        for (int i = 0; i < 20000; i++) {
+            int bit = expected.nextSetBit(r.nextInt(expected.length()));
+            if (bit >= 0) {
+                expected.clear(bit);
+                actual.clear(bit);
+            }
+        }
+        assertSame(expected, actual);
+        actual.runOptimize();
+        assertSame(expected, actual);
+    }
+
+    @Test
+    public void testSetOperations() {
+        Random r = new Random(2);
+        for (int round = 0; round < 4; round++) {
+            BitSet a = new BitSet();
+            BitSet b = new BitSet();
+            CompressedBigBitSet ca = new CompressedBigBitSet();
+            CompressedBigBitSet cb = new CompressedBigBitSet();
+            fill(r, a, ca);
+            fill(r, b, cb);
+            if (round % 2 == 1) {
+                ca.runOptimize();
+                cb.runOptimize();
+            }
+
+            BitSet expected = (BitSet) a.clone();
+            CompressedBigBitSet actual = ca.clone();
+            expected.and(b);
+            actual.and(cb);
+            assertSame(expected, actual);
+            assertEquals(!expected.isEmpty(), ca.intersects(cb));
+
+            expected = (BitSet) a.clone();
+            actual = ca.clone();
+            expected.or(b);
+            actual.or(cb);
+            assertSame(expected, actual);
+
+            expected = (BitSet) a.clone();
+            actual = ca.clone();
+            expected.xor(b);
+            actual.xor(cb);
+            assertSame(expected, actual);
+
+            expected = (BitSet) a.clone();
+            actual = ca.clone();
+            expected.andNot(b);
+            actual.andNot(cb);
+            assertSame(expected, actual);
+
+            // the operands are left untouched
+            assertSame(a, ca);
+            assertSame(b, cb);
+        }
+    }
+
+    @Test
+    public void testSparseHugeIndexSpace() {
+        CompressedBigBitSet set = new CompressedBigBitSet();
+        Random r = new Random(3);
+        for (int i = 0; i < 100000; i++) {
+            set.set(r.nextLong() & ((1L << 36) - 1));
+        }
+        assertTrue(set.sizeInBytes() < 10 * 1000 * 1000);
+        set.set(1L << 40, (1L << 40) + (1L << 20));
+        assertEquals(1L << 20, set.stream().filter(i -> i >= (1L << 40)).count());
+        assertEquals((1L << 40) + (1L << 20), set.length());
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        Random r = new Random(4);
+        BitSet expected = new BitSet();
+        CompressedBigBitSet actual = new CompressedBigBitSet();
+        fill(r, expected, actual);
+        actual.runOptimize();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(actual);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        CompressedBigBitSet read = (CompressedBigBitSet) in.readObject();
+        assertEquals(actual, read);
+        assertEquals(actual.hashCode(), read.hashCode());
+        assertSame(expected, read);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*
+*/
+package com.clearspring.analytics.stream.membership;
+
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.clearspring.analytics.hash.StandardHashStrategy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentBloomFilterTest {
+
+    static final int ELEMENTS = 10000;
+
+    @Test
+    public void testOne() {
+        ConcurrentBloomFilter bf = new ConcurrentBloomFilter(ELEMENTS, FilterTest.spec.bucketsPerElement);
+        assertTrue(bf.put("a"));
+        assertFalse(bf.put("a"));
+        assertTrue(bf.isPresent("a"));
+        assertFalse(bf.isPresent("b"));
+    }
+
+    @Test
+    public void testFalsePositivesRandom() {
+        ConcurrentBloomFilter bf = new ConcurrentBloomFilter(ELEMENTS, FilterTest.spec.bucketsPerElement);
+        FilterTest.testFalsePositives(bf, FilterTest.randomKeys(), FilterTest.randomKeys2());
+    }
+
+    @Test
+    public void testSerializedFormMatchesBloomFilter() throws IOException {
+        BloomFilter bf = new BloomFilter(ELEMENTS, 0.01);
+        ConcurrentBloomFilter cbf = new ConcurrentBloomFilter(ELEMENTS, 0.01);
+        assertEquals(bf.buckets(), cbf.buckets());
+        for (int i = 0; i < ELEMENTS; i++) {
+            bf.add(Integer.toString(i));
+            cbf.add(Integer.toString(i));
+        }
+        byte[] expected = serialize(bf, BloomFilter.serializer());
+        assertArrayEquals(expected, serialize(cbf, ConcurrentBloomFilter.serializer()));
+
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(expected, expected.length);
+        ConcurrentBloomFilter cbf2 = ConcurrentBloomFilter.serializer().deserialize(in);
+        assertEquals(cbf.buckets(), cbf2.buckets());
+        assertTrue(Arrays.equals(cbf.toLongArray(), cbf2.toLongArray()));
+        FilterTest.testSerialize(cbf);
+    }
+
+    @Test
+    public void testHashStrategy() throws IOException {
+        BloomFilter bf = new BloomFilter(ELEMENTS, 0.01, StandardHashStrategy.MURMUR3);
+        ConcurrentBloomFilter cbf = new ConcurrentBloomFilter(ELEMENTS, 0.01, StandardHashStrategy.MURMUR3);
+        for (int i = 0; i < ELEMENTS; i++) {
+            bf.add(Integer.toString(i));
+            cbf.add(Integer.toString(i));
+        }
+        byte[] expected = serialize(bf, BloomFilter.serializer());
+        assertArrayEquals(expected, serialize(cbf, ConcurrentBloomFilter.serializer()));
+
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(expected, expected.length);
+        ConcurrentBloomFilter read = ConcurrentBloomFilter.serializer().deserialize(in);
+        ConcurrentBloomFilter copy = ConcurrentBloomFilter.of(bf);
+        assertEquals(StandardHashStrategy.MURMUR3, read.getHashStrategy());
+        assertEquals(StandardHashStrategy.MURMUR3, copy.getHashStrategy());
+        assertEquals(StandardHashStrategy.MURMUR3, read.toBloomFilter().getHashStrategy());
+        for (int i = 0; i < ELEMENTS; i++) {
+            assertTrue(read.isPresent(Integer.toString(i)));
+            assertTrue(copy.isPresent(Integer.toString(i)));
+            assertTrue(read.toBloomFilter().isPresent(Integer.toString(i)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddAllDifferentHashes() {
+        new ConcurrentBloomFilter(ELEMENTS, 0.01).addAll(new ConcurrentBloomFilter(ELEMENTS, 0.01, StandardHashStrategy.MURMUR3));
+    }
+
+    @Test
+    public void testConcurrentPut() throws InterruptedException {
+        final ConcurrentBloomFilter bf = new ConcurrentBloomFilter(ELEMENTS * 8, 0.001);
+        final AtomicInteger newKeys = new AtomicInteger();
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * ELEMENTS;
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < ELEMENTS; i++) {
+                        // every key is put by two threads
+                        if (bf.put(Integer.toString((offset + i) % (ELEMENTS * 4)))) {
+                            newKeys.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        for (int i = 0; i < ELEMENTS * 4; i++) {
+            assertTrue(bf.isPresent(Integer.toString(i)));
+        }
+        assertTrue(newKeys.get() <= ELEMENTS * 8);
+        assertTrue(newKeys.get() >= ELEMENTS * 4 * 0.99);
+    }
+
+    private static <T> byte[] serialize(T filter, ICompactSerializer<T> serializer) throws IOException {
+        DataOutputBuffer out = new DataOutputBuffer();
+        serializer.serialize(filter, out);
+        out.close();
+        return out.getData();
+    }
+}
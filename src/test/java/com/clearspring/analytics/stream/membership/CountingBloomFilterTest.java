@@ -0,0 +1,92 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*
+*/
+package com.clearspring.analytics.stream.membership;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CountingBloomFilterTest {
+
+    static final int ELEMENTS = 10000;
+
+    @Test
+    public void testOne() {
+        CountingBloomFilter bf = new CountingBloomFilter(ELEMENTS, FilterTest.spec.bucketsPerElement);
+        bf.add("a");
+        assertTrue(bf.isPresent("a"));
+        assertFalse(bf.isPresent("b"));
+        assertTrue(bf.delete("a"));
+        assertFalse(bf.isPresent("a"));
+        assertEquals(bf.buckets(), bf.emptyBuckets());
+    }
+
+    @Test
+    public void testDeleteKeepsOtherKeys() {
+        CountingBloomFilter bf = new CountingBloomFilter(ELEMENTS, 0.01);
+        for (int i = 0; i < ELEMENTS; i++) {
+            bf.add(Integer.toString(i));
+        }
+        for (int i = 0; i < ELEMENTS; i += 2) {
+            assertTrue(bf.delete(Integer.toString(i)));
+        }
+        for (int i = 1; i < ELEMENTS; i += 2) {
+            assertTrue(bf.isPresent(Integer.toString(i)));
+        }
+    }
+
+    @Test
+    public void testSaturatedCounterIsNotDecremented() {
+        CountingBloomFilter bf = new CountingBloomFilter(ELEMENTS, FilterTest.spec.bucketsPerElement);
+        for (int i = 0; i < 20; i++) {
+            bf.add("a");
+        }
+        for (int i = 0; i < 20; i++) {
+            bf.delete("a");
+        }
+        assertTrue(bf.isPresent("a"));
+    }
+
+    @Test
+    public void testFalsePositivesInt() {
+        CountingBloomFilter bf = new CountingBloomFilter(ELEMENTS, FilterTest.spec.bucketsPerElement);
+        FilterTest.testFalsePositives(bf, FilterTest.intKeys(), FilterTest.randomKeys2());
+    }
+
+    @Test
+    public void testFalsePositivesRandom() {
+        CountingBloomFilter bf = new CountingBloomFilter(ELEMENTS, FilterTest.spec.bucketsPerElement);
+        FilterTest.testFalsePositives(bf, FilterTest.randomKeys(), FilterTest.randomKeys2());
+    }
+
+    @Test
+    public void testSerialize() throws IOException {
+        CountingBloomFilter bf = new CountingBloomFilter(ELEMENTS, FilterTest.spec.bucketsPerElement);
+        bf.add("c");
+        CountingBloomFilter bf2 = (CountingBloomFilter) FilterTest.testSerialize(bf);
+        assertTrue(bf2.isPresent("c"));
+        assertTrue(bf2.delete("a"));
+        assertFalse(bf2.isPresent("a"));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*
+*/
+package com.clearspring.analytics.stream.membership;
+
+import java.io.IOException;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CuckooFilterTest {
+
+    static final int ELEMENTS = 100000;
+
+    @Test
+    public void testOne() {
+        CuckooFilter cf = new CuckooFilter(ELEMENTS);
+        cf.add("a");
+        assertTrue(cf.isPresent("a"));
+        assertFalse(cf.isPresent("b"));
+        assertTrue(cf.delete("a"));
+        assertFalse(cf.isPresent("a"));
+        assertFalse(cf.delete("a"));
+    }
+
+    @Test
+    public void testAddContainsDelete() {
+        CuckooFilter cf = new CuckooFilter(ELEMENTS);
+        for (long i = 0; i < ELEMENTS; i++) {
+            cf.add(i);
+        }
+        assertEquals(ELEMENTS, cf.count());
+        // sized for a 95% load without rounding the table up
+        double bitsPerElement = 64.0 * cf.table().length / ELEMENTS;
+        assertTrue("Bits per element: " + bitsPerElement, bitsPerElement < 17);
+        for (long i = 0; i < ELEMENTS; i++) {
+            assertTrue(cf.isPresent(i));
+        }
+        for (long i = 0; i < ELEMENTS; i += 2) {
+            assertTrue(cf.delete(i));
+        }
+        assertEquals(ELEMENTS / 2, cf.count());
+        int falsePositives = 0;
+        for (long i = 0; i < ELEMENTS; i++) {
+            if (i % 2 == 1) {
+                assertTrue(cf.isPresent(i));
+            } else if (cf.isPresent(i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("False positives: " + falsePositives, falsePositives < ELEMENTS / 1000);
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        CuckooFilter cf = new CuckooFilter(ELEMENTS);
+        Random r = new Random(42);
+        for (int i = 0; i < ELEMENTS; i++) {
+            byte[] key = new byte[16];
+            r.nextBytes(key);
+            cf.add(key);
+        }
+        int falsePositives = 0;
+        int tests = 1000000;
+        for (int i = 0; i < tests; i++) {
+            if (cf.isPresent(Integer.toString(i))) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / tests;
+        assertTrue("False positive rate: " + rate, rate < 0.0005);
+    }
+
+    @Test
+    public void testFull() {
+        CuckooFilter cf = new CuckooFilter(1000);
+        int added = 0;
+        try {
+            while (true) {
+                cf.add(added);
+                added++;
+            }
+        } catch (IllegalStateException e) {
+            // expected once the victim slot is taken
+        }
+        assertTrue(added >= 1000);
+        for (int i = 0; i < added; i++) {
+            assertTrue(cf.isPresent(i));
+        }
+        assertTrue(cf.delete(0));
+        for (int i = 1; i < added; i++) {
+            assertTrue(cf.isPresent(i));
+        }
+    }
+
+    @Test
+    public void testDuplicates() {
+        CuckooFilter cf = new CuckooFilter(ELEMENTS);
+        // both buckets of the key fill up with its fingerprint, then the ninth copy is parked
+        for (int i = 0; i < 9; i++) {
+            cf.add("a");
+        }
+        assertEquals(9, cf.count());
+        try {
+            cf.add("b");
+            fail("Expected the filter to be full");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        for (int i = 0; i < 9; i++) {
+            assertTrue(cf.delete("a"));
+        }
+        assertFalse(cf.isPresent("a"));
+        cf.add("b");
+        assertTrue(cf.isPresent("b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyElements() {
+        // more than MAX_BUCKETS buckets, whose slots would overflow an int
+        new CuckooFilter(1L << 31);
+    }
+
+    @Test
+    public void testSerialize() throws IOException {
+        CuckooFilter cf = new CuckooFilter(ELEMENTS);
+        for (long i = 0; i < 1000; i++) {
+            cf.add(i);
+        }
+        CuckooFilter cf2 = (CuckooFilter) FilterTest.testSerialize(cf);
+        assertEquals(cf.count(), cf2.count());
+        for (long i = 0; i < 1000; i++) {
+            assertTrue(cf2.isPresent(i));
+        }
+    }
+}
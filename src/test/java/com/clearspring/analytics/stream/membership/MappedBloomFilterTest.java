@@ -0,0 +1,128 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*
+*/
+package com.clearspring.analytics.stream.membership;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import com.clearspring.analytics.hash.StandardHashStrategy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappedBloomFilterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMatchesBloomFilter() throws IOException {
+        BloomFilter bf = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            bf.add(Integer.toString(i));
+        }
+        File file = folder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        new BloomFilterSerializer().serialize(bf, out.getChannel());
+        out.close();
+
+        MappedBloomFilter mapped = MappedBloomFilter.open(file);
+        try {
+            assertEquals(bf.getHashCount(), mapped.getHashCount());
+            assertEquals(bf.buckets(), mapped.buckets());
+            for (int i = 0; i < 20000; i++) {
+                String key = Integer.toString(i);
+                assertEquals(bf.isPresent(key), mapped.isPresent(key));
+                assertEquals(bf.isPresent(key.getBytes()), mapped.isPresent(key.getBytes()));
+            }
+        } finally {
+            mapped.close();
+        }
+    }
+
+    @Test
+    public void testHashStrategy() throws IOException {
+        BloomFilter bf = new BloomFilter(10000, 0.01, StandardHashStrategy.MURMUR3);
+        for (int i = 0; i < 10000; i++) {
+            bf.add(Integer.toString(i));
+            bf.add(Integer.toString(-i).getBytes());
+        }
+        File file = folder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        new BloomFilterSerializer().serialize(bf, out.getChannel());
+        out.close();
+
+        MappedBloomFilter mapped = MappedBloomFilter.open(file);
+        try {
+            assertEquals(StandardHashStrategy.MURMUR3, mapped.getHashStrategy());
+            assertEquals(bf.getHashCount(), mapped.getHashCount());
+            assertEquals(bf.buckets(), mapped.buckets());
+            for (int i = 0; i < 20000; i++) {
+                String key = Integer.toString(i);
+                assertEquals(bf.isPresent(key), mapped.isPresent(key));
+                assertEquals(bf.isPresent(key.getBytes()), mapped.isPresent(key.getBytes()));
+            }
+            assertTrue(mapped.isPresent("42"));
+            assertTrue(mapped.isPresent("-42".getBytes()));
+        } finally {
+            mapped.close();
+        }
+    }
+
+    @Test
+    public void testMatchesBigBloomFilter() throws IOException {
+        BigBloomFilter bf = new BigBloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            bf.add(Integer.toString(i));
+        }
+        File file = folder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        new BigBloomFilterSerializer().serialize(bf, out.getChannel());
+        out.close();
+
+        MappedBloomFilter mapped = MappedBloomFilter.open(file);
+        try {
+            assertEquals(bf.getHashCount(), mapped.getHashCount());
+            assertEquals(bf.buckets(), mapped.buckets());
+            for (int i = 0; i < 20000; i++) {
+                String key = Integer.toString(i);
+                assertEquals(bf.isPresent(key), mapped.isPresent(key));
+                assertEquals(bf.isPresent(key.getBytes()), mapped.isPresent(key.getBytes()));
+            }
+            assertTrue(mapped.isPresent("42"));
+        } finally {
+            mapped.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsTruncatedFile() throws IOException {
+        File file = folder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[8]);
+        out.close();
+        MappedBloomFilter.open(file);
+    }
+}
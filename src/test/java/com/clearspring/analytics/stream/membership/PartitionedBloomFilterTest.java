@@ -0,0 +1,101 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*
+*/
+package com.clearspring.analytics.stream.membership;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionedBloomFilterTest {
+
+    static final int ELEMENTS = 10000;
+
+    @Test
+    public void testOne() {
+        PartitionedBloomFilter bf = new PartitionedBloomFilter(ELEMENTS, FilterTest.spec.bucketsPerElement);
+        assertEquals(bf.buckets(), bf.emptyBuckets());
+        bf.add("a");
+        assertTrue(bf.isPresent("a"));
+        assertFalse(bf.isPresent("b"));
+        assertEquals(bf.buckets() - bf.getHashCount(), bf.emptyBuckets());
+        bf.clear();
+        assertFalse(bf.isPresent("a"));
+    }
+
+    @Test
+    public void testProbesLandInTheirSlice() {
+        PartitionedBloomFilter bf = new PartitionedBloomFilter(ELEMENTS, 0.01);
+        assertEquals(BloomCalculations.computeBucketsAndK(0.01).K, bf.getHashCount());
+        assertEquals(0, bf.sliceBuckets() % 64);
+        for (int i = 0; i < 1000; i++) {
+            int[] buckets = bf.getHashBuckets(Integer.toString(i));
+            assertEquals(bf.getHashCount(), buckets.length);
+            for (int j = 0; j < buckets.length; j++) {
+                assertEquals(j, buckets[j] / bf.sliceBuckets());
+            }
+        }
+    }
+
+    @Test
+    public void testAddAll() {
+        PartitionedBloomFilter a = new PartitionedBloomFilter(ELEMENTS * 100, FilterTest.spec.bucketsPerElement);
+        PartitionedBloomFilter b = new PartitionedBloomFilter(ELEMENTS * 100, FilterTest.spec.bucketsPerElement);
+        for (int i = 0; i < ELEMENTS; i++) {
+            a.add("a" + i);
+            b.add("b" + i);
+        }
+        a.addAll(b);
+        for (int i = 0; i < ELEMENTS; i++) {
+            assertTrue(a.isPresent("a" + i));
+            assertTrue(a.isPresent("b" + i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddAllException() {
+        new PartitionedBloomFilter(ELEMENTS, 10).addAll(new PartitionedBloomFilter(ELEMENTS * 2, 10));
+    }
+
+    @Test
+    public void testFalsePositivesInt() {
+        PartitionedBloomFilter bf = new PartitionedBloomFilter(ELEMENTS, FilterTest.spec.bucketsPerElement);
+        FilterTest.testFalsePositives(bf, FilterTest.intKeys(), FilterTest.randomKeys2());
+    }
+
+    @Test
+    public void testFalsePositivesRandom() {
+        PartitionedBloomFilter bf = new PartitionedBloomFilter(ELEMENTS, FilterTest.spec.bucketsPerElement);
+        FilterTest.testFalsePositives(bf, FilterTest.randomKeys(), FilterTest.randomKeys2());
+    }
+
+    @Test
+    public void testSerialize() throws IOException {
+        PartitionedBloomFilter bf = new PartitionedBloomFilter(ELEMENTS, FilterTest.spec.bucketsPerElement);
+        bf.add("c");
+        PartitionedBloomFilter bf2 = (PartitionedBloomFilter) FilterTest.testSerialize(bf);
+        assertTrue(bf2.isPresent("a"));
+        assertTrue(bf2.isPresent("c"));
+        assertEquals(bf.buckets(), bf2.buckets());
+    }
+}
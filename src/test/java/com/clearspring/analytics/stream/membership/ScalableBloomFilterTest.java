@@ -0,0 +1,94 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*
+*/
+package com.clearspring.analytics.stream.membership;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScalableBloomFilterTest {
+
+    @Test
+    public void testOne() {
+        ScalableBloomFilter bf = new ScalableBloomFilter(100, 0.01);
+        bf.add("a");
+        assertTrue(bf.isPresent("a"));
+        assertFalse(bf.isPresent("b"));
+        assertEquals(1, bf.stages());
+    }
+
+    @Test
+    public void testGrowsAndHoldsFalsePositiveRate() {
+        double p = 0.01;
+        int n = 100000;
+        ScalableBloomFilter bf = new ScalableBloomFilter(1000, p);
+        for (int i = 0; i < n; i++) {
+            bf.add(Integer.toString(i));
+        }
+        assertTrue(bf.stages() > 1);
+        for (int i = 0; i < n; i++) {
+            assertTrue(bf.isPresent(Integer.toString(i)));
+        }
+        int fp = 0;
+        int tests = 100000;
+        for (int i = n; i < n + tests; i++) {
+            if (bf.isPresent(Integer.toString(i))) {
+                fp++;
+            }
+        }
+        double rate = (double) fp / tests;
+        assertTrue("False positive rate: " + rate, rate < p);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGrowthPastIntBuckets() {
+        // the second stage holds 1000 << 20 elements, fewer than Integer.MAX_VALUE but with
+        // more buckets than that
+        ScalableBloomFilter bf = new ScalableBloomFilter(1000, 0.01, 1 << 20, 0.5);
+        for (int i = 0; i < 2000; i++) {
+            bf.add(Integer.toString(i));
+        }
+    }
+
+    @Test
+    public void testFalsePositivesRandom() {
+        ScalableBloomFilter bf = new ScalableBloomFilter(FilterTest.ELEMENTS / 10, FilterTest.MAX_FAILURE_RATE);
+        FilterTest.testFalsePositives(bf, FilterTest.randomKeys(), FilterTest.randomKeys2());
+    }
+
+    @Test
+    public void testSerialize() throws IOException {
+        ScalableBloomFilter bf = new ScalableBloomFilter(10, 0.01);
+        for (int i = 0; i < 100; i++) {
+            bf.add(Integer.toString(i));
+        }
+        ScalableBloomFilter bf2 = (ScalableBloomFilter) FilterTest.testSerialize(bf);
+        assertEquals(bf.stages(), bf2.stages());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(bf2.isPresent(Integer.toString(i)));
+        }
+        bf2.add("more");
+        assertTrue(bf2.isPresent("more"));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*
+*/
+package com.clearspring.analytics.stream.membership;
+
+import java.io.IOException;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class XorFilterTest {
+
+    static final int ELEMENTS = 100000;
+
+    private static long[] randomHashes(Random random, int n) {
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = random.nextLong();
+        }
+        return keys;
+    }
+
+    private static double falsePositiveRate(XorFilter filter, Random random, int trials) {
+        int fp = 0;
+        for (int i = 0; i < trials; i++) {
+            if (filter.mayContain(random.nextLong())) {
+                fp++;
+            }
+        }
+        return (double) fp / trials;
+    }
+
+    @Test
+    public void testNoFalseNegatives8() {
+        long[] keys = randomHashes(new Random(1), ELEMENTS);
+        XorFilter filter = XorFilter.build(keys);
+        assertEquals(8, filter.getFingerprintBits());
+        assertEquals(ELEMENTS, filter.size());
+        for (long key : keys) {
+            assertTrue(filter.mayContain(key));
+        }
+        assertTrue(falsePositiveRate(filter, new Random(2), ELEMENTS) < 0.006);
+        assertTrue(filter.sizeInBytes() * 8.0 / ELEMENTS < 10);
+    }
+
+    @Test
+    public void testNoFalseNegatives16() {
+        long[] keys = randomHashes(new Random(3), ELEMENTS);
+        XorFilter filter = XorFilter.build(keys, 16);
+        for (long key : keys) {
+            assertTrue(filter.mayContain(key));
+        }
+        assertTrue(falsePositiveRate(filter, new Random(4), ELEMENTS) < 0.0002);
+    }
+
+    @Test
+    public void testDuplicatesAndSmallSets() {
+        XorFilter empty = XorFilter.build(new long[0]);
+        assertEquals(0, empty.size());
+
+        XorFilter one = XorFilter.build(new long[]{42, 42, 42});
+        assertEquals(1, one.size());
+        assertTrue(one.mayContain(42));
+
+        long[] keys = randomHashes(new Random(5), 1000);
+        long[] doubled = new long[2 * keys.length];
+        System.arraycopy(keys, 0, doubled, 0, keys.length);
+        System.arraycopy(keys, 0, doubled, keys.length, keys.length);
+        XorFilter filter = XorFilter.build(doubled);
+        assertEquals(keys.length, filter.size());
+        for (long key : keys) {
+            assertTrue(filter.mayContain(key));
+        }
+    }
+
+    @Test
+    public void testStringKeys() {
+        long[] keys = new long[1000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = XorFilter.hash(Integer.toString(i));
+        }
+        XorFilter filter = XorFilter.build(keys);
+        for (int i = 0; i < keys.length; i++) {
+            assertTrue(filter.isPresent(Integer.toString(i)));
+        }
+    }
+
+    @Test
+    public void testSerialize() throws IOException {
+        for (int bits : new int[]{8, 16}) {
+            long[] keys = randomHashes(new Random(bits), 10000);
+            XorFilter filter = XorFilter.build(keys, bits);
+
+            DataOutputBuffer out = new DataOutputBuffer();
+            XorFilter.serializer().serialize(filter, out);
+            DataInputBuffer in = new DataInputBuffer();
+            in.reset(out.getData(), out.getLength());
+            XorFilter copy = XorFilter.serializer().deserialize(in);
+
+            assertEquals(filter.size(), copy.size());
+            assertEquals(bits, copy.getFingerprintBits());
+            Random random = new Random(7);
+            for (int i = 0; i < 10000; i++) {
+                long key = random.nextLong();
+                assertEquals(filter.mayContain(key), copy.mayContain(key));
+            }
+            for (long key : keys) {
+                assertTrue(copy.mayContain(key));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFingerprintBits() {
+        XorFilter.build(new long[]{1}, 12);
+    }
+}
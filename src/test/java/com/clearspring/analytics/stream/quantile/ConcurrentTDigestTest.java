@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.quantile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mahout.common.RandomUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentTDigestTest {
+
+    @Before
+    public void setUp() {
+        RandomUtils.useTestSeed();
+    }
+
+    @Test
+    public void testSingleThread() {
+        Random gen = RandomUtils.getRandom();
+        ConcurrentTDigest concurrent = new ConcurrentTDigest(100, gen, 4, 64);
+        TDigest plain = new TDigest(100, gen);
+        for (int i = 0; i < 100000; i++) {
+            double x = gen.nextDouble();
+            concurrent.add(x);
+            plain.add(x);
+        }
+        assertEquals(100000, concurrent.size());
+        for (double q : new double[]{0.001, 0.01, 0.1, 0.5, 0.9, 0.99, 0.999}) {
+            assertEquals(plain.quantile(q), concurrent.quantile(q), 0.005);
+            assertEquals(q, concurrent.cdf(q), 0.005);
+        }
+    }
+
+    @Test
+    public void testSnapshotReuse() {
+        ConcurrentTDigest digest = new ConcurrentTDigest(100, RandomUtils.getRandom(), 2, 16);
+        for (int i = 0; i < 1000; i++) {
+            digest.add(i);
+        }
+        TDigestSnapshot first = digest.snapshot();
+        assertEquals(1000, first.size());
+        assertSame(first, digest.snapshot());
+
+        // buffered samples show up in the next snapshot, the old one is left alone
+        digest.add(1000);
+        TDigestSnapshot second = digest.snapshot();
+        assertNotSame(first, second);
+        assertEquals(1000, first.size());
+        assertEquals(1001, second.size());
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        final int threads = 8;
+        final int perThread = 50000;
+        final int bufferSize = 128;
+        final ConcurrentTDigest digest = new ConcurrentTDigest(100, RandomUtils.getRandom(), 4, bufferSize);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger added = new AtomicInteger();
+
+        ExecutorService exec = Executors.newFixedThreadPool(threads + 1);
+        List<Future<?>> writers = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            writers.add(exec.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    Random gen = new Random(seed);
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        started.incrementAndGet();
+                        digest.add(gen.nextDouble());
+                        added.incrementAndGet();
+                    }
+                    return null;
+                }
+            }));
+        }
+        // a reader querying while the writers run, which may only miss samples in buffers that
+        // an add still in progress is writing to, one per writer
+        Future<?> reader = exec.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                start.await();
+                int last = 0;
+                for (int i = 0; i < 200; i++) {
+                    int returned = added.get();
+                    int size = digest.size();
+                    assertTrue(size >= last);
+                    assertTrue(size >= returned - threads * bufferSize);
+                    assertTrue(size <= started.get());
+                    last = size;
+                }
+                return null;
+            }
+        });
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        reader.get();
+        exec.shutdown();
+        assertTrue(exec.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(threads * perThread, digest.size());
+        for (double q : new double[]{0.01, 0.1, 0.5, 0.9, 0.99}) {
+            assertEquals(q, digest.quantile(q), 0.01);
+        }
+    }
+}
@@ -21,7 +21,9 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.TreeSet;
 
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
 import org.apache.mahout.common.RandomUtils;
@@ -129,6 +131,57 @@ public class GroupTreeTest {
         assertFalse(ix.hasNext());
     }
 
+    @Test
+    public void testBuild() {
+        assertEquals(0, GroupTree.build(Lists.<TDigest.Group>newArrayList()).size());
+
+        List<TDigest.Group> groups = Lists.newArrayList();
+        for (int i = 0; i < 1000; i++) {
+            groups.add(new TDigest.Group(i / 2));
+        }
+        for (int n : new int[]{1, 2, 3, 7, 64, 1000}) {
+            GroupTree x = GroupTree.build(groups.subList(0, n));
+            x.checkBalance();
+            assertEquals(n, x.size());
+            assertEquals(n, x.sum());
+            Iterator<TDigest.Group> ix = x.iterator();
+            for (int i = 0; i < n; i++) {
+                assertEquals(groups.get(i), ix.next());
+            }
+            assertFalse(ix.hasNext());
+        }
+    }
+
+    @Test
+    public void testAgainstTreeSet() {
+        // removals put nodes on the free list, later adds reuse them
+        Random gen = RandomUtils.getRandom();
+        GroupTree x = new GroupTree();
+        TreeSet<TDigest.Group> reference = new TreeSet<TDigest.Group>();
+        for (int i = 0; i < 5000; i++) {
+            if (reference.isEmpty() || gen.nextDouble() < 0.6) {
+                TDigest.Group g = new TDigest.Group(gen.nextInt(100));
+                x.add(g);
+                reference.add(g);
+            } else {
+                TDigest.Group g = reference.ceiling(new TDigest.Group(gen.nextInt(100), 0));
+                if (g == null) {
+                    g = reference.first();
+                }
+                x.remove(g);
+                reference.remove(g);
+            }
+            TDigest.Group probe = new TDigest.Group(gen.nextInt(100) + 0.5, 0);
+            assertEquals(reference.size(), x.size());
+            assertEquals(reference.headSet(probe).size(), x.headCount(probe));
+            assertEquals(reference.headSet(probe).size(), x.headSum(probe));
+            assertEquals(reference.floor(probe), x.floor(probe));
+            assertEquals(reference.ceiling(probe), x.ceiling(probe));
+        }
+        x.checkBalance();
+        assertTrue(Iterables.elementsEqual(reference, x));
+    }
+
     @Test
     public void testFloor() {
         // mostly tested in other tests
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clearspring.analytics.stream.quantile;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+
+import org.apache.mahout.common.RandomUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TDigestSnapshotTest {
+
+    @Before
+    public void setUp() {
+        RandomUtils.useTestSeed();
+    }
+
+    @Test
+    public void testMatchesScan() {
+        Random gen = RandomUtils.getRandom();
+        List<TDigest> digests = Lists.newArrayList();
+        for (int n : new int[]{2, 3, 4, 5, 10, 100, 10000}) {
+            TDigest uniform = new TDigest(100, gen);
+            TDigest sorted = new TDigest(20, gen);
+            TDigest repeated = new TDigest(100, gen);
+            TDigest weighted = new TDigest(100, gen);
+            for (int i = 0; i < n; i++) {
+                uniform.add(gen.nextDouble());
+                sorted.add(i);
+                repeated.add(gen.nextInt(5));
+                weighted.add(gen.nextGaussian(), 1 + gen.nextInt(20));
+            }
+            digests.add(uniform);
+            digests.add(sorted);
+            digests.add(repeated);
+            digests.add(weighted);
+        }
+
+        for (TDigest digest : digests) {
+            if (digest.centroidCount() < 2) {
+                continue;
+            }
+            TDigestSnapshot snapshot = digest.snapshot();
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            for (TDigest.Group group : digest.centroids()) {
+                min = Math.min(min, group.mean());
+                max = Math.max(max, group.mean());
+                assertEquals(scanCdf(digest, group.mean()), snapshot.cdf(group.mean()), 0);
+            }
+            for (int i = 0; i <= 1000; i++) {
+                double q = i / 1000.0;
+                assertEquals(scanQuantile(digest, q), snapshot.quantile(q), 0);
+                double x = min - 1 + (max - min + 2) * q;
+                assertEquals(scanCdf(digest, x), snapshot.cdf(x), 0);
+            }
+            for (int i = 0; i < 1000; i++) {
+                double q = gen.nextDouble();
+                assertEquals(scanQuantile(digest, q), snapshot.quantile(q), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testQuantiles() {
+        Random gen = RandomUtils.getRandom();
+        TDigest digest = new TDigest(100, gen);
+        for (int i = 0; i < 10000; i++) {
+            digest.add(gen.nextDouble());
+        }
+        double[] qs = {0.5, 0.001, 0.999, 0.25, 0.99};
+        double[] r = digest.quantiles(qs);
+        assertEquals(qs.length, r.length);
+        for (int i = 0; i < qs.length; i++) {
+            assertEquals(digest.quantile(qs[i]), r[i], 0);
+        }
+    }
+
+    @Test
+    public void testReuse() {
+        TDigest digest = new TDigest(100, RandomUtils.getRandom());
+        assertEquals(Double.NaN, digest.cdf(0), 0);
+        for (int i = 0; i < 100; i++) {
+            digest.add(i);
+        }
+        TDigestSnapshot first = digest.snapshot();
+        assertSame(first, digest.snapshot());
+
+        digest.add(100);
+        TDigestSnapshot second = digest.snapshot();
+        assertNotSame(first, second);
+        assertEquals(100, first.size());
+        assertEquals(101, second.size());
+
+        digest.compress();
+        assertNotSame(second, digest.snapshot());
+    }
+
+    /**
+     * The linear scan TDigest used before snapshots.
+     */
+    private static double scanCdf(TDigest digest, double x) {
+        Iterator<? extends TDigest.Group> it = digest.centroids().iterator();
+        TDigest.Group a = it.next();
+        TDigest.Group b = it.next();
+        double left = (b.mean() - a.mean()) / 2;
+        double right = left;
+        double r = 0;
+        while (it.hasNext()) {
+            if (x < a.mean() + right) {
+                return (r + a.count() * interpolate(x, a.mean() - left, a.mean() + right)) / digest.size();
+            }
+            r += a.count();
+            a = b;
+            b = it.next();
+            left = right;
+            right = (b.mean() - a.mean()) / 2;
+        }
+        left = right;
+        a = b;
+        if (x < a.mean() + right) {
+            return (r + a.count() * interpolate(x, a.mean() - left, a.mean() + right)) / digest.size();
+        } else {
+            return 1;
+        }
+    }
+
+    private static double scanQuantile(TDigest digest, double q) {
+        Iterator<? extends TDigest.Group> it = digest.centroids().iterator();
+        TDigest.Group center = it.next();
+        TDigest.Group leading = it.next();
+        if (!it.hasNext()) {
+            double diff = (leading.mean() - center.mean()) / 2;
+            if (q > 0.75) {
+                return leading.mean() + diff * (4 * q - 3);
+            } else {
+                return center.mean() + diff * (4 * q - 1);
+            }
+        }
+        q *= digest.size();
+        double right = (leading.mean() - center.mean()) / 2;
+        double left = right;
+        double t = center.count();
+        while (it.hasNext()) {
+            if (t + center.count() / 2 >= q) {
+                return center.mean() - left * 2 * (q - t) / center.count();
+            } else if (t + leading.count() >= q) {
+                return center.mean() + right * 2.0 * (center.count() - (q - t)) / center.count();
+            }
+            t += center.count();
+            center = leading;
+            leading = it.next();
+            left = right;
+            right = (leading.mean() - center.mean()) / 2;
+        }
+        center = leading;
+        left = right;
+        if (t + center.count() / 2 >= q) {
+            return center.mean() - left * 2 * (q - t) / center.count();
+        } else if (t + leading.count() >= q) {
+            return center.mean() + right * 2.0 * (center.count() - (q - t)) / center.count();
+        } else {
+            return 1;
+        }
+    }
+
+    private static double interpolate(double x, double x0, double x1) {
+        return (x - x0) / (x1 - x0);
+    }
+}
@@ -48,6 +48,7 @@ import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeTrue;
 
 public class TDigestTest {
@@ -464,23 +465,26 @@ public class TDigestTest {
 
     @Test
     public void testMerge() {
+        // the digests draw from their own generator so that the data doesn't depend on how
+        // often they use it
         Random gen = RandomUtils.getRandom();
+        Random digestGen = RandomUtils.getRandom();
 
         for (int parts : new int[]{2, 5, 10, 20, 50, 100}) {
             List<Double> data = Lists.newArrayList();
 
-            TDigest dist = new TDigest(100, gen);
+            TDigest dist = new TDigest(100, digestGen);
             dist.recordAllData();
 
             List<TDigest> many = Lists.newArrayList();
             for (int i = 0; i < 100; i++) {
-                many.add(new TDigest(100, gen).recordAllData());
+                many.add(new TDigest(100, digestGen).recordAllData());
             }
 
             // we accumulate the data into multiple sub-digests
             List<TDigest> subs = Lists.newArrayList();
             for (int i = 0; i < parts; i++) {
-                subs.add(new TDigest(50, gen).recordAllData());
+                subs.add(new TDigest(50, digestGen).recordAllData());
             }
 
             for (int i = 0; i < 100000; i++) {
@@ -532,6 +536,133 @@ public class TDigestTest {
         }
     }
 
+    @Test
+    public void testAddAll() {
+        Random gen = RandomUtils.getRandom();
+        TDigest dist = new TDigest(100, gen).recordAllData();
+        List<Double> data = Lists.newArrayList();
+        // some centroids from single adds first, then batches of varying size
+        for (int i = 0; i < 1000; i++) {
+            double x = gen.nextDouble();
+            data.add(x);
+            dist.add(x);
+        }
+        for (int batch : new int[]{1, 10, 1000, 10000, 100000}) {
+            double[] values = new double[batch + 10];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = gen.nextDouble();
+            }
+            for (int i = 5; i < batch + 5; i++) {
+                data.add(values[i]);
+            }
+            dist.addAll(values, 5, batch);
+        }
+        Collections.sort(data);
+
+        assertEquals(data.size(), dist.size());
+        int sum = 0;
+        int recorded = 0;
+        for (TDigest.Group group : dist.centroids()) {
+            sum += group.count();
+            recorded += Iterables.size(group.data());
+        }
+        assertEquals(data.size(), sum);
+        assertEquals(data.size(), recorded);
+        assertTrue("Summary is too large", dist.centroidCount() < 1000);
+
+        for (double q : new double[]{0.001, 0.01, 0.1, 0.5, 0.9, 0.99, 0.999}) {
+            assertEquals(q, cdf(dist.quantile(q), data), 0.005);
+            assertEquals(q, dist.cdf(quantile(q, data)), 0.005);
+        }
+        // the extremes are kept as they are
+        assertEquals(data.get(0), dist.centroids().iterator().next().mean(), 0);
+    }
+
+    @Test
+    public void testAddAllWeighted() {
+        Random gen = RandomUtils.getRandom();
+        TDigest weighted = new TDigest(100, gen);
+        double[] values = new double[10000];
+        int[] weights = new int[values.length];
+        int total = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = gen.nextGaussian();
+            weights[i] = 1 + gen.nextInt(10);
+            total += weights[i];
+        }
+        List<Double> data = Lists.newArrayList();
+        for (int i = 0; i < values.length; i++) {
+            for (int k = 0; k < weights[i]; k++) {
+                data.add(values[i]);
+            }
+        }
+        Collections.sort(data);
+        weighted.addAll(values, weights, 0, values.length);
+
+        assertEquals(total, weighted.size());
+        for (double q : new double[]{0.001, 0.01, 0.1, 0.5, 0.9, 0.99, 0.999}) {
+            assertEquals(q, cdf(weighted.quantile(q), data), 0.005);
+            assertEquals(q, weighted.cdf(quantile(q, data)), 0.005);
+        }
+
+        try {
+            weighted.addAll(values, new int[]{1, 0}, 0, 2);
+            fail("Should have rejected a zero weight");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            weighted.addAll(values, 9990, 20);
+            fail("Should have rejected a range past the end");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCompressSortedInput() {
+        Random gen = RandomUtils.getRandom();
+        TDigest dist = new TDigest(100, gen).recordAllData();
+        List<Double> data = Lists.newArrayList();
+        for (int i = 0; i < 100000; i++) {
+            double x = i * 1e-5;
+            data.add(x);
+            dist.add(x);
+            assertFalse(dist.needsCompression());
+        }
+        dist.compress();
+        assertTrue("Summary is too large", dist.centroidCount() < 1000);
+
+        // compression merges the recorded data too
+        int recorded = 0;
+        for (TDigest.Group group : dist.centroids()) {
+            recorded += Iterables.size(group.data());
+        }
+        assertEquals(data.size(), recorded);
+
+        for (double q : new double[]{0.001, 0.01, 0.1, 0.5, 0.9, 0.99, 0.999}) {
+            assertEquals(q, cdf(dist.quantile(q), data), 0.005);
+            assertEquals(q, dist.cdf(quantile(q, data)), 0.005);
+        }
+    }
+
+    @Test
+    public void testDeferCompression() {
+        Random gen = RandomUtils.getRandom();
+        TDigest dist = new TDigest(10, gen).deferCompression();
+        for (int i = 0; i < 10000; i++) {
+            dist.add(i);
+        }
+        assertTrue(dist.needsCompression());
+        assertTrue(dist.centroidCount() > 1000);
+
+        dist.compress();
+        assertFalse(dist.needsCompression());
+        assertTrue(dist.centroidCount() < 100);
+        assertEquals(10000, dist.size());
+        assertEquals(5000, dist.quantile(0.5), 500);
+    }
+
     private double cdf(final double x, List<Double> data) {
         int n1 = 0;
         int n2 = 0;